@@ -0,0 +1,167 @@
+package com.practice.lcn.calc;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the equation being edited: its characters including the
+ * {@link MainActivity#CURSOR cursor} and its {@link EqtTokens tokens}.
+ * <p>
+ * Both are edited in place, so once the arrays are large enough for the equation, inserting and
+ * deleting a symbol or moving the cursor allocates nothing. The equation is only turned into a
+ * string by {@link #toString()}, which keeps the string until the next edit.
+ * </p>
+ * @author lcn
+ */
+public class EqtBuffer {
+    private static final char CURSOR = MainActivity.CURSOR.charAt(0);
+
+    private final EqtTokens tokens;
+    private char[] chars;
+    private int length;
+    /**
+     * the equation as a string, or null if it has been edited since it was last requested
+     */
+    private String string;
+
+    /**
+     * create a buffer holding an empty equation
+     */
+    public EqtBuffer() {
+        this.tokens = new EqtTokens();
+        this.chars = new char[64];
+        clear();
+    }
+
+    /**
+     * make the equation empty, leaving only the cursor
+     */
+    public void clear() {
+        this.tokens.clear();
+        this.chars[0] = EqtBuffer.CURSOR;
+        this.length = 1;
+        this.string = MainActivity.CURSOR;
+    }
+
+    /**
+     * replace the equation
+     * @param eqt full equation including the {@link MainActivity#CURSOR cursor}
+     * @throws com.practice.lcn.calc.exception.CursorMissingException if the cursor is missing
+     * @throws com.practice.lcn.calc.exception.SymbolUndefinedException if the equation contains an
+     *         undefined symbol
+     */
+    public void set(String eqt) {
+        this.tokens.set(eqt);
+        ensureCapacity(eqt.length());
+        eqt.getChars(0, eqt.length(), this.chars, 0);
+        this.length = eqt.length();
+        this.string = eqt;
+    }
+
+    /**
+     * insert a symbol before the cursor
+     * @param sym symbol to insert
+     */
+    public void insert(Symbol sym) {
+        String repr = sym.getRepr();
+        int pos = this.tokens.getCursorPos();
+        ensureCapacity(this.length + repr.length());
+        System.arraycopy(this.chars, pos, this.chars, pos + repr.length(), this.length - pos);
+        repr.getChars(0, repr.length(), this.chars, pos);
+        this.length += repr.length();
+        this.tokens.insert(sym);
+        this.string = null;
+    }
+
+    /**
+     * delete the symbol before the cursor
+     * @return false if the cursor is at the front; otherwise true.
+     */
+    public boolean delete() {
+        int pos = this.tokens.getCursorPos();
+        Symbol sym = this.tokens.delete();
+        if (sym == null)
+            return false;
+        int n = sym.getRepr().length();
+        System.arraycopy(this.chars, pos, this.chars, pos - n, this.length - pos);
+        this.length -= n;
+        this.string = null;
+        return true;
+    }
+
+    /**
+     * move the cursor to the left by one symbol
+     * @return false if the cursor is at the front; otherwise true.
+     */
+    public boolean moveLeft() {
+        int pos = this.tokens.getCursorPos();
+        Symbol sym = this.tokens.moveLeft();
+        if (sym == null)
+            return false;
+        String repr = sym.getRepr();
+        int start = pos - repr.length();
+        this.chars[start] = EqtBuffer.CURSOR;
+        repr.getChars(0, repr.length(), this.chars, start + 1);
+        this.string = null;
+        return true;
+    }
+
+    /**
+     * move the cursor to the right by one symbol
+     * @return false if the cursor is at the end; otherwise true.
+     */
+    public boolean moveRight() {
+        int pos = this.tokens.getCursorPos();
+        Symbol sym = this.tokens.moveRight();
+        if (sym == null)
+            return false;
+        String repr = sym.getRepr();
+        repr.getChars(0, repr.length(), this.chars, pos);
+        this.chars[pos + repr.length()] = EqtBuffer.CURSOR;
+        this.string = null;
+        return true;
+    }
+
+    /**
+     * @return characters of the equation. Only the first {@link #length()} of them are used, and
+     *         the array can be replaced by the next edit.
+     */
+    public char[] getChars() {
+        return this.chars;
+    }
+
+    /**
+     * @return amount of characters of the equation including the cursor
+     */
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * @return index of the cursor in the equation
+     */
+    public int getCursorPos() {
+        return this.tokens.getCursorPos();
+    }
+
+    /**
+     * @return true if the equation is well-formed so far. See {@link EqtTokens#isWellFormed()}.
+     */
+    public boolean isWellFormed() {
+        return this.tokens.isWellFormed();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.chars.length)
+            this.chars = Arrays.copyOf(this.chars, Math.max(capacity, this.chars.length * 2));
+    }
+
+    /**
+     * @return the full equation including the cursor
+     */
+    @Override
+    public String toString() {
+        if (this.string == null)
+            this.string = new String(this.chars, 0, this.length);
+        return this.string;
+    }
+}
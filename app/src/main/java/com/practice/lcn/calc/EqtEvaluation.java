@@ -0,0 +1,77 @@
+package com.practice.lcn.calc;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import java.util.concurrent.Callable;
+
+/**
+ * evaluation of the equation by the "=" key, run off the UI thread. It is created on the UI thread
+ * with everything the evaluation reads, so the display may change while it runs. An equation
+ * ending with {@link Symbol#SYM_STORE "&rarr;"} and a variable stores into a copy of the
+ * variables; {@link #store(double[])} copies the stored value back once the result is shown.
+ * @author lcn
+ */
+public class EqtEvaluation implements Callable<String> {
+    private final String eqt;
+    private final boolean wellFormed;
+    private final String prevResult;
+    private final boolean complexMode;
+    /**
+     * copy of the variables that the evaluation reads and stores into
+     */
+    private final double[] variables;
+    /**
+     * slot the equation stores into, or {@link EqtProgram#NO_SLOT}
+     */
+    private final int target;
+    /**
+     * token that gives up the evaluation, e.g. when the activity is destroyed
+     */
+    private final CancellationToken token;
+    /**
+     * result of the evaluation, or null until it is done
+     */
+    private volatile String result;
+
+    /**
+     * create a new evaluation
+     * @param eqt equation in the equation display form
+     * @param wellFormed false if the equation is already known to be malformed
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param complexMode true if the calculator is in the complex mode
+     * @param variables values of the variables indexed by slot. It is copied.
+     * @param token cancellation token
+     */
+    public EqtEvaluation(String eqt, boolean wellFormed, String prevResult, boolean complexMode, double[] variables, CancellationToken token) {
+        this.eqt = eqt;
+        this.wellFormed = wellFormed;
+        this.prevResult = prevResult;
+        this.complexMode = complexMode;
+        this.variables = variables.clone();
+        this.target = EqtSolver.storeTargetOf(EqtSolver.removeCursor(eqt));
+        this.token = token;
+    }
+
+    /**
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors. See
+     *         {@link EqtSolver#evaluateInMode(String, String, boolean, double[], CancellationToken)}.
+     */
+    @Override
+    public String call() {
+        String result = this.wellFormed ? EqtSolver.evaluateInMode(this.eqt, this.prevResult, this.complexMode, this.variables, this.token) : EqtSolver.RESULT_SYN_ERR;
+        this.result = result;
+        return result;
+    }
+
+    /**
+     * copy the value stored by the equation, if any, into the variables it was created from. It
+     * does nothing before the evaluation is done or if it failed.
+     * @param variables variables of the calculator
+     */
+    public void store(double[] variables) {
+        String result = this.result;
+        if (this.target != EqtProgram.NO_SLOT && result != null && !EqtSolver.hadErr(result))
+            variables[this.target] = this.variables[this.target];
+    }
+}
@@ -0,0 +1,261 @@
+package com.practice.lcn.calc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.List;
+
+/**
+ * compact binary snapshot of the calculator display. It lets {@link MainActivity} survive rotation
+ * and process death without replaying the equation through {@link EqtTextWatcher} symbol by
+ * symbol.
+ * <p>
+ * The equation is stored as one byte per {@link Symbol} ordinal plus the cursor index in symbols,
+ * followed by the {@link EqtTextWatcher window} bounds and the result. A result that round-trips
+ * through {@link Double#toString(double)} is stored as its raw 8 bytes, a plain decimal as the
+ * bytes of a {@link BigDecimal}, and anything else (such as {@link EqtSolver#RESULT_SYN_ERR}) as
+ * text.
+ * </p>
+ * <pre>
+ * byte    version
+ * byte    flags (bit 0: hasCalculated, bit 1: complex mode)
+ * int     device width the window was computed for
+ * int     amount of symbols n
+ * byte[n] symbol ordinals
+ * int     cursor index (in symbols)
+ * int     window start, int window end (in characters)
+ * byte    result kind, followed by the result
+ * </pre>
+ * @author lcn
+ */
+public class EqtSnapshot {
+    /**
+     * format version. Snapshots of another version are ignored.
+     */
+    public static final int VERSION = 1;
+
+    private static final int FLAG_HAS_CALCULATED = 1;
+    private static final int FLAG_COMPLEX = 2;
+    private static final int RESULT_DOUBLE = 0;
+    private static final int RESULT_DECIMAL = 1;
+    private static final int RESULT_TEXT = 2;
+
+    /**
+     * symbols sorted by the length of their representation in descending order, so that the
+     * longest match wins as in {@link EqtBuilder#getPrevSymbol(String)}
+     */
+    private static final List<Symbol> SORTED_SYMBOLS = Symbol.sort();
+
+    private final String eqt;
+    private final int[] window;
+    private final String result;
+    private final boolean hasCalculated;
+    private final boolean complexMode;
+    private final int deviceWidth;
+
+    private EqtSnapshot(String eqt, int[] window, String result, boolean hasCalculated, boolean complexMode, int deviceWidth) {
+        this.eqt = eqt;
+        this.window = window;
+        this.result = result;
+        this.hasCalculated = hasCalculated;
+        this.complexMode = complexMode;
+        this.deviceWidth = deviceWidth;
+    }
+
+    /**
+     * @return full equation including the {@link MainActivity#CURSOR cursor}
+     */
+    public String getEqt() {
+        return this.eqt;
+    }
+
+    /**
+     * @return a 2-element tuple of the window bounds. See {@link EqtTextWatcher}.
+     */
+    public int[] getWindow() {
+        return new int[] { this.window[0], this.window[1] };
+    }
+
+    /**
+     * @return text of the {@link MainActivity#result result display}
+     */
+    public String getResult() {
+        return this.result;
+    }
+
+    /**
+     * @return true if the result was computed by the user rather than reset
+     */
+    public boolean hasCalculated() {
+        return this.hasCalculated;
+    }
+
+    /**
+     * @return true if the calculator was in complex mode
+     */
+    public boolean isComplexMode() {
+        return this.complexMode;
+    }
+
+    /**
+     * @return device width the window was computed for. The window only applies to the same width.
+     */
+    public int getDeviceWidth() {
+        return this.deviceWidth;
+    }
+
+    /**
+     * encode the calculator display
+     * @param eqt full equation including the {@link MainActivity#CURSOR cursor}
+     * @param window window bounds of the {@link EqtTextWatcher}
+     * @param result text of the {@link MainActivity#result result display}
+     * @param hasCalculated true if the result was computed by the user
+     * @param complexMode true if the calculator is in complex mode
+     * @param deviceWidth device width the window was computed for
+     * @return the snapshot, or null if the equation contains an undefined symbol or no cursor, or
+     *         the result is too long to store, such as a large matrix
+     */
+    public static byte[] write(String eqt, int[] window, String result, boolean hasCalculated, boolean complexMode, int deviceWidth) {
+        byte[] ordinals = new byte[eqt.length()];
+        int n = 0;
+        int cursor = -1;
+        for (int pos = 0; pos < eqt.length(); ) {
+            if (eqt.startsWith(MainActivity.CURSOR, pos)) {
+                if (cursor != -1)
+                    return null;
+                cursor = n;
+                pos += MainActivity.CURSOR.length();
+                continue;
+            }
+            Symbol match = null;
+            for (Symbol sym : SORTED_SYMBOLS) {
+                if (eqt.startsWith(sym.getRepr(), pos)) {
+                    match = sym;
+                    break;
+                }
+            }
+            if (match == null)
+                return null;
+            ordinals[n++] = (byte) match.ordinal();
+            pos += match.getRepr().length();
+        }
+        if (cursor == -1)
+            return null;
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(n + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(VERSION);
+            out.writeByte((hasCalculated ? FLAG_HAS_CALCULATED : 0) | (complexMode ? FLAG_COMPLEX : 0));
+            out.writeInt(deviceWidth);
+            out.writeInt(n);
+            out.write(ordinals, 0, n);
+            out.writeInt(cursor);
+            out.writeInt(window[0]);
+            out.writeInt(window[1]);
+            writeResult(out, result);
+            out.flush();
+            return bytes.toByteArray();
+        }
+        catch (UTFDataFormatException e) {
+            return null;
+        }
+        catch (IOException e) {
+            // never thrown by ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeResult(DataOutputStream out, String result) throws IOException {
+        try {
+            double value = Double.parseDouble(result);
+            if (Double.toString(value).equals(result)) {
+                out.writeByte(RESULT_DOUBLE);
+                out.writeLong(Double.doubleToRawLongBits(value));
+                return;
+            }
+            BigDecimal decimal = new BigDecimal(result);
+            if (decimal.toString().equals(result)) {
+                byte[] unscaled = decimal.unscaledValue().toByteArray();
+                out.writeByte(RESULT_DECIMAL);
+                out.writeInt(decimal.scale());
+                out.writeInt(unscaled.length);
+                out.write(unscaled);
+                return;
+            }
+        }
+        catch (NumberFormatException e) {
+            // not a number, e.g. an error message
+        }
+        out.writeByte(RESULT_TEXT);
+        out.writeUTF(result);
+    }
+
+    /**
+     * decode a snapshot in one pass
+     * @param snapshot bytes given by {@link #write(String, int[], String, boolean, boolean, int)}
+     * @return the decoded snapshot, or null if it is malformed or of another version
+     */
+    public static EqtSnapshot read(byte[] snapshot) {
+        if (snapshot == null)
+            return null;
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            if (in.readUnsignedByte() != VERSION)
+                return null;
+            int flags = in.readUnsignedByte();
+            int deviceWidth = in.readInt();
+            int n = in.readInt();
+            if (n < 0 || n > snapshot.length)
+                return null;
+            byte[] ordinals = new byte[n];
+            in.readFully(ordinals);
+            int cursor = in.readInt();
+            if (cursor < 0 || cursor > n)
+                return null;
+            Symbol[] symbols = Symbol.values();
+            StringBuilder eqt = new StringBuilder(n + MainActivity.CURSOR.length());
+            for (int i = 0; i <= n; i++) {
+                if (i == cursor)
+                    eqt.append(MainActivity.CURSOR);
+                if (i == n)
+                    break;
+                int ordinal = ordinals[i] & 0xFF;
+                if (ordinal >= symbols.length)
+                    return null;
+                eqt.append(symbols[ordinal].getRepr());
+            }
+            int[] window = new int[] { in.readInt(), in.readInt() };
+            String result;
+            switch (in.readUnsignedByte()) {
+                case RESULT_DOUBLE:
+                    result = Double.toString(Double.longBitsToDouble(in.readLong()));
+                    break;
+                case RESULT_DECIMAL: {
+                    int scale = in.readInt();
+                    int len = in.readInt();
+                    if (len <= 0 || len > snapshot.length)
+                        return null;
+                    byte[] unscaled = new byte[len];
+                    in.readFully(unscaled);
+                    result = new BigDecimal(new BigInteger(unscaled), scale).toString();
+                    break;
+                }
+                case RESULT_TEXT:
+                    result = in.readUTF();
+                    break;
+                default:
+                    return null;
+            }
+            return new EqtSnapshot(eqt.toString(), window, result, (flags & FLAG_HAS_CALCULATED) != 0, (flags & FLAG_COMPLEX) != 0, deviceWidth);
+        }
+        catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -2,11 +2,32 @@ package com.practice.lcn.calc;
 
 import android.util.Log;
 
-import org.mariuszgromada.math.mxparser.Expression;
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.digits.DigitSource;
+import com.practice.lcn.calc.digits.QuotientDigits;
+import com.practice.lcn.calc.digits.StringDigits;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.exception.MatrixException;
+import com.practice.lcn.calc.expr.CompiledEqt;
+import com.practice.lcn.calc.expr.ComplexEvaluator;
+import com.practice.lcn.calc.expr.EqtCost;
+import com.practice.lcn.calc.expr.EqtParser;
+import com.practice.lcn.calc.expr.EqtProgram;
+import com.practice.lcn.calc.expr.ExactEvaluator;
+import com.practice.lcn.calc.expr.MatrixEvaluator;
+import com.practice.lcn.calc.expr.PreciseEvaluator;
+import com.practice.lcn.calc.expr.RootFinder;
+import com.practice.lcn.calc.matrix.Matrix;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
 
 /**
- * This class serves for equation parsing and solving by using the 3rd-party library
- * <a href="http://mathparser.org">mXparser</a>.
+ * This class serves for equation parsing and solving. Every mode reads the equation by the grammar
+ * of {@link EqtParser}: a sign applies to the whole power, so <code>-2^(2)</code> is -4, and the
+ * factorial, nCr and nPr are only defined on non-negative integers, so <code>1.5!</code> is NaN.
+ * An integer result too large for a double is given with all of its digits.
  * @author lcn
  */
 public class EqtSolver {
@@ -30,6 +51,9 @@ public class EqtSolver {
      *     <li>{@link #RESULT_SYN_ERR Syntax Error}</li>
      *     <li>{@link #RESULT_POS_INFTY positive infinity}</li>
      *     <li>{@link #RESULT_NEG_INFTY negative infinity}</li>
+     *     <li>{@link #RESULT_NO_ROOT no solution}</li>
+     *     <li>{@link #RESULT_TOO_COMPLEX too complex}</li>
+     *     <li>{@link #RESULT_MATRIX_ERR matrix error}</li>
      * </ul>
      * If no error occurred, it will be <code>null</code>.
      */
@@ -52,6 +76,51 @@ public class EqtSolver {
      * shown in the {@link MainActivity#result result display} when the computation result is {@link Double#NEGATIVE_INFINITY}.
      */
     public static final String RESULT_NEG_INFTY = "-Infinity";
+    /**
+     * shown in the {@link MainActivity#result result display} when the solve mode cannot find a
+     * value of {@link Symbol#SYM_X x} satisfying the equation.
+     */
+    public static final String RESULT_NO_ROOT = "No Solution";
+    /**
+     * shown in the {@link MainActivity#result result display} when the equation is over the
+     * evaluation budget, e.g. nested too deeply. See {@link EqtCost}.
+     */
+    public static final String RESULT_TOO_COMPLEX = "Too Complex";
+    /**
+     * shown in the {@link MainActivity#result result display} when a matrix operation is undefined
+     * for its operands, such as adding matrices of different sizes.
+     */
+    public static final String RESULT_MATRIX_ERR = "Matrix Error";
+    /**
+     * prefixed to a result of the arbitrary-precision mode that only has the precision of a
+     * double, because the equation contains a function without a precise evaluation. See
+     * {@link #evaluatePrecise(String, String, double[], int)}.
+     */
+    public static final String APPROX_MARKER = "\u2248";
+
+    /**
+     * values of the stored variables when the caller keeps none. It is never written.
+     */
+    private static final double[] NO_VARIABLES = new double[EqtProgram.ENV_SIZE];
+    /**
+     * equation compiled by the latest {@link #compileCached(String)}. The
+     * variables are only bound when evaluating, so pressing "=" again after storing a variable
+     * reuses the program instead of parsing the equation again.
+     */
+    private static volatile CompiledEntry lastCompiled;
+
+    /**
+     * an equation with its compiled program
+     */
+    private static final class CompiledEntry {
+        final String eqt;
+        final EqtProgram program;
+
+        CompiledEntry(String eqt, EqtProgram program) {
+            this.eqt = eqt;
+            this.program = program;
+        }
+    }
 
     /**
      * create a new equation solver
@@ -71,7 +140,7 @@ public class EqtSolver {
      * @param eqt equation
      * @return new string that has the cursor removed
      */
-    public String removeCursor(String eqt) {
+    public static String removeCursor(String eqt) {
         StringBuffer sb = new StringBuffer(eqt);
         int cursorPos = sb.indexOf(MainActivity.CURSOR);
         if (cursorPos != -1)
@@ -80,11 +149,12 @@ public class EqtSolver {
     }
 
     /**
-     * check if there is any syntax error in the equation
+     * check if there is any syntax error in the equation. An undefined symbol also counts as a
+     * syntax error.
      * @param eqt equation equation to check
      * @return true if so; otherwsie false.
      */
-    public boolean hasSyntaxError(final String eqt) {
+    public static boolean hasSyntaxError(final String eqt) {
         StringBuffer sb = new StringBuffer(eqt);
         sb.replace(0, sb.length(), removeCursor(sb.toString()));
         while (true) {
@@ -102,7 +172,6 @@ public class EqtSolver {
                 sb.replace(0, sb.length(), removeCursor(sb.toString()));
             }
             catch (RuntimeException e) {
-                Log.e(MainActivity.TAG, Log.getStackTraceString(e));
                 return true;
             }
         }
@@ -115,36 +184,620 @@ public class EqtSolver {
      *         {@link MainActivity#result result display} without the need to cast afterwards.
      */
     public String solve() {
-        StringBuffer sb = new StringBuffer(this.eqt);
-        sb.replace(0, sb.length(), removeCursor(this.eqt));
-        if (hasSyntaxError(sb.toString())) {
-            this.err = EqtSolver.RESULT_SYN_ERR;
-            return this.err;
-        }
-        if (this.prevResult.matches("^-\\d+(\\.\\d+)?(E-?\\d+)?$"))
-            this.prevResult = "(" + this.prevResult + ")";
-        sb.replace(0, sb.length(), sb.toString().replace(Symbol.SYM_ANS.getRepr(), this.prevResult));
-        sb = new StringBuffer(Symbol.toExpr(sb.toString()));
-        Log.i(MainActivity.TAG, "transformed eqt: " + sb.toString());
-        Expression expr = new Expression(sb.toString());
-
-        if (!expr.checkSyntax()) {
-            this.err = EqtSolver.RESULT_SYN_ERR;
-            return this.err;
-        }
-        double result = expr.calculate();
-        if (Double.isNaN(result)) {
-            this.err = EqtSolver.RESULT_NAN;
-            return this.err;
-        }
-        else if (result == Double.POSITIVE_INFINITY) {
-            this.err = EqtSolver.RESULT_POS_INFTY;
-            return this.err;
-        }
-        else if (result == Double.NEGATIVE_INFINITY) {
-            this.err = EqtSolver.RESULT_NEG_INFTY;
-            return this.err;
+        String result = EqtSolver.evaluate(this.eqt, this.prevResult);
+        Log.i(MainActivity.TAG, String.format("solve(\"%s\", \"%s\") = %s", this.eqt, this.prevResult, result));
+        if (EqtSolver.hadErr(result))
+            this.err = result;
+        return result;
+    }
+
+    /**
+     * solve the equation without keeping any state. It does not touch any Android API, so it can
+     * also be called outside the app, e.g. by {@link com.practice.lcn.calc.cli.BatchEvaluator}, and
+     * from several threads at the same time.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors.
+     * @see #solve()
+     */
+    public static String evaluate(String eqt, String prevResult) {
+        return EqtSolver.evaluate(eqt, prevResult, EqtSolver.NO_VARIABLES);
+    }
+
+    /**
+     * solve the equation without keeping any state, reading the
+     * {@link Symbol#isVariable(Symbol) variables} from an environment
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by {@link EqtProgram#slotOf(Symbol) slot}.
+     *                  It is not modified.
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors.
+     */
+    public static String evaluate(String eqt, String prevResult, double[] variables) {
+        return EqtSolver.evaluate(eqt, prevResult, variables, null);
+    }
+
+    /**
+     * solve the equation like {@link #evaluate(String, String, double[])} with a compiled form kept
+     * by the caller, e.g. in a cache of recent equations
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot, or null if there are none. It is
+     *                  not modified.
+     * @param compiled the equation compiled by {@link CompiledEqt#compile(String)}, or null to
+     *                 compile it here. It is not used by a matrix equation.
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors. A
+     *         {@link #isMatrixEqt(String, String) matrix equation} is solved by
+     *         {@link #evaluateMatrix(String, String, double[])} like in the app.
+     */
+    public static String evaluate(String eqt, String prevResult, double[] variables, CompiledEqt compiled) {
+        return EqtSolver.evaluate(eqt, prevResult, variables, compiled, CancellationToken.NONE);
+    }
+
+    /**
+     * solve the equation like {@link #evaluate(String, String, double[], CompiledEqt)}, giving up
+     * an exact evaluation once the token is cancelled
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot, or null if there are none
+     * @param compiled the equation compiled by {@link CompiledEqt#compile(String)}, or null
+     * @param token cancellation token
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors.
+     *         {@link #RESULT_TOO_COMPLEX} if the token is cancelled.
+     */
+    public static String evaluate(String eqt, String prevResult, double[] variables, CompiledEqt compiled, CancellationToken token) {
+        String src = removeCursor(eqt);
+        if (EqtSolver.isMatrixEqt(src, prevResult))
+            return EqtSolver.evaluateMatrix(src, prevResult, variables != null ? variables : EqtSolver.NO_VARIABLES);
+        EqtProgram program;
+        try {
+            program = compiled != null ? compiled.getProgram() : EqtSolver.compileCached(src);
+        }
+        catch (EqtTooComplexException e) {
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (RuntimeException e) {
+            return EqtSolver.RESULT_SYN_ERR;
+        }
+        if (program == null)
+            return compiled.isTooComplex() ? EqtSolver.RESULT_TOO_COMPLEX : EqtSolver.RESULT_SYN_ERR;
+        // "=" only makes sense in the solve mode, and x is only bound by the table, graph and solve modes
+        if (src.contains(Symbol.SYM_EQ.getRepr()) || hasSyntaxError(src) || program.uses(EqtProgram.SLOT_X))
+            return EqtSolver.RESULT_SYN_ERR;
+        double[] env = EqtSolver.toEnv(prevResult, variables);
+        // reject a result too large to carry before the exact evaluation starts on it
+        if (EqtCost.of(program, EqtSolver.magnitudesOf(env, prevResult)).isTooComplex())
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        String exact = EqtSolver.evaluateExact(src, prevResult, variables, token);
+        if (exact != null)
+            return exact;
+        return EqtSolver.toResult(program.evaluate(env, new double[Math.max(1, program.getMaxStack())]));
+    }
+
+    /**
+     * compile the equation into an {@link EqtProgram}, which calls the
+     * {@link com.practice.lcn.calc.expr.Functions functions} directly and reads the variables from
+     * the environment. Every equation goes through it, so a function or a stored variable never
+     * changes how the rest of the equation is read. The program of the latest equation is reused.
+     * @param eqt equation without the cursor
+     * @return compiled program
+     * @throws RuntimeException as {@link EqtParser#compile(String)}
+     */
+    private static EqtProgram compileCached(String eqt) {
+        CompiledEntry entry = EqtSolver.lastCompiled;
+        if (entry != null && entry.eqt.equals(eqt))
+            return entry.program;
+        EqtProgram program = EqtParser.compile(eqt);
+        EqtSolver.lastCompiled = new CompiledEntry(eqt, program);
+        return program;
+    }
+
+    /**
+     * @param env environment given by {@link #toEnv(String, double[])}
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It is read with all of
+     *                   its digits, as it can be an exact result too large for a double.
+     * @return <code>log<sub>10</sub></code> of the absolute value of every variable, as read by
+     *         {@link EqtCost#of(EqtProgram, double[])}
+     */
+    private static double[] magnitudesOf(double[] env, String prevResult) {
+        double[] magnitudes = new double[env.length];
+        for (int i = 0; i < env.length; i++)
+            magnitudes[i] = Math.log10(Math.abs(env[i]));
+        if (Double.isInfinite(env[EqtProgram.SLOT_ANS])) {
+            try {
+                BigDecimal ans = new BigDecimal(prevResult);
+                magnitudes[EqtProgram.SLOT_ANS] = ans.precision() - ans.scale();
+            }
+            catch (NumberFormatException e) {
+                // an infinite result stays unbounded
+            }
+        }
+        return magnitudes;
+    }
+
+    /**
+     * bind the variables of an evaluation
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It is bound to 0 if it
+     *                   is not a real number.
+     * @param variables values of the stored variables indexed by slot, or null if there are none
+     * @return a new environment of at least {@link EqtProgram#ENV_SIZE} elements
+     */
+    public static double[] toEnv(String prevResult, double[] variables) {
+        double[] env = new double[EqtProgram.ENV_SIZE];
+        if (variables != null)
+            System.arraycopy(variables, 0, env, 0, Math.min(variables.length, env.length));
+        try {
+            env[EqtProgram.SLOT_ANS] = Double.parseDouble(prevResult);
+        }
+        catch (RuntimeException e) {
+            // e.g. an error message, a complex or a matrix result, or no result at all
+            env[EqtProgram.SLOT_ANS] = 0;
+        }
+        return env;
+    }
+
+    /**
+     * find where an equation ending with {@link Symbol#SYM_STORE "&rarr;"} stores its value
+     * @param eqt equation without the cursor
+     * @return slot of the variable after the last "&rarr;", or {@link EqtProgram#NO_SLOT} if the
+     *         equation does not end with a store
+     */
+    public static int storeTargetOf(String eqt) {
+        int i = eqt.lastIndexOf(Symbol.SYM_STORE.getRepr());
+        if (i == -1)
+            return EqtProgram.NO_SLOT;
+        String name = eqt.substring(i + Symbol.SYM_STORE.getRepr().length());
+        for (Symbol sym : Symbol.values()) {
+            if (Symbol.isVariable(sym) && sym.getRepr().equals(name))
+                return EqtProgram.slotOf(sym);
+        }
+        return EqtProgram.NO_SLOT;
+    }
+
+    /**
+     * solve the equation the way the "=" key does: a matrix equation over the matrices, an integer
+     * equation {@link #evaluateExact(String, String, double[]) exactly} if its value outgrows a double, and
+     * any other equation over the complex numbers in the complex mode or by
+     * {@link #evaluate(String, String, double[])} otherwise. It does not touch any Android API either.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. See
+     *                   {@link #toAns(String, boolean)}.
+     * @param complexMode true if the calculator is in the complex mode
+     * @param variables values of the {@link Symbol#isVariable(Symbol) variables} indexed by
+     *                  {@link EqtProgram#slotOf(Symbol) slot}. An equation ending with
+     *                  {@link Symbol#SYM_STORE "&rarr;"} and a variable stores its value into it.
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors. A
+     *         matrix cannot be stored into a variable, nor can a complex number; they give
+     *         {@link #RESULT_MATRIX_ERR} and {@link #RESULT_NAN} respectively.
+     */
+    public static String evaluateInMode(String eqt, String prevResult, boolean complexMode, double[] variables) {
+        return EqtSolver.evaluateInMode(eqt, prevResult, complexMode, variables, CancellationToken.NONE);
+    }
+
+    /**
+     * solve the equation like {@link #evaluateInMode(String, String, boolean, double[])}, giving
+     * up an exact evaluation once the token is cancelled
+     * @param eqt equation in the equation display form
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param complexMode true if the calculator is in the complex mode
+     * @param variables values of the variables indexed by slot. A stored value is written into it.
+     * @param token cancellation token
+     * @return computation result in string form, or one of the <code>RESULT_*</code> errors.
+     *         {@link #RESULT_TOO_COMPLEX} if the token is cancelled.
+     */
+    public static String evaluateInMode(String eqt, String prevResult, boolean complexMode, double[] variables, CancellationToken token) {
+        String src = removeCursor(eqt);
+        int target = EqtSolver.storeTargetOf(src);
+        if (target == EqtProgram.NO_SLOT)
+            return EqtSolver.evaluateValue(src, prevResult, complexMode, variables, token);
+        String result = EqtSolver.evaluateValue(src.substring(0, src.lastIndexOf(Symbol.SYM_STORE.getRepr())), prevResult, complexMode, variables, token);
+        if (EqtSolver.hadErr(result))
+            return result;
+        if (result.startsWith(Symbol.SYM_LEFT_BRACKET.getRepr()))
+            return EqtSolver.RESULT_MATRIX_ERR;
+        try {
+            variables[target] = Double.parseDouble(result);
+        }
+        catch (NumberFormatException e) {
+            return EqtSolver.RESULT_NAN;
+        }
+        return result;
+    }
+
+    /**
+     * @see #evaluateInMode(String, String, boolean, double[], CancellationToken)
+     */
+    private static String evaluateValue(String eqt, String prevResult, boolean complexMode, double[] variables, CancellationToken token) {
+        // the real mode checks for a matrix equation itself
+        if (!complexMode)
+            return EqtSolver.evaluate(eqt, prevResult, variables, null, token);
+        if (EqtSolver.isMatrixEqt(eqt, prevResult))
+            return EqtSolver.evaluateMatrix(eqt, prevResult, variables);
+        String exact = EqtSolver.evaluateExact(eqt, prevResult, variables, token);
+        if (exact != null)
+            return exact;
+        return EqtSolver.evaluateComplex(eqt, prevResult, variables);
+    }
+
+    /**
+     * @param result result shown in the {@link MainActivity#result result display}
+     * @param complexMode true if the calculator is in the complex mode
+     * @return the value that {@link Symbol#SYM_ANS Ans} refers to: the result itself, or 0 if it
+     *         is an error or a complex result outside the complex mode.
+     */
+    public static String toAns(String result, boolean complexMode) {
+        if (EqtSolver.hadErr(result))
+            return "0";
+        // a complex result means nothing to the real modes
+        if (!complexMode && result.endsWith("i"))
+            return "0";
+        return result;
+    }
+
+    /**
+     * solve the equation over the complex numbers, e.g. <code>(-1)^(0.5)</code> gives
+     * <code>1.0i</code>. See {@link ComplexEvaluator}.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It can be complex.
+     * @param variables values of the variables indexed by slot. They are real.
+     * @return computation result in string form (see {@link #toComplexResult(double, double)}),
+     *         or one of the <code>RESULT_*</code> errors.
+     */
+    public static String evaluateComplex(String eqt, String prevResult, double[] variables) {
+        EqtProgram program;
+        try {
+            program = EqtParser.compile(removeCursor(eqt));
         }
+        catch (EqtTooComplexException e) {
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (RuntimeException e) {
+            return EqtSolver.RESULT_SYN_ERR;
+        }
+        if (program.uses(EqtProgram.SLOT_X))
+            return EqtSolver.RESULT_SYN_ERR;
+        double[] envRe = EqtSolver.toEnv(prevResult, variables);
+        double[] envIm = new double[EqtProgram.ENV_SIZE];
+        double[] ans = parseComplex(prevResult);
+        if (ans != null) {
+            envRe[EqtProgram.SLOT_ANS] = ans[0];
+            envIm[EqtProgram.SLOT_ANS] = ans[1];
+        }
+        double[] out = new double[2];
+        new ComplexEvaluator(program).evaluate(envRe, envIm, out);
+        return EqtSolver.toComplexResult(out[0], out[1]);
+    }
+
+    /**
+     * convert a complex computation result to the string shown in the
+     * {@link MainActivity#result result display}, such as <code>1.0+2.0i</code>. A result without
+     * imaginary part is shown as in {@link #toResult(double)}.
+     * @param re real part
+     * @param im imaginary part
+     * @return the result in string form, or {@link #RESULT_NAN} / {@link #RESULT_POS_INFTY} if it
+     *         is not finite.
+     */
+    public static String toComplexResult(double re, double im) {
+        if (im == 0)
+            return EqtSolver.toResult(re);
+        if (Double.isNaN(re) || Double.isNaN(im))
+            return EqtSolver.RESULT_NAN;
+        if (Double.isInfinite(re) || Double.isInfinite(im))
+            return EqtSolver.RESULT_POS_INFTY;
+        String imPart = (im < 0 ? "-" : "+") + Math.abs(im) + "i";
+        if (re == 0)
+            return im < 0 ? imPart : imPart.substring(1);
+        return re + imPart;
+    }
+
+    /**
+     * parse a result given by {@link #toComplexResult(double, double)}
+     * @param result result in string form
+     * @return a 2-element tuple of the real part and the imaginary part, or null if it is not a
+     *         number
+     */
+    public static double[] parseComplex(String result) {
+        try {
+            if (!result.endsWith("i"))
+                return new double[] { Double.parseDouble(result), 0 };
+            // the sign between the parts is the last one not belonging to an exponent
+            int split = 0;
+            for (int i = result.length() - 2; i > 0; i--) {
+                char c = result.charAt(i);
+                if ((c == '+' || c == '-') && result.charAt(i - 1) != 'E') {
+                    split = i;
+                    break;
+                }
+            }
+            double re = split == 0 ? 0 : Double.parseDouble(result.substring(0, split));
+            double im = Double.parseDouble(result.substring(split, result.length() - 1));
+            return new double[] { re, im };
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * solve an integer equation exactly if its result has more digits than a double can hold,
+     * e.g. <code>10000!</code>. See {@link ExactEvaluator}. It is only tried for equations with a
+     * factorial, nCr or nPr, or referring to such a large result through {@link Symbol#SYM_ANS Ans}.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It is only read exactly
+     *                   if it is printed without an exponent.
+     * @param variables values of the variables indexed by slot, or null if there are none
+     * @return every digit of the result, or null if the equation is left to the floating-point
+     *         evaluation, such as a non-integer or small result
+     */
+    public static String evaluateExact(String eqt, String prevResult, double[] variables) {
+        return EqtSolver.evaluateExact(eqt, prevResult, variables, CancellationToken.NONE);
+    }
+
+    /**
+     * solve an integer equation exactly like {@link #evaluateExact(String, String, double[])},
+     * checking the token before every operation
+     * @param eqt equation in the equation display form
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot, or null if there are none
+     * @param token cancellation token
+     * @return every digit of the result, {@link #RESULT_TOO_COMPLEX} if the token is cancelled, or
+     *         null if the equation is left to the floating-point evaluation
+     */
+    public static String evaluateExact(String eqt, String prevResult, double[] variables, CancellationToken token) {
+        BigInteger ans = null;
+        try {
+            // a double is printed with an exponent from 10^7 on, where its digits are rounded, while
+            // an exact result is printed with every digit
+            if (prevResult.indexOf('E') < 0 && prevResult.indexOf('e') < 0)
+                ans = new BigDecimal(prevResult).toBigIntegerExact();
+        }
+        catch (NumberFormatException e) {
+            // e.g. an error message
+        }
+        catch (ArithmeticException e) {
+            // not an integer
+        }
+        boolean largeAns = ans != null && ans.bitLength() > 53 && eqt.contains(Symbol.SYM_ANS.getRepr());
+        if (!largeAns && !ExactEvaluator.hasCombinatorics(eqt))
+            return null;
+        BigInteger value;
+        try {
+            value = ExactEvaluator.evaluate(eqt, ans, variables, token);
+        }
+        catch (EqtTooComplexException e) {
+            // the floating-point evaluation is not worth starting once the token is cancelled
+            return token.isCancelled() ? EqtSolver.RESULT_TOO_COMPLEX : null;
+        }
+        catch (RuntimeException e) {
+            // the floating-point evaluation reports the error
+            return null;
+        }
+        // a double holds every integer up to 2^53 exactly
+        if (value == null || value.bitLength() <= 53)
+            return null;
+        return value.toString();
+    }
+
+    /**
+     * solve the equation to a chosen amount of significant digits, e.g. &pi; to a thousand digits.
+     * See {@link PreciseEvaluator}.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It is read with all of its
+     *                   digits, and bound to 0 if it is not a real number.
+     * @param variables values of the variables indexed by slot
+     * @param digits amount of significant digits, at most {@link com.practice.lcn.calc.bignum.BigMath#MAX_DIGITS}
+     * @return the result in the form of {@link #toResult(double)}, with an exponent such as
+     *         <code>E-20</code> only if the result has leading or trailing zeros beyond the digits,
+     *         or one of the <code>RESULT_*</code> errors. An equation with a trigonometric function
+     *         is solved by {@link #evaluate(String, String, double[])} instead, and its result is
+     *         prefixed with {@link #APPROX_MARKER}. An undefined value such as <code>1/0</code> is
+     *         reported like by {@link #evaluate(String, String, double[])}, i.e. as
+     *         {@link #RESULT_POS_INFTY} or {@link #RESULT_NEG_INFTY} if it diverges, and as
+     *         {@link #RESULT_NAN} otherwise.
+     */
+    public static String evaluatePrecise(String eqt, String prevResult, double[] variables, int digits) {
+        return EqtSolver.evaluatePrecise(eqt, prevResult, variables, digits, CancellationToken.NONE);
+    }
+
+    /**
+     * solve the equation like {@link #evaluatePrecise(String, String, double[], int)}, giving up
+     * once the token is cancelled
+     * @param eqt equation in the equation display form
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot
+     * @param digits amount of significant digits, at most {@link com.practice.lcn.calc.bignum.BigMath#MAX_DIGITS}
+     * @param token cancellation token
+     * @return the result, or {@link #RESULT_TOO_COMPLEX} if the token is cancelled
+     */
+    public static String evaluatePrecise(String eqt, String prevResult, double[] variables, int digits, CancellationToken token) {
+        if (PreciseEvaluator.hasTrigonometry(eqt)) {
+            String result = EqtSolver.evaluate(eqt, prevResult, variables);
+            return EqtSolver.hadErr(result) ? result : EqtSolver.APPROX_MARKER + result;
+        }
+        BigDecimal value;
+        try {
+            value = PreciseEvaluator.evaluate(eqt, EqtSolver.preciseAns(prevResult), EqtSolver.toEnv(prevResult, variables), digits, token);
+        }
+        catch (EqtTooComplexException e) {
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (ArithmeticException e) {
+            // a division by zero or a logarithm of zero is an infinity on the floating-point path
+            String result = EqtSolver.evaluate(eqt, prevResult, variables, null, token);
+            if (result.equals(EqtSolver.RESULT_POS_INFTY) || result.equals(EqtSolver.RESULT_NEG_INFTY))
+                return result;
+            return EqtSolver.RESULT_NAN;
+        }
+        catch (RuntimeException e) {
+            return EqtSolver.RESULT_SYN_ERR;
+        }
+        if (value.signum() == 0)
+            return "0";
+        value = value.stripTrailingZeros();
+        // power of ten of the leading digit
+        long exponent = (long) value.precision() - value.scale() - 1;
+        if (exponent >= -4 && exponent < digits)
+            return value.toPlainString();
+        String mantissa = value.unscaledValue().abs().toString();
+        return (value.signum() < 0 ? "-" : "") + mantissa.charAt(0) + "." + (mantissa.length() > 1 ? mantissa.substring(1) : "0") + "E" + exponent;
+    }
+
+    /**
+     * solve the equation like {@link #evaluatePrecise(String, String, double[], int)}, but expand a
+     * rational result such as <code>1/7</code> exactly by long division, so that its digits are
+     * only generated as they are scrolled to. See {@link QuotientDigits}.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot
+     * @param digits amount of significant digits, at most {@link com.practice.lcn.calc.bignum.BigMath#MAX_DIGITS}
+     * @return digits of the result. A rational result is truncated after the significant digits
+     *         instead of rounded, or ends earlier if its expansion terminates.
+     */
+    public static DigitSource evaluatePreciseDigits(String eqt, String prevResult, double[] variables, int digits) {
+        return EqtSolver.evaluatePreciseDigits(eqt, prevResult, variables, digits, CancellationToken.NONE);
+    }
+
+    /**
+     * solve the equation like {@link #evaluatePreciseDigits(String, String, double[], int)},
+     * giving up once the token is cancelled
+     * @param eqt equation in the equation display form
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @param variables values of the variables indexed by slot
+     * @param digits amount of significant digits, at most {@link com.practice.lcn.calc.bignum.BigMath#MAX_DIGITS}
+     * @param token cancellation token
+     * @return digits of the result, or of {@link #RESULT_TOO_COMPLEX} if the token is cancelled
+     */
+    public static DigitSource evaluatePreciseDigits(String eqt, String prevResult, double[] variables, int digits, CancellationToken token) {
+        String result = EqtSolver.evaluatePrecise(eqt, prevResult, variables, digits, token);
+        if (EqtSolver.hadErr(result))
+            return new StringDigits(result);
+        BigInteger[] fraction;
+        try {
+            fraction = ExactEvaluator.evaluateFraction(eqt, EqtSolver.preciseAns(prevResult), EqtSolver.toEnv(prevResult, variables), token);
+        }
+        catch (RuntimeException e) {
+            fraction = null;
+        }
+        if (fraction == null || fraction[1].equals(BigInteger.ONE))
+            return new StringDigits(result);
+        // power of ten of the leading digit, which is all the rounding can change
+        BigDecimal approx = new BigDecimal(fraction[0]).divide(new BigDecimal(fraction[1]), MathContext.DECIMAL64);
+        long exponent = (long) approx.precision() - approx.scale() - 1;
+        return new QuotientDigits(fraction[0], fraction[1], Math.max(0, digits - 1 - exponent));
+    }
+
+    /**
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @return the result with all of its digits, or 0 if it is not a real number
+     */
+    private static BigDecimal preciseAns(String prevResult) {
+        try {
+            return new BigDecimal(prevResult);
+        }
+        catch (NumberFormatException e) {
+            return BigDecimal.ZERO;
+        }
+    }
+
+    /**
+     * @param eqt equation in the equation display form
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to
+     * @return true if the equation has to be solved by {@link #evaluateMatrix(String, String, double[])},
+     *         i.e. it contains a matrix literal or function, or refers to a matrix result
+     */
+    public static boolean isMatrixEqt(String eqt, String prevResult) {
+        return MatrixEvaluator.hasMatrixSymbol(eqt) || (prevResult.startsWith(Symbol.SYM_LEFT_BRACKET.getRepr()) && eqt.contains(Symbol.SYM_ANS.getRepr()));
+    }
+
+    /**
+     * solve an equation whose values are matrices, e.g. <code>[1,2;3,4]^(-1)</code>. See
+     * {@link MatrixEvaluator}.
+     * @param eqt equation in the equation display form. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param prevResult result that {@link Symbol#SYM_ANS Ans} refers to. It can be a matrix.
+     * @param variables values of the variables indexed by slot
+     * @return the matrix in the form of a matrix literal such as <code>[1.0,2.0;3.0,4.0]</code>, a
+     *         number if the result is 1&times;1, or one of the <code>RESULT_*</code> errors.
+     */
+    public static String evaluateMatrix(String eqt, String prevResult, double[] variables) {
+        Matrix ans = Matrix.parse(prevResult);
+        if (ans == null) {
+            try {
+                ans = Matrix.scalar(Double.parseDouble(prevResult));
+            }
+            catch (NumberFormatException e) {
+                ans = Matrix.scalar(0);
+            }
+        }
+        Matrix value;
+        try {
+            value = MatrixEvaluator.evaluate(eqt, ans, variables);
+        }
+        catch (EqtTooComplexException e) {
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (MatrixException e) {
+            return EqtSolver.RESULT_MATRIX_ERR;
+        }
+        catch (RuntimeException e) {
+            return EqtSolver.RESULT_SYN_ERR;
+        }
+        if (value.isScalar())
+            return EqtSolver.toResult(value.get(0, 0));
+        if (!value.isFinite())
+            return EqtSolver.RESULT_NAN;
+        return value.toString();
+    }
+
+    /**
+     * solve the equation for {@link Symbol#SYM_X x}. See {@link RootFinder} for the algorithm.
+     * @param eqt equation that currently appears in the {@link MainActivity#eqt equation display}.
+     *            It is either <code>lhs = rhs</code> or an expression whose root is wanted.
+     * @param prevResult result that currently appears in the {@link MainActivity#result result display}.
+     *                   It is both the value of {@link Symbol#SYM_ANS Ans} and the initial guess.
+     * @param variables values of the variables indexed by slot
+     * @return the solution in string form, or {@link #RESULT_SYN_ERR} / {@link #RESULT_NO_ROOT}
+     */
+    public static String solveForX(String eqt, String prevResult, double[] variables) {
+        EqtProgram program;
+        try {
+            program = EqtParser.compileRelation(eqt);
+        }
+        catch (EqtTooComplexException e) {
+            return EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (RuntimeException e) {
+            return EqtSolver.RESULT_SYN_ERR;
+        }
+        double[] env = EqtSolver.toEnv(prevResult, variables);
+        double root = new RootFinder(program, env).solve(env[EqtProgram.SLOT_ANS]);
+        if (Double.isNaN(root))
+            return EqtSolver.RESULT_NO_ROOT;
+        return EqtSolver.toResult(root);
+    }
+
+    /**
+     * convert a computation result to the string shown in the {@link MainActivity#result result display}.
+     * @param result computation result
+     * @return {@link #RESULT_NAN}, {@link #RESULT_POS_INFTY} or {@link #RESULT_NEG_INFTY} if the
+     *         result is not finite; otherwise the result in string form.
+     */
+    public static String toResult(double result) {
+        if (Double.isNaN(result))
+            return EqtSolver.RESULT_NAN;
+        else if (result == Double.POSITIVE_INFINITY)
+            return EqtSolver.RESULT_POS_INFTY;
+        else if (result == Double.NEGATIVE_INFINITY)
+            return EqtSolver.RESULT_NEG_INFTY;
         return "" + result;
     }
 
@@ -173,6 +826,6 @@ public class EqtSolver {
      * @return true if so; otherwie false.
      */
     public static boolean hadErr(String prevResult) {
-        return prevResult.equals(EqtSolver.RESULT_SYN_ERR) || prevResult.equals(EqtSolver.RESULT_NAN) || prevResult.equals(EqtSolver.RESULT_POS_INFTY) || prevResult.equals(EqtSolver.RESULT_NEG_INFTY);
+        return prevResult.equals(EqtSolver.RESULT_SYN_ERR) || prevResult.equals(EqtSolver.RESULT_NAN) || prevResult.equals(EqtSolver.RESULT_POS_INFTY) || prevResult.equals(EqtSolver.RESULT_NEG_INFTY) || prevResult.equals(EqtSolver.RESULT_NO_ROOT) || prevResult.equals(EqtSolver.RESULT_TOO_COMPLEX) || prevResult.equals(EqtSolver.RESULT_MATRIX_ERR);
     }
 }
@@ -1,25 +1,26 @@
 package com.practice.lcn.calc;
 
-import android.graphics.Paint;
-import android.text.Editable;
-import android.text.TextWatcher;
 import android.util.Log;
 
+import com.practice.lcn.calc.expr.EqtParser;
+
 /**
  * It keeps track of the user's action, transforms the equation accordingly and renders
  * the "relative" equation to deal with the equation text overflow problem. See {@link #newText} for
- * all possible actions that the user can perform.
+ * all possible actions that the user can perform. The visible window is drawn by the
+ * {@link EquationView equation display}, which also measures the equation.
+ * <p>
+ * The equation is kept in an {@link EqtBuffer} along with its {@link EqtTokens tokens}, so an edit
+ * at the cursor never rescans the equation for the cursor or the symbols next to it. A single
+ * symbol edit by {@link #perform(String, Symbol)} allocates nothing once the buffer is warm.
+ * </p>
  * @author lcn
  */
-public class EqtTextWatcher implements TextWatcher {
+public class EqtTextWatcher {
     /**
      * main application instance
      */
     private MainActivity mainActivity;
-    /**
-     * equation before modification
-     */
-    private String oldText;
     /**
      * command from user
      * <ul>
@@ -32,25 +33,14 @@ public class EqtTextWatcher implements TextWatcher {
      */
     private String newText;
     /**
-     * full equation
-     */
-    private String eqt;
-    /**
-     * a 2-element tuple recording the view range in the {@link #eqt equation}. It is used for
-     * dealing with the equation text overflow problem. THe first element records the starting index
-     * of the {@link #eqt equation}; The second element records the ending index.
+     * full equation including the cursor, edited in place by every command
      */
-    private int[] window;
+    private final EqtBuffer eqt;
     /**
-     * recording whether error has occurred during equation display transformation. If so, it will
-     * rethrow the exception to the caller and abort the transformation process.
+     * view range in the {@link #eqt equation}. It is used for dealing with the equation text
+     * overflow problem.
      */
-    private boolean errOccurred;
-    /**
-     * indicate whether it starts modifying the equation. It is used for dealing with the infinite
-     * loop problem in TextWatcher while replacing a new text in {@link #afterTextChanged(Editable)}.
-     */
-    private boolean modified;
+    private final EqtWindow window;
 
     /**
      * operation that the user tries to insert a symbol after the cursor
@@ -99,6 +89,8 @@ public class EqtTextWatcher implements TextWatcher {
      */
     public EqtTextWatcher(MainActivity mainActivity) {
         this.mainActivity = mainActivity;
+        this.eqt = new EqtBuffer();
+        this.window = new EqtWindow(mainActivity.eqt.getMeasurer(), MainActivity.DEVICE_WIDTH);
         this.reset();
     }
 
@@ -106,12 +98,33 @@ public class EqtTextWatcher implements TextWatcher {
      * reset this watcher to default settings
      */
     public void reset() {
-        this.oldText = null;
         this.newText = null;
-        this.eqt = MainActivity.CURSOR;
-        this.window = new int[] { 0, 0 };
-        this.errOccurred = false;
-        this.modified = false;
+        this.eqt.clear();
+        this.window.reset();
+    }
+
+    /**
+     * restore the equation and the window from a {@link EqtSnapshot snapshot}. The caller then
+     * renders it by {@link #perform(String) setting} the same equation, which keeps the window as
+     * long as the cursor is inside it.
+     * @param eqt full equation including the {@link MainActivity#CURSOR cursor}
+     * @param window window bounds saved along with the equation. If it is null or out of range,
+     *               the window is probed again starting at the cursor.
+     * @throws com.practice.lcn.calc.exception.CursorMissingException if the cursor is missing
+     * @throws com.practice.lcn.calc.exception.SymbolUndefinedException if the equation contains an
+     *         undefined symbol
+     */
+    public void restore(String eqt, int[] window) {
+        this.reset();
+        this.eqt.set(eqt);
+        this.window.restore(this.eqt.getChars(), this.eqt.length(), this.eqt.getCursorPos(), window);
+    }
+
+    /**
+     * @return a 2-element tuple of the first and last index of the {@link #window} (inclusive)
+     */
+    public int[] getWindow() {
+        return new int[] { this.window.getStart(), this.window.getEnd() };
     }
 
     /**
@@ -164,159 +177,97 @@ public class EqtTextWatcher implements TextWatcher {
      * @return the full equation text
      */
     public String getEqt() {
-        return eqt;
+        return this.eqt.toString();
     }
 
     /**
-     * probe the {@link #window starting index of the window} so that the window will
-     * maintain showing the equation in device's screen width
+     * check the structure of the equation without parsing it. See {@link EqtTokens#isWellFormed()}.
+     * @return false if the equation surely has a syntax error; otherwise true.
      */
-    private void probeWindowStart() {
-        Paint paint = mainActivity.eqt.getPaint();
-        for (int i = this.window[1] - 1; i >= 0; i--) {
-            int eqtWidth = (int) Math.floor(paint.measureText(this.eqt.substring(i, this.window[1] + 1)));
-            if (eqtWidth > MainActivity.DEVICE_WIDTH) {
-                this.window[0] = i + 1;
-                break;
-            }
-            if (i == 0)
-                this.window[0] = 0;
-        }
+    public boolean isWellFormed() {
+        return this.eqt.isWellFormed();
     }
 
     /**
-     * probe the {@link #window ending index of the window} so that the window will
-     * maintain showing the equation in device's screen width
-     */
-    private void probeWindowEnd() {
-        Paint paint = mainActivity.eqt.getPaint();
-        for (int i = this.window[0] + 1; i < this.eqt.length(); i++) {
-            int eqtWidth = (int) Math.floor(paint.measureText(this.eqt.substring(this.window[0], i)));
-            if (eqtWidth > MainActivity.DEVICE_WIDTH) {
-                // rectify +1 in newText#replace()
-                this.window[1] = i - 2;
-                break;
-            }
-            if (i == this.eqt.length() - 1) {
-                // rectify +1 in newText#replace()
-                this.window[1] = i - 1;
-            }
-        }
-    }
-
-    /**
-     * executed before the {@link MainActivity#eqt equation} is replaced with new text
-     * @param oldText old equation text
-     * @param start unused
-     * @param beforeLen unused
-     * @param afterLen unused
-     */
-    @Override
-    public void beforeTextChanged(CharSequence oldText, int start, int beforeLen, int afterLen) {
-        Log.i(MainActivity.TAG, String.format("before(\"%s\", %d, %d, %d)", oldText, start, beforeLen, afterLen));
-        if (this.errOccurred)
-            return;
-        this.oldText = oldText.toString();
-    }
-
-    /**
-     * executed when the {@link MainActivity#eqt equation} is replaced with new text. Note that the
-     * first argument <code>newText</code> will be packed as the user's command.
-     * See {@link #newText} for more details.
+     * perform a command from the user. See {@link #newText} for all possible commands.
      * <p>
      * This function is responsible for interpreting which command the user tries to
      * perform and transforming the {@link #eqt equation} accordingly. At last, it will
-     * update the {@link #window}&apos;s position.
+     * update the {@link #window}&apos;s position and render the visible window to the
+     * {@link MainActivity#eqt equation display}.
      * </p>
-     * @param newText new equation text
-     * @param start unused
-     * @param beforeLen unused
-     * @param afterLen unused
+     * @param command command from the user, e.g. <code>insert 1</code>
+     * @throws com.practice.lcn.calc.exception.CursorMissingException if the cursor is missing
+     * @throws com.practice.lcn.calc.exception.SymbolUndefinedException if the symbol next to the cursor is not defined in {@link Symbol}
      */
-    @Override
-    public void onTextChanged(CharSequence newText, int start, int beforeLen, int afterLen) {
-        Log.i(MainActivity.TAG, String.format("on(\"%s\", %d, %d, %d)", newText, start, beforeLen, afterLen));
-        if (this.errOccurred)
-            return;
-        this.newText = newText.toString();
-        if (this.modified)
-            return;
+    public void perform(String command) {
+        Log.i(MainActivity.TAG, String.format("perform(\"%s\")", command));
+        this.newText = command;
+        int oldStart = this.window.getStart();
+        int oldEnd = this.window.getEnd();
+        int oldLength = this.eqt.length();
 
-        try {
-            if (isOpIns()) {
-                this.eqt = EqtBuilder.insertSymbol(this.eqt, this.newText.split(" ")[1]);
-            }
-            else if (isOpDel()) {
-                this.eqt = EqtBuilder.deleteSymbol(this.eqt);
-            }
-            else if (isOpLeft()) {
-                this.eqt = EqtBuilder.moveCursorLeft(this.eqt);
-            }
-            else if (isOpRight()) {
-                this.eqt = EqtBuilder.moveCursorRight(this.eqt);
-            }
-            else if (isOpSet()) {
-                this.eqt = this.newText.split(" ")[1];
-            }
+        if (isOpIns()) {
+            String symbol = this.newText.split(" ")[1];
+            for (Symbol sym : EqtParser.tokenize(symbol, new int[symbol.length() + 1]))
+                this.eqt.insert(sym);
         }
-        catch (RuntimeException e) {
-            this.errOccurred = true;
-            throw e;
-        }
-
-        Log.i(MainActivity.TAG, String.format("on: eqt = \"%s\"", this.eqt));
-        Paint paint = mainActivity.eqt.getPaint();
-        int eqtWidth = (int) Math.floor(paint.measureText(this.eqt));
-        Log.i(MainActivity.TAG, "eqt width = " + eqtWidth);
-        //Log.i(MainActivity.TAG, "device width = " + MainActivity.DEVICE_WIDTH);
-        if (eqtWidth <= MainActivity.DEVICE_WIDTH) {
-            this.window[0] = 0;
-            this.window[1] = this.eqt.length() - 1;
+        else if (isOpSet()) {
+            this.eqt.set(this.newText.split(" ")[1]);
         }
         else {
-            try {
-                int cursorAbsPos = EqtBuilder.getCursorPos(this.eqt);
-                if (cursorAbsPos < this.window[0]) {
-                    this.window[0] = cursorAbsPos;
-                    probeWindowEnd();
-                }
-                else if (cursorAbsPos > this.window[1]) {
-                    this.window[1] = cursorAbsPos;
-                    probeWindowStart();
-                }
-                else if (this.window[0] <= cursorAbsPos && cursorAbsPos <= this.window[1]) {
-                    if (this.window[1] >= this.eqt.length())
-                        this.window[1] = this.eqt.length() - 1;
-                    if (this.window[0] < 0)
-                        this.window[0] = 0;
-                }
-            }
-            catch (RuntimeException e) {
-                this.errOccurred = true;
-                throw e;
-            }
+            edit(null);
         }
-        Log.i(MainActivity.TAG, String.format("win = [%d, %d]", window[0], window[1]));
+        render(oldStart, oldEnd, oldLength);
     }
 
     /**
-     * executed after the {@link #onTextChanged(CharSequence, int, int, int) equation transformation process} is done. This function is responsible for rendering the "relative" equation to the
-     * {@link MainActivity#eqt equation display}.
-     * @param newText used for replacing with "relative" equation
+     * perform a command from the user that inserts one symbol or takes no argument, such as
+     * {@link #OP_DEL}. Unlike {@link #perform(String)}, it allocates nothing, so it is the one to
+     * use for every key press.
+     * @param op one of {@link #OP_INS}, {@link #OP_DEL}, {@link #OP_LEFT} and {@link #OP_RIGHT}
+     * @param sym symbol to insert for {@link #OP_INS}; otherwise ignored.
      */
-    @Override
-    public void afterTextChanged(Editable newText) {
-        Log.i(MainActivity.TAG, String.format("after(\"%s\"); eqt = \"%s\"; win = [%d, %d]", newText.toString(), this.eqt, this.window[0], this.window[1]));
-        if (this.modified) {
-            this.modified = false;
-            return;
-        }
-        if (this.errOccurred) {
-            this.errOccurred = false;
-            return;
-        }
+    public void perform(String op, Symbol sym) {
+        this.newText = op;
+        int oldStart = this.window.getStart();
+        int oldEnd = this.window.getEnd();
+        int oldLength = this.eqt.length();
+        edit(sym);
+        render(oldStart, oldEnd, oldLength);
+    }
 
-        this.modified = true;
-        newText.replace(0, newText.length(), this.eqt, this.window[0], this.window[1] + 1);
+    /**
+     * edit the {@link #eqt equation} by the current command
+     * @param sym symbol to insert for {@link #OP_INS}
+     */
+    private void edit(Symbol sym) {
+        if (isOpIns())
+            this.eqt.insert(sym);
+        else if (isOpDel())
+            this.eqt.delete();
+        else if (isOpLeft())
+            this.eqt.moveLeft();
+        else if (isOpRight())
+            this.eqt.moveRight();
+    }
+
+    /**
+     * update the {@link #window} after an edit and show it in the
+     * {@link MainActivity#eqt equation display}
+     * @param oldStart first index of the window before the edit
+     * @param oldEnd last index of the window before the edit
+     * @param oldLength length of the equation before the edit
+     */
+    private void render(int oldStart, int oldEnd, int oldLength) {
+        EquationView view = this.mainActivity.eqt;
+        int length = this.eqt.length();
+        this.window.follow(this.eqt.getChars(), length, this.eqt.getCursorPos());
+        int start = this.window.getStart();
+        int end = this.window.getEnd();
+        if ((isOpLeft() || isOpRight()) && length == oldLength && start == oldStart && end == oldEnd)
+            view.moveCursor(this.eqt.getChars(), this.eqt.getCursorPos());
+        else
+            view.show(this.eqt.getChars(), length, start, end, this.eqt.getCursorPos());
     }
 }
@@ -0,0 +1,396 @@
+package com.practice.lcn.calc;
+
+import com.practice.lcn.calc.exception.SymbolUndefinedException;
+import com.practice.lcn.calc.expr.EqtParser;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the tokens of the equation along with the equation text, so that an edit at the
+ * cursor only re-tokenizes the inserted symbols instead of rescanning the whole equation.
+ * <p>
+ * The tokens live in a gap buffer whose gap is the {@link MainActivity#CURSOR cursor}: the tokens
+ * before the cursor fill the front of the arrays and the tokens after it fill the back. Inserting,
+ * deleting and moving the cursor by one symbol are O(1).
+ * </p>
+ * <p>
+ * Every token also records the structure of its side of the cursor, read outwards from the cursor
+ * towards the end of its side: the nesting depth, the innermost unclosed parenthesis or bracket
+ * (which is the link to the enclosing group) and the amount of mismatched closings. These only
+ * depend on the tokens between the token and the end, so an edit re-links the edited token alone.
+ * {@link #isWellFormed()} then pairs the unclosed groups of both sides by following the links,
+ * which costs O(depth), and combines them with a running count of adjacent symbols that never go
+ * together such as <code>+&times;</code> or <code>()</code>.
+ * </p>
+ * @author lcn
+ */
+public class EqtTokens {
+    /**
+     * kind of <code>(</code> and every symbol ending with it, e.g. {@link Symbol#SYM_EXP ^(}
+     */
+    private static final int KIND_PAREN = 1;
+    /**
+     * kind of {@link Symbol#SYM_LEFT_BRACKET [}
+     */
+    private static final int KIND_BRACKET = 2;
+
+    private Symbol[] syms;
+    /**
+     * nesting depth of the side of the cursor up to and including each token
+     */
+    private int[] depth;
+    /**
+     * index of the innermost unclosed group of the side of the cursor up to and including each
+     * token, or -1 if there is none
+     */
+    private int[] link;
+    /**
+     * amount of mismatched closings of the side of the cursor up to and including each token
+     */
+    private int[] bad;
+    /**
+     * amount of tokens before the cursor, which is also the first index of the gap
+     */
+    private int gapStart;
+    /**
+     * first index of the tokens after the cursor
+     */
+    private int gapEnd;
+    /**
+     * character offset of the cursor
+     */
+    private int cursorPos;
+    /**
+     * amount of adjacent tokens that never go together
+     */
+    private int badPairs;
+
+    /**
+     * create an empty token buffer
+     */
+    public EqtTokens() {
+        this.syms = new Symbol[16];
+        this.depth = new int[16];
+        this.link = new int[16];
+        this.bad = new int[16];
+        clear();
+    }
+
+    /**
+     * remove all tokens
+     */
+    public void clear() {
+        Arrays.fill(this.syms, null);
+        this.gapStart = 0;
+        this.gapEnd = this.syms.length;
+        this.cursorPos = 0;
+        this.badPairs = 0;
+    }
+
+    /**
+     * replace all tokens by the tokens of the equation given
+     * @param eqt full equation including the {@link MainActivity#CURSOR cursor}
+     * @throws com.practice.lcn.calc.exception.CursorMissingException if the cursor is missing
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol, or the cursor
+     *         is inside a symbol
+     */
+    public void set(String eqt) {
+        int cursorPos = EqtBuilder.getCursorPos(eqt);
+        String src = eqt.substring(0, cursorPos) + eqt.substring(cursorPos + MainActivity.CURSOR.length());
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = EqtParser.tokenize(src, offsets);
+        int cursor = 0;
+        while (cursor < tokens.length && offsets[cursor] < cursorPos)
+            cursor++;
+        if (offsets[cursor] != cursorPos)
+            throw new SymbolUndefinedException();
+        clear();
+        for (Symbol sym : tokens)
+            insert(sym);
+        while (this.gapStart > cursor)
+            moveLeft();
+    }
+
+    /**
+     * @return amount of tokens
+     */
+    public int size() {
+        return this.gapStart + this.syms.length - this.gapEnd;
+    }
+
+    /**
+     * @return character offset of the cursor in the equation
+     */
+    public int getCursorPos() {
+        return this.cursorPos;
+    }
+
+    /**
+     * @return the symbol before the cursor, or null if the cursor is at the front
+     */
+    public Symbol getPrevSymbol() {
+        return this.gapStart > 0 ? this.syms[this.gapStart - 1] : null;
+    }
+
+    /**
+     * @return the symbol after the cursor, or null if the cursor is at the end
+     */
+    public Symbol getNextSymbol() {
+        return this.gapEnd < this.syms.length ? this.syms[this.gapEnd] : null;
+    }
+
+    /**
+     * insert a symbol before the cursor
+     * @param sym symbol to insert
+     */
+    public void insert(Symbol sym) {
+        if (this.gapStart == this.gapEnd)
+            grow();
+        Symbol prev = getPrevSymbol();
+        Symbol next = getNextSymbol();
+        this.badPairs += isBadPair(prev, sym) + isBadPair(sym, next) - isBadPair(prev, next);
+        this.syms[this.gapStart] = sym;
+        linkBefore(this.gapStart);
+        this.gapStart++;
+        this.cursorPos += sym.getRepr().length();
+    }
+
+    /**
+     * delete the symbol before the cursor
+     * @return the deleted symbol, or null if the cursor is at the front
+     */
+    public Symbol delete() {
+        if (this.gapStart == 0)
+            return null;
+        Symbol sym = this.syms[--this.gapStart];
+        this.syms[this.gapStart] = null;
+        Symbol prev = getPrevSymbol();
+        Symbol next = getNextSymbol();
+        this.badPairs -= isBadPair(prev, sym) + isBadPair(sym, next) - isBadPair(prev, next);
+        this.cursorPos -= sym.getRepr().length();
+        return sym;
+    }
+
+    /**
+     * move the cursor to the left by one symbol
+     * @return the symbol the cursor has moved over, or null if the cursor is at the front
+     */
+    public Symbol moveLeft() {
+        if (this.gapStart == 0)
+            return null;
+        Symbol sym = this.syms[--this.gapStart];
+        this.syms[this.gapStart] = null;
+        this.syms[--this.gapEnd] = sym;
+        linkAfter(this.gapEnd);
+        this.cursorPos -= sym.getRepr().length();
+        return sym;
+    }
+
+    /**
+     * move the cursor to the right by one symbol
+     * @return the symbol the cursor has moved over, or null if the cursor is at the end
+     */
+    public Symbol moveRight() {
+        if (this.gapEnd == this.syms.length)
+            return null;
+        Symbol sym = this.syms[this.gapEnd];
+        this.syms[this.gapEnd++] = null;
+        this.syms[this.gapStart] = sym;
+        linkBefore(this.gapStart);
+        this.gapStart++;
+        this.cursorPos += sym.getRepr().length();
+        return sym;
+    }
+
+    /**
+     * check the structure of the equation: every parenthesis and bracket is closed by its own
+     * kind, and no two adjacent symbols exclude each other, e.g. <code>1+&times;2</code>,
+     * <code>()</code> or <code>2Ans</code>. An equation failing the check has a syntax error in
+     * every mode, while an equation passing it can still have one, e.g. <code>C(1)</code>.
+     * @return true if the equation is well-formed so far
+     */
+    public boolean isWellFormed() {
+        if (this.badPairs > 0)
+            return false;
+        int size = size();
+        if (size == 0)
+            return true;
+        Symbol first = this.gapStart > 0 ? this.syms[0] : this.syms[this.gapEnd];
+        Symbol last = this.gapEnd < this.syms.length ? this.syms[this.syms.length - 1] : this.syms[this.gapStart - 1];
+        if (needsOperandBefore(first) || needsOperandAfter(last))
+            return false;
+        int l = this.gapStart - 1;
+        int r = this.gapEnd;
+        int leftDepth = l >= 0 ? this.depth[l] : 0;
+        int rightDepth = r < this.syms.length ? this.depth[r] : 0;
+        if (leftDepth != rightDepth || (l >= 0 && this.bad[l] > 0) || (r < this.syms.length && this.bad[r] > 0))
+            return false;
+        // pair the unclosed groups before the cursor with the unopened ones after it, inside out
+        int open = l >= 0 ? this.link[l] : -1;
+        int close = r < this.syms.length ? this.link[r] : -1;
+        while (open != -1) {
+            if (kindOf(this.syms[open]) != -kindOf(this.syms[close]))
+                return false;
+            open = open > 0 ? this.link[open - 1] : -1;
+            close = close + 1 < this.syms.length ? this.link[close + 1] : -1;
+        }
+        return true;
+    }
+
+    /**
+     * @return the amount of groups enclosing the cursor
+     */
+    public int getDepth() {
+        return this.gapStart > 0 ? this.depth[this.gapStart - 1] : 0;
+    }
+
+    /**
+     * link a token before the cursor to the tokens before it
+     * @param i index of the token
+     */
+    private void linkBefore(int i) {
+        int prevDepth = i > 0 ? this.depth[i - 1] : 0;
+        int prevLink = i > 0 ? this.link[i - 1] : -1;
+        int prevBad = i > 0 ? this.bad[i - 1] : 0;
+        int kind = kindOf(this.syms[i]);
+        if (kind > 0) {
+            this.depth[i] = prevDepth + 1;
+            this.link[i] = i;
+            this.bad[i] = prevBad;
+        }
+        else if (kind < 0 && prevLink != -1) {
+            this.depth[i] = prevDepth - 1;
+            this.link[i] = prevLink > 0 ? this.link[prevLink - 1] : -1;
+            this.bad[i] = prevBad + (kindOf(this.syms[prevLink]) == -kind ? 0 : 1);
+        }
+        else {
+            this.depth[i] = prevDepth;
+            this.link[i] = prevLink;
+            // a closing without an opening
+            this.bad[i] = prevBad + (kind < 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * link a token after the cursor to the tokens after it. It mirrors {@link #linkBefore(int)}
+     * with the closings taking the role of the openings.
+     * @param i index of the token
+     */
+    private void linkAfter(int i) {
+        boolean hasNext = i + 1 < this.syms.length;
+        int nextDepth = hasNext ? this.depth[i + 1] : 0;
+        int nextLink = hasNext ? this.link[i + 1] : -1;
+        int nextBad = hasNext ? this.bad[i + 1] : 0;
+        int kind = kindOf(this.syms[i]);
+        if (kind < 0) {
+            this.depth[i] = nextDepth + 1;
+            this.link[i] = i;
+            this.bad[i] = nextBad;
+        }
+        else if (kind > 0 && nextLink != -1) {
+            this.depth[i] = nextDepth - 1;
+            this.link[i] = nextLink + 1 < this.syms.length ? this.link[nextLink + 1] : -1;
+            this.bad[i] = nextBad + (kindOf(this.syms[nextLink]) == -kind ? 0 : 1);
+        }
+        else {
+            this.depth[i] = nextDepth;
+            this.link[i] = nextLink;
+            // an opening without a closing
+            this.bad[i] = nextBad + (kind > 0 ? 1 : 0);
+        }
+    }
+
+    /**
+     * double the capacity. The tokens after the cursor move to the back, so their links are
+     * shifted along.
+     */
+    private void grow() {
+        int oldCapacity = this.syms.length;
+        int newCapacity = oldCapacity * 2;
+        int shift = newCapacity - oldCapacity;
+        Symbol[] syms = new Symbol[newCapacity];
+        int[] depth = new int[newCapacity];
+        int[] link = new int[newCapacity];
+        int[] bad = new int[newCapacity];
+        System.arraycopy(this.syms, 0, syms, 0, this.gapStart);
+        System.arraycopy(this.depth, 0, depth, 0, this.gapStart);
+        System.arraycopy(this.link, 0, link, 0, this.gapStart);
+        System.arraycopy(this.bad, 0, bad, 0, this.gapStart);
+        int after = oldCapacity - this.gapEnd;
+        System.arraycopy(this.syms, this.gapEnd, syms, this.gapEnd + shift, after);
+        System.arraycopy(this.depth, this.gapEnd, depth, this.gapEnd + shift, after);
+        System.arraycopy(this.bad, this.gapEnd, bad, this.gapEnd + shift, after);
+        for (int i = this.gapEnd; i < oldCapacity; i++)
+            link[i + shift] = this.link[i] == -1 ? -1 : this.link[i] + shift;
+        this.syms = syms;
+        this.depth = depth;
+        this.link = link;
+        this.bad = bad;
+        this.gapEnd += shift;
+    }
+
+    /**
+     * @param sym symbol
+     * @return {@link #KIND_PAREN} or {@link #KIND_BRACKET} if the symbol opens a group, their
+     *         negation if it closes one, or 0 otherwise
+     */
+    private static int kindOf(Symbol sym) {
+        if (sym == Symbol.SYM_RIGHT_PAREN)
+            return -KIND_PAREN;
+        if (sym == Symbol.SYM_LEFT_BRACKET)
+            return KIND_BRACKET;
+        if (sym == Symbol.SYM_RIGHT_BRACKET)
+            return -KIND_BRACKET;
+        return sym.getRepr().endsWith(Symbol.SYM_LEFT_PAREN.getRepr()) ? KIND_PAREN : 0;
+    }
+
+    /**
+     * @return 1 if the symbols cannot be adjacent in this order; otherwise 0. A missing symbol goes
+     *         with everything.
+     */
+    private static int isBadPair(Symbol a, Symbol b) {
+        if (a == null || b == null)
+            return 0;
+        if (needsOperandAfter(a) && !startsOperand(b))
+            return 1;
+        if (needsOperandBefore(b) && !endsOperand(a))
+            return 1;
+        // Ans, the variables and the constants are never multiplied implicitly
+        if (isNamedValue(b) && (Symbol.isNum(a) || a == Symbol.SYM_RIGHT_PAREN || a == Symbol.SYM_DOT || isNamedValue(a)))
+            return 1;
+        if (isNamedValue(a) && (Symbol.isNum(b) || b == Symbol.SYM_LEFT_PAREN || b == Symbol.SYM_DOT))
+            return 1;
+        // a store names its variable right after it
+        if (a == Symbol.SYM_STORE && !Symbol.isVariable(b))
+            return 1;
+        return 0;
+    }
+
+    private static boolean isBinaryOp(Symbol sym) {
+        return sym == Symbol.SYM_PLUS || sym == Symbol.SYM_MINUS || sym == Symbol.SYM_MUL || sym == Symbol.SYM_DIV || sym == Symbol.SYM_COMMA || sym == Symbol.SYM_SEMICOLON || sym == Symbol.SYM_EQ;
+    }
+
+    private static boolean needsOperandAfter(Symbol sym) {
+        return isBinaryOp(sym) || kindOf(sym) > 0 || sym == Symbol.SYM_STORE;
+    }
+
+    private static boolean needsOperandBefore(Symbol sym) {
+        return (isBinaryOp(sym) && sym != Symbol.SYM_PLUS && sym != Symbol.SYM_MINUS) || sym == Symbol.SYM_EXP || kindOf(sym) < 0 || sym == Symbol.SYM_FACT || sym == Symbol.SYM_STORE;
+    }
+
+    private static boolean startsOperand(Symbol sym) {
+        return Symbol.isNum(sym) || sym == Symbol.SYM_DOT || sym == Symbol.SYM_PLUS || sym == Symbol.SYM_MINUS || (kindOf(sym) > 0 && sym != Symbol.SYM_EXP) || Symbol.startsOperand(sym);
+    }
+
+    private static boolean endsOperand(Symbol sym) {
+        return Symbol.isNum(sym) || sym == Symbol.SYM_DOT || kindOf(sym) < 0 || sym == Symbol.SYM_ANS || sym == Symbol.SYM_X || sym == Symbol.SYM_FACT || Symbol.isVariable(sym) || Symbol.isConstant(sym);
+    }
+
+    /**
+     * @return true if the symbol stands for a value by its name, i.e. {@link Symbol#SYM_ANS Ans},
+     *         a {@link Symbol#isVariable(Symbol) variable} or a {@link Symbol#isConstant(Symbol) constant}
+     */
+    private static boolean isNamedValue(Symbol sym) {
+        return sym == Symbol.SYM_ANS || Symbol.isVariable(sym) || Symbol.isConstant(sym);
+    }
+}
@@ -0,0 +1,169 @@
+package com.practice.lcn.calc;
+
+/**
+ * visible window of an equation wider than the {@link EquationView equation display}. After every
+ * edit, {@link #follow(char[], int, int)} moves the window just enough to keep the cursor visible:
+ * a cursor left of the window becomes its first character and a cursor right of it becomes its
+ * last one. A cursor that merely moved inside the window keeps it in place, while an edit inside
+ * it probes the last character again from the first one, since the edited characters may be wider
+ * or narrower than the ones they replaced.
+ * <p>
+ * The widths are measured by a {@link TextMeasurer} and summed up character by character from the
+ * fixed side of the window, stopping as soon as the width is exceeded. Following the cursor
+ * therefore costs the amount of visible characters no matter how long the equation is. It does not
+ * touch any Android API, so it can run on the JVM with a {@link FixedWidthMeasurer}.
+ * </p>
+ * @author lcn
+ */
+public class EqtWindow {
+    private final TextMeasurer measurer;
+    /**
+     * width available to the window (in px)
+     */
+    private final int maxWidth;
+    /**
+     * first index of the window (inclusive)
+     */
+    private int start;
+    /**
+     * last index of the window (inclusive)
+     */
+    private int end;
+    /**
+     * amount of characters of the equation at the last {@link #follow(char[], int, int)}
+     */
+    private int length;
+
+    /**
+     * create a window at the front of the equation
+     * @param measurer measures the equation as it is drawn
+     * @param maxWidth width available to the window (in px)
+     */
+    public EqtWindow(TextMeasurer measurer, int maxWidth) {
+        this.measurer = measurer;
+        this.maxWidth = maxWidth;
+        reset();
+    }
+
+    /**
+     * move the window to the front of the equation
+     */
+    public void reset() {
+        this.start = 0;
+        this.end = 0;
+        this.length = 0;
+    }
+
+    /**
+     * @return first index of the window (inclusive)
+     */
+    public int getStart() {
+        return this.start;
+    }
+
+    /**
+     * @return last index of the window (inclusive)
+     */
+    public int getEnd() {
+        return this.end;
+    }
+
+    /**
+     * restore a window saved along with the equation
+     * @param eqt characters of the equation
+     * @param length amount of characters of the equation
+     * @param cursorPos index of the cursor
+     * @param window saved first and last index of the window. If it is null or does not contain
+     *               the cursor, the window starts at the cursor instead.
+     */
+    public void restore(char[] eqt, int length, int cursorPos, int[] window) {
+        if (window != null && 0 <= window[0] && window[0] <= cursorPos && cursorPos <= window[1] && window[1] < length) {
+            this.start = window[0];
+            this.end = window[1];
+        }
+        else {
+            this.start = cursorPos;
+            this.end = cursorPos;
+            probeEnd(eqt, length);
+        }
+        this.length = length;
+    }
+
+    /**
+     * move the window after an edit so that it shows the cursor
+     * @param eqt characters of the equation
+     * @param length amount of characters of the equation
+     * @param cursorPos index of the cursor
+     */
+    public void follow(char[] eqt, int length, int cursorPos) {
+        if (fits(eqt, length)) {
+            this.start = 0;
+            this.end = length - 1;
+        }
+        else if (cursorPos < this.start) {
+            this.start = cursorPos;
+            probeEnd(eqt, length);
+        }
+        else if (cursorPos > this.end) {
+            this.end = cursorPos;
+            probeStart(eqt);
+        }
+        else if (length != this.length) {
+            probeEnd(eqt, length);
+            if (cursorPos > this.end) {
+                // a wide character pushed the cursor out of the window
+                this.end = cursorPos;
+                probeStart(eqt);
+            }
+            else if (this.end == length - 1) {
+                // a deletion near the end of the equation leaves room before the window
+                probeStart(eqt);
+            }
+        }
+        this.length = length;
+    }
+
+    /**
+     * @return true if the whole equation fits in the window
+     */
+    private boolean fits(char[] eqt, int length) {
+        float w = 0;
+        for (int i = 0; i < length; i++) {
+            w += this.measurer.widthOf(eqt[i]);
+            if ((int) Math.floor(w) > this.maxWidth)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * probe the {@link #start} backwards from the {@link #end} so that the window fills the width
+     */
+    private void probeStart(char[] eqt) {
+        float w = this.measurer.widthOf(eqt[this.end]);
+        for (int i = this.end - 1; i >= 0; i--) {
+            w += this.measurer.widthOf(eqt[i]);
+            if ((int) Math.floor(w) > this.maxWidth) {
+                this.start = i + 1;
+                return;
+            }
+        }
+        this.start = 0;
+    }
+
+    /**
+     * probe the {@link #end} forwards from the {@link #start} so that the window fills the width
+     */
+    private void probeEnd(char[] eqt, int length) {
+        float w = 0;
+        for (int i = this.start; i < length; i++) {
+            w += this.measurer.widthOf(eqt[i]);
+            if ((int) Math.floor(w) > this.maxWidth) {
+                // the window end is inclusive, and it keeps at least the first character
+                this.end = Math.max(this.start, i - 1);
+                return;
+            }
+        }
+        this.end = length - 1;
+    }
+}
@@ -0,0 +1,162 @@
+package com.practice.lcn.calc;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.practice.lcn.calc.trace.FrameLog;
+
+/**
+ * equation display. It draws the visible window of the equation given by {@link EqtTextWatcher}
+ * directly on the canvas, so changing the equation never goes through text layout.
+ * <p>
+ * The equation is measured by a {@link PaintTextMeasurer} with cached glyph widths. Moving the
+ * cursor inside the window only invalidates the region between its old and new positions. The
+ * equation is drawn straight from the characters of the {@link EqtBuffer}, so showing an edit
+ * allocates nothing.
+ * </p>
+ * @author lcn
+ */
+public class EquationView extends View {
+    /**
+     * text size (in sp)
+     */
+    public static final float TEXT_SIZE_SP = 24;
+
+    private final Paint paint;
+    private final Paint.FontMetrics fontMetrics;
+    private final PaintTextMeasurer measurer;
+
+    /**
+     * characters of the full equation including the cursor
+     */
+    private char[] eqt;
+    /**
+     * amount of characters of {@link #eqt} in use
+     */
+    private int length;
+    /**
+     * first index of the visible window (inclusive)
+     */
+    private int windowStart;
+    /**
+     * last index of the visible window (inclusive)
+     */
+    private int windowEnd;
+    /**
+     * index of the cursor in {@link #eqt}
+     */
+    private int cursorPos;
+    /**
+     * monitor timing the updates, or null
+     */
+    private FrameMonitor frameMonitor;
+
+    /**
+     * create a new equation display
+     * @param context context that creates this view
+     * @param attrs unused
+     */
+    public EquationView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.paint.setColor(ContextCompat.getColor(context, R.color.display_fg));
+        this.paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        this.fontMetrics = this.paint.getFontMetrics();
+        this.measurer = new PaintTextMeasurer(this.paint);
+
+        this.eqt = MainActivity.CURSOR.toCharArray();
+        this.length = this.eqt.length;
+        this.windowStart = 0;
+        this.windowEnd = 0;
+        this.cursorPos = 0;
+    }
+
+    /**
+     * @return measurer of the equation as it is drawn
+     */
+    public TextMeasurer getMeasurer() {
+        return this.measurer;
+    }
+
+    /**
+     * @param monitor monitor timing the updates of this display, or null
+     */
+    public void setFrameMonitor(FrameMonitor monitor) {
+        this.frameMonitor = monitor;
+    }
+
+    /**
+     * show a new equation
+     * @param eqt characters of the full equation including the {@link MainActivity#CURSOR cursor}.
+     *            They are drawn as they are at the next frame, so they must not be changed
+     *            without showing the equation again.
+     * @param length amount of characters in use
+     * @param windowStart first index of the visible part (inclusive)
+     * @param windowEnd last index of the visible part (inclusive)
+     * @param cursorPos index of the cursor in the equation
+     */
+    public void show(char[] eqt, int length, int windowStart, int windowEnd, int cursorPos) {
+        this.eqt = eqt;
+        this.length = length;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.cursorPos = cursorPos;
+        invalidate();
+        if (this.frameMonitor != null)
+            this.frameMonitor.scheduled(FrameLog.DISPLAY_EQT);
+    }
+
+    /**
+     * show the equation after the cursor has moved inside the visible window. Only the region
+     * between the old and the new cursor position is redrawn.
+     * @param eqt characters of the full equation including the {@link MainActivity#CURSOR cursor}.
+     *            It must only differ from the shown equation by the cursor position.
+     * @param newPos index of the cursor in the equation
+     */
+    public void moveCursor(char[] eqt, int newPos) {
+        int oldPos = this.cursorPos;
+        this.eqt = eqt;
+        this.cursorPos = newPos;
+        int from = Math.min(oldPos, newPos);
+        int to = Math.max(oldPos, newPos) + MainActivity.CURSOR.length();
+        float left = getPaddingLeft() + this.measurer.measure(eqt, this.windowStart, from);
+        float right = left + this.measurer.measure(eqt, from, to);
+        invalidate((int) Math.floor(left) - 1, 0, (int) Math.ceil(right) + 1, getHeight());
+        if (this.frameMonitor != null)
+            this.frameMonitor.scheduled(FrameLog.DISPLAY_EQT);
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int h = getPaddingTop() + (int) Math.ceil(this.fontMetrics.descent - this.fontMetrics.ascent) + getPaddingBottom();
+        setMeasuredDimension(resolveSize(getSuggestedMinimumWidth(), widthMeasureSpec), resolveSize(h, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (this.frameMonitor != null)
+            this.frameMonitor.drawn(FrameLog.DISPLAY_EQT);
+        int end = Math.min(this.windowEnd + 1, this.length);
+        if (this.windowStart >= end)
+            return;
+        float x = getPaddingLeft();
+        float y = getPaddingTop() - this.fontMetrics.ascent;
+        int cursorEnd = this.cursorPos + MainActivity.CURSOR.length();
+        if (this.cursorPos < this.windowStart || cursorEnd > end) {
+            canvas.drawText(this.eqt, this.windowStart, end - this.windowStart, x, y, this.paint);
+            return;
+        }
+        // draw the cursor apart so that the glyphs sit exactly at the measured offsets
+        canvas.drawText(this.eqt, this.windowStart, this.cursorPos - this.windowStart, x, y, this.paint);
+        x += this.measurer.measure(this.eqt, this.windowStart, this.cursorPos);
+        canvas.drawText(this.eqt, this.cursorPos, cursorEnd - this.cursorPos, x, y, this.paint);
+        x += this.measurer.measure(this.eqt, this.cursorPos, cursorEnd);
+        canvas.drawText(this.eqt, cursorEnd, end - cursorEnd, x, y, this.paint);
+    }
+}
@@ -0,0 +1,28 @@
+package com.practice.lcn.calc;
+
+/**
+ * {@link TextMeasurer} giving every character the same width, like a monospaced font. It needs no
+ * device, so the {@link EqtWindow window following} can be run and benchmarked on the JVM with
+ * deterministic results.
+ * @author lcn
+ */
+public class FixedWidthMeasurer implements TextMeasurer {
+    private final float width;
+
+    /**
+     * @param width width of every character (in px)
+     */
+    public FixedWidthMeasurer(float width) {
+        this.width = width;
+    }
+
+    @Override
+    public float widthOf(char c) {
+        return this.width;
+    }
+
+    @Override
+    public float measure(char[] text, int from, int to) {
+        return (to - from) * this.width;
+    }
+}
@@ -1,11 +1,32 @@
 package com.practice.lcn.calc;
 
 import android.os.Handler;
-import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class helps create a flash effect on the {@link MainActivity#result result display} so that
  * the calculator will be more realistic.
+ * <p>
+ * Every {@link MainActivity} owns its own flash effect and {@link #release() releases} it when it
+ * is destroyed, so a recreated activity never flashes through a dead one. The effect is a state
+ * machine driven by compare-and-set instead of locks:
+ * <pre>
+ *          run()                 show, nothing pending
+ *   IDLE ---------&gt; FLASHING ---------------------------&gt; IDLE
+ *                   |      ^
+ *                   +------+ show, another effect pending
+ *
+ *   any state ---release()---&gt; RELEASED
+ * </pre>
+ * At most one effect is pending. A press during a flash replaces the pending effect, so rapid
+ * presses are coalesced into a single flash after the current one instead of being dropped.
+ * {@link #run(IFlashEffect)} can be called from any thread, while the effects are always executed
+ * on the UI thread. An effect may compute its result in the background: the flash lasts until the
+ * effect {@link IFlashEffect#isReady() is ready}, so the UI thread never waits for it and the next
+ * effect still sees its result.
+ * </p>
  * @author lcn
  */
 public class FlashEffect {
@@ -14,112 +35,157 @@ public class FlashEffect {
      */
     public static final long FLASH_DURATION = 100;
     /**
-     * lock of the flash effect to synchronize the {@link MainActivity#result equation result}
-     */
-    public static final Object LOCK = new Object();
-    /**
-     * singleton instance for generating a flash effect in the {@link MainActivity#result resukt display}
+     * interval at which a flash waiting for its result checks again (in ms)
      */
-    private static FlashEffect instance;
+    public static final long READY_POLL = 16;
+
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_FLASHING = 1;
+    private static final int STATE_RELEASED = 2;
 
     /**
-     * main application instance
+     * main application instance, or null once released
      */
     private MainActivity mainActivity;
     /**
-     * handler for creating the flash effect on the {@link MainActivity#result result display}.
+     * handler of the UI thread running every step of the flash effect
+     */
+    private final Handler handler;
+    /**
+     * one of the <code>STATE_*</code> constants
+     */
+    private final AtomicInteger state;
+    /**
+     * effect to flash once the current one is over, or null if there is none
+     */
+    private final AtomicReference<IFlashEffect> pending;
+    /**
+     * effect being flashed. It is only touched on the UI thread.
      */
-    private Handler handler;
+    private IFlashEffect current;
     /**
-     * true if the flash effect is completely rendered. Otherwise false.
+     * take the pending effect and blank the {@link MainActivity#result result display}
      */
-    private volatile boolean completed;
+    private final Runnable blank;
+    /**
+     * show the result of the current effect at the end of the flash
+     */
+    private final Runnable show;
 
     /**
-     * function pointer to allow provide a generic callback after the flash effect is over.
+     * callback of a flash effect
      */
     public static interface IFlashEffect {
         /**
-         * executed after the flash effect is over. It is mainly used for setting the actual result
-         * in the {@link MainActivity#result result display}. Note that this method will be called
-         * in a new {@link Thread}.
-         * @param handler given so that it will be useful to call the UI thread to
-         *                set the actual result in the {@link MainActivity#result result display}.
+         * executed on the UI thread right before the {@link MainActivity#result result display}
+         * is blanked, while it still shows the previous result. It is mainly used for starting
+         * the computation of the result to show.
+         */
+        public abstract void prepare();
+
+        /**
+         * executed on the UI thread once the flash duration is over, and again every
+         * {@link FlashEffect#READY_POLL} ms until it returns true.
+         * @return true if {@link #show()} can be executed
+         */
+        public abstract boolean isReady();
+
+        /**
+         * executed on the UI thread after the flash effect is over. It is mainly used for setting
+         * the actual result in the {@link MainActivity#result result display}.
          */
-        public abstract void postCallback(Handler handler);
+        public abstract void show();
     }
 
     /**
      * initialize all necessary components for generating a flash effect
      * @param mainActivity main application instance
      */
-    private FlashEffect(MainActivity mainActivity) {
+    public FlashEffect(MainActivity mainActivity) {
         this.mainActivity = mainActivity;
-        this.completed = true;
-        this.handler = new Handler(FlashEffect.this.mainActivity.getMainLooper());
+        this.handler = new Handler(mainActivity.getMainLooper());
+        this.state = new AtomicInteger(FlashEffect.STATE_IDLE);
+        this.pending = new AtomicReference<IFlashEffect>();
+        this.blank = new Runnable() {
+            @Override
+            public void run() {
+                FlashEffect.this.blank();
+            }
+        };
+        this.show = new Runnable() {
+            @Override
+            public void run() {
+                FlashEffect.this.show();
+            }
+        };
     }
 
     /**
-     * obtain the singleton instance of <code>FlashEffect</code> object
-     * @param mainActivity main calculator activity
-     * @return singleton instance of <code>FlashEffect</code> object
+     * run the flash effect on the {@link MainActivity#result result display}. If a flash is
+     * running, the effect is flashed after it, replacing any effect already waiting. It does
+     * nothing once the flash effect is {@link #release() released}.
+     * @param effect {@link IFlashEffect} instance
      */
-    public static FlashEffect getInstance(MainActivity mainActivity) {
-        synchronized (FlashEffect.LOCK) {
-            if (instance == null) {
-                instance = new FlashEffect(mainActivity);
-            }
-            return instance;
-        }
+    public void run(IFlashEffect effect) {
+        if (this.state.get() == FlashEffect.STATE_RELEASED)
+            return;
+        this.pending.set(effect);
+        startPending();
     }
 
     /**
-     * check if the flash effect is completely rendered. This get operation is thread-safe.
-     * @return true if so; otherwise false
-     * @see #completed
+     * start flashing the pending effect if no flash is running
      */
-    public boolean isCompleted() {
-        synchronized (FlashEffect.LOCK) {
-            return completed;
+    private void startPending() {
+        // whoever leaves IDLE posts the flash; a flash ending at the same time sees the pending
+        // effect after its own transition back to IDLE
+        if (this.pending.get() != null && this.state.compareAndSet(FlashEffect.STATE_IDLE, FlashEffect.STATE_FLASHING))
+            this.handler.post(this.blank);
+    }
+
+    private void blank() {
+        this.current = this.pending.getAndSet(null);
+        if (this.current == null || this.state.get() == FlashEffect.STATE_RELEASED) {
+            this.current = null;
+            this.state.compareAndSet(FlashEffect.STATE_FLASHING, FlashEffect.STATE_IDLE);
+            return;
         }
+        this.current.prepare();
+        this.mainActivity.result.setText("");
+        this.handler.postDelayed(this.show, FlashEffect.FLASH_DURATION);
     }
 
-    /**
-     * set the completion state. This set operation is thread-safe.
-     * @param completed new completion state
-     */
-    public void setCompleted(boolean completed) {
-        synchronized (FlashEffect.LOCK) {
-            this.completed = completed;
+    private void show() {
+        IFlashEffect effect = this.current;
+        this.current = null;
+        if (effect == null || this.state.get() == FlashEffect.STATE_RELEASED)
+            return;
+        if (!effect.isReady()) {
+            // keep the display blank until the result is known
+            this.current = effect;
+            this.handler.postDelayed(this.show, FlashEffect.READY_POLL);
+            return;
+        }
+        effect.show();
+        if (this.pending.get() != null) {
+            // stay FLASHING and flash the coalesced presses
+            this.handler.post(this.blank);
+            return;
         }
+        if (this.state.compareAndSet(FlashEffect.STATE_FLASHING, FlashEffect.STATE_IDLE))
+            startPending();
     }
 
     /**
-     * run the flash effect on the {@link MainActivity#result result display}
-     * @param instance {@link IFlashEffect} instance
+     * stop the flash effect and drop the references to the activity and the pending effect. It is
+     * called when the activity is destroyed; the flash effect cannot be run afterwards.
      */
-    public void run(IFlashEffect instance) {
-        if (this.isCompleted()) {
-            this.setCompleted(false);
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    handler.postDelayed(new Runnable() {
-                        @Override
-                        public void run() {
-                            FlashEffect.this.mainActivity.result.setText("");
-                            FlashEffect.this.setCompleted(false);
-                        }
-                    }, MainActivity.RESULT_SYNC_DURATION);
-                    try {
-                        Thread.sleep(FlashEffect.FLASH_DURATION);
-                    }
-                    catch (InterruptedException e) {
-                        Log.e(MainActivity.TAG, Log.getStackTraceString(e));
-                    }
-                    instance.postCallback(handler);
-                }
-            }).start();
-        }
+    public void release() {
+        this.state.set(FlashEffect.STATE_RELEASED);
+        this.pending.set(null);
+        this.handler.removeCallbacks(this.blank);
+        this.handler.removeCallbacks(this.show);
+        this.current = null;
+        this.mainActivity = null;
     }
 }
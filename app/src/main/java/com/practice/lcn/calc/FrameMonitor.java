@@ -0,0 +1,122 @@
+package com.practice.lcn.calc;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import com.practice.lcn.calc.trace.FrameLog;
+
+/**
+ * monitors how the display updates line up with the frames. A display reports when it schedules
+ * an update and when it draws it; the monitor follows the vsync of every frame in between with a
+ * <code>Choreographer</code> callback and records the delay and the missed frames of the update
+ * into a {@link FrameLog}. This shows whether the {@link FlashEffect flash effect} and the
+ * {@link EqtTextWatcher} cycles keep up with the frame rate on slower devices.
+ * <p>
+ * The frame callback is only posted while an update is waiting to be drawn, so an idle
+ * calculator is not woken up every frame. <code>Choreographer</code> is only available from API
+ * level 16, so {@link #create(float)} returns null on older devices. It is not thread-safe; it is
+ * meant to be used on the UI thread only.
+ * </p>
+ * @author lcn
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class FrameMonitor implements Choreographer.FrameCallback {
+    private final Choreographer choreographer;
+    private final FrameLog log;
+    /**
+     * time between two frames (in ns)
+     */
+    private final long frameIntervalNanos;
+    /**
+     * time of scheduling the pending update of every display, or 0 if none is pending
+     */
+    private final long[] scheduled;
+    /**
+     * vsync time of the latest frame, or 0 if the frame callback is not posted
+     */
+    private long frameTimeNanos;
+    private boolean posted;
+
+    private FrameMonitor(float refreshRate) {
+        this.choreographer = Choreographer.getInstance();
+        this.log = new FrameLog();
+        this.frameIntervalNanos = (long) (1e9 / (refreshRate > 0 ? refreshRate : 60));
+        this.scheduled = new long[2];
+        this.frameTimeNanos = 0;
+        this.posted = false;
+    }
+
+    /**
+     * create a monitor for the UI thread
+     * @param refreshRate refresh rate of the display (in Hz), e.g. from
+     *                    <code>Display.getRefreshRate()</code>
+     * @return the monitor, or null if the device has no <code>Choreographer</code>
+     */
+    public static FrameMonitor create(float refreshRate) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN)
+            return null;
+        return new FrameMonitor(refreshRate);
+    }
+
+    /**
+     * @return records of the drawn updates
+     */
+    public FrameLog getLog() {
+        return this.log;
+    }
+
+    /**
+     * report that a display has scheduled an update, e.g. by invalidating itself. Further updates
+     * before it is drawn are drawn along with it, so they are timed from the first one.
+     * @param display {@link FrameLog#DISPLAY_EQT} or {@link FrameLog#DISPLAY_RESULT}
+     */
+    public void scheduled(int display) {
+        if (this.scheduled[display] != 0)
+            return;
+        this.scheduled[display] = System.nanoTime();
+        if (!this.posted) {
+            this.posted = true;
+            this.choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * report that a display is drawing. It records the pending update of the display, if any.
+     * @param display {@link FrameLog#DISPLAY_EQT} or {@link FrameLog#DISPLAY_RESULT}
+     */
+    public void drawn(int display) {
+        long scheduled = this.scheduled[display];
+        if (scheduled == 0)
+            return;
+        this.scheduled[display] = 0;
+        long now = System.nanoTime();
+        // every vsync between scheduling and the frame drawing the update is a missed frame
+        int missed = 0;
+        if (this.frameTimeNanos > scheduled)
+            missed = (int) ((this.frameTimeNanos - scheduled) / this.frameIntervalNanos);
+        this.log.record(display, scheduled, now - scheduled, missed);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        this.frameTimeNanos = frameTimeNanos;
+        // keep following the frames until every pending update is drawn
+        for (long time : this.scheduled) {
+            if (time != 0) {
+                this.choreographer.postFrameCallback(this);
+                return;
+            }
+        }
+        this.posted = false;
+        this.frameTimeNanos = 0;
+    }
+
+    /**
+     * stop following the frames
+     */
+    public void release() {
+        this.choreographer.removeFrameCallback(this);
+        this.posted = false;
+    }
+}
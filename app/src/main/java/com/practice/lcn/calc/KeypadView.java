@@ -0,0 +1,466 @@
+package com.practice.lcn.calc;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+
+/**
+ * keypad of the calculator. All keys are laid out and drawn by this single view instead of one
+ * button view per key, and a touch is mapped to its key by dividing its coordinates by the cell
+ * size.
+ * <p>
+ * Keys are identified by the ids of the former buttons, such as {@link R.id#btn_AC}, and keys
+ * inserting a {@link Symbol} also carry the symbol. The navigation keys repeat while held, every
+ * {@link #HOLD_COOLDOWN_INTERVAL} ms.
+ * </p>
+ * @author lcn
+ */
+public class KeypadView extends View {
+    /**
+     * listen the keys pressed by the user
+     */
+    public static interface OnKeyListener {
+        /**
+         * executed when a key is clicked, or periodically while a navigation key is held
+         * @param id key id, such as {@link R.id#btn_AC}
+         * @param symbol symbol inserted by the key. It is null for the other keys.
+         */
+        public abstract void onKey(int id, Symbol symbol);
+    }
+
+    /**
+     * interval (in ms) between the repeated {@link OnKeyListener#onKey(int, Symbol)} calls while a
+     * navigation key is held
+     */
+    public static final long HOLD_COOLDOWN_INTERVAL = 100;
+    /**
+     * amount of key columns
+     */
+    public static final int COLUMNS = 5;
+    /**
+     * amount of key rows
+     */
+    public static final int ROWS = 13;
+    /**
+     * label size (in sp)
+     */
+    public static final float TEXT_SIZE_SP = 18;
+
+    private static final int STYLE_GENERAL = 0;
+    private static final int STYLE_OP = 1;
+    private static final int STYLE_NUM = 2;
+
+    /**
+     * key ids in row-major order. A key spanning several columns appears once per column.
+     * Cells of id 0 are empty.
+     */
+    private static final int[] GRID = {
+        R.id.btn_AC, R.id.btn_left, R.id.btn_right, R.id.btn_del, R.id.btn_left_paren,
+        R.id.btn_7, R.id.btn_8, R.id.btn_9, R.id.btn_mul, R.id.btn_right_paren,
+        R.id.btn_4, R.id.btn_5, R.id.btn_6, R.id.btn_div, R.id.btn_exp,
+        R.id.btn_1, R.id.btn_2, R.id.btn_3, R.id.btn_minus, R.id.btn_ans,
+        R.id.btn_0, R.id.btn_0, R.id.btn_dot, R.id.btn_plus, R.id.btn_equal,
+        R.id.btn_x, R.id.btn_eq, R.id.btn_table, R.id.btn_plot, R.id.btn_solve,
+        R.id.btn_integral, R.id.btn_sum, R.id.btn_product, R.id.btn_complex, R.id.btn_trn,
+        R.id.btn_left_bracket, R.id.btn_right_bracket, R.id.btn_comma, R.id.btn_semicolon, R.id.btn_det,
+        R.id.btn_fact, R.id.btn_ncr, R.id.btn_npr, R.id.btn_sqrt, R.id.btn_abs,
+        R.id.btn_sin, R.id.btn_cos, R.id.btn_tan, R.id.btn_ln, R.id.btn_log,
+        R.id.btn_exponential, R.id.btn_var_a, R.id.btn_var_b, R.id.btn_var_d, R.id.btn_store,
+        R.id.btn_mr, R.id.btn_m_plus, R.id.btn_m_minus, R.id.btn_sheet, R.id.btn_precise,
+        R.id.btn_pi, R.id.btn_e, 0, 0, 0,
+    };
+    /**
+     * label and style of every key id
+     */
+    private static final int[][] KEYS = {
+        { R.id.btn_AC, R.string.btn_AC, STYLE_GENERAL },
+        { R.id.btn_left, R.string.btn_left, STYLE_GENERAL },
+        { R.id.btn_right, R.string.btn_right, STYLE_GENERAL },
+        { R.id.btn_del, R.string.btn_del, STYLE_GENERAL },
+        { R.id.btn_left_paren, R.string.btn_left_paren, STYLE_OP },
+        { R.id.btn_right_paren, R.string.btn_right_paren, STYLE_OP },
+        { R.id.btn_0, R.string.btn_0, STYLE_NUM },
+        { R.id.btn_1, R.string.btn_1, STYLE_NUM },
+        { R.id.btn_2, R.string.btn_2, STYLE_NUM },
+        { R.id.btn_3, R.string.btn_3, STYLE_NUM },
+        { R.id.btn_4, R.string.btn_4, STYLE_NUM },
+        { R.id.btn_5, R.string.btn_5, STYLE_NUM },
+        { R.id.btn_6, R.string.btn_6, STYLE_NUM },
+        { R.id.btn_7, R.string.btn_7, STYLE_NUM },
+        { R.id.btn_8, R.string.btn_8, STYLE_NUM },
+        { R.id.btn_9, R.string.btn_9, STYLE_NUM },
+        { R.id.btn_mul, R.string.btn_mul, STYLE_OP },
+        { R.id.btn_div, R.string.btn_div, STYLE_OP },
+        { R.id.btn_minus, R.string.btn_minus, STYLE_OP },
+        { R.id.btn_plus, R.string.btn_plus, STYLE_OP },
+        { R.id.btn_exp, R.string.btn_exp, STYLE_OP },
+        { R.id.btn_dot, R.string.btn_dot, STYLE_OP },
+        { R.id.btn_ans, R.string.btn_ans, STYLE_OP },
+        { R.id.btn_equal, R.string.btn_equal, STYLE_OP },
+        { R.id.btn_x, R.string.btn_x, STYLE_OP },
+        { R.id.btn_eq, R.string.btn_eq, STYLE_OP },
+        { R.id.btn_table, R.string.btn_table, STYLE_GENERAL },
+        { R.id.btn_plot, R.string.btn_plot, STYLE_GENERAL },
+        { R.id.btn_solve, R.string.btn_solve, STYLE_GENERAL },
+        { R.id.btn_integral, R.string.btn_integral, STYLE_GENERAL },
+        { R.id.btn_sum, R.string.btn_sum, STYLE_GENERAL },
+        { R.id.btn_product, R.string.btn_product, STYLE_GENERAL },
+        { R.id.btn_complex, R.string.btn_complex, STYLE_GENERAL },
+        { R.id.btn_trn, R.string.btn_trn, STYLE_OP },
+        { R.id.btn_left_bracket, R.string.btn_left_bracket, STYLE_OP },
+        { R.id.btn_right_bracket, R.string.btn_right_bracket, STYLE_OP },
+        { R.id.btn_comma, R.string.btn_comma, STYLE_OP },
+        { R.id.btn_semicolon, R.string.btn_semicolon, STYLE_OP },
+        { R.id.btn_det, R.string.btn_det, STYLE_OP },
+        { R.id.btn_fact, R.string.btn_fact, STYLE_OP },
+        { R.id.btn_ncr, R.string.btn_ncr, STYLE_OP },
+        { R.id.btn_npr, R.string.btn_npr, STYLE_OP },
+        { R.id.btn_sin, R.string.btn_sin, STYLE_OP },
+        { R.id.btn_cos, R.string.btn_cos, STYLE_OP },
+        { R.id.btn_tan, R.string.btn_tan, STYLE_OP },
+        { R.id.btn_ln, R.string.btn_ln, STYLE_OP },
+        { R.id.btn_log, R.string.btn_log, STYLE_OP },
+        { R.id.btn_sqrt, R.string.btn_sqrt, STYLE_OP },
+        { R.id.btn_exponential, R.string.btn_exponential, STYLE_OP },
+        { R.id.btn_abs, R.string.btn_abs, STYLE_OP },
+        { R.id.btn_var_a, R.string.btn_var_a, STYLE_OP },
+        { R.id.btn_var_b, R.string.btn_var_b, STYLE_OP },
+        { R.id.btn_var_d, R.string.btn_var_d, STYLE_OP },
+        { R.id.btn_store, R.string.btn_store, STYLE_OP },
+        { R.id.btn_mr, R.string.btn_mr, STYLE_GENERAL },
+        { R.id.btn_m_plus, R.string.btn_m_plus, STYLE_GENERAL },
+        { R.id.btn_m_minus, R.string.btn_m_minus, STYLE_GENERAL },
+        { R.id.btn_sheet, R.string.btn_sheet, STYLE_GENERAL },
+        { R.id.btn_precise, R.string.btn_precise, STYLE_GENERAL },
+        { R.id.btn_pi, R.string.btn_pi, STYLE_OP },
+        { R.id.btn_e, R.string.btn_e, STYLE_OP },
+    };
+    /**
+     * opening tag of the superscript in a label, e.g. the one of {@link R.string#btn_exp}
+     */
+    private static final String SUP_OPEN = "<sup>";
+    private static final String SUP_CLOSE = "</sup>";
+
+    /**
+     * key index of every cell in row-major order, or -1 if the cell is empty
+     */
+    private final int[] cellKeys;
+    private final int[] keyIds;
+    private final Symbol[] keySymbols;
+    private final String[] keyLabels;
+    /**
+     * superscript part of the label, or null
+     */
+    private final String[] keySups;
+    private final float[] keyLabelWidths;
+    private final float[] keySupWidths;
+    private final int[] keyStyles;
+    /**
+     * bounds of every key as [left, top, right, bottom] quadruples. They are computed in
+     * {@link #onSizeChanged(int, int, int, int)}.
+     */
+    private final float[] keyBounds;
+
+    private final Paint[] fillPaints;
+    private final Paint borderPaint;
+    private final Paint pressedPaint;
+    private final Paint checkedPaint;
+    private final Paint labelPaint;
+    private final Paint supPaint;
+    private final Paint.FontMetrics fontMetrics;
+    private final RectF rect;
+    private final float cornerRadius;
+
+    private KeypadView.OnKeyListener onKeyListener;
+    /**
+     * index of the key being pressed, or -1
+     */
+    private int pressedKey;
+    /**
+     * true for the keys toggled on, such as {@link R.id#btn_complex} in complex mode
+     */
+    private final boolean[] keyChecked;
+    /**
+     * calls {@link OnKeyListener#onKey(int, Symbol)} repeatedly while a navigation key is held
+     */
+    private final Runnable repeater = new Runnable() {
+        @Override
+        public void run() {
+            int key = KeypadView.this.pressedKey;
+            if (key == -1)
+                return;
+            fireKey(key);
+            postDelayed(this, KeypadView.HOLD_COOLDOWN_INTERVAL);
+        }
+    };
+
+    /**
+     * create a new keypad
+     * @param context context that creates this view
+     * @param attrs unused
+     */
+    public KeypadView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        this.cellKeys = new int[GRID.length];
+        int[] ids = new int[GRID.length];
+        int n = 0;
+        for (int cell = 0; cell < GRID.length; cell++) {
+            if (GRID[cell] == 0)
+                this.cellKeys[cell] = -1;
+            else if (cell > 0 && GRID[cell] == GRID[cell - 1])
+                this.cellKeys[cell] = this.cellKeys[cell - 1];
+            else {
+                ids[n] = GRID[cell];
+                this.cellKeys[cell] = n++;
+            }
+        }
+        this.keyIds = new int[n];
+        this.keySymbols = new Symbol[n];
+        this.keyLabels = new String[n];
+        this.keySups = new String[n];
+        this.keyLabelWidths = new float[n];
+        this.keySupWidths = new float[n];
+        this.keyStyles = new int[n];
+        this.keyBounds = new float[4 * n];
+        for (int k = 0; k < n; k++) {
+            this.keyIds[k] = ids[k];
+            this.keySymbols[k] = Symbol.findSymbolByID(ids[k]);
+            for (int[] def : KEYS) {
+                if (def[0] == ids[k]) {
+                    setLabel(k, getResources().getString(def[1]));
+                    this.keyStyles[k] = def[2];
+                    break;
+                }
+            }
+        }
+
+        this.fillPaints = new Paint[3];
+        int[] fillColors = { R.color.btn_bg_general, R.color.btn_bg_op, R.color.btn_bg_num };
+        for (int i = 0; i < this.fillPaints.length; i++) {
+            this.fillPaints[i] = new Paint(Paint.ANTI_ALIAS_FLAG);
+            this.fillPaints[i].setColor(ContextCompat.getColor(context, fillColors[i]));
+        }
+        this.borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.borderPaint.setStyle(Paint.Style.STROKE);
+        this.borderPaint.setStrokeWidth(dp(1));
+        this.borderPaint.setColor(ContextCompat.getColor(context, R.color.btn_border));
+        this.pressedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.pressedPaint.setColor(0x40000000);
+        this.checkedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.checkedPaint.setColor(0x40FFFFFF);
+        this.labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.labelPaint.setColor(ContextCompat.getColor(context, R.color.btn_fg_light));
+        this.labelPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        this.labelPaint.setTextAlign(Paint.Align.LEFT);
+        this.supPaint = new Paint(this.labelPaint);
+        this.supPaint.setTextSize(this.labelPaint.getTextSize() * 0.7f);
+        for (int k = 0; k < n; k++) {
+            this.keyLabelWidths[k] = this.labelPaint.measureText(this.keyLabels[k]);
+            this.keySupWidths[k] = this.keySups[k] == null ? 0 : this.supPaint.measureText(this.keySups[k]);
+        }
+        this.fontMetrics = this.labelPaint.getFontMetrics();
+        this.rect = new RectF();
+        this.cornerRadius = dp(3);
+        this.pressedKey = -1;
+        this.keyChecked = new boolean[n];
+        setSoundEffectsEnabled(true);
+    }
+
+    /**
+     * set the label of a key, splitting off a superscript written as <code>&lt;sup&gt;</code>
+     * @param key key index
+     * @param label label, possibly with a superscript
+     */
+    private void setLabel(int key, String label) {
+        int open = label.indexOf(SUP_OPEN);
+        int close = label.indexOf(SUP_CLOSE);
+        if (open == -1 || close < open) {
+            this.keyLabels[key] = label;
+            this.keySups[key] = null;
+            return;
+        }
+        this.keyLabels[key] = label.substring(0, open);
+        this.keySups[key] = label.substring(open + SUP_OPEN.length(), close);
+    }
+
+    private float dp(float value) {
+        return TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, value, getResources().getDisplayMetrics());
+    }
+
+    /**
+     * set the {@link KeypadView.OnKeyListener}
+     * @param listener new listener
+     */
+    public void setOnKeyListener(KeypadView.OnKeyListener listener) {
+        this.onKeyListener = listener;
+    }
+
+    /**
+     * highlight a toggle key
+     * @param id key id
+     * @param checked true if the key is toggled on
+     */
+    public void setKeyChecked(int id, boolean checked) {
+        for (int key = 0; key < this.keyIds.length; key++) {
+            if (this.keyIds[key] == id && this.keyChecked[key] != checked) {
+                this.keyChecked[key] = checked;
+                invalidateKey(key);
+            }
+        }
+    }
+
+    /**
+     * @param id key id
+     * @return true if the key repeats while held
+     */
+    private static boolean isRepeating(int id) {
+        return id == R.id.btn_left || id == R.id.btn_right;
+    }
+
+    /**
+     * find the key under a point
+     * @param x x coordinate in this view
+     * @param y y coordinate in this view
+     * @return key index, or -1 if there is no key
+     */
+    private int keyAt(float x, float y) {
+        if (x < 0 || y < 0 || x >= getWidth() || y >= getHeight())
+            return -1;
+        int col = (int) (x * COLUMNS / getWidth());
+        int row = (int) (y * ROWS / getHeight());
+        return this.cellKeys[row * COLUMNS + col];
+    }
+
+    private void fireKey(int key) {
+        if (this.onKeyListener != null)
+            this.onKeyListener.onKey(this.keyIds[key], this.keySymbols[key]);
+    }
+
+    private void invalidateKey(int key) {
+        if (key == -1)
+            return;
+        invalidate((int) Math.floor(this.keyBounds[4 * key]), (int) Math.floor(this.keyBounds[4 * key + 1]),
+                (int) Math.ceil(this.keyBounds[4 * key + 2]), (int) Math.ceil(this.keyBounds[4 * key + 3]));
+    }
+
+    private void setPressedKey(int key) {
+        if (key == this.pressedKey)
+            return;
+        invalidateKey(this.pressedKey);
+        this.pressedKey = key;
+        invalidateKey(key);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        float cellW = (float) w / COLUMNS;
+        float cellH = (float) h / ROWS;
+        for (int cell = 0; cell < GRID.length; cell++) {
+            int key = this.cellKeys[cell];
+            if (key == -1)
+                continue;
+            float left = (cell % COLUMNS) * cellW;
+            float top = (cell / COLUMNS) * cellH;
+            if (cell == 0 || this.cellKeys[cell - 1] != key) {
+                this.keyBounds[4 * key] = left;
+                this.keyBounds[4 * key + 1] = top;
+            }
+            this.keyBounds[4 * key + 2] = left + cellW;
+            this.keyBounds[4 * key + 3] = top + cellH;
+        }
+    }
+
+    /**
+     * press the key under the finger and click it when released over the same key. Navigation
+     * keys are clicked right away and then repeatedly until released.
+     * @param event motion event that the user performed
+     * @return true
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: {
+                int key = keyAt(event.getX(), event.getY());
+                setPressedKey(key);
+                if (key != -1 && isRepeating(this.keyIds[key])) {
+                    playSoundEffect(SoundEffectConstants.CLICK);
+                    this.repeater.run();
+                }
+                break;
+            }
+            case MotionEvent.ACTION_MOVE:
+                if (this.pressedKey != -1 && keyAt(event.getX(), event.getY()) != this.pressedKey) {
+                    removeCallbacks(this.repeater);
+                    setPressedKey(-1);
+                }
+                break;
+            case MotionEvent.ACTION_UP: {
+                int key = this.pressedKey;
+                removeCallbacks(this.repeater);
+                setPressedKey(-1);
+                if (key != -1 && !isRepeating(this.keyIds[key])) {
+                    playSoundEffect(SoundEffectConstants.CLICK);
+                    fireKey(key);
+                }
+                performClick();
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+                removeCallbacks(this.repeater);
+                setPressedKey(-1);
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * support accessibility feature
+     * @return true if a click listener has been called
+     */
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(this.repeater);
+        this.pressedKey = -1;
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        float inset = this.borderPaint.getStrokeWidth() * 0.5f;
+        Paint.FontMetrics fm = this.fontMetrics;
+        for (int key = 0; key < this.keyIds.length; key++) {
+            int b = 4 * key;
+            this.rect.set(this.keyBounds[b] + inset, this.keyBounds[b + 1] + inset, this.keyBounds[b + 2] - inset, this.keyBounds[b + 3] - inset);
+            canvas.drawRoundRect(this.rect, this.cornerRadius, this.cornerRadius, this.fillPaints[this.keyStyles[key]]);
+            if (this.keyChecked[key])
+                canvas.drawRoundRect(this.rect, this.cornerRadius, this.cornerRadius, this.checkedPaint);
+            if (key == this.pressedKey)
+                canvas.drawRoundRect(this.rect, this.cornerRadius, this.cornerRadius, this.pressedPaint);
+            canvas.drawRoundRect(this.rect, this.cornerRadius, this.cornerRadius, this.borderPaint);
+
+            String label = this.keyLabels[key];
+            String sup = this.keySups[key];
+            float labelW = this.keyLabelWidths[key];
+            float supW = this.keySupWidths[key];
+            float x = this.rect.centerX() - (labelW + supW) * 0.5f;
+            float y = this.rect.centerY() - (fm.ascent + fm.descent) * 0.5f;
+            canvas.drawText(label, x, y, this.labelPaint);
+            if (sup != null)
+                canvas.drawText(sup, x + labelW, y + fm.ascent * 0.4f, this.supPaint);
+        }
+    }
+}
@@ -1,15 +1,31 @@
 package com.practice.lcn.calc;
 
+import android.content.Intent;
+import android.content.pm.ApplicationInfo;
 import android.graphics.Point;
-import android.os.Handler;
+import android.os.SystemClock;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
-import android.text.Html;
 import android.util.Log;
 import android.view.Display;
-import android.view.View;
-import android.widget.Button;
-import android.widget.TextView;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.expr.EqtProgram;
+import com.practice.lcn.calc.trace.FrameLog;
+import com.practice.lcn.calc.trace.InputTrace;
+import com.practice.lcn.calc.trace.TraceRecorder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * simple calculator app
@@ -22,19 +38,32 @@ public class MainActivity extends AppCompatActivity {
      * cursor in the equation display
      */
     public static final String CURSOR = "\u258A";
-    /**
-     * maximum amount of characters that the {@link #result result display} can show
-     */
-    public static final int MAX_RESULT_DISPLAY_WIDTH = 16;
     /**
      * device screen width
      */
     public static int DEVICE_WIDTH;
 
     /**
-     * duration to wait for the equation result to synchronize
+     * key of the {@link EqtSnapshot display snapshot} in the saved instance state
+     */
+    private static final String STATE_SNAPSHOT = "com.practice.lcn.calc.STATE_SNAPSHOT";
+    /**
+     * key of the {@link #variables} in the saved instance state
      */
-    public static final int RESULT_SYNC_DURATION = 25;
+    private static final String STATE_VARIABLES = "com.practice.lcn.calc.STATE_VARIABLES";
+    /**
+     * file in the app's private storage receiving the {@link InputTrace input trace} of a
+     * debuggable build. It can be pulled with
+     * <code>adb shell run-as com.practice.lcn.calc cat files/input.trace</code> and replayed by
+     * {@link com.practice.lcn.calc.trace.ReplayHarness}.
+     */
+    public static final String TRACE_FILE = "input.trace";
+    /**
+     * file in the app's private storage receiving the {@link FrameLog frame timings} of the
+     * displays of a debuggable build. It can be pulled with
+     * <code>adb shell run-as com.practice.lcn.calc cat files/frames.log</code>.
+     */
+    public static final String FRAME_LOG_FILE = "frames.log";
 
     /**
      * true if the user has previously computed a valid result (without error like
@@ -50,15 +79,26 @@ public class MainActivity extends AppCompatActivity {
      * </p>
      */
     private boolean hasCalculated;
+    /**
+     * true if {@link #clickEqual()} evaluates over the complex numbers. See
+     * {@link EqtSolver#evaluateComplex(String, String, double[])}.
+     */
+    private boolean complexMode;
+    /**
+     * values of the {@link Symbol#isVariable(Symbol) variables} and the memory register indexed by
+     * {@link EqtProgram#slotOf(Symbol) slot}. Equations read them from here when evaluated, so
+     * storing a variable needs no change to any equation.
+     */
+    private double[] variables = new double[EqtProgram.ENV_SIZE];
 
     /**
      * equation display
      */
-    TextView eqt;
+    EquationView eqt;
     /**
      * calculation result display
      */
-    TextView result;
+    ResultView result;
     /**
      * responsible for deciphering which operation the user issued
      * (inserting a math symbol / deleting the previous
@@ -67,24 +107,195 @@ public class MainActivity extends AppCompatActivity {
      * @see EqtTextWatcher
      */
     private EqtTextWatcher eqtTextWatcher;
+    /**
+     * {@link EqtSnapshot display snapshot} taken in {@link #onPause()}. It is handed to
+     * {@link #onSaveInstanceState(Bundle)} so that the display is only encoded once.
+     */
+    private byte[] snapshot;
+    /**
+     * records the key presses if the app is debuggable; otherwise null
+     */
+    private TraceRecorder recorder;
+    /**
+     * times the updates of the displays if the app is debuggable and the device supports it;
+     * otherwise null
+     */
+    private FrameMonitor frameMonitor;
+    /**
+     * flash effect of the {@link #result result display}
+     */
+    private FlashEffect flashEffect;
+    /**
+     * flash showing the result of the equation
+     */
+    private final ResultFlash equalFlash = new EqualFlash();
+    /**
+     * flash showing the result of the equation and adding it to the memory register
+     */
+    private final FlashEffect.IFlashEffect memoryPlusFlash = new MemoryFlash(1);
+    /**
+     * flash showing the result of the equation and subtracting it from the memory register
+     */
+    private final FlashEffect.IFlashEffect memoryMinusFlash = new MemoryFlash(-1);
+    /**
+     * flash showing the value of {@link Symbol#SYM_X x} satisfying the equation
+     */
+    private final FlashEffect.IFlashEffect solveFlash = new ResultFlash() {
+        @Override
+        Callable<String> compute() {
+            final String eqt = MainActivity.this.eqtTextWatcher.getEqt();
+            final String prevResult = MainActivity.this.getPrevResult();
+            final double[] variables = MainActivity.this.variables.clone();
+            return new Callable<String>() {
+                @Override
+                public String call() {
+                    return EqtSolver.solveForX(eqt, prevResult, variables);
+                }
+            };
+        }
+    };
+    /**
+     * flash clearing the calculator display
+     */
+    private final FlashEffect.IFlashEffect clearFlash = new FlashEffect.IFlashEffect() {
+        @Override
+        public void prepare() {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
 
+        @Override
+        public void show() {
+            resetDisplay();
+            MainActivity.this.hasCalculated = false;
+        }
+    };
     /**
-     * @return the previous result shown in the result display. If error occurred, it will return 0.
+     * background thread computing the results of the flashes, so that a long evaluation such as
+     * <code>25000!</code> never blocks the UI thread
      */
-    public String getPrevResult() {
-        String prevResult = this.result.getText().toString();
-        Log.i(MainActivity.TAG, "prevResult: " + prevResult);
-        if (EqtSolver.hadErr(prevResult))
-            return "0";
-        return prevResult;
+    private ExecutorService evaluator;
+    /**
+     * cancels an exact or precise evaluation still running on the {@link #evaluator} when the
+     * activity is destroyed
+     */
+    private final CancellationToken evaluationToken = CancellationToken.cancellable();
+
+    /**
+     * flash effect showing a computation result in the {@link #result result display}. The result
+     * is computed on the {@link #evaluator background thread} from the equation and the previous
+     * result read when the flash starts, and the flash lasts until it is known, so presses
+     * coalesced during a previous flash see its result as "Ans". Results wider than the display
+     * can be scrolled horizontally.
+     */
+    private abstract class ResultFlash implements FlashEffect.IFlashEffect {
+        /**
+         * result being computed. It is only touched on the UI thread.
+         */
+        private Future<String> result;
+
+        /**
+         * read everything the computation needs. It is executed on the UI thread.
+         * @return computation of the result in string form, executed on the background thread
+         */
+        abstract Callable<String> compute();
+
+        /**
+         * executed on the UI thread when the result is shown
+         * @param result computation result
+         */
+        void onResult(String result) {
+        }
+
+        @Override
+        public void prepare() {
+            this.result = MainActivity.this.evaluator.submit(compute());
+        }
+
+        @Override
+        public boolean isReady() {
+            return this.result.isDone();
+        }
+
+        @Override
+        public void show() {
+            String result;
+            try {
+                result = this.result.get();
+            }
+            catch (InterruptedException | ExecutionException e) {
+                Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+                result = EqtSolver.RESULT_SYN_ERR;
+            }
+            this.result = null;
+            Log.i(MainActivity.TAG, "result: " + result);
+            onResult(result);
+            MainActivity.this.result.setText(result);
+            if (!EqtSolver.hadErr(result))
+                MainActivity.this.hasCalculated = true;
+        }
     }
 
     /**
-     * initialize special math symbols
+     * flash effect solving the equation like the "=" key, including storing into a variable
      */
-    private void initBtnText() {
-        Button btnExp = (Button) findViewById(R.id.btn_exp);
-        btnExp.setText(Html.fromHtml(getResources().getString(R.string.btn_exp)));
+    private class EqualFlash extends ResultFlash {
+        /**
+         * evaluation of the current flash
+         */
+        private EqtEvaluation evaluation;
+
+        @Override
+        Callable<String> compute() {
+            // a malformed equation is known from the tokens kept while editing, without parsing it
+            this.evaluation = new EqtEvaluation(MainActivity.this.eqtTextWatcher.getEqt(), MainActivity.this.eqtTextWatcher.isWellFormed(), MainActivity.this.getPrevResult(), MainActivity.this.complexMode, MainActivity.this.variables, MainActivity.this.evaluationToken);
+            return this.evaluation;
+        }
+
+        @Override
+        void onResult(String result) {
+            // the evaluation stored into its own copy of the variables
+            this.evaluation.store(MainActivity.this.variables);
+            this.evaluation = null;
+        }
+    }
+
+    /**
+     * flash effect solving the equation like "=" and accumulating a real result into the
+     * {@link Symbol#SYM_MEM memory register}
+     */
+    private class MemoryFlash extends EqualFlash {
+        /**
+         * 1 for M+, -1 for M&minus;
+         */
+        private final int sign;
+
+        MemoryFlash(int sign) {
+            this.sign = sign;
+        }
+
+        @Override
+        void onResult(String result) {
+            super.onResult(result);
+            try {
+                MainActivity.this.variables[EqtProgram.SLOT_M] += this.sign * Double.parseDouble(result);
+            }
+            catch (NumberFormatException e) {
+                // errors, complex and matrix results are not accumulated
+            }
+        }
+    }
+
+    /**
+     * @return the previous result shown in the result display. If error occurred, it will return 0.
+     */
+    public String getPrevResult() {
+        String prevResult = this.result.getText();
+        Log.i(MainActivity.TAG, "prevResult: " + prevResult);
+        return EqtSolver.toAns(prevResult, this.complexMode);
     }
 
     /**
@@ -96,23 +307,20 @@ public class MainActivity extends AppCompatActivity {
      * @see EqtBuilder#insertSymbol(String, String)
      */
     public void insertSymbol(String symbol) {
-        MainActivity.this.eqt.setText(EqtTextWatcher.OP_INS + " " + symbol);
+        MainActivity.this.eqtTextWatcher.perform(EqtTextWatcher.OP_INS + " " + symbol);
     }
 
     /**
      * executed when a digit symbol such as "1", "2", "3" and etc. is clicked.
-     * @param v clicked button. (It is castable to <i>Button</i>.)
+     * @param sym clicked digit
      */
-    public void clickNum(View v) {
-        Symbol sym = Symbol.findSymbolByID(v.getId());
-        if (sym == null)
-            return;
+    public void clickNum(Symbol sym) {
         try {
             if (this.hasCalculated) {
-                MainActivity.this.eqt.setText(String.format("%s %s", EqtTextWatcher.OP_SET, sym.getRepr() + MainActivity.CURSOR));
+                MainActivity.this.eqtTextWatcher.perform(String.format("%s %s", EqtTextWatcher.OP_SET, sym.getRepr() + MainActivity.CURSOR));
             }
             else {
-                insertSymbol(sym.getRepr());
+                MainActivity.this.eqtTextWatcher.perform(EqtTextWatcher.OP_INS, sym);
             }
         }
         catch (RuntimeException e) {
@@ -127,22 +335,19 @@ public class MainActivity extends AppCompatActivity {
 
     /**
      * executed when an operator symbol such as "(", ")", "+" and etc. is clicked.
-     * @param v clicked button. (It is castable to <i>Button</i>.)
+     * @param sym clicked operator
      */
-    public void clickOp(View v) {
-        Symbol sym = Symbol.findSymbolByID(v.getId());
-        if (sym == null)
-            return;
+    public void clickOp(Symbol sym) {
         try {
             if (this.hasCalculated) {
-                if (v.getId() != Symbol.SYM_ANS.getID()) {
-                    MainActivity.this.eqt.setText(String.format("%s %s", EqtTextWatcher.OP_SET, Symbol.SYM_ANS.getRepr() + sym.getRepr() + MainActivity.CURSOR));
+                if (!Symbol.startsOperand(sym)) {
+                    MainActivity.this.eqtTextWatcher.perform(String.format("%s %s", EqtTextWatcher.OP_SET, Symbol.SYM_ANS.getRepr() + sym.getRepr() + MainActivity.CURSOR));
                 }
                 else
-                    MainActivity.this.eqt.setText(String.format("%s %s", EqtTextWatcher.OP_SET, sym.getRepr() + MainActivity.CURSOR));
+                    MainActivity.this.eqtTextWatcher.perform(String.format("%s %s", EqtTextWatcher.OP_SET, sym.getRepr() + MainActivity.CURSOR));
             }
             else
-                insertSymbol(sym.getRepr());
+                MainActivity.this.eqtTextWatcher.perform(EqtTextWatcher.OP_INS, sym);
         }
         catch (RuntimeException e) {
             Log.e(MainActivity.TAG, Log.getStackTraceString(e));
@@ -155,142 +360,237 @@ public class MainActivity extends AppCompatActivity {
     }
 
     /**
-     * initialize buttons, such as "AC", left navigation button and right navigation button.
+     * clear the calculator display after the flash effect
      */
-    private void initBtn() {
-        Button btnAC = (Button) findViewById(R.id.btn_AC);
-        btnAC.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                FlashEffect flashEffect = FlashEffect.getInstance(MainActivity.this);
-                flashEffect.run(new FlashEffect.IFlashEffect() {
-                    @Override
-                    public void postCallback(Handler handler) {
-                        handler.postDelayed(new Runnable() {
-                            @Override
-                            public void run() {
-                                resetDisplay();
-                                flashEffect.setCompleted(true);
-                            }
-                        }, MainActivity.RESULT_SYNC_DURATION);
-                        if (MainActivity.this.hasCalculated)
-                            MainActivity.this.hasCalculated = false;
-                    }
-                });
-            }
-        });
-        NavButton btnLeft = (NavButton) findViewById(R.id.btn_left);
-        btnLeft.setOnHoldListener(new NavButton.OnHoldListener() {
+    private void clickAC() {
+        this.flashEffect.run(this.clearFlash);
+    }
+
+    /**
+     * perform a command that edits the equation without inserting a symbol, such as
+     * {@link EqtTextWatcher#OP_LEFT moving the cursor to the left}
+     * @param command command to perform
+     */
+    private void clickEdit(String command) {
+        try {
+            MainActivity.this.eqtTextWatcher.perform(command, null);
+        }
+        catch (RuntimeException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            resetDisplay();
+        }
+        finally {
+            if (MainActivity.this.hasCalculated)
+                MainActivity.this.hasCalculated = false;
+        }
+    }
+
+    /**
+     * open another mode with the current equation and the previous result
+     * @param activity activity of the mode, such as {@link TableActivity}
+     * @return intent to start the activity. More extras can be added before starting it.
+     */
+    private Intent newModeIntent(Class<?> activity) {
+        // every mode reads the same extras
+        Intent intent = new Intent(MainActivity.this, activity);
+        intent.putExtra(TableActivity.EXTRA_EQT, MainActivity.this.eqtTextWatcher.getEqt().replace(MainActivity.CURSOR, ""));
+        intent.putExtra(TableActivity.EXTRA_ANS, MainActivity.this.getPrevResult());
+        intent.putExtra(TableActivity.EXTRA_VARIABLES, MainActivity.this.variables);
+        return intent;
+    }
+
+    /**
+     * solve the equation and show the result. Presses during a flash are coalesced into one more
+     * flash after it.
+     */
+    private void clickEqual() {
+        this.flashEffect.run(this.equalFlash);
+    }
+
+    /**
+     * switch between the real and the complex mode of {@link #clickEqual()}
+     */
+    private void toggleComplexMode() {
+        MainActivity.this.complexMode = !MainActivity.this.complexMode;
+        ((KeypadView) findViewById(R.id.keypad)).setKeyChecked(R.id.btn_complex, MainActivity.this.complexMode);
+    }
+
+    /**
+     * find the value of {@link Symbol#SYM_X x} satisfying the equation and show it
+     */
+    private void clickSolve() {
+        this.flashEffect.run(this.solveFlash);
+    }
+
+    /**
+     * dispatch the keys of the {@link KeypadView keypad}
+     */
+    private void initKeypad() {
+        KeypadView keypad = (KeypadView) findViewById(R.id.keypad);
+        keypad.setOnKeyListener(new KeypadView.OnKeyListener() {
             @Override
-            public void onHold() {
-                try {
-                    MainActivity.this.eqt.setText(EqtTextWatcher.OP_LEFT);
-                }
-                catch (RuntimeException e) {
-                    Log.e(MainActivity.TAG, Log.getStackTraceString(e));
-                    resetDisplay();
+            public void onKey(int id, Symbol symbol) {
+                recordKey(id, symbol);
+                if (symbol != null) {
+                    if (Symbol.isNum(symbol))
+                        clickNum(symbol);
+                    else
+                        clickOp(symbol);
+                    return;
                 }
-                finally {
-                    if (MainActivity.this.hasCalculated)
-                        MainActivity.this.hasCalculated = false;
+                switch (id) {
+                    case R.id.btn_AC:
+                        clickAC();
+                        break;
+                    case R.id.btn_left:
+                        clickEdit(EqtTextWatcher.OP_LEFT);
+                        break;
+                    case R.id.btn_right:
+                        clickEdit(EqtTextWatcher.OP_RIGHT);
+                        break;
+                    case R.id.btn_del:
+                        clickEdit(EqtTextWatcher.OP_DEL);
+                        break;
+                    case R.id.btn_equal:
+                        clickEqual();
+                        break;
+                    case R.id.btn_solve:
+                        clickSolve();
+                        break;
+                    case R.id.btn_table:
+                        startActivity(newModeIntent(TableActivity.class));
+                        break;
+                    case R.id.btn_plot:
+                        startActivity(newModeIntent(PlotActivity.class));
+                        break;
+                    case R.id.btn_integral:
+                        startActivity(newModeIntent(RangeActivity.class).putExtra(RangeActivity.EXTRA_MODE, RangeActivity.MODE_INTEGRAL));
+                        break;
+                    case R.id.btn_sum:
+                        startActivity(newModeIntent(RangeActivity.class).putExtra(RangeActivity.EXTRA_MODE, RangeActivity.MODE_SUM));
+                        break;
+                    case R.id.btn_product:
+                        startActivity(newModeIntent(RangeActivity.class).putExtra(RangeActivity.EXTRA_MODE, RangeActivity.MODE_PRODUCT));
+                        break;
+                    case R.id.btn_sheet:
+                        startActivity(newModeIntent(SheetActivity.class));
+                        break;
+                    case R.id.btn_precise:
+                        startActivity(newModeIntent(PreciseActivity.class));
+                        break;
+                    case R.id.btn_complex:
+                        toggleComplexMode();
+                        break;
+                    case R.id.btn_m_plus:
+                        MainActivity.this.flashEffect.run(MainActivity.this.memoryPlusFlash);
+                        break;
+                    case R.id.btn_m_minus:
+                        MainActivity.this.flashEffect.run(MainActivity.this.memoryMinusFlash);
+                        break;
                 }
             }
         });
-        NavButton btnRight = (NavButton) findViewById(R.id.btn_right);
-        btnRight.setOnHoldListener(new NavButton.OnHoldListener() {
-            @Override
-            public void onHold() {
-                try {
-                    MainActivity.this.eqt.setText(EqtTextWatcher.OP_RIGHT);
-                }
-                catch (RuntimeException e) {
-                    Log.e(MainActivity.TAG, Log.getStackTraceString(e));
-                    resetDisplay();
-                }
-                finally {
-                    if (MainActivity.this.hasCalculated)
-                        MainActivity.this.hasCalculated = false;
-                }
+    }
+
+    /**
+     * record a key press of the {@link KeypadView keypad} into the {@link #recorder}
+     * @param id id of the key
+     * @param symbol symbol of the key, or null if it is not a symbol key
+     */
+    private void recordKey(int id, Symbol symbol) {
+        if (this.recorder == null)
+            return;
+        long now = SystemClock.uptimeMillis();
+        if (symbol != null) {
+            this.recorder.recordSymbol(now, symbol);
+            return;
+        }
+        switch (id) {
+            case R.id.btn_left:
+                this.recorder.record(now, InputTrace.KEY_LEFT);
+                break;
+            case R.id.btn_right:
+                this.recorder.record(now, InputTrace.KEY_RIGHT);
+                break;
+            case R.id.btn_del:
+                this.recorder.record(now, InputTrace.KEY_DEL);
+                break;
+            case R.id.btn_AC:
+                this.recorder.record(now, InputTrace.KEY_AC);
+                break;
+            case R.id.btn_equal:
+                this.recorder.record(now, InputTrace.KEY_EQUAL);
+                break;
+            case R.id.btn_complex:
+                this.recorder.record(now, InputTrace.KEY_COMPLEX);
+                break;
+        }
+    }
+
+    /**
+     * write the key presses recorded so far to {@link #TRACE_FILE}
+     */
+    private void writeTrace() {
+        if (this.recorder == null || this.recorder.size() == 0)
+            return;
+        try {
+            FileOutputStream out = openFileOutput(MainActivity.TRACE_FILE, MODE_PRIVATE);
+            try {
+                this.recorder.writeTo(out);
             }
-        });
-        Button btnDel = (Button) findViewById(R.id.btn_del);
-        btnDel.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                try {
-                    MainActivity.this.eqt.setText(EqtTextWatcher.OP_DEL);
-                }
-                catch (RuntimeException e) {
-                    Log.e(MainActivity.TAG, Log.getStackTraceString(e));
-                    resetDisplay();
-                }
-                finally {
-                    if (MainActivity.this.hasCalculated)
-                        MainActivity.this.hasCalculated = false;
-                }
+            finally {
+                out.close();
             }
-        });
-        Button btnEqual = (Button) findViewById(R.id.btn_equal);
-        btnEqual.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View view) {
-                FlashEffect flashEffect = FlashEffect.getInstance(MainActivity.this);
-                Log.i(MainActivity.TAG, "completed: " + flashEffect.isCompleted());
-                if (!flashEffect.isCompleted())
-                    return;
+        }
+        catch (IOException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+        }
+    }
 
-                EqtSolver eqtSolver = new EqtSolver(MainActivity.this, MainActivity.this.eqtTextWatcher.getEqt(), MainActivity.this.getPrevResult());
-                String result = eqtSolver.solve();
-                flashEffect.run(new FlashEffect.IFlashEffect() {
-                    @Override
-                    public void postCallback(Handler handler) {
-                        if (!eqtSolver.hasErr()) {
-                            if (result.length() > MainActivity.MAX_RESULT_DISPLAY_WIDTH) {
-                                int expPos = result.indexOf("E");
-                                if (expPos == -1) {
-                                    handler.postDelayed(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            MainActivity.this.result.setText(result.substring(0, MainActivity.MAX_RESULT_DISPLAY_WIDTH));
-                                            flashEffect.setCompleted(true);
-                                        }
-                                    }, MainActivity.RESULT_SYNC_DURATION);
-                                }
-                                else {
-                                    int expW = result.length() - expPos;
-                                    handler.postDelayed(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            MainActivity.this.result.setText(result.substring(0, MainActivity.MAX_RESULT_DISPLAY_WIDTH - expW) + result.substring(expPos));
-                                            flashEffect.setCompleted(true);
-                                        }
-                                    }, MainActivity.RESULT_SYNC_DURATION);
-                                }
-                            }
-                            else {
-                                handler.postDelayed(new Runnable() {
-                                    @Override
-                                    public void run() {
-                                        MainActivity.this.result.setText(result);
-                                        flashEffect.setCompleted(true);
-                                    }
-                                }, MainActivity.RESULT_SYNC_DURATION);
-                            }
-                            MainActivity.this.hasCalculated = true;
-                        }
-                        else {
-                            handler.postDelayed(new Runnable() {
-                                @Override
-                                public void run() {
-                                    MainActivity.this.result.setText(result);
-                                    flashEffect.setCompleted(true);
-                                }
-                            }, MainActivity.RESULT_SYNC_DURATION);
-                        }
-                    }
-                });
+    /**
+     * write the frame timings recorded so far to {@link #FRAME_LOG_FILE}
+     */
+    private void writeFrameLog() {
+        if (this.frameMonitor == null || this.frameMonitor.getLog().size() == 0)
+            return;
+        try {
+            Writer out = new OutputStreamWriter(openFileOutput(MainActivity.FRAME_LOG_FILE, MODE_PRIVATE), "UTF-8");
+            try {
+                this.frameMonitor.getLog().dump(out);
             }
-        });
+            finally {
+                out.close();
+            }
+        }
+        catch (IOException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+        }
+    }
+
+    /**
+     * restore the calculator display from a snapshot in one pass
+     * @param savedInstanceState state saved by {@link #onSaveInstanceState(Bundle)}
+     * @return true if restored; false if there is no usable snapshot.
+     */
+    private boolean restoreDisplay(Bundle savedInstanceState) {
+        if (savedInstanceState == null)
+            return false;
+        EqtSnapshot snapshot = EqtSnapshot.read(savedInstanceState.getByteArray(MainActivity.STATE_SNAPSHOT));
+        if (snapshot == null)
+            return false;
+        try {
+            // the window only fits the screen it was computed for, e.g. not after rotation
+            this.eqtTextWatcher.restore(snapshot.getEqt(), snapshot.getDeviceWidth() == MainActivity.DEVICE_WIDTH ? snapshot.getWindow() : null);
+            this.eqtTextWatcher.perform(String.format("%s %s", EqtTextWatcher.OP_SET, snapshot.getEqt()));
+        }
+        catch (RuntimeException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            return false;
+        }
+        this.result.setText(snapshot.getResult());
+        this.hasCalculated = snapshot.hasCalculated();
+        this.complexMode = snapshot.isComplexMode();
+        return true;
     }
 
     /**
@@ -301,11 +601,18 @@ public class MainActivity extends AppCompatActivity {
         Point size = new Point();
         display.getSize(size);
         MainActivity.DEVICE_WIDTH = size.x;
-        this.eqt = (TextView) findViewById(R.id.eqt);
-        this.result = (TextView) findViewById(R.id.result);
+        this.eqt = (EquationView) findViewById(R.id.eqt);
+        this.result = (ResultView) findViewById(R.id.result);
         this.eqtTextWatcher = new EqtTextWatcher(this);
-        this.eqt.addTextChangedListener(this.eqtTextWatcher);
-        resetDisplay();
+        this.flashEffect = new FlashEffect(this);
+        this.evaluator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "MainActivity-evaluator");
+                t.setDaemon(true);
+                return t;
+            }
+        });
     }
 
     /**
@@ -313,7 +620,7 @@ public class MainActivity extends AppCompatActivity {
      */
     public void resetDisplay() {
         this.eqtTextWatcher.reset();
-        this.eqt.setText(String.format("%s %s", EqtTextWatcher.OP_SET, MainActivity.CURSOR));
+        this.eqtTextWatcher.perform(String.format("%s %s", EqtTextWatcher.OP_SET, MainActivity.CURSOR));
         this.result.setText("0");
     }
 
@@ -321,8 +628,44 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
-        initBtnText();
         initDisplay();
-        initBtn();
+        if (!restoreDisplay(savedInstanceState))
+            resetDisplay();
+        if (savedInstanceState != null && savedInstanceState.getDoubleArray(MainActivity.STATE_VARIABLES) != null)
+            this.variables = Arrays.copyOf(savedInstanceState.getDoubleArray(MainActivity.STATE_VARIABLES), EqtProgram.ENV_SIZE);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            this.recorder = new TraceRecorder();
+            this.frameMonitor = FrameMonitor.create(getWindowManager().getDefaultDisplay().getRefreshRate());
+            this.eqt.setFrameMonitor(this.frameMonitor);
+            this.result.setFrameMonitor(this.frameMonitor);
+        }
+        initKeypad();
+        ((KeypadView) findViewById(R.id.keypad)).setKeyChecked(R.id.btn_complex, this.complexMode);
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        this.snapshot = EqtSnapshot.write(this.eqtTextWatcher.getEqt(), this.eqtTextWatcher.getWindow(), this.result.getText(), this.hasCalculated, this.complexMode, MainActivity.DEVICE_WIDTH);
+        writeTrace();
+        writeFrameLog();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        this.flashEffect.release();
+        this.evaluationToken.cancel();
+        this.evaluator.shutdownNow();
+        if (this.frameMonitor != null)
+            this.frameMonitor.release();
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (this.snapshot != null)
+            outState.putByteArray(MainActivity.STATE_SNAPSHOT, this.snapshot);
+        outState.putDoubleArray(MainActivity.STATE_VARIABLES, this.variables);
     }
 }
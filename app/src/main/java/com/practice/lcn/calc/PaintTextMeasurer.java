@@ -0,0 +1,67 @@
+package com.practice.lcn.calc;
+
+import android.graphics.Paint;
+
+/**
+ * {@link TextMeasurer} backed by the glyph widths of a {@link Paint}. The widths of every character
+ * used by the {@link Symbol symbols} and the {@link MainActivity#CURSOR cursor} are measured once,
+ * so measuring a part of the equation is a sum of cached widths.
+ * @author lcn
+ */
+public class PaintTextMeasurer implements TextMeasurer {
+    private final Paint paint;
+    /**
+     * glyph widths of the ASCII characters indexed by character
+     */
+    private final float[] asciiWidths;
+    /**
+     * non-ASCII characters used by the symbols and their glyph widths
+     */
+    private final char[] otherChars;
+    private final float[] otherWidths;
+
+    /**
+     * @param paint paint the equation is drawn with. Its text size and typeface must not change
+     *              afterwards.
+     */
+    public PaintTextMeasurer(Paint paint) {
+        this.paint = paint;
+        this.asciiWidths = new float[128];
+        char[] ascii = new char[128];
+        for (int c = 0; c < ascii.length; c++)
+            ascii[c] = (char) c;
+        this.paint.getTextWidths(ascii, 0, ascii.length, this.asciiWidths);
+
+        StringBuilder others = new StringBuilder(MainActivity.CURSOR);
+        for (Symbol sym : Symbol.values()) {
+            String repr = sym.getRepr();
+            for (int i = 0; i < repr.length(); i++) {
+                char c = repr.charAt(i);
+                if (c >= 128 && others.indexOf(String.valueOf(c)) == -1)
+                    others.append(c);
+            }
+        }
+        this.otherChars = others.toString().toCharArray();
+        this.otherWidths = new float[this.otherChars.length];
+        this.paint.getTextWidths(this.otherChars, 0, this.otherChars.length, this.otherWidths);
+    }
+
+    @Override
+    public float widthOf(char c) {
+        if (c < 128)
+            return this.asciiWidths[c];
+        for (int i = 0; i < this.otherChars.length; i++) {
+            if (this.otherChars[i] == c)
+                return this.otherWidths[i];
+        }
+        return this.paint.measureText(String.valueOf(c));
+    }
+
+    @Override
+    public float measure(char[] text, int from, int to) {
+        float w = 0;
+        for (int i = from; i < to; i++)
+            w += widthOf(text[i]);
+        return w;
+    }
+}
@@ -0,0 +1,62 @@
+package com.practice.lcn.calc;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.TextView;
+
+import com.practice.lcn.calc.expr.EqtParser;
+import com.practice.lcn.calc.plot.TileCache;
+
+/**
+ * plot mode. It draws an equation in the {@link Symbol#SYM_X independent variable} with a
+ * {@link PlotView}.
+ * @author lcn
+ */
+public class PlotActivity extends AppCompatActivity {
+    /**
+     * intent extra holding the equation to plot
+     */
+    public static final String EXTRA_EQT = "com.practice.lcn.calc.EXTRA_EQT";
+    /**
+     * intent extra holding the previous result that {@link Symbol#SYM_ANS Ans} refers to
+     */
+    public static final String EXTRA_ANS = "com.practice.lcn.calc.EXTRA_ANS";
+    /**
+     * intent extra holding the values of the {@link Symbol#isVariable(Symbol) variables} indexed
+     * by slot, as a <code>double[]</code>
+     */
+    public static final String EXTRA_VARIABLES = "com.practice.lcn.calc.EXTRA_VARIABLES";
+
+    /**
+     * tiles of the plotted curve. It is null if the equation has a syntax error.
+     */
+    private TileCache tiles;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_plot);
+        String eqt = getIntent().getStringExtra(EXTRA_EQT);
+        if (eqt == null)
+            eqt = "";
+        TextView label = (TextView) findViewById(R.id.plot_eqt);
+        label.setText(eqt);
+        double[] env = EqtSolver.toEnv(getIntent().getStringExtra(EXTRA_ANS), getIntent().getDoubleArrayExtra(EXTRA_VARIABLES));
+        try {
+            this.tiles = new TileCache(EqtParser.compile(eqt), env);
+            ((PlotView) findViewById(R.id.plot)).setTiles(this.tiles);
+        }
+        catch (RuntimeException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            label.setText(EqtSolver.RESULT_SYN_ERR);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (this.tiles != null)
+            this.tiles.shutdown();
+        super.onDestroy();
+    }
+}
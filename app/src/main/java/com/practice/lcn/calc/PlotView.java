@@ -0,0 +1,223 @@
+package com.practice.lcn.calc;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import com.practice.lcn.calc.plot.TileCache;
+
+/**
+ * plot of an equation in the {@link Symbol#SYM_X independent variable}. Dragging pans the plot
+ * and pinching zooms it uniformly.
+ * <p>
+ * The curve is never sampled on the UI thread. {@link #onDraw(Canvas)} only maps the segments of
+ * the cached {@link TileCache tiles} onto the screen; tiles that are not ready yet are queued for
+ * rendering and temporarily replaced by the tiles of a neighbouring zoom level if cached.
+ * </p>
+ * @author lcn
+ */
+public class PlotView extends View {
+    /**
+     * initial scale in pixels per unit
+     */
+    public static final float DEFAULT_SCALE = 64;
+    /**
+     * minimum scale in pixels per unit
+     */
+    public static final float MIN_SCALE = 1f / 1024;
+    /**
+     * maximum scale in pixels per unit
+     */
+    public static final float MAX_SCALE = 1 << 20;
+
+    /**
+     * tiles of the curve. It is null until {@link #setTiles(TileCache)} is called.
+     */
+    private TileCache tiles;
+    /**
+     * world coordinate shown in the center of the view
+     */
+    private double centerX;
+    private double centerY;
+    /**
+     * pixels per unit
+     */
+    private float scale;
+    /**
+     * screen coordinates of the segments being drawn. It is reused across frames.
+     */
+    private float[] buffer;
+    private final Paint curvePaint;
+    private final Paint axisPaint;
+    private final ScaleGestureDetector scaleDetector;
+    private float lastTouchX;
+    private float lastTouchY;
+    /**
+     * schedules a redraw from the background thread once a tile is ready
+     */
+    private final Runnable invalidator = new Runnable() {
+        @Override
+        public void run() {
+            invalidate();
+        }
+    };
+
+    /**
+     * create a new plot view
+     * @param context context that creates this view
+     * @param attrs unused
+     */
+    public PlotView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        this.scale = DEFAULT_SCALE;
+        this.buffer = new float[1024];
+        this.curvePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.curvePaint.setColor(ContextCompat.getColor(context, R.color.btn_bg_op));
+        this.curvePaint.setStrokeWidth(3);
+        this.axisPaint = new Paint();
+        this.axisPaint.setColor(ContextCompat.getColor(context, R.color.keypad_bg));
+        this.scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+            @Override
+            public boolean onScale(ScaleGestureDetector detector) {
+                float factor = detector.getScaleFactor();
+                float newScale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, PlotView.this.scale * factor));
+                // keep the world point under the focus still
+                double fx = toWorldX(detector.getFocusX());
+                double fy = toWorldY(detector.getFocusY());
+                PlotView.this.scale = newScale;
+                PlotView.this.centerX += fx - toWorldX(detector.getFocusX());
+                PlotView.this.centerY += fy - toWorldY(detector.getFocusY());
+                invalidate();
+                return true;
+            }
+        });
+    }
+
+    /**
+     * set the tiles to draw
+     * @param tiles tiles of the curve
+     */
+    public void setTiles(TileCache tiles) {
+        this.tiles = tiles;
+        this.tiles.setListener(new TileCache.Listener() {
+            @Override
+            public void onTileReady() {
+                post(PlotView.this.invalidator);
+            }
+        });
+        invalidate();
+    }
+
+    private double toWorldX(float sx) {
+        return this.centerX + (sx - getWidth() * 0.5) / this.scale;
+    }
+
+    private double toWorldY(float sy) {
+        return this.centerY - (sy - getHeight() * 0.5) / this.scale;
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (this.tiles != null)
+            this.tiles.setViewHeight(h);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        this.scaleDetector.onTouchEvent(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                this.lastTouchX = event.getX();
+                this.lastTouchY = event.getY();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                if (!this.scaleDetector.isInProgress() && event.getPointerCount() == 1) {
+                    this.centerX -= (event.getX() - this.lastTouchX) / this.scale;
+                    this.centerY += (event.getY() - this.lastTouchY) / this.scale;
+                    invalidate();
+                }
+                this.lastTouchX = event.getX();
+                this.lastTouchY = event.getY();
+                break;
+            case MotionEvent.ACTION_POINTER_UP:
+                // continue panning with the remaining finger without a jump
+                int remaining = event.getActionIndex() == 0 ? 1 : 0;
+                this.lastTouchX = event.getX(remaining);
+                this.lastTouchY = event.getY(remaining);
+                break;
+            case MotionEvent.ACTION_UP:
+                performClick();
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * support accessibility feature
+     * @return true if a click listener has been called
+     */
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int w = getWidth();
+        int h = getHeight();
+        float axisX = (float) (w * 0.5 - this.centerX * this.scale);
+        float axisY = (float) (h * 0.5 + this.centerY * this.scale);
+        canvas.drawLine(0, axisY, w, axisY, this.axisPaint);
+        canvas.drawLine(axisX, 0, axisX, h, this.axisPaint);
+        if (this.tiles == null)
+            return;
+
+        int level = TileCache.levelOf(this.scale);
+        this.tiles.setLevel(level);
+        double tileW = TileCache.tileWidth(level);
+        long first = (long) Math.floor(toWorldX(0) / tileW);
+        long last = (long) Math.floor(toWorldX(w) / tileW);
+        for (long i = first; i <= last; i++) {
+            float[] tile = this.tiles.get(level, i);
+            if (tile != null) {
+                drawTile(canvas, tile);
+                continue;
+            }
+            // fall back to the coarser tile covering this one or the two finer ones
+            float[] coarse = this.tiles.peek(level - 1, i >> 1);
+            if (coarse != null) {
+                drawTile(canvas, coarse);
+                continue;
+            }
+            for (long j = 2 * i; j <= 2 * i + 1; j++) {
+                float[] fine = this.tiles.peek(level + 1, j);
+                if (fine != null)
+                    drawTile(canvas, fine);
+            }
+        }
+    }
+
+    /**
+     * map the segments of a tile to the screen and draw them
+     * @param canvas canvas to draw on
+     * @param tile segments in world units
+     */
+    private void drawTile(Canvas canvas, float[] tile) {
+        if (this.buffer.length < tile.length)
+            this.buffer = new float[Math.max(tile.length, this.buffer.length * 2)];
+        float halfW = getWidth() * 0.5f;
+        float halfH = getHeight() * 0.5f;
+        for (int i = 0; i < tile.length; i += 2) {
+            this.buffer[i] = (float) ((tile[i] - this.centerX) * this.scale + halfW);
+            this.buffer[i + 1] = (float) (halfH - (tile[i + 1] - this.centerY) * this.scale);
+        }
+        canvas.drawLines(this.buffer, 0, tile.length, this.curvePaint);
+    }
+}
@@ -0,0 +1,111 @@
+package com.practice.lcn.calc;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.practice.lcn.calc.bignum.BigMath;
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.digits.DigitSource;
+import com.practice.lcn.calc.digits.QuotientDigits;
+import com.practice.lcn.calc.expr.PreciseEvaluator;
+
+/**
+ * arbitrary-precision mode. It solves the equation to the amount of significant digits given by
+ * the user, up to {@link BigMath#MAX_DIGITS}, with {@link PreciseEvaluator}. The result is shown
+ * in a {@link ResultView}, so that all of its digits can be scrolled through. A rational result
+ * is expanded exactly by {@link QuotientDigits} as it is scrolled.
+ * @author lcn
+ */
+public class PreciseActivity extends AppCompatActivity {
+    private String eqt;
+    private String prevResult;
+    private double[] variables;
+    private EditText digits;
+    private ResultView result;
+    private TextView status;
+    private Handler handler;
+    /**
+     * true while the equation is being solved in the background
+     */
+    private boolean running;
+    /**
+     * cancels the running evaluation when the activity is destroyed
+     */
+    private CancellationToken token = CancellationToken.NONE;
+
+    /**
+     * solve the equation in a background thread and show the result when done
+     */
+    private void compute() {
+        if (this.running)
+            return;
+        final int n;
+        try {
+            n = Integer.parseInt(this.digits.getText().toString());
+        }
+        catch (NumberFormatException e) {
+            this.result.setText(EqtSolver.RESULT_SYN_ERR);
+            return;
+        }
+        if (n < 1 || n > BigMath.MAX_DIGITS) {
+            this.result.setText(EqtSolver.RESULT_TOO_COMPLEX);
+            return;
+        }
+        this.running = true;
+        this.result.setText("");
+        final CancellationToken token = CancellationToken.cancellable();
+        this.token = token;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long begin = System.nanoTime();
+                final DigitSource digits = EqtSolver.evaluatePreciseDigits(PreciseActivity.this.eqt, PreciseActivity.this.prevResult, PreciseActivity.this.variables, n, token);
+                final long elapsed = (System.nanoTime() - begin) / 1000000;
+                PreciseActivity.this.handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        PreciseActivity.this.result.setDigits(digits);
+                        PreciseActivity.this.status.setText(getResources().getString(R.string.precise_status, n, elapsed));
+                        PreciseActivity.this.running = false;
+                    }
+                });
+            }
+        }).start();
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_precise);
+        this.handler = new Handler(getMainLooper());
+        this.eqt = getIntent().getStringExtra(TableActivity.EXTRA_EQT);
+        if (this.eqt == null)
+            this.eqt = "";
+        this.prevResult = getIntent().getStringExtra(TableActivity.EXTRA_ANS);
+        if (this.prevResult == null)
+            this.prevResult = "";
+        this.variables = getIntent().getDoubleArrayExtra(TableActivity.EXTRA_VARIABLES);
+        ((TextView) findViewById(R.id.precise_eqt)).setText(this.eqt);
+        this.digits = (EditText) findViewById(R.id.precise_digits);
+        this.result = (ResultView) findViewById(R.id.precise_result);
+        this.status = (TextView) findViewById(R.id.precise_status);
+        Button btnCompute = (Button) findViewById(R.id.btn_compute);
+        btnCompute.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                compute();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        this.token.cancel();
+        super.onDestroy();
+    }
+}
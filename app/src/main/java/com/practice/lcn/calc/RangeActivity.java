@@ -0,0 +1,183 @@
+package com.practice.lcn.calc;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.expr.EqtParser;
+import com.practice.lcn.calc.expr.EqtProgram;
+import com.practice.lcn.calc.expr.Integrator;
+import com.practice.lcn.calc.expr.Series;
+
+/**
+ * integral, sum and product modes. It reduces an equation in the
+ * {@link Symbol#SYM_X independent variable} over a range given by the user: the definite integral
+ * over <code>[from, to]</code> ({@link Integrator}), or the sum or product of the terms for the
+ * integers <code>x = from, ..., to</code> ({@link Series}).
+ * @author lcn
+ */
+public class RangeActivity extends AppCompatActivity {
+    /**
+     * intent extra holding the equation to reduce
+     */
+    public static final String EXTRA_EQT = "com.practice.lcn.calc.EXTRA_EQT";
+    /**
+     * intent extra holding the previous result that {@link Symbol#SYM_ANS Ans} refers to
+     */
+    public static final String EXTRA_ANS = "com.practice.lcn.calc.EXTRA_ANS";
+    /**
+     * intent extra holding the values of the {@link Symbol#isVariable(Symbol) variables} indexed
+     * by slot, as a <code>double[]</code>
+     */
+    public static final String EXTRA_VARIABLES = "com.practice.lcn.calc.EXTRA_VARIABLES";
+    /**
+     * intent extra holding one of {@link #MODE_INTEGRAL}, {@link #MODE_SUM} or {@link #MODE_PRODUCT}
+     */
+    public static final String EXTRA_MODE = "com.practice.lcn.calc.EXTRA_MODE";
+    /**
+     * definite integral
+     */
+    public static final int MODE_INTEGRAL = 0;
+    /**
+     * sum over an integer range
+     */
+    public static final int MODE_SUM = 1;
+    /**
+     * product over an integer range
+     */
+    public static final int MODE_PRODUCT = 2;
+    /**
+     * time budget of one reduction (in ms). Longer reductions are stopped and reported as
+     * {@link EqtSolver#RESULT_TOO_COMPLEX}.
+     */
+    public static final long TIME_BUDGET_MS = 10000;
+
+    private int mode;
+    /**
+     * compiled equation. It is null if the equation has a syntax error.
+     */
+    private EqtProgram program;
+    private double[] env;
+    private EditText from;
+    private EditText to;
+    private TextView result;
+    private Handler handler;
+    /**
+     * true while the reduction is running in the background
+     */
+    private boolean running;
+    /**
+     * cancels the running reduction when the activity is destroyed
+     */
+    private CancellationToken token = CancellationToken.NONE;
+
+    /**
+     * reduce the equation in a background thread and show the result when done
+     */
+    private void compute() {
+        if (this.program == null || this.running)
+            return;
+        final double lo;
+        final double hi;
+        try {
+            lo = Double.parseDouble(this.from.getText().toString());
+            hi = Double.parseDouble(this.to.getText().toString());
+        }
+        catch (NumberFormatException e) {
+            this.result.setText(EqtSolver.RESULT_SYN_ERR);
+            return;
+        }
+        if (this.mode != MODE_INTEGRAL && (lo != Math.rint(lo) || hi != Math.rint(hi))) {
+            this.result.setText(EqtSolver.RESULT_SYN_ERR);
+            return;
+        }
+        this.running = true;
+        this.result.setText("");
+        final CancellationToken token = CancellationToken.withBudget(TIME_BUDGET_MS);
+        this.token = token;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long begin = System.nanoTime();
+                String text;
+                try {
+                    double value;
+                    if (RangeActivity.this.mode == MODE_INTEGRAL)
+                        value = new Integrator(RangeActivity.this.program, RangeActivity.this.env).integrate(lo, hi, token);
+                    else if (RangeActivity.this.mode == MODE_SUM)
+                        value = new Series(RangeActivity.this.program, RangeActivity.this.env).sum((long) lo, (long) hi, token);
+                    else
+                        value = new Series(RangeActivity.this.program, RangeActivity.this.env).product((long) lo, (long) hi, token);
+                    text = EqtSolver.toResult(value);
+                }
+                catch (EqtTooComplexException e) {
+                    Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+                    text = EqtSolver.RESULT_TOO_COMPLEX;
+                }
+                catch (RuntimeException e) {
+                    // e.g. too many terms. An uncaught exception would take the app down with this thread.
+                    Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+                    text = EqtSolver.RESULT_SYN_ERR;
+                }
+                final String shown = text;
+                final long elapsed = (System.nanoTime() - begin) / 1000000;
+                RangeActivity.this.handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        RangeActivity.this.result.setText(shown);
+                        ((TextView) findViewById(R.id.range_status)).setText(getResources().getString(R.string.range_status, elapsed));
+                        RangeActivity.this.running = false;
+                    }
+                });
+            }
+        }).start();
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_range);
+        this.handler = new Handler(getMainLooper());
+        this.mode = getIntent().getIntExtra(EXTRA_MODE, MODE_INTEGRAL);
+        String eqt = getIntent().getStringExtra(EXTRA_EQT);
+        if (eqt == null)
+            eqt = "";
+        int[] titles = { R.string.btn_integral, R.string.btn_sum, R.string.btn_product };
+        ((TextView) findViewById(R.id.range_eqt)).setText(getResources().getString(titles[this.mode]) + " " + eqt);
+        this.from = (EditText) findViewById(R.id.range_from);
+        this.to = (EditText) findViewById(R.id.range_to);
+        this.result = (TextView) findViewById(R.id.range_result);
+        this.env = EqtSolver.toEnv(getIntent().getStringExtra(EXTRA_ANS), getIntent().getDoubleArrayExtra(EXTRA_VARIABLES));
+        try {
+            this.program = EqtParser.compile(eqt);
+        }
+        catch (EqtTooComplexException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            this.result.setText(EqtSolver.RESULT_TOO_COMPLEX);
+        }
+        catch (RuntimeException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            this.result.setText(EqtSolver.RESULT_SYN_ERR);
+        }
+        Button btnCompute = (Button) findViewById(R.id.btn_compute);
+        btnCompute.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                compute();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        this.token.cancel();
+        super.onDestroy();
+    }
+}
@@ -0,0 +1,238 @@
+package com.practice.lcn.calc;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.VelocityTracker;
+import android.view.View;
+import android.widget.OverScroller;
+
+import com.practice.lcn.calc.digits.DigitSource;
+import com.practice.lcn.calc.digits.StringDigits;
+import com.practice.lcn.calc.trace.FrameLog;
+
+/**
+ * result display. A result wider than the view scrolls horizontally instead of being truncated,
+ * while an exponent such as <code>E-300</code> stays pinned to the right edge.
+ * <p>
+ * The display is virtualized: characters are drawn in a monospaced font, so the characters on
+ * screen follow from the scroll offset alone, and only those are fetched from the
+ * {@link DigitSource}. A source generating its digits lazily therefore costs no more than the
+ * visible part, however long the result is.
+ * </p>
+ * @author lcn
+ */
+public class ResultView extends View {
+    /**
+     * text size (in sp)
+     */
+    public static final float TEXT_SIZE_SP = 32;
+
+    private final Paint paint;
+    private final Paint.FontMetrics fontMetrics;
+    /**
+     * advance of every character of the monospaced font
+     */
+    private final float charWidth;
+    private final OverScroller scroller;
+    private VelocityTracker velocityTracker;
+    private float lastTouchX;
+
+    private DigitSource digits;
+    /**
+     * {@link DigitSource#exponent() exponent} of {@link #digits}, or null
+     */
+    private String exponent;
+    /**
+     * scroll offset (in px) of the first character shown
+     */
+    private int offset;
+    /**
+     * visible characters. It is reused across frames.
+     */
+    private char[] buffer;
+    /**
+     * monitor timing the updates, or null
+     */
+    private FrameMonitor frameMonitor;
+
+    /**
+     * create a new result display
+     * @param context context that creates this view
+     * @param attrs unused
+     */
+    public ResultView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.paint.setTypeface(Typeface.MONOSPACE);
+        this.paint.setColor(ContextCompat.getColor(context, R.color.display_fg));
+        this.paint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, TEXT_SIZE_SP, getResources().getDisplayMetrics()));
+        this.fontMetrics = this.paint.getFontMetrics();
+        this.charWidth = this.paint.measureText("0");
+        this.scroller = new OverScroller(context);
+        this.buffer = new char[0];
+        this.digits = new StringDigits("");
+    }
+
+    /**
+     * @param monitor monitor timing the updates of this display, or null
+     */
+    public void setFrameMonitor(FrameMonitor monitor) {
+        this.frameMonitor = monitor;
+    }
+
+    /**
+     * show a result
+     * @param text result in string form, such as <code>1.5</code> or {@link EqtSolver#RESULT_SYN_ERR}
+     */
+    public void setText(String text) {
+        setDigits(new StringDigits(text));
+    }
+
+    /**
+     * show a result whose characters are generated on demand, scrolled to its beginning
+     * @param digits characters of the result
+     */
+    public void setDigits(DigitSource digits) {
+        this.digits = digits;
+        this.exponent = digits.exponent();
+        this.offset = 0;
+        this.scroller.forceFinished(true);
+        invalidate();
+        if (this.frameMonitor != null)
+            this.frameMonitor.scheduled(FrameLog.DISPLAY_RESULT);
+    }
+
+    /**
+     * @return the result shown. For a lazily generated result, it is its short form given by
+     *         {@link DigitSource#toString()}.
+     */
+    public String getText() {
+        return this.digits.toString();
+    }
+
+    /**
+     * @return width (in px) available to the scrolling part
+     */
+    private int scrollWidth() {
+        int w = getWidth() - getPaddingLeft() - getPaddingRight();
+        if (this.exponent != null)
+            w -= (int) Math.ceil(this.exponent.length() * this.charWidth);
+        return Math.max(0, w);
+    }
+
+    /**
+     * @return maximum scroll offset (in px)
+     */
+    private int maxOffset() {
+        double contentWidth = this.digits.length() * (double) this.charWidth;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, Math.ceil(contentWidth - scrollWidth())));
+    }
+
+    private void scrollTo(int offset) {
+        offset = Math.max(0, Math.min(maxOffset(), offset));
+        if (offset != this.offset) {
+            this.offset = offset;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int h = getPaddingTop() + (int) Math.ceil(this.fontMetrics.descent - this.fontMetrics.ascent) + getPaddingBottom();
+        setMeasuredDimension(resolveSize(getSuggestedMinimumWidth(), widthMeasureSpec), resolveSize(h, heightMeasureSpec));
+    }
+
+    /**
+     * scroll the result by dragging and flinging it horizontally
+     * @param event motion event that the user performed
+     * @return true
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (this.velocityTracker == null)
+            this.velocityTracker = VelocityTracker.obtain();
+        this.velocityTracker.addMovement(event);
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                this.scroller.forceFinished(true);
+                this.lastTouchX = event.getX();
+                break;
+            case MotionEvent.ACTION_MOVE:
+                scrollTo(this.offset + Math.round(this.lastTouchX - event.getX()));
+                this.lastTouchX = event.getX();
+                break;
+            case MotionEvent.ACTION_UP:
+                this.velocityTracker.computeCurrentVelocity(1000);
+                this.scroller.fling(this.offset, 0, -Math.round(this.velocityTracker.getXVelocity()), 0, 0, maxOffset(), 0, 0);
+                invalidate();
+                performClick();
+                // fall through
+            case MotionEvent.ACTION_CANCEL:
+                this.velocityTracker.recycle();
+                this.velocityTracker = null;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * support accessibility feature
+     * @return true if a click listener has been called
+     */
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    public void computeScroll() {
+        if (this.scroller.computeScrollOffset())
+            scrollTo(this.scroller.getCurrX());
+        if (!this.scroller.isFinished())
+            invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (this.frameMonitor != null)
+            this.frameMonitor.drawn(FrameLog.DISPLAY_RESULT);
+        float y = getPaddingTop() - this.fontMetrics.ascent;
+        int left = getPaddingLeft();
+        int right = getWidth() - getPaddingRight();
+        int scrollW = scrollWidth();
+        long length = this.digits.length();
+        float exponentW = this.exponent == null ? 0 : this.exponent.length() * this.charWidth;
+
+        double contentWidth = length * (double) this.charWidth;
+        float x;
+        long first;
+        if (contentWidth <= scrollW) {
+            // short results are aligned to the right as before
+            x = right - exponentW - (float) contentWidth;
+            first = 0;
+        }
+        else {
+            first = (long) (this.offset / this.charWidth);
+            x = left + (float) (first * (double) this.charWidth - this.offset);
+        }
+        int count = (int) Math.min(length - first, (long) Math.ceil(scrollW / this.charWidth) + 1);
+        if (count > 0) {
+            if (this.buffer.length < count)
+                this.buffer = new char[count];
+            this.digits.getChars(first, this.buffer, count);
+            canvas.save();
+            canvas.clipRect(left, 0, left + scrollW, getHeight());
+            canvas.drawText(this.buffer, 0, count, x, y, this.paint);
+            canvas.restore();
+        }
+        if (this.exponent != null)
+            canvas.drawText(this.exponent, right - exponentW, y, this.paint);
+    }
+}
@@ -0,0 +1,126 @@
+package com.practice.lcn.calc;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.practice.lcn.calc.sheet.Worksheet;
+
+/**
+ * worksheet mode. It keeps many lines, each of which can refer to the results of the earlier
+ * lines with {@link Symbol#SYM_LINE "#"}, and shows the result of every line. See
+ * {@link Worksheet} for how an edit only re-evaluates the lines depending on it.
+ * <p>
+ * A line is typed in the input field and added below the others, or replaces the selected line.
+ * <code>*</code> and the other ASCII spellings are accepted, see {@link Symbol#fromExpr(String)}.
+ * The equation in the equation display, if any, becomes the first line.
+ * </p>
+ * @author lcn
+ */
+public class SheetActivity extends AppCompatActivity {
+    private Worksheet sheet;
+    /**
+     * index of the line replaced by the set button, or -1 if no line is selected
+     */
+    private int selected;
+    private EditText input;
+    private TextView status;
+    private final LineAdapter adapter = new LineAdapter();
+
+    /**
+     * renders the lines that are currently on screen
+     */
+    private class LineAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return SheetActivity.this.sheet.size();
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = (TextView) getLayoutInflater().inflate(R.layout.table_row, parent, false);
+            }
+            row.setText(Symbol.SYM_LINE.getRepr() + (position + 1) + "  " + SheetActivity.this.sheet.getLine(position) + "  \u2192  " + SheetActivity.this.sheet.getResult(position));
+            return row;
+        }
+    }
+
+    /**
+     * add the typed line below the others, or replace the selected line with it
+     * @param replace true if the selected line is replaced
+     */
+    private void commit(boolean replace) {
+        String eqt = Symbol.fromExpr(this.input.getText().toString().trim());
+        if (eqt.length() == 0 || (replace && this.selected == -1))
+            return;
+        if (!replace && this.sheet.size() == Worksheet.MAX_LINES)
+            return;
+        long begin = System.nanoTime();
+        int evaluated;
+        if (replace)
+            evaluated = this.sheet.set(this.selected, eqt);
+        else {
+            this.selected = this.sheet.append(eqt);
+            evaluated = 1;
+        }
+        long elapsed = (System.nanoTime() - begin) / 1000;
+        this.adapter.notifyDataSetChanged();
+        this.status.setText(getResources().getString(R.string.sheet_status, evaluated, elapsed));
+        if (!replace)
+            this.input.setText("");
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_sheet);
+        this.sheet = new Worksheet(EqtSolver.toEnv(getIntent().getStringExtra(TableActivity.EXTRA_ANS), getIntent().getDoubleArrayExtra(TableActivity.EXTRA_VARIABLES)));
+        this.selected = -1;
+        String eqt = getIntent().getStringExtra(TableActivity.EXTRA_EQT);
+        if (eqt != null && eqt.length() > 0)
+            this.selected = this.sheet.append(eqt);
+        this.input = (EditText) findViewById(R.id.sheet_input);
+        this.status = (TextView) findViewById(R.id.sheet_status);
+        ListView lines = (ListView) findViewById(R.id.sheet_lines);
+        lines.setAdapter(this.adapter);
+        lines.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                SheetActivity.this.selected = position;
+                SheetActivity.this.input.setText(SheetActivity.this.sheet.getLine(position));
+                SheetActivity.this.status.setText(getResources().getString(R.string.sheet_selected, position + 1));
+            }
+        });
+        ((Button) findViewById(R.id.btn_sheet_set)).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                commit(true);
+            }
+        });
+        ((Button) findViewById(R.id.btn_sheet_add)).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                commit(false);
+            }
+        });
+    }
+}
@@ -85,7 +85,120 @@ public enum Symbol {
     /**
      * reference of the previous calculation result
      */
-    SYM_ANS("Ans", R.id.btn_ans);
+    SYM_ANS("Ans", R.id.btn_ans),
+    /**
+     * independent variable used by the table mode. It has no value in the normal mode, so solving
+     * an equation containing it there results in a syntax error.
+     */
+    SYM_X("x", R.id.btn_x),
+    /**
+     * relation between the left-hand side and the right-hand side of an equation to solve for
+     * {@link #SYM_X x}. It is only meaningful in the solve mode.
+     */
+    SYM_EQ("=", R.id.btn_eq),
+    /**
+     * opening bracket of a matrix literal such as <code>[1,2;3,4]</code>
+     */
+    SYM_LEFT_BRACKET("[", R.id.btn_left_bracket),
+    /**
+     * closing bracket of a matrix literal
+     */
+    SYM_RIGHT_BRACKET("]", R.id.btn_right_bracket),
+    /**
+     * separator of the elements in a row of a matrix literal
+     */
+    SYM_COMMA(",", R.id.btn_comma),
+    /**
+     * separator of the rows of a matrix literal
+     */
+    SYM_SEMICOLON(";", R.id.btn_semicolon),
+    /**
+     * determinant of a square matrix
+     */
+    SYM_DET("det(", R.id.btn_det),
+    /**
+     * transpose of a matrix
+     */
+    SYM_TRN("trn(", R.id.btn_trn),
+    /**
+     * factorial operator, written after its operand
+     */
+    SYM_FACT("!", R.id.btn_fact),
+    /**
+     * binomial coefficient nCr, written as <code>C(n,r)</code>
+     */
+    SYM_NCR("C(", R.id.btn_ncr),
+    /**
+     * permutations nPr, written as <code>P(n,r)</code>
+     */
+    SYM_NPR("P(", R.id.btn_npr, "nPk("),
+    /**
+     * sine, in radians
+     */
+    SYM_SIN("sin(", R.id.btn_sin),
+    /**
+     * cosine, in radians
+     */
+    SYM_COS("cos(", R.id.btn_cos),
+    /**
+     * tangent, in radians
+     */
+    SYM_TAN("tan(", R.id.btn_tan),
+    /**
+     * natural logarithm
+     */
+    SYM_LN("ln(", R.id.btn_ln),
+    /**
+     * common (base 10) logarithm
+     */
+    SYM_LOG("log(", R.id.btn_log, "log10("),
+    /**
+     * square root
+     */
+    SYM_SQRT("\u221A(", R.id.btn_sqrt, "sqrt("),
+    /**
+     * natural exponential function e<sup>x</sup>
+     */
+    SYM_EXPONENTIAL("exp(", R.id.btn_exponential),
+    /**
+     * absolute value
+     */
+    SYM_ABS("abs(", R.id.btn_abs),
+    /**
+     * user-defined variable A. See {@link #SYM_STORE}.
+     */
+    SYM_VAR_A("A", R.id.btn_var_a),
+    /**
+     * user-defined variable B
+     */
+    SYM_VAR_B("B", R.id.btn_var_b),
+    /**
+     * user-defined variable D. There is no variable C, since <code>C(</code> is already
+     * {@link #SYM_NCR nCr}.
+     */
+    SYM_VAR_D("D", R.id.btn_var_d),
+    /**
+     * memory register, recalled by the MR key and accumulated by the M+ and M&minus; keys
+     */
+    SYM_MEM("M", R.id.btn_mr),
+    /**
+     * store the value of the equation into the {@link #isVariable(Symbol) variable} after it, e.g.
+     * <code>Ans&times;2&rarr;A</code>. It can only end an equation.
+     */
+    SYM_STORE("\u2192", R.id.btn_store),
+    /**
+     * reference to the result of an earlier line of the worksheet, written before the line
+     * number such as <code>#3</code>. It is only meaningful in the worksheet mode.
+     */
+    SYM_LINE("#", R.id.btn_line),
+    /**
+     * the constant &pi;
+     */
+    SYM_PI("\u03C0", R.id.btn_pi, "pi"),
+    /**
+     * Euler's number, the base of the natural logarithm
+     */
+    SYM_E("e", R.id.btn_e);
 
     /**
      * symbol representation in the {@link MainActivity#eqt equation display}.
@@ -96,17 +209,14 @@ public enum Symbol {
      */
     private int id;
     /**
-     * string representation that can be interpreted by the
-     * {@link org.mariuszgromada.math.mxparser.Expression Expression}. It is only used when the
-     * {@link org.mariuszgromada.math.mxparser.Expression Expression} cannot interpret {@link #repr},
-     * the representation in the {@link MainActivity#eqt equation display}. If the {@link #repr}
-     * can be interpreted, it will be left as <code>null</code>.
+     * ASCII spelling of the symbol accepted by {@link #fromExpr(String)}, e.g. <code>*</code> for
+     * &times;. It is <code>null</code> if {@link #repr}, the representation in the
+     * {@link MainActivity#eqt equation display}, can be typed on a keyboard as it is.
      */
     private String exprRepr;
 
     /**
-     * create a new math symbol which can be interpreted by
-     * {@link org.mariuszgromada.math.mxparser.Expression Expression}.
+     * create a new math symbol that is typed as it is shown.
      * @param repr string representation in the {@link MainActivity#eqt equation display}.
      * @param id symbol button id in the keypad display
      */
@@ -117,13 +227,11 @@ public enum Symbol {
     }
 
     /**
-     * create a new math symbol which cannot be directly interpreted by
-     * {@link org.mariuszgromada.math.mxparser.Expression Expression} from its representation
-     * {@link #repr} in the {@link MainActivity#eqt equation display}.
+     * create a new math symbol whose representation {@link #repr} in the
+     * {@link MainActivity#eqt equation display} cannot be typed on a keyboard.
      * @param repr string representation in the equation display
      * @param id symbol button id in the keypad display
-     * @param exprRepr string representation that can be interpreted by the
-     *                 {@link org.mariuszgromada.math.mxparser.Expression Expression}.
+     * @param exprRepr ASCII spelling accepted by {@link #fromExpr(String)}
      */
     Symbol(String repr, int id, String exprRepr) {
         this.repr = repr;
@@ -146,8 +254,8 @@ public enum Symbol {
     }
 
     /**
-     * @return the string representation that can be interpreted by the
-     *         {@link org.mariuszgromada.math.mxparser.Expression Expression}.
+     * @return the ASCII spelling accepted by {@link #fromExpr(String)}, or <code>null</code> if the
+     *         symbol is typed as it is shown.
      * @see #exprRepr
      */
     public String getExprRepr() {
@@ -172,6 +280,46 @@ public enum Symbol {
         return sym.equals(Symbol.SYM_LEFT_PAREN) || sym.equals(Symbol.SYM_RIGHT_PAREN) || sym.equals(Symbol.SYM_MUL) || sym.equals(Symbol.SYM_DIV) || sym.equals(Symbol.SYM_PLUS) || sym.equals(Symbol.SYM_MINUS) || sym.equals(Symbol.SYM_EXP) || sym.equals(Symbol.SYM_DOT);
     }
 
+    /**
+     * check if the symbol begins an operand on its own, so that it does not continue from the
+     * previous result like an operator does
+     * @param sym symbol to check
+     * @return true if so; otherwise false.
+     */
+    public static boolean startsOperand(Symbol sym) {
+        return sym.equals(Symbol.SYM_ANS) || sym.equals(Symbol.SYM_X) || sym.equals(Symbol.SYM_LEFT_BRACKET) || sym.equals(Symbol.SYM_DET) || sym.equals(Symbol.SYM_TRN) || sym.equals(Symbol.SYM_NCR) || sym.equals(Symbol.SYM_NPR) || isFunction(sym) || isVariable(sym) || isConstant(sym);
+    }
+
+    /**
+     * check if the symbol is a scientific function such as {@link #SYM_SIN sin(}, taking one
+     * argument up to the matching ")"
+     * @param sym symbol to check
+     * @return true if so; otherwise false.
+     * @see com.practice.lcn.calc.expr.Functions
+     */
+    public static boolean isFunction(Symbol sym) {
+        return sym.equals(Symbol.SYM_SIN) || sym.equals(Symbol.SYM_COS) || sym.equals(Symbol.SYM_TAN) || sym.equals(Symbol.SYM_LN) || sym.equals(Symbol.SYM_LOG) || sym.equals(Symbol.SYM_SQRT) || sym.equals(Symbol.SYM_EXPONENTIAL) || sym.equals(Symbol.SYM_ABS);
+    }
+
+    /**
+     * check if the symbol is a variable whose value is kept between calculations, i.e. a
+     * user-defined variable or the {@link #SYM_MEM memory register}
+     * @param sym symbol to check
+     * @return true if so; otherwise false.
+     */
+    public static boolean isVariable(Symbol sym) {
+        return sym.equals(Symbol.SYM_VAR_A) || sym.equals(Symbol.SYM_VAR_B) || sym.equals(Symbol.SYM_VAR_D) || sym.equals(Symbol.SYM_MEM);
+    }
+
+    /**
+     * check if the symbol is a mathematical constant such as {@link #SYM_PI &pi;}
+     * @param sym symbol to check
+     * @return true if so; otherwise false.
+     */
+    public static boolean isConstant(Symbol sym) {
+        return sym.equals(Symbol.SYM_PI) || sym.equals(Symbol.SYM_E);
+    }
+
     /**
      * find symbol by button ID
      * @param id calculator button id
@@ -201,19 +349,17 @@ public enum Symbol {
     }
 
     /**
-     * convert the equation in the equation display to a math expression which can be interpreted by
-     * {@link org.mariuszgromada.math.mxparser.Expression Expression}.
-     * @param eqt equation in the equation display
-     * @return the math expression which can be interpreted by
-     *         {@link org.mariuszgromada.math.mxparser.Expression Expression}.
+     * convert a typed equation to the equation display form, so that the ASCII spellings of
+     * {@link #exprRepr} such as <code>*</code> and <code>sqrt(</code> can be typed on a keyboard.
+     * @param text typed equation
+     * @return the equation in the equation display form
      */
-    public static String toExpr(String eqt) {
-        StringBuffer sb = new StringBuffer(eqt);
+    public static String fromExpr(String text) {
+        String eqt = text;
         for (Symbol sym : Symbol.values()) {
-            if (sym.getExprRepr() != null) {
-                sb.replace(0, sb.length(), sb.toString().replace(sym.getRepr(), sym.getExprRepr()));
-            }
+            if (sym.getExprRepr() != null)
+                eqt = eqt.replace(sym.getExprRepr(), sym.getRepr());
         }
-        return sb.toString();
+        return eqt;
     }
 }
@@ -0,0 +1,200 @@
+package com.practice.lcn.calc;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.practice.lcn.calc.expr.ColumnEvaluator;
+import com.practice.lcn.calc.expr.EqtParser;
+
+/**
+ * table mode. It evaluates an equation containing the {@link Symbol#SYM_X independent variable}
+ * over an arithmetic progression of inputs and lists the results.
+ * <p>
+ * The whole column is evaluated at once by a {@link ColumnEvaluator}. The input and output columns
+ * are kept as <code>double[]</code> and only the rows currently on screen are formatted.
+ * </p>
+ * @author lcn
+ */
+public class TableActivity extends AppCompatActivity {
+    /**
+     * intent extra holding the equation to tabulate
+     */
+    public static final String EXTRA_EQT = "com.practice.lcn.calc.EXTRA_EQT";
+    /**
+     * intent extra holding the previous result that {@link Symbol#SYM_ANS Ans} refers to
+     */
+    public static final String EXTRA_ANS = "com.practice.lcn.calc.EXTRA_ANS";
+    /**
+     * intent extra holding the values of the {@link Symbol#isVariable(Symbol) variables} indexed
+     * by slot, as a <code>double[]</code>
+     */
+    public static final String EXTRA_VARIABLES = "com.practice.lcn.calc.EXTRA_VARIABLES";
+    /**
+     * maximum amount of rows a table can have
+     */
+    public static final int MAX_ROWS = 10000000;
+
+    /**
+     * equation to tabulate
+     */
+    private String eqt;
+    /**
+     * values of the variables other than {@link Symbol#SYM_X x}
+     */
+    private double[] env;
+    /**
+     * evaluator of the compiled equation. It is null if the equation has a syntax error.
+     */
+    private ColumnEvaluator evaluator;
+    /**
+     * input column. It is reused as long as it is large enough.
+     */
+    private double[] xs;
+    /**
+     * output column. It is reused as long as it is large enough.
+     */
+    private double[] ys;
+    /**
+     * amount of valid rows in {@link #xs} and {@link #ys}
+     */
+    private int rows;
+    /**
+     * true while a table is being evaluated in the background
+     */
+    private boolean generating;
+
+    private EditText start;
+    private EditText step;
+    private EditText count;
+    private TextView status;
+    private Handler handler;
+    private final RowAdapter adapter = new RowAdapter();
+
+    /**
+     * renders the rows that are currently on screen
+     */
+    private class RowAdapter extends BaseAdapter {
+        @Override
+        public int getCount() {
+            return TableActivity.this.rows;
+        }
+
+        @Override
+        public Object getItem(int position) {
+            return null;
+        }
+
+        @Override
+        public long getItemId(int position) {
+            return position;
+        }
+
+        @Override
+        public View getView(int position, View convertView, ViewGroup parent) {
+            TextView row = (TextView) convertView;
+            if (row == null) {
+                row = (TextView) getLayoutInflater().inflate(R.layout.table_row, parent, false);
+            }
+            row.setText(EqtSolver.toResult(TableActivity.this.xs[position]) + "  \u2192  " + EqtSolver.toResult(TableActivity.this.ys[position]));
+            return row;
+        }
+    }
+
+    /**
+     * compile the equation given by the intent. Errors are shown in the status line.
+     */
+    private void compile() {
+        this.env = EqtSolver.toEnv(getIntent().getStringExtra(EXTRA_ANS), getIntent().getDoubleArrayExtra(EXTRA_VARIABLES));
+        try {
+            this.evaluator = new ColumnEvaluator(EqtParser.compile(this.eqt));
+        }
+        catch (RuntimeException e) {
+            Log.e(MainActivity.TAG, Log.getStackTraceString(e));
+            this.evaluator = null;
+            this.status.setText(EqtSolver.RESULT_SYN_ERR);
+        }
+    }
+
+    /**
+     * evaluate the table in a background thread and show it when done
+     */
+    private void generate() {
+        if (this.evaluator == null || this.generating)
+            return;
+        final double x0;
+        final double dx;
+        final int n;
+        try {
+            x0 = Double.parseDouble(this.start.getText().toString());
+            dx = Double.parseDouble(this.step.getText().toString());
+            n = Integer.parseInt(this.count.getText().toString());
+        }
+        catch (NumberFormatException e) {
+            this.status.setText(EqtSolver.RESULT_SYN_ERR);
+            return;
+        }
+        if (n < 0 || n > MAX_ROWS) {
+            this.status.setText(EqtSolver.RESULT_SYN_ERR);
+            return;
+        }
+        final double[] xs = this.xs != null && this.xs.length >= n ? this.xs : new double[n];
+        final double[] ys = this.ys != null && this.ys.length >= n ? this.ys : new double[n];
+        // hide the rows while the columns are being overwritten
+        this.generating = true;
+        this.rows = 0;
+        this.adapter.notifyDataSetChanged();
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long begin = System.nanoTime();
+                ColumnEvaluator.fillRange(xs, x0, dx, n);
+                TableActivity.this.evaluator.evaluate(xs, ys, n, TableActivity.this.env);
+                final long elapsed = (System.nanoTime() - begin) / 1000000;
+                TableActivity.this.handler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        TableActivity.this.xs = xs;
+                        TableActivity.this.ys = ys;
+                        TableActivity.this.rows = n;
+                        TableActivity.this.generating = false;
+                        TableActivity.this.adapter.notifyDataSetChanged();
+                        TableActivity.this.status.setText(getResources().getString(R.string.table_status, n, elapsed));
+                    }
+                });
+            }
+        }).start();
+    }
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_table);
+        this.handler = new Handler(getMainLooper());
+        this.eqt = getIntent().getStringExtra(EXTRA_EQT);
+        if (this.eqt == null)
+            this.eqt = "";
+        ((TextView) findViewById(R.id.table_eqt)).setText(this.eqt);
+        this.start = (EditText) findViewById(R.id.table_start);
+        this.step = (EditText) findViewById(R.id.table_step);
+        this.count = (EditText) findViewById(R.id.table_count);
+        this.status = (TextView) findViewById(R.id.table_status);
+        ((ListView) findViewById(R.id.table_rows)).setAdapter(this.adapter);
+        Button btnGenerate = (Button) findViewById(R.id.btn_generate);
+        btnGenerate.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                generate();
+            }
+        });
+        compile();
+    }
+}
@@ -0,0 +1,25 @@
+package com.practice.lcn.calc;
+
+/**
+ * measures the width of a part of the equation as it is drawn. {@link EqtWindow} only needs the
+ * widths, so it can follow the cursor with the {@link PaintTextMeasurer glyph widths} of the
+ * {@link EquationView equation display} on a device and with {@link FixedWidthMeasurer fixed
+ * widths} anywhere else.
+ * @author lcn
+ */
+public interface TextMeasurer {
+    /**
+     * @param c character
+     * @return width of the character (in px)
+     */
+    float widthOf(char c);
+
+    /**
+     * measure a part of an equation
+     * @param text characters of the equation
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @return width (in px)
+     */
+    float measure(char[] text, int from, int to);
+}
@@ -0,0 +1,518 @@
+package com.practice.lcn.calc.bignum;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.concurrent.ParallelRange;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * This namespace computes &pi;, e, exp, ln and square roots to any amount of significant digits.
+ * <p>
+ * The work is done on fixed-point {@link BigInteger}s, a value <code>v</code> standing for
+ * <code>v / 2<sup>bits</sup></code>. The series are summed by binary splitting, which turns the
+ * sum of <code>n</code> terms into a tree of balanced products: &pi; by the Chudnovsky series, e
+ * by <code>&Sigma; 1/k!</code>, and <code>e<sup>r</sup></code> by the bit-burst algorithm, which
+ * splits <code>r</code> into chunks of doubling length so that every chunk has a short numerator
+ * and needs few terms. The logarithm is found by Newton's iteration on exp, and the square root by
+ * Newton's iteration on integers, both doubling the precision at every step so that the last step
+ * costs about as much as all the others.
+ * </p>
+ * <p>
+ * &pi;, e, ln 2 and ln 10 are cached at the highest precision computed so far, and a lower
+ * precision is cut from the cached digits. Products of operands above {@link #PARALLEL_BITS} are
+ * split once by Karatsuba's method and the three half-size products run on all cores through
+ * {@link ParallelRange} (ForkJoin is not available on API level 15); the half-size products
+ * themselves use {@link BigInteger#multiply(BigInteger)}, which already switches to Karatsuba and
+ * Toom-Cook multiplication for large operands.
+ * </p>
+ * <p>
+ * Every function also takes a {@link CancellationToken}, checked between the merges of a binary
+ * splitting and the steps of an iteration, so that a computation of many digits can be given up.
+ * </p>
+ * @author lcn
+ */
+public class BigMath {
+    /**
+     * largest amount of significant digits
+     */
+    public static final int MAX_DIGITS = 100000;
+    /**
+     * smaller operands of a product are multiplied on the calling thread
+     */
+    static final int PARALLEL_BITS = 1 << 15;
+    /**
+     * bits computed beyond the requested precision, absorbing the truncation of every step
+     */
+    private static final int GUARD_BITS = 64;
+    /**
+     * bits of the first chunk of the bit-burst algorithm
+     */
+    private static final int FIRST_CHUNK_BITS = 8;
+    private static final double BITS_PER_DIGIT = Math.log(10) / Math.log(2);
+    private static final BigInteger FIVE = BigInteger.valueOf(5);
+    /**
+     * <code>640320<sup>3</sup> / 24</code> of the Chudnovsky series
+     */
+    private static final BigInteger CHUDNOVSKY_C3_24 = BigInteger.valueOf(10939058860032000L);
+
+    /**
+     * partial products and sum of a range of terms of a series split in binary
+     */
+    private static final class Split {
+        final BigInteger p;
+        final BigInteger q;
+        final BigInteger t;
+
+        Split(BigInteger p, BigInteger q, BigInteger t) {
+            this.p = p;
+            this.q = q;
+            this.t = t;
+        }
+    }
+
+    /**
+     * constant kept at the highest precision computed so far. It grows by at least a quarter, so
+     * that slowly increasing requests compute it only a few times.
+     */
+    private static abstract class Constant {
+        private BigInteger value;
+        private int bits = -1;
+
+        /**
+         * @param bits fraction bits
+         * @param token cancellation token
+         * @return the constant in fixed point
+         */
+        abstract BigInteger compute(int bits, CancellationToken token);
+
+        /**
+         * @param bits fraction bits
+         * @param token cancellation token. A cancelled computation leaves the cached value as it was.
+         * @return the constant in fixed point, cut from the cached value if it is precise enough
+         */
+        synchronized BigInteger get(int bits, CancellationToken token) {
+            if (this.bits < bits) {
+                int grown = Math.max(bits, this.bits + this.bits / 4);
+                this.value = compute(grown, token);
+                this.bits = grown;
+            }
+            return this.value.shiftRight(this.bits - bits);
+        }
+    }
+
+    private static final Constant PI = new Constant() {
+        @Override
+        BigInteger compute(int bits, CancellationToken token) {
+            // 14.18 digits per term
+            int n = (int) (bits / (14.18 * BITS_PER_DIGIT)) + 2;
+            Split s = chudnovsky(0, n, token);
+            // pi = 426880 sqrt(10005) Q / T
+            BigInteger sqrt = sqrtFloor(BigInteger.valueOf(10005).shiftLeft(2 * bits), token);
+            return multiply(sqrt, s.q.multiply(BigInteger.valueOf(426880))).divide(s.t);
+        }
+    };
+
+    private static final Constant E = new Constant() {
+        @Override
+        BigInteger compute(int bits, CancellationToken token) {
+            int n = termsFor(0, bits);
+            Split s = expSeries(BigInteger.ONE, 0, 1, n + 1, token);
+            // e = 1 + sum of 1/k! for k = 1..n
+            return s.t.shiftLeft(bits).divide(s.q).add(BigInteger.ONE.shiftLeft(bits));
+        }
+    };
+
+    private static final Constant LN_2 = new Constant() {
+        @Override
+        BigInteger compute(int bits, CancellationToken token) {
+            return lnNewton(BigInteger.ONE.shiftLeft(bits + 1), bits, token);
+        }
+    };
+
+    private static final Constant LN_10 = new Constant() {
+        @Override
+        BigInteger compute(int bits, CancellationToken token) {
+            // ln 10 = 3 ln 2 + ln 1.25
+            return LN_2.get(bits, token).multiply(BigInteger.valueOf(3)).add(lnNewton(BigInteger.valueOf(5).shiftLeft(bits - 2), bits, token));
+        }
+    };
+
+    private BigMath() {
+    }
+
+    /**
+     * multiply two integers, on all cores if both are longer than {@link #PARALLEL_BITS}
+     * @param a multiplicand
+     * @param b multiplier
+     * @return <code>a &times; b</code>
+     */
+    public static BigInteger multiply(BigInteger a, BigInteger b) {
+        if (Math.min(a.bitLength(), b.bitLength()) < PARALLEL_BITS || ParallelRange.parallelism() == 1)
+            return a.multiply(b);
+        int sign = a.signum() * b.signum();
+        a = a.abs();
+        b = b.abs();
+        // a b = z1 2^(2h) + (z2 - z1 - z0) 2^h + z0 with z0 = a0 b0, z1 = a1 b1, z2 = (a0 + a1)(b0 + b1)
+        int half = Math.min(a.bitLength(), b.bitLength()) / 2;
+        final BigInteger a1 = a.shiftRight(half);
+        final BigInteger b1 = b.shiftRight(half);
+        final BigInteger a0 = a.subtract(a1.shiftLeft(half));
+        final BigInteger b0 = b.subtract(b1.shiftLeft(half));
+        final BigInteger[] z = new BigInteger[3];
+        ParallelRange.run(0, z.length, 1, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                for (int i = from; i < to; i++) {
+                    if (i == 0)
+                        z[i] = a0.multiply(b0);
+                    else if (i == 1)
+                        z[i] = a1.multiply(b1);
+                    else
+                        z[i] = a0.add(a1).multiply(b0.add(b1));
+                }
+            }
+        });
+        BigInteger product = z[1].shiftLeft(2 * half).add(z[2].subtract(z[1]).subtract(z[0]).shiftLeft(half)).add(z[0]);
+        return sign < 0 ? product.negate() : product;
+    }
+
+    /**
+     * @param n non-negative integer
+     * @return <code>floor(&radic;n)</code>
+     * @throws ArithmeticException if <code>n</code> is negative
+     */
+    public static BigInteger sqrtFloor(BigInteger n) {
+        return sqrtFloor(n, CancellationToken.NONE);
+    }
+
+    /**
+     * @param n non-negative integer
+     * @param token cancellation token, checked at every doubling of the correct bits
+     * @return <code>floor(&radic;n)</code>
+     * @throws ArithmeticException if <code>n</code> is negative
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigInteger sqrtFloor(BigInteger n, CancellationToken token) {
+        if (n.signum() < 0)
+            throw new ArithmeticException("square root of a negative number");
+        if (n.bitLength() <= 52) {
+            long v = n.longValue();
+            long r = (long) Math.sqrt(v);
+            while (r * r > v)
+                r--;
+            while ((r + 1) * (r + 1) <= v)
+                r++;
+            return BigInteger.valueOf(r);
+        }
+        // the root of the upper half gives the upper half of the root, and one Newton step from it
+        // doubles the correct bits; the step never ends below the root
+        int k = n.bitLength() / 4;
+        BigInteger r = sqrtFloor(n.shiftRight(2 * k), token).add(BigInteger.ONE).shiftLeft(k);
+        token.checkpoint();
+        r = r.add(n.divide(r)).shiftRight(1);
+        while (multiply(r, r).compareTo(n) > 0)
+            r = r.subtract(BigInteger.ONE);
+        return r;
+    }
+
+    /**
+     * @param mc precision of the result
+     * @return &pi;
+     */
+    public static BigDecimal pi(MathContext mc) {
+        return pi(mc, CancellationToken.NONE);
+    }
+
+    /**
+     * @param mc precision of the result
+     * @param token cancellation token
+     * @return &pi;
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigDecimal pi(MathContext mc, CancellationToken token) {
+        int bits = bitsFor(mc);
+        return toDecimal(PI.get(bits, token), bits, mc);
+    }
+
+    /**
+     * @param mc precision of the result
+     * @return Euler's number e
+     */
+    public static BigDecimal e(MathContext mc) {
+        return e(mc, CancellationToken.NONE);
+    }
+
+    /**
+     * @param mc precision of the result
+     * @param token cancellation token
+     * @return Euler's number e
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigDecimal e(MathContext mc, CancellationToken token) {
+        int bits = bitsFor(mc);
+        return toDecimal(E.get(bits, token), bits, mc);
+    }
+
+    /**
+     * @param x exponent
+     * @param mc precision of the result
+     * @return <code>e<sup>x</sup></code>
+     * @throws ArithmeticException if the result is out of the range of {@link BigDecimal}
+     */
+    public static BigDecimal exp(BigDecimal x, MathContext mc) {
+        return exp(x, mc, CancellationToken.NONE);
+    }
+
+    /**
+     * @param x exponent
+     * @param mc precision of the result
+     * @param token cancellation token
+     * @return <code>e<sup>x</sup></code>
+     * @throws ArithmeticException if the result is out of the range of {@link BigDecimal}
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigDecimal exp(BigDecimal x, MathContext mc, CancellationToken token) {
+        if (x.signum() == 0)
+            return BigDecimal.ONE;
+        // every bit of the integer part of x costs a bit of the reduced argument
+        int bits = bitsFor(mc) + Math.max(0, (int) ((x.precision() - x.scale()) * BITS_PER_DIGIT) + 1);
+        BigInteger fixed = toFixed(x, bits);
+        // x = j ln 10 + k ln 2 + r with 0 <= r < ln 2, so e^x = 10^j 2^k e^r
+        BigInteger ln10 = LN_10.get(bits, token);
+        BigInteger[] qr = fixed.divideAndRemainder(ln10);
+        BigInteger j = qr[0];
+        BigInteger r = qr[1];
+        if (r.signum() < 0) {
+            j = j.subtract(BigInteger.ONE);
+            r = r.add(ln10);
+        }
+        if (j.bitLength() > 31)
+            throw new ArithmeticException("exponent overflow");
+        BigInteger ln2 = LN_2.get(bits, token);
+        int k = 0;
+        while (r.compareTo(ln2) >= 0) {
+            r = r.subtract(ln2);
+            k++;
+        }
+        return toDecimal(expFixed(r, bits, token).shiftLeft(k), bits, mc).scaleByPowerOfTen(j.intValue());
+    }
+
+    /**
+     * @param x positive argument
+     * @param mc precision of the result
+     * @return the natural logarithm of <code>x</code>
+     * @throws ArithmeticException if <code>x</code> is not positive
+     */
+    public static BigDecimal ln(BigDecimal x, MathContext mc) {
+        return ln(x, mc, CancellationToken.NONE);
+    }
+
+    /**
+     * @param x positive argument
+     * @param mc precision of the result
+     * @param token cancellation token
+     * @return the natural logarithm of <code>x</code>
+     * @throws ArithmeticException if <code>x</code> is not positive
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigDecimal ln(BigDecimal x, MathContext mc, CancellationToken token) {
+        if (x.signum() <= 0)
+            throw new ArithmeticException("logarithm of a non-positive number");
+        if (x.compareTo(BigDecimal.ONE) == 0)
+            return BigDecimal.ZERO;
+        // x = m 10^j with 1 <= m < 10, so ln x = ln m + j ln 10
+        int j = x.precision() - x.scale() - 1;
+        BigDecimal m = x.scaleByPowerOfTen(-j);
+        int precision = bitsFor(mc);
+        int bits = precision + 32 - Integer.numberOfLeadingZeros(Math.abs(j));
+        while (true) {
+            BigInteger y = lnFixed(toFixed(m, bits), bits, token).add(LN_10.get(bits, token).multiply(BigInteger.valueOf(j)));
+            // near x = 1 the result is small and its leading bits cancel; retry with the lost bits
+            int lost = precision - y.bitLength();
+            if (lost <= GUARD_BITS / 2)
+                return toDecimal(y, bits, mc);
+            bits += y.signum() == 0 ? bits : lost;
+        }
+    }
+
+    /**
+     * @param x non-negative argument
+     * @param mc precision of the result
+     * @return the square root of <code>x</code>
+     * @throws ArithmeticException if <code>x</code> is negative
+     */
+    public static BigDecimal sqrt(BigDecimal x, MathContext mc) {
+        return sqrt(x, mc, CancellationToken.NONE);
+    }
+
+    /**
+     * @param x non-negative argument
+     * @param mc precision of the result
+     * @param token cancellation token
+     * @return the square root of <code>x</code>
+     * @throws ArithmeticException if <code>x</code> is negative
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigDecimal sqrt(BigDecimal x, MathContext mc, CancellationToken token) {
+        if (x.signum() < 0)
+            throw new ArithmeticException("square root of a negative number");
+        if (x.signum() == 0)
+            return BigDecimal.ZERO;
+        // scale x by 10^(2t) to an integer of at least twice the digits of the result
+        int digits = mc.getPrecision() + 2;
+        long t = Math.max((x.scale() + 1) / 2, (2L * digits - x.precision() + x.scale() + 1) / 2);
+        BigInteger n = x.movePointRight((int) (2 * t)).toBigIntegerExact();
+        return new BigDecimal(sqrtFloor(n, token), (int) t).round(mc);
+    }
+
+    /**
+     * @param mc precision
+     * @return fraction bits of the fixed-point values giving the precision
+     */
+    private static int bitsFor(MathContext mc) {
+        if (mc.getPrecision() == 0 || mc.getPrecision() > MAX_DIGITS)
+            throw new IllegalArgumentException("precision out of 1.." + MAX_DIGITS);
+        return (int) Math.ceil(mc.getPrecision() * BITS_PER_DIGIT) + GUARD_BITS;
+    }
+
+    /**
+     * @param x value
+     * @param bits fraction bits
+     * @return <code>x</code> in fixed point, truncated
+     */
+    private static BigInteger toFixed(BigDecimal x, int bits) {
+        BigInteger u = x.unscaledValue();
+        if (x.scale() <= 0)
+            return u.multiply(BigInteger.TEN.pow(-x.scale())).shiftLeft(bits);
+        return u.shiftLeft(bits).divide(BigInteger.TEN.pow(x.scale()));
+    }
+
+    /**
+     * @param v value in fixed point
+     * @param bits fraction bits
+     * @param mc precision of the result
+     * @return <code>v / 2<sup>bits</sup></code> rounded to the precision
+     */
+    private static BigDecimal toDecimal(BigInteger v, int bits, MathContext mc) {
+        // v / 2^bits = v 5^bits / 10^bits exactly
+        return new BigDecimal(v.multiply(FIVE.pow(bits)), bits).round(mc);
+    }
+
+    /**
+     * @param lo <code>log<sub>2</sub></code> of the reciprocal of the bound of the argument
+     * @param bits fraction bits
+     * @return amount of terms of the exponential series after which the rest is below
+     *         <code>2<sup>-bits</sup></code> for an argument below <code>2<sup>-lo</sup></code>
+     */
+    private static int termsFor(int lo, int bits) {
+        // the k-th term is below 2^(-k lo) / k!
+        double log2 = 0;
+        int k = 0;
+        while (log2 <= bits + 2) {
+            k++;
+            log2 += lo + Math.log(k) / Math.log(2);
+        }
+        return k;
+    }
+
+    /**
+     * split the terms <code>[a, b)</code> of the Chudnovsky series of 1/&pi;
+     */
+    private static Split chudnovsky(int a, int b, CancellationToken token) {
+        if (b - a == 1) {
+            if (a == 0)
+                return new Split(BigInteger.ONE, BigInteger.ONE, BigInteger.valueOf(13591409));
+            BigInteger p = BigInteger.valueOf((6L * a - 5) * (2L * a - 1) * (6L * a - 1));
+            BigInteger q = BigInteger.valueOf(a).pow(3).multiply(CHUDNOVSKY_C3_24);
+            BigInteger t = p.multiply(BigInteger.valueOf(13591409L + 545140134L * a));
+            return new Split(p, q, (a & 1) == 0 ? t : t.negate());
+        }
+        int m = (a + b) >>> 1;
+        Split l = chudnovsky(a, m, token);
+        Split r = chudnovsky(m, b, token);
+        token.checkpoint();
+        return new Split(multiply(l.p, r.p), multiply(l.q, r.q), multiply(r.q, l.t).add(multiply(l.p, r.t)));
+    }
+
+    /**
+     * split the terms <code>[a, b)</code> of the exponential series of <code>u / 2<sup>shift</sup></code>,
+     * i.e. the sum over <code>k</code> of <code>&Pi;<sub>i=a..k</sub> u / (i 2<sup>shift</sup>)</code>.
+     * The sum is <code>t / (q 2<sup>shift (b - a)</sup>)</code>; the powers of 2 are kept as shifts.
+     */
+    private static Split expSeries(BigInteger u, int shift, int a, int b, CancellationToken token) {
+        if (b - a == 1)
+            return new Split(u, BigInteger.valueOf(a), u);
+        int m = (a + b) >>> 1;
+        Split l = expSeries(u, shift, a, m, token);
+        Split r = expSeries(u, shift, m, b, token);
+        token.checkpoint();
+        return new Split(multiply(l.p, r.p), multiply(l.q, r.q), multiply(l.t, r.q).shiftLeft(shift * (b - m)).add(multiply(l.p, r.t)));
+    }
+
+    /**
+     * @param r fixed-point argument in <code>[0, 1)</code>
+     * @param bits fraction bits
+     * @return <code>e<sup>r</sup></code> in fixed point, by the bit-burst algorithm
+     */
+    private static BigInteger expFixed(BigInteger r, int bits, CancellationToken token) {
+        BigInteger one = BigInteger.ONE.shiftLeft(bits);
+        BigInteger result = one;
+        int lo = 0;
+        while (lo < bits) {
+            int hi = Math.min(bits, lo == 0 ? FIRST_CHUNK_BITS : 2 * lo);
+            // fraction bits lo..hi of r: e^r is the product of e^(u / 2^hi) over the chunks
+            BigInteger u = r.shiftRight(bits - hi);
+            u = u.subtract(u.shiftRight(hi - lo).shiftLeft(hi - lo));
+            if (u.signum() != 0) {
+                int n = termsFor(lo, bits);
+                Split s = expSeries(u, hi, 1, n + 1, token);
+                BigInteger sum = s.t.shiftLeft(bits).divide(s.q.shiftLeft(hi * n));
+                result = multiply(result, sum.add(one)).shiftRight(bits);
+            }
+            lo = hi;
+        }
+        return result;
+    }
+
+    /**
+     * @param m positive fixed-point argument
+     * @param bits fraction bits
+     * @return <code>ln m</code> in fixed point
+     */
+    private static BigInteger lnFixed(BigInteger m, int bits, CancellationToken token) {
+        // m = 2^k m' with 1 <= m' < 2
+        int k = m.bitLength() - 1 - bits;
+        BigInteger reduced = k >= 0 ? m.shiftRight(k) : m.shiftLeft(-k);
+        BigInteger y = lnNewton(reduced, bits, token);
+        return k == 0 ? y : y.add(LN_2.get(bits, token).multiply(BigInteger.valueOf(k)));
+    }
+
+    /**
+     * @param m fixed-point argument in <code>[1, 2]</code>
+     * @param bits fraction bits
+     * @return <code>ln m</code> in fixed point, by Newton's iteration
+     *         <code>y += (m - e<sup>y</sup>) / e<sup>y</sup></code> doubling the precision every step
+     */
+    private static BigInteger lnNewton(BigInteger m, int bits, CancellationToken token) {
+        int steps = 0;
+        for (int p = bits; p > 48; p = p / 2 + 1)
+            steps++;
+        int[] precisions = new int[steps + 1];
+        precisions[steps] = bits;
+        for (int i = steps - 1; i >= 0; i--)
+            precisions[i] = precisions[i + 1] / 2 + 1;
+        int p = precisions[0];
+        double start = Math.log(m.shiftRight(bits - p).doubleValue() / Math.pow(2, p));
+        BigInteger y = BigInteger.valueOf((long) (Math.max(0, start) * Math.pow(2, p)));
+        for (int i = 1; i <= steps; i++) {
+            y = y.shiftLeft(precisions[i] - p);
+            p = precisions[i];
+            BigInteger mp = m.shiftRight(bits - p);
+            BigInteger e = expFixed(y.max(BigInteger.ZERO), p, token);
+            y = y.add(mp.subtract(e).shiftLeft(p).divide(e));
+        }
+        return y;
+    }
+}
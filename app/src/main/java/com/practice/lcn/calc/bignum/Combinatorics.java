@@ -0,0 +1,369 @@
+package com.practice.lcn.calc.bignum;
+
+import java.math.BigInteger;
+
+/**
+ * This namespace computes factorials, binomial coefficients (nCr) and permutations (nPr), both
+ * exactly as {@link BigInteger} and approximately as double.
+ * <p>
+ * Small arguments are looked up in tables built once. Large factorials use Luschny's prime-swing
+ * algorithm: <code>n! = ((n/2)!)<sup>2</sup> &middot; swing(n)</code>, where the swing is a product
+ * of few prime powers read off a cached sieve, so the big multiplications are squarings and
+ * balanced products instead of <code>n</code> growing-by-one steps. Binomial coefficients are
+ * likewise built from their prime factorization (Kummer's theorem). Every long product is
+ * multiplied by binary splitting, which keeps both operands of each multiplication about the same
+ * size so that {@link BigInteger#multiply(BigInteger)} can use its sub-quadratic algorithms.
+ * </p>
+ * @author lcn
+ */
+public class Combinatorics {
+    /**
+     * largest n whose factorial fits in a long
+     */
+    private static final int LONG_FACTORIAL_MAX = 20;
+    /**
+     * largest n whose factorial is finite as a double
+     */
+    private static final int DOUBLE_FACTORIAL_MAX = 170;
+    /**
+     * largest n for which every binomial coefficient fits in a long
+     */
+    private static final int LONG_BINOMIAL_MAX = 66;
+    /**
+     * below this, the odd swing is taken from {@link #SMALL_ODD_SWING}
+     */
+    private static final int SMALL_SWING_MAX = 32;
+    /**
+     * factors multiplied as longs before switching to {@link BigInteger}
+     */
+    private static final int LEAF_SIZE = 16;
+
+    private static final long[] LONG_FACTORIALS = new long[LONG_FACTORIAL_MAX + 1];
+    private static final double[] DOUBLE_FACTORIALS = new double[DOUBLE_FACTORIAL_MAX + 1];
+    /**
+     * Pascal's triangle up to {@link #LONG_BINOMIAL_MAX}, row <code>n</code> holding
+     * <code>C(n, 0)</code> to <code>C(n, n / 2)</code>
+     */
+    private static final long[][] LONG_BINOMIALS = new long[LONG_BINOMIAL_MAX + 1][];
+    /**
+     * odd part of <code>n! / ((n/2)!)<sup>2</sup></code> for small n
+     */
+    private static final long[] SMALL_ODD_SWING = new long[SMALL_SWING_MAX + 1];
+
+    static {
+        BigInteger f = BigInteger.ONE;
+        for (int n = 0; n <= DOUBLE_FACTORIAL_MAX; n++) {
+            if (n > 0)
+                f = f.multiply(BigInteger.valueOf(n));
+            if (n <= LONG_FACTORIAL_MAX)
+                LONG_FACTORIALS[n] = f.longValue();
+            // correctly rounded, unlike a running product of doubles
+            DOUBLE_FACTORIALS[n] = f.doubleValue();
+        }
+        for (int n = 0; n <= LONG_BINOMIAL_MAX; n++) {
+            long[] row = new long[n / 2 + 1];
+            row[0] = 1;
+            for (int k = 1; k < row.length; k++) {
+                long[] prev = LONG_BINOMIALS[n - 1];
+                row[k] = binomialOf(prev, n - 1, k - 1) + binomialOf(prev, n - 1, k);
+            }
+            LONG_BINOMIALS[n] = row;
+        }
+        for (int n = 0; n <= SMALL_SWING_MAX; n++) {
+            long swing = binomialOf(LONG_BINOMIALS[n], n, n / 2) * (n % 2 == 0 ? 1 : (n / 2 + 1));
+            SMALL_ODD_SWING[n] = swing >> Long.numberOfTrailingZeros(swing);
+        }
+    }
+
+    /**
+     * odd numbers up to {@link #sieveLimit} that are prime, as a bit set indexed by
+     * <code>n / 2</code>. It grows on demand and is shared by all callers.
+     */
+    private static long[] oddPrimeBits = new long[0];
+    private static int sieveLimit = 0;
+
+    /**
+     * read <code>C(n, k)</code> from a row of {@link #LONG_BINOMIALS}
+     */
+    private static long binomialOf(long[] row, int n, int k) {
+        if (k < 0 || k > n)
+            return 0;
+        return row[Math.min(k, n - k)];
+    }
+
+    /**
+     * @param n upper bound
+     * @return the odd primes up to <code>n</code> in ascending order
+     */
+    static int[] oddPrimes(int n) {
+        long[] bits;
+        synchronized (Combinatorics.class) {
+            if (sieveLimit < n) {
+                // grow geometrically, so that a series of increasing calls sieves O(n) overall
+                sieve(Math.max(n, Math.min(Integer.MAX_VALUE - 1, 2L * sieveLimit)));
+            }
+            bits = oddPrimeBits;
+        }
+        int count = 0;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if ((bits[i >>> 6] & (1L << i)) != 0)
+                count++;
+        }
+        int[] primes = new int[count];
+        count = 0;
+        for (int i = 1; 2 * i + 1 <= n; i++) {
+            if ((bits[i >>> 6] & (1L << i)) != 0)
+                primes[count++] = 2 * i + 1;
+        }
+        return primes;
+    }
+
+    private static void sieve(long limit) {
+        int n = (int) limit;
+        int half = n / 2 + 1;
+        long[] bits = new long[(half + 63) >>> 6];
+        for (int i = 1; i < half; i++)
+            bits[i >>> 6] |= 1L << i;
+        for (long p = 3; p * p <= n; p += 2) {
+            int ip = (int) (p >>> 1);
+            if ((bits[ip >>> 6] & (1L << ip)) == 0)
+                continue;
+            for (long m = p * p; m <= n; m += 2 * p) {
+                int im = (int) (m >>> 1);
+                bits[im >>> 6] &= ~(1L << im);
+            }
+        }
+        oddPrimeBits = bits;
+        sieveLimit = n;
+    }
+
+    /**
+     * multiply <code>factors[from, to)</code> by binary splitting
+     * @param factors positive factors, each below 2<sup>31</sup>
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @return the product, 1 if the range is empty
+     */
+    static BigInteger product(long[] factors, int from, int to) {
+        if (to - from <= LEAF_SIZE) {
+            BigInteger result = BigInteger.ONE;
+            long acc = 1;
+            for (int i = from; i < to; i++) {
+                if (acc > Long.MAX_VALUE / factors[i]) {
+                    result = result.multiply(BigInteger.valueOf(acc));
+                    acc = 1;
+                }
+                acc *= factors[i];
+            }
+            return result.multiply(BigInteger.valueOf(acc));
+        }
+        int mid = (from + to) >>> 1;
+        return product(factors, from, mid).multiply(product(factors, mid, to));
+    }
+
+    /**
+     * multiply the integers in <code>[from, to]</code> by binary splitting
+     */
+    private static BigInteger rangeProduct(long from, long to) {
+        if (from > to)
+            return BigInteger.ONE;
+        if (to - from < LEAF_SIZE) {
+            long[] factors = new long[(int) (to - from + 1)];
+            for (int i = 0; i < factors.length; i++)
+                factors[i] = from + i;
+            return product(factors, 0, factors.length);
+        }
+        long mid = (from + to) >>> 1;
+        return rangeProduct(from, mid).multiply(rangeProduct(mid + 1, to));
+    }
+
+    /**
+     * @param n argument
+     * @return <code>n!</code>
+     * @throws ArithmeticException if <code>n</code> is negative
+     */
+    public static BigInteger factorial(int n) {
+        if (n < 0)
+            throw new ArithmeticException("factorial of a negative number");
+        if (n <= LONG_FACTORIAL_MAX)
+            return BigInteger.valueOf(LONG_FACTORIALS[n]);
+        // n! = oddFactorial(n) * 2^(n - popcount(n)) by Legendre's formula for p = 2
+        return oddFactorial(n, oddPrimes(n)).shiftLeft(n - Integer.bitCount(n));
+    }
+
+    /**
+     * odd part of <code>n!</code>, which is <code>oddFactorial(n/2)<sup>2</sup> &middot; oddSwing(n)</code>
+     */
+    private static BigInteger oddFactorial(int n, int[] primes) {
+        if (n <= LONG_FACTORIAL_MAX) {
+            long f = LONG_FACTORIALS[n];
+            return BigInteger.valueOf(f >> Long.numberOfTrailingZeros(f));
+        }
+        BigInteger half = oddFactorial(n / 2, primes);
+        return half.multiply(half).multiply(oddSwing(n, primes));
+    }
+
+    /**
+     * odd part of <code>n! / ((n/2)!)<sup>2</sup></code>. The exponent of a prime p in it is
+     * <code>&Sigma; floor(n / p<sup>i</sup>) mod 2</code>, so primes in <code>(n/2, n]</code>
+     * appear once, primes in <code>(n/3, n/2]</code> never, and so on.
+     */
+    private static BigInteger oddSwing(int n, int[] primes) {
+        if (n <= SMALL_SWING_MAX)
+            return BigInteger.valueOf(SMALL_ODD_SWING[n]);
+        long[] factors = new long[primes.length];
+        int count = 0;
+        int sqrtN = (int) Math.sqrt(n);
+        for (int i = 0; i < primes.length && primes[i] <= n; i++) {
+            int p = primes[i];
+            if (p > sqrtN) {
+                // p^2 > n, so only floor(n / p) counts
+                if (((n / p) & 1) != 0)
+                    factors[count++] = p;
+                continue;
+            }
+            long power = 1;
+            for (int q = n / p; q > 0; q /= p) {
+                if ((q & 1) != 0)
+                    power *= p;
+            }
+            if (power > 1)
+                factors[count++] = power;
+        }
+        return product(factors, 0, count);
+    }
+
+    /**
+     * @param n amount of items
+     * @param k amount chosen
+     * @return the binomial coefficient <code>C(n, k)</code>, which is 0 if <code>k</code> is
+     *         outside <code>[0, n]</code>
+     * @throws ArithmeticException if <code>n</code> is negative
+     */
+    public static BigInteger binomial(int n, int k) {
+        if (n < 0)
+            throw new ArithmeticException("binomial coefficient of a negative number");
+        if (k < 0 || k > n)
+            return BigInteger.ZERO;
+        if (n <= LONG_BINOMIAL_MAX)
+            return BigInteger.valueOf(binomialOf(LONG_BINOMIALS[n], n, k));
+        k = Math.min(k, n - k);
+        if (k == 0)
+            return BigInteger.ONE;
+        if ((long) k * 64 < n) {
+            // few factors: dividing the falling product spares sieving up to a large n
+            return rangeProduct(n - k + 1, n).divide(factorial(k));
+        }
+        // the exponent of p in C(n, k) is the number of borrows when subtracting k from n in base p
+        int[] primes = oddPrimes(n);
+        long[] factors = new long[primes.length];
+        int count = 0;
+        for (int i = 0; i < primes.length; i++) {
+            int p = primes[i];
+            long power = 1;
+            long pi = p;
+            while (pi <= n) {
+                if (n / pi - k / pi - (n - k) / pi == 1)
+                    power *= p;
+                pi *= p;
+            }
+            if (power > 1)
+                factors[count++] = power;
+        }
+        // the exponent of 2 is the amount of carries when adding k and n - k in binary
+        int twos = Integer.bitCount(k) + Integer.bitCount(n - k) - Integer.bitCount(n);
+        return product(factors, 0, count).shiftLeft(twos);
+    }
+
+    /**
+     * @param n amount of items
+     * @param k amount arranged
+     * @return the amount of permutations <code>n! / (n - k)!</code>, which is 0 if <code>k</code>
+     *         is outside <code>[0, n]</code>
+     * @throws ArithmeticException if <code>n</code> is negative
+     */
+    public static BigInteger permutations(int n, int k) {
+        if (n < 0)
+            throw new ArithmeticException("permutations of a negative number");
+        if (k < 0 || k > n)
+            return BigInteger.ZERO;
+        if (n <= LONG_FACTORIAL_MAX)
+            return BigInteger.valueOf(LONG_FACTORIALS[n] / LONG_FACTORIALS[n - k]);
+        // a long falling product is cheaper through the factorials' prime swing
+        if (k > n / 2)
+            return factorial(n).divide(factorial(n - k));
+        return rangeProduct(n - k + 1, n);
+    }
+
+    /**
+     * approximate factorial
+     * @param n argument
+     * @return <code>n!</code>, infinity if it overflows, or NaN if <code>n</code> is not a
+     *         non-negative integer
+     */
+    public static double factorialOf(double n) {
+        if (!(n >= 0) || n != Math.rint(n))
+            return Double.NaN;
+        if (n > DOUBLE_FACTORIAL_MAX)
+            return Double.POSITIVE_INFINITY;
+        return DOUBLE_FACTORIALS[(int) n];
+    }
+
+    /**
+     * approximate binomial coefficient
+     * @param n amount of items
+     * @param k amount chosen
+     * @return <code>C(n, k)</code>, infinity if it overflows, or NaN if an argument is not a
+     *         non-negative integer
+     */
+    public static double binomialOf(double n, double k) {
+        if (!(n >= 0) || !(k >= 0) || n != Math.rint(n) || k != Math.rint(k))
+            return Double.NaN;
+        if (k > n)
+            return 0;
+        if (n <= LONG_BINOMIAL_MAX)
+            return binomialOf(LONG_BINOMIALS[(int) n], (int) n, (int) k);
+        double m = Math.min(k, n - k);
+        // C(n, m) >= 2^m once n >= 2m
+        if (m > 1100)
+            return Double.POSITIVE_INFINITY;
+        double c = 1;
+        for (int i = 1; i <= m; i++)
+            c = c * (n - m + i) / i;
+        return Math.rint(c);
+    }
+
+    /**
+     * approximate amount of permutations
+     * @param n amount of items
+     * @param k amount arranged
+     * @return <code>n! / (n - k)!</code>, infinity if it overflows, or NaN if an argument is not a
+     *         non-negative integer
+     */
+    public static double permutationsOf(double n, double k) {
+        if (!(n >= 0) || !(k >= 0) || n != Math.rint(n) || k != Math.rint(k))
+            return Double.NaN;
+        if (k > n)
+            return 0;
+        if (n <= DOUBLE_FACTORIAL_MAX)
+            return DOUBLE_FACTORIALS[(int) n] / DOUBLE_FACTORIALS[(int) (n - k)];
+        // the product has k factors above 170, so it overflows once k > 170
+        if (k > DOUBLE_FACTORIAL_MAX)
+            return Double.POSITIVE_INFINITY;
+        double p = 1;
+        for (int i = 0; i < k; i++)
+            p *= n - i;
+        return p;
+    }
+
+    /**
+     * @param n non-negative integer
+     * @return <code>log<sub>10</sub>(n!)</code> by Stirling's formula, which is off by less than
+     *         <code>1 / (12 n ln 10)</code>
+     */
+    public static double log10Factorial(double n) {
+        if (n < 2)
+            return 0;
+        return n * Math.log10(n / Math.E) + 0.5 * Math.log10(2 * Math.PI * n);
+    }
+}
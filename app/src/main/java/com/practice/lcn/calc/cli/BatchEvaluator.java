@@ -0,0 +1,276 @@
+package com.practice.lcn.calc.cli;
+
+import com.practice.lcn.calc.EqtSolver;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * headless command-line entry point that solves newline-delimited equations with exactly the
+ * same parsing and result strings as the app ({@link EqtSolver#evaluate(String, String)}).
+ * <p>
+ * Usage: <code>BatchEvaluator [-t threads] [-a ans] [input file | -]</code>
+ * </p>
+ * <p>
+ * The input is read through a single NIO buffer and cut into batches of {@link #BATCH_LINES}
+ * lines that are solved on a worker pool. Results are written to the standard output in input
+ * order, one per line, and a throughput summary is written to the standard error. At most
+ * {@link #PENDING_PER_THREAD} batches per worker are in flight, so memory stays bounded no matter
+ * how large the input is.
+ * </p>
+ * <p>
+ * Every line is solved on its own with the same {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans}
+ * value given by <code>-a</code> (0 by default), so that lines can be solved in parallel.
+ * </p>
+ * @author lcn
+ */
+public class BatchEvaluator {
+    /**
+     * maximum amount of lines per batch
+     */
+    public static final int BATCH_LINES = 4096;
+    /**
+     * size of the read buffer in bytes
+     */
+    public static final int READ_BUFFER = 1 << 20;
+    /**
+     * maximum amount of batches in flight per worker thread
+     */
+    public static final int PENDING_PER_THREAD = 2;
+    /**
+     * interval at which a reader waiting for room in the queue checks that the writer is still
+     * running (in ms)
+     */
+    static final long ENQUEUE_POLL_MS = 100;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] NEWLINE = { '\n' };
+
+    /**
+     * solved batch
+     */
+    private static class Batch {
+        byte[] output;
+        int lines;
+        int errors;
+    }
+
+    /**
+     * statistics of a run
+     */
+    public static class Summary {
+        public long lines;
+        public long errors;
+        public long bytesIn;
+        public long elapsedNanos;
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(this.elapsedNanos, 1) / 1e9;
+            return String.format("%d lines (%d errors), %.1f MB in %.3f s: %.0f lines/s, %.1f MB/s",
+                    this.lines, this.errors, this.bytesIn / 1e6, seconds, this.lines / seconds, this.bytesIn / 1e6 / seconds);
+        }
+    }
+
+    private final int threads;
+    private final String ans;
+
+    /**
+     * create a new batch evaluator
+     * @param threads amount of worker threads
+     * @param ans value that {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans} refers to in every line
+     */
+    public BatchEvaluator(int threads, String ans) {
+        this.threads = Math.max(1, threads);
+        this.ans = ans;
+    }
+
+    /**
+     * solve every line of the input and write the results to the output.
+     * @param in input channel
+     * @param out output channel
+     * @return statistics of the run
+     * @throws IOException if reading or writing fails
+     */
+    public Summary run(ReadableByteChannel in, final WritableByteChannel out) throws IOException {
+        final Summary summary = new Summary();
+        long begin = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(this.threads);
+        final BlockingQueue<Future<Batch>> pending = new ArrayBlockingQueue<>(this.threads * PENDING_PER_THREAD);
+        // the last element is a sentinel telling the writer to stop
+        final Future<Batch> end = workers.submit(new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                return null;
+            }
+        });
+        final AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Future<Batch> next = pending.take();
+                        if (next == end)
+                            break;
+                        Batch batch = next.get();
+                        ByteBuffer buf = ByteBuffer.wrap(batch.output);
+                        while (buf.hasRemaining())
+                            out.write(buf);
+                        summary.lines += batch.lines;
+                        summary.errors += batch.errors;
+                    }
+                }
+                catch (IOException e) {
+                    writeFailure.set(e);
+                }
+                catch (InterruptedException | ExecutionException | RuntimeException e) {
+                    writeFailure.set(new IOException(e));
+                }
+            }
+        }, "BatchEvaluator-writer");
+        writer.start();
+
+        try {
+            ByteBuffer buf = ByteBuffer.allocateDirect(READ_BUFFER);
+            byte[] line = new byte[256];
+            int lineLen = 0;
+            String[] batch = new String[BATCH_LINES];
+            int batchLen = 0;
+            boolean writing = true;
+            while (writing && (in.read(buf) != -1 || buf.position() > 0)) {
+                buf.flip();
+                summary.bytesIn += buf.remaining();
+                while (writing && buf.hasRemaining()) {
+                    byte b = buf.get();
+                    if (b != '\n') {
+                        if (lineLen == line.length)
+                            line = Arrays.copyOf(line, lineLen * 2);
+                        line[lineLen++] = b;
+                        continue;
+                    }
+                    batch[batchLen++] = decode(line, lineLen);
+                    lineLen = 0;
+                    if (batchLen == BATCH_LINES) {
+                        writing = enqueue(pending, workers.submit(solver(batch, batchLen)), writer);
+                        batch = new String[BATCH_LINES];
+                        batchLen = 0;
+                    }
+                }
+                buf.clear();
+            }
+            if (writing && lineLen > 0)
+                batch[batchLen++] = decode(line, lineLen);
+            if (writing && batchLen > 0)
+                writing = enqueue(pending, workers.submit(solver(batch, batchLen)), writer);
+            if (writing)
+                enqueue(pending, end, writer);
+            else {
+                // the writer has stopped: nobody will collect the batches still in flight
+                for (Future<Batch> next : pending)
+                    next.cancel(true);
+            }
+            writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        finally {
+            workers.shutdownNow();
+        }
+        if (writeFailure.get() != null)
+            throw writeFailure.get();
+        summary.elapsedNanos = System.nanoTime() - begin;
+        return summary;
+    }
+
+    /**
+     * hand a batch over to the writer, waiting while too many batches are in flight
+     * @param pending batches in flight
+     * @param batch batch to write
+     * @param writer writer thread
+     * @return true if the batch was queued; false if the writer has stopped, e.g. because the
+     *         output was closed, in which case the batch is cancelled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private static boolean enqueue(BlockingQueue<Future<Batch>> pending, Future<Batch> batch, Thread writer) throws InterruptedException {
+        while (writer.isAlive()) {
+            if (pending.offer(batch, ENQUEUE_POLL_MS, TimeUnit.MILLISECONDS))
+                return true;
+        }
+        batch.cancel(true);
+        return false;
+    }
+
+    private static String decode(byte[] line, int len) {
+        if (len > 0 && line[len - 1] == '\r')
+            len--;
+        return new String(line, 0, len, UTF_8);
+    }
+
+    private Callable<Batch> solver(final String[] lines, final int count) {
+        return new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                Batch batch = new Batch();
+                StringBuilder sb = new StringBuilder(count * 20);
+                for (int i = 0; i < count; i++) {
+                    String result = EqtSolver.evaluate(lines[i], BatchEvaluator.this.ans);
+                    if (EqtSolver.hadErr(result))
+                        batch.errors++;
+                    sb.append(result).append('\n');
+                }
+                batch.lines = count;
+                batch.output = sb.toString().getBytes(UTF_8);
+                return batch;
+            }
+        };
+    }
+
+    /**
+     * command-line entry point
+     * @param args <code>[-t threads] [-a ans] [input file | -]</code>
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        String ans = "0";
+        String input = "-";
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-t") && i + 1 < args.length)
+                threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-a") && i + 1 < args.length)
+                ans = args[++i];
+            else
+                input = args[i];
+        }
+        ReadableByteChannel in = input.equals("-") ? Channels.newChannel(System.in) : new FileInputStream(input).getChannel();
+        // unlike System.out, a file channel reports a closed pipe instead of swallowing the error
+        WritableByteChannel out = new FileOutputStream(FileDescriptor.out).getChannel();
+        try {
+            Summary summary = new BatchEvaluator(threads, ans).run(in, out);
+            System.err.println(summary);
+        }
+        finally {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.practice.lcn.calc.concurrent;
+
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+
+/**
+ * cooperative cancellation of a long evaluation. Long-running loops call {@link #checkpoint()}
+ * between blocks of work; it throws once the token has been {@link #cancel() cancelled} or its
+ * time budget has run out, so the evaluation stops within one block.
+ * @author lcn
+ */
+public class CancellationToken {
+    /**
+     * token that is never cancelled
+     */
+    public static final CancellationToken NONE = new CancellationToken(Long.MAX_VALUE);
+
+    /**
+     * {@link System#nanoTime()} after which the token counts as cancelled
+     */
+    private final long deadline;
+    private volatile boolean cancelled;
+
+    private CancellationToken(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * create a token that is only cancelled by {@link #cancel()}
+     * @return the token
+     */
+    public static CancellationToken cancellable() {
+        return new CancellationToken(Long.MAX_VALUE);
+    }
+
+    /**
+     * create a token that cancels itself after the given time
+     * @param budgetMillis time budget (in ms)
+     * @return the token
+     */
+    public static CancellationToken withBudget(long budgetMillis) {
+        return new CancellationToken(System.nanoTime() + budgetMillis * 1000000L);
+    }
+
+    /**
+     * cancel the evaluation. It is safe to call from any thread. It does nothing on {@link #NONE}.
+     */
+    public void cancel() {
+        if (this != NONE)
+            this.cancelled = true;
+    }
+
+    /**
+     * @return true if the token has been cancelled or its time budget has run out
+     */
+    public boolean isCancelled() {
+        return this.cancelled || (this.deadline != Long.MAX_VALUE && System.nanoTime() - this.deadline > 0);
+    }
+
+    /**
+     * stop the evaluation if it has been cancelled
+     * @throws EqtTooComplexException if the token has been cancelled or its time budget has run out
+     */
+    public void checkpoint() {
+        if (isCancelled())
+            throw new EqtTooComplexException(this.cancelled ? "cancelled" : "over time budget");
+    }
+}
@@ -0,0 +1,152 @@
+package com.practice.lcn.calc.concurrent;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This namespace splits an index range into contiguous parts and processes them on all CPU cores.
+ * <p>
+ * <code>java.util.concurrent.ForkJoinPool</code> is only available from API level 21 while this
+ * app supports API level 15, so the parts are submitted to a shared fixed-size thread pool
+ * instead. The range is always split at the same boundaries for the same
+ * {@link #parallelism() parallelism}, and the calling thread processes the last part itself.
+ * Nested calls from a worker thread run sequentially so that workers never wait for each other.
+ * </p>
+ * @author lcn
+ */
+public class ParallelRange {
+    /**
+     * process a part of the range
+     */
+    public static interface Body {
+        /**
+         * process the indices in <code>[from, to)</code>.
+         * @param part index of the part, between 0 (inclusive) and {@link #parallelism()} (exclusive).
+         *             Every part is processed by exactly one thread at a time, so the index can be
+         *             used for picking per-thread scratch buffers.
+         * @param from first index (inclusive)
+         * @param to last index (exclusive)
+         */
+        public abstract void run(int part, int from, int to);
+    }
+
+    /**
+     * number of worker threads
+     */
+    private static final int PARALLELISM = Math.max(1, Runtime.getRuntime().availableProcessors());
+    /**
+     * shared worker pool. It is created on first use.
+     */
+    private static ExecutorService pool;
+
+    /**
+     * thread created by the {@link #pool worker pool}
+     */
+    private static class Worker extends Thread {
+        Worker(Runnable r) {
+            super(r, "ParallelRange-worker");
+            setDaemon(true);
+        }
+    }
+
+    /**
+     * @return maximum number of parts a range is split into
+     */
+    public static int parallelism() {
+        return PARALLELISM;
+    }
+
+    private static synchronized ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Worker(r);
+                }
+            });
+        }
+        return pool;
+    }
+
+    /**
+     * process <code>[from, to)</code> in parallel and wait until all parts are done.
+     * @param from first index (inclusive)
+     * @param to last index (exclusive)
+     * @param minGrain minimum amount of indices per part. Ranges smaller than twice this value are
+     *                 processed on the calling thread.
+     * @param body work to do on every part
+     * @throws RuntimeException the first exception thrown by any part, rethrown once every part is
+     *                          over
+     * @throws Error the first error thrown by any part, rethrown once every part is over
+     */
+    public static void run(int from, int to, int minGrain, final Body body) {
+        int n = to - from;
+        int parts = Math.min(PARALLELISM, n / Math.max(1, minGrain));
+        if (parts <= 1 || Thread.currentThread() instanceof Worker) {
+            if (n > 0)
+                body.run(0, from, to);
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(parts - 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        ExecutorService pool = getPool();
+        for (int p = 0; p < parts - 1; p++) {
+            final int part = p;
+            final int lo = from + (int) ((long) n * p / parts);
+            final int hi = from + (int) ((long) n * (p + 1) / parts);
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        body.run(part, lo, hi);
+                    }
+                    catch (Throwable t) {
+                        failure.compareAndSet(null, t);
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            body.run(parts - 1, from + (int) ((long) n * (parts - 1) / parts), to);
+        }
+        catch (Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+        finally {
+            // the parts may still use the caller's buffers, so they are waited for in any case
+            awaitUninterruptibly(latch);
+        }
+        Throwable t = failure.get();
+        if (t instanceof RuntimeException)
+            throw (RuntimeException) t;
+        if (t instanceof Error)
+            throw (Error) t;
+        if (t != null)
+            throw new RuntimeException(t);
+    }
+
+    /**
+     * wait until the latch reaches 0, keeping the interrupt status of the thread
+     * @param latch latch to wait for
+     */
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            }
+            catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+}
@@ -0,0 +1,29 @@
+package com.practice.lcn.calc.digits;
+
+/**
+ * characters of a result that may be too long to hold as a string, such as a number with a
+ * million digits. Characters are only generated when asked for, so a display can fetch just the
+ * part on screen.
+ * @author lcn
+ */
+public interface DigitSource {
+    /**
+     * @return amount of characters, excluding the {@link #exponent() exponent}
+     */
+    public abstract long length();
+
+    /**
+     * copy a range of characters
+     * @param from index of the first character
+     * @param dst receives the characters, starting at index 0
+     * @param count amount of characters to copy. <code>from + count</code> must not exceed
+     *              {@link #length()}.
+     */
+    public abstract void getChars(long from, char[] dst, int count);
+
+    /**
+     * @return exponent suffix that should stay visible while the rest is scrolled, such as
+     *         <code>E-300</code>, or null if there is none
+     */
+    public abstract String exponent();
+}
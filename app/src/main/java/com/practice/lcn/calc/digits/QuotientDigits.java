@@ -0,0 +1,190 @@
+package com.practice.lcn.calc.digits;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * decimal expansion of an exact fraction <code>num / den</code>, generated by long division in
+ * chunks of {@link #CHUNK} digits as they are asked for.
+ * <p>
+ * The digits of a chunk are the quotient of <code>r * 10^CHUNK / den</code>, where
+ * <code>r</code> is the remainder left by the previous chunk. Scrolling forward reuses that
+ * remainder; jumping ahead computes it directly as
+ * <code>frac * 10^(chunk * CHUNK) mod den</code>, so no digit before the visible chunk is ever
+ * generated. Only the last {@link #CACHED_CHUNKS} chunks are kept.
+ * </p>
+ * @author lcn
+ */
+public class QuotientDigits implements DigitSource {
+    /**
+     * amount of digits generated at once
+     */
+    public static final int CHUNK = 1024;
+    /**
+     * amount of chunks kept in memory
+     */
+    public static final int CACHED_CHUNKS = 8;
+
+    private static final BigInteger TEN_POW_CHUNK = BigInteger.TEN.pow(CHUNK);
+
+    private final BigInteger num;
+    private final BigInteger den;
+    /**
+     * sign and integer part followed by the decimal point if there are fraction digits
+     */
+    private final String head;
+    /**
+     * remainder of the integer division, i.e. the numerator of the fraction part
+     */
+    private final BigInteger frac;
+    /**
+     * amount of fraction digits shown
+     */
+    private final long fractionDigits;
+    /**
+     * generated chunks, least recently used first
+     */
+    private final LinkedHashMap<Long, Chunk> chunks;
+
+    /**
+     * digits of a chunk and the remainder left after it
+     */
+    private static final class Chunk {
+        final char[] digits;
+        final BigInteger remainder;
+
+        Chunk(char[] digits, BigInteger remainder) {
+            this.digits = digits;
+            this.remainder = remainder;
+        }
+    }
+
+    /**
+     * create a new expansion
+     * @param num numerator
+     * @param den denominator
+     * @param maxFractionDigits maximum amount of fraction digits. Terminating expansions may end
+     *                          earlier.
+     * @throws ArithmeticException if the denominator is 0
+     */
+    public QuotientDigits(BigInteger num, BigInteger den, long maxFractionDigits) {
+        if (den.signum() == 0)
+            throw new ArithmeticException("division by zero");
+        if (den.signum() < 0) {
+            num = num.negate();
+            den = den.negate();
+        }
+        BigInteger gcd = num.gcd(den);
+        if (gcd.signum() != 0 && !gcd.equals(BigInteger.ONE)) {
+            num = num.divide(gcd);
+            den = den.divide(gcd);
+        }
+        this.num = num;
+        this.den = den;
+        BigInteger[] qr = num.abs().divideAndRemainder(den);
+        this.frac = qr[1];
+        this.fractionDigits = this.frac.signum() == 0 ? 0 : Math.min(maxFractionDigits, terminatingDigits(den));
+        StringBuilder sb = new StringBuilder();
+        if (num.signum() < 0)
+            sb.append('-');
+        sb.append(qr[0].toString());
+        if (this.fractionDigits > 0)
+            sb.append('.');
+        this.head = sb.toString();
+        this.chunks = new LinkedHashMap<Long, Chunk>(CACHED_CHUNKS * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Chunk> eldest) {
+                return size() > CACHED_CHUNKS;
+            }
+        };
+    }
+
+    /**
+     * @param den reduced denominator
+     * @return amount of fraction digits of the expansion if it terminates, i.e. the larger power
+     *         of 2 or 5 in the denominator; otherwise {@link Long#MAX_VALUE}.
+     */
+    private static long terminatingDigits(BigInteger den) {
+        int twos = den.getLowestSetBit();
+        BigInteger rest = den.shiftRight(twos);
+        BigInteger five = BigInteger.valueOf(5);
+        int fives = 0;
+        while (rest.mod(five).signum() == 0) {
+            rest = rest.divide(five);
+            fives++;
+        }
+        if (!rest.equals(BigInteger.ONE))
+            return Long.MAX_VALUE;
+        return Math.max(twos, fives);
+    }
+
+    @Override
+    public long length() {
+        return this.head.length() + this.fractionDigits;
+    }
+
+    @Override
+    public void getChars(long from, char[] dst, int count) {
+        int n = 0;
+        while (n < count && from + n < this.head.length()) {
+            dst[n] = this.head.charAt((int) (from + n));
+            n++;
+        }
+        while (n < count) {
+            long digit = from + n - this.head.length();
+            Chunk chunk = chunk(digit / CHUNK);
+            int offset = (int) (digit % CHUNK);
+            int len = Math.min(count - n, CHUNK - offset);
+            System.arraycopy(chunk.digits, offset, dst, n, len);
+            n += len;
+        }
+    }
+
+    /**
+     * get a chunk, generating it if needed
+     * @param index chunk index
+     * @return the chunk
+     */
+    private Chunk chunk(long index) {
+        Chunk chunk = this.chunks.get(index);
+        if (chunk != null)
+            return chunk;
+        Chunk prev = index == 0 ? null : this.chunks.get(index - 1);
+        BigInteger r;
+        if (index == 0)
+            r = this.frac;
+        else if (prev != null)
+            r = prev.remainder;
+        else
+            r = BigInteger.TEN.modPow(BigInteger.valueOf(index).multiply(BigInteger.valueOf(CHUNK)), this.den).multiply(this.frac).mod(this.den);
+        BigInteger[] qr = r.multiply(TEN_POW_CHUNK).divideAndRemainder(this.den);
+        String q = qr[0].toString();
+        char[] digits = new char[CHUNK];
+        // the quotient is below 10^CHUNK, so pad it with leading zeros
+        int pad = CHUNK - q.length();
+        for (int i = 0; i < pad; i++)
+            digits[i] = '0';
+        q.getChars(0, q.length(), digits, pad);
+        chunk = new Chunk(digits, qr[1]);
+        this.chunks.put(index, chunk);
+        return chunk;
+    }
+
+    @Override
+    public String exponent() {
+        return null;
+    }
+
+    /**
+     * @return the value rounded to a <code>double</code> in string form, e.g. to be used as
+     *         {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans}
+     */
+    @Override
+    public String toString() {
+        BigDecimal value = new BigDecimal(this.num).divide(new BigDecimal(this.den), MathContext.DECIMAL64);
+        return Double.toString(value.doubleValue());
+    }
+}
@@ -0,0 +1,64 @@
+package com.practice.lcn.calc.digits;
+
+/**
+ * characters of a result that is already a string, such as a <code>double</code> result or an
+ * error message. An exponent such as <code>E-300</code> is split off.
+ * @author lcn
+ */
+public class StringDigits implements DigitSource {
+    private final String text;
+    /**
+     * index where the exponent starts, or the length of {@link #text} if there is none
+     */
+    private final int exponentPos;
+
+    /**
+     * create a new string source
+     * @param text result in string form
+     */
+    public StringDigits(String text) {
+        this.text = text;
+        int e = text.lastIndexOf('E');
+        this.exponentPos = e > 0 && isExponent(text, e + 1) ? e : text.length();
+    }
+
+    /**
+     * @param text result in string form
+     * @param from index after the <code>E</code>
+     * @return true if the rest of the text is an integer exponent, e.g. <code>-300</code>
+     */
+    private static boolean isExponent(String text, int from) {
+        if (from < text.length() && text.charAt(from) == '-')
+            from++;
+        if (from == text.length())
+            return false;
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) < '0' || text.charAt(i) > '9')
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public long length() {
+        return this.exponentPos;
+    }
+
+    @Override
+    public void getChars(long from, char[] dst, int count) {
+        this.text.getChars((int) from, (int) from + count, dst, 0);
+    }
+
+    @Override
+    public String exponent() {
+        return this.exponentPos == this.text.length() ? null : this.text.substring(this.exponentPos);
+    }
+
+    /**
+     * @return the whole text
+     */
+    @Override
+    public String toString() {
+        return this.text;
+    }
+}
@@ -0,0 +1,12 @@
+package com.practice.lcn.calc.exception;
+
+/**
+ * error indicating the equation cannot be compiled because of a syntax error, such as a missing
+ * closing parenthesis or two adjacent operators.
+ * @author lcn
+ */
+public class EqtSyntaxException extends RuntimeException {
+    public EqtSyntaxException(String detail) {
+        super("Error: Syntax error (" + detail + ")");
+    }
+}
@@ -0,0 +1,12 @@
+package com.practice.lcn.calc.exception;
+
+/**
+ * error indicating the equation is over the evaluation budget, such as too deeply nested or too
+ * long, or that its evaluation has been cancelled because it took too long.
+ * @author lcn
+ */
+public class EqtTooComplexException extends RuntimeException {
+    public EqtTooComplexException(String detail) {
+        super("Error: Equation is too complex (" + detail + ")");
+    }
+}
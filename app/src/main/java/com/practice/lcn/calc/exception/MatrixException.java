@@ -0,0 +1,12 @@
+package com.practice.lcn.calc.exception;
+
+/**
+ * error indicating a matrix operation is undefined for its operands, such as adding matrices of
+ * different sizes or taking the determinant of a matrix that is not square.
+ * @author lcn
+ */
+public class MatrixException extends RuntimeException {
+    public MatrixException(String detail) {
+        super("Error: Matrix operation is undefined (" + detail + ")");
+    }
+}
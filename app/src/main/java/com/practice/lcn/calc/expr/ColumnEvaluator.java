@@ -0,0 +1,344 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.bignum.Combinatorics;
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.concurrent.ParallelRange;
+
+/**
+ * This class evaluates an {@link EqtProgram} over a whole column of inputs at once. Every
+ * instruction is applied to a block of {@link #BLOCK} rows before moving on to the next
+ * instruction, so the inner loops run over plain <code>double[]</code> registers instead of going
+ * through the instruction list once per row.
+ * <p>
+ * Registers are allocated on the first call and reused afterwards, so evaluating the same
+ * program again allocates nothing but a few bytes of bookkeeping. An evaluator must not be used
+ * by more than one thread at a time; large columns are split across cores internally.
+ * </p>
+ * @author lcn
+ */
+public class ColumnEvaluator {
+    /**
+     * amount of rows processed per instruction. It keeps the registers of a block inside the
+     * CPU cache.
+     */
+    public static final int BLOCK = 512;
+    /**
+     * columns shorter than this value are evaluated on the calling thread
+     */
+    public static final int PARALLEL_THRESHOLD = 16 * BLOCK;
+
+    /**
+     * program to evaluate
+     */
+    private final EqtProgram program;
+    /**
+     * registers indexed by [part][stack slot][row in block]. The first index is the part given by
+     * {@link ParallelRange}.
+     */
+    private final double[][][] registers;
+
+    /**
+     * environment slot read from the input column
+     */
+    private final int columnSlot;
+
+    /**
+     * create a new column evaluator whose input column is the
+     * {@link EqtProgram#SLOT_X independent variable}
+     * @param program program to evaluate
+     */
+    public ColumnEvaluator(EqtProgram program) {
+        this(program, EqtProgram.SLOT_X);
+    }
+
+    /**
+     * create a new column evaluator
+     * @param program program to evaluate
+     * @param columnSlot environment slot read from the input column, such as
+     *                   {@link EqtProgram#SLOT_ANS}
+     */
+    public ColumnEvaluator(EqtProgram program, int columnSlot) {
+        this.program = program;
+        this.columnSlot = columnSlot;
+        this.registers = new double[ParallelRange.parallelism()][][];
+    }
+
+    /**
+     * @return program to evaluate
+     */
+    public EqtProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * fill the column with an arithmetic progression. Every element is computed from its index
+     * rather than by repeated addition, so rounding errors do not accumulate down the column.
+     * @param xs column to fill
+     * @param start first value
+     * @param step difference between consecutive values
+     * @param count amount of values to fill
+     */
+    public static void fillRange(double[] xs, double start, double step, int count) {
+        for (int i = 0; i < count; i++)
+            xs[i] = start + i * step;
+    }
+
+    /**
+     * evaluate the program for every value of the input column.
+     * @param xs values of the input column, usually the {@link EqtProgram#SLOT_X independent variable}
+     * @param out receives the results. It can be the same array as <code>xs</code>.
+     * @param count amount of rows to evaluate
+     * @param env values of the other variables. The slot of the input column is ignored.
+     */
+    public void evaluate(double[] xs, double[] out, int count, double[] env) {
+        evaluate(xs, out, count, env, CancellationToken.NONE);
+    }
+
+    /**
+     * evaluate the program for every value of the input column, checking for cancellation
+     * between blocks.
+     * @param xs values of the input column
+     * @param out receives the results. It can be the same array as <code>xs</code>.
+     * @param count amount of rows to evaluate
+     * @param env values of the other variables. The slot of the input column is ignored.
+     * @param token cancellation token
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public void evaluate(final double[] xs, final double[] out, int count, final double[] env, final CancellationToken token) {
+        ParallelRange.run(0, count, PARALLEL_THRESHOLD, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                evaluate(part, xs, out, from, to, env, token);
+            }
+        });
+    }
+
+    /**
+     * evaluate the rows <code>[from, to)</code> on the calling thread. It is meant for callers
+     * that already split their work with {@link ParallelRange}; concurrent calls must pass
+     * different parts.
+     * @param part part index given by {@link ParallelRange}. It selects the registers to use.
+     * @param xs values of the input column
+     * @param out receives the results. It can be the same array as <code>xs</code>.
+     * @param from first row (inclusive)
+     * @param to last row (exclusive)
+     * @param env values of the other variables. The slot of the input column is ignored.
+     */
+    public void evaluate(int part, double[] xs, double[] out, int from, int to, double[] env) {
+        evaluate(part, xs, out, from, to, env, CancellationToken.NONE);
+    }
+
+    /**
+     * evaluate the rows <code>[from, to)</code> on the calling thread, checking for cancellation
+     * between blocks.
+     * @param part part index given by {@link ParallelRange}. It selects the registers to use.
+     * @param xs values of the input column
+     * @param out receives the results. It can be the same array as <code>xs</code>.
+     * @param from first row (inclusive)
+     * @param to last row (exclusive)
+     * @param env values of the other variables. The slot of the input column is ignored.
+     * @param token cancellation token
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public void evaluate(int part, double[] xs, double[] out, int from, int to, double[] env, CancellationToken token) {
+        double[][] regs = getRegisters(part);
+        for (int lo = from; lo < to; lo += BLOCK) {
+            token.checkpoint();
+            int len = Math.min(BLOCK, to - lo);
+            evaluateBlock(regs, xs, out, lo, len, env);
+        }
+    }
+
+    private synchronized double[][] getRegisters(int part) {
+        double[][] regs = this.registers[part];
+        if (regs == null) {
+            // the extra row records whether a register holds a single constant value
+            regs = new double[Math.max(1, this.program.getMaxStack()) + 1][BLOCK];
+            this.registers[part] = regs;
+        }
+        return regs;
+    }
+
+    /**
+     * evaluate one block of rows. Constants and variables other than the input column are kept
+     * as a single value instead of being broadcast over the
+     * whole register until an operation mixes them with a column.
+     */
+    private void evaluateBlock(double[][] regs, double[] xs, double[] out, int offset, int len, double[] env) {
+        EqtProgram p = this.program;
+        // isScalar[k] != 0 if register k only holds a single value in its first element
+        double[] isScalar = regs[regs.length - 1];
+        int sp = 0;
+        for (int pc = 0; pc < p.size(); pc++) {
+            int op = p.opAt(pc);
+            if (op == EqtProgram.OP_CONST || op == EqtProgram.OP_LOAD) {
+                double[] r = regs[sp];
+                if (op == EqtProgram.OP_LOAD && p.argAt(pc) == this.columnSlot) {
+                    System.arraycopy(xs, offset, r, 0, len);
+                    isScalar[sp] = 0;
+                }
+                else {
+                    r[0] = op == EqtProgram.OP_CONST ? p.constAt(p.argAt(pc)) : env[p.argAt(pc)];
+                    isScalar[sp] = 1;
+                }
+                sp++;
+                continue;
+            }
+            if (op == EqtProgram.OP_NEG) {
+                double[] a = regs[sp - 1];
+                int n = isScalar[sp - 1] != 0 ? 1 : len;
+                for (int i = 0; i < n; i++)
+                    a[i] = -a[i];
+                continue;
+            }
+            if (op == EqtProgram.OP_FACT) {
+                double[] a = regs[sp - 1];
+                int n = isScalar[sp - 1] != 0 ? 1 : len;
+                for (int i = 0; i < n; i++)
+                    a[i] = Combinatorics.factorialOf(a[i]);
+                continue;
+            }
+            if (op == EqtProgram.OP_FUNC) {
+                Functions.applyAll(p.argAt(pc), regs[sp - 1], isScalar[sp - 1] != 0 ? 1 : len);
+                continue;
+            }
+            sp--;
+            double[] a = regs[sp - 1];
+            double[] b = regs[sp];
+            boolean sa = isScalar[sp - 1] != 0;
+            boolean sb = isScalar[sp] != 0;
+            if (sa && sb) {
+                a[0] = apply(op, a[0], b[0]);
+                continue;
+            }
+            if (sa) {
+                double v = a[0];
+                switch (op) {
+                    case EqtProgram.OP_ADD:
+                        for (int i = 0; i < len; i++)
+                            a[i] = v + b[i];
+                        break;
+                    case EqtProgram.OP_SUB:
+                        for (int i = 0; i < len; i++)
+                            a[i] = v - b[i];
+                        break;
+                    case EqtProgram.OP_MUL:
+                        for (int i = 0; i < len; i++)
+                            a[i] = v * b[i];
+                        break;
+                    case EqtProgram.OP_DIV:
+                        for (int i = 0; i < len; i++)
+                            a[i] = v / b[i];
+                        break;
+                    case EqtProgram.OP_POW:
+                        for (int i = 0; i < len; i++)
+                            a[i] = Math.pow(v, b[i]);
+                        break;
+                    default:
+                        for (int i = 0; i < len; i++)
+                            a[i] = apply(op, v, b[i]);
+                        break;
+                }
+                isScalar[sp - 1] = 0;
+                continue;
+            }
+            if (sb) {
+                double v = b[0];
+                switch (op) {
+                    case EqtProgram.OP_ADD:
+                        for (int i = 0; i < len; i++)
+                            a[i] += v;
+                        break;
+                    case EqtProgram.OP_SUB:
+                        for (int i = 0; i < len; i++)
+                            a[i] -= v;
+                        break;
+                    case EqtProgram.OP_MUL:
+                        for (int i = 0; i < len; i++)
+                            a[i] *= v;
+                        break;
+                    case EqtProgram.OP_DIV:
+                        for (int i = 0; i < len; i++)
+                            a[i] /= v;
+                        break;
+                    case EqtProgram.OP_POW:
+                        if (v == 2) {
+                            // Math.pow(a, 2) is exactly a * a
+                            for (int i = 0; i < len; i++)
+                                a[i] *= a[i];
+                        }
+                        else {
+                            for (int i = 0; i < len; i++)
+                                a[i] = Math.pow(a[i], v);
+                        }
+                        break;
+                    default:
+                        for (int i = 0; i < len; i++)
+                            a[i] = apply(op, a[i], v);
+                        break;
+                }
+                continue;
+            }
+            switch (op) {
+                case EqtProgram.OP_ADD:
+                    for (int i = 0; i < len; i++)
+                        a[i] += b[i];
+                    break;
+                case EqtProgram.OP_SUB:
+                    for (int i = 0; i < len; i++)
+                        a[i] -= b[i];
+                    break;
+                case EqtProgram.OP_MUL:
+                    for (int i = 0; i < len; i++)
+                        a[i] *= b[i];
+                    break;
+                case EqtProgram.OP_DIV:
+                    for (int i = 0; i < len; i++)
+                        a[i] /= b[i];
+                    break;
+                case EqtProgram.OP_POW:
+                    for (int i = 0; i < len; i++)
+                        a[i] = Math.pow(a[i], b[i]);
+                    break;
+                default:
+                    for (int i = 0; i < len; i++)
+                        a[i] = apply(op, a[i], b[i]);
+                    break;
+            }
+        }
+        if (isScalar[0] != 0) {
+            double v = regs[0][0];
+            for (int i = 0; i < len; i++)
+                out[offset + i] = v;
+        }
+        else
+            System.arraycopy(regs[0], 0, out, offset, len);
+    }
+
+    /**
+     * apply a binary operator to two scalars
+     * @param op binary opcode
+     * @param a left operand
+     * @param b right operand
+     * @return result
+     */
+    static double apply(int op, double a, double b) {
+        switch (op) {
+            case EqtProgram.OP_ADD:
+                return a + b;
+            case EqtProgram.OP_SUB:
+                return a - b;
+            case EqtProgram.OP_MUL:
+                return a * b;
+            case EqtProgram.OP_DIV:
+                return a / b;
+            case EqtProgram.OP_POW:
+                return Math.pow(a, b);
+            case EqtProgram.OP_NCR:
+                return Combinatorics.binomialOf(a, b);
+            case EqtProgram.OP_NPR:
+                return Combinatorics.permutationsOf(a, b);
+        }
+        throw new IllegalArgumentException("not a binary opcode: " + op);
+    }
+}
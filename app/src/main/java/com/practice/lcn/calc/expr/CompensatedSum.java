@@ -0,0 +1,49 @@
+package com.practice.lcn.calc.expr;
+
+/**
+ * running sum with Neumaier's compensation. The rounding error of every addition is accumulated
+ * separately and added back at the end, so summing many terms of different magnitudes loses
+ * almost no precision.
+ * @author lcn
+ */
+public final class CompensatedSum {
+    /**
+     * naive running sum
+     */
+    private double sum;
+    /**
+     * accumulated rounding error of {@link #sum}
+     */
+    private double compensation;
+
+    /**
+     * reset the sum to 0
+     */
+    public void reset() {
+        this.sum = 0;
+        this.compensation = 0;
+    }
+
+    /**
+     * add a term
+     * @param term term to add
+     */
+    public void add(double term) {
+        double t = this.sum + term;
+        if (Math.abs(this.sum) >= Math.abs(term))
+            this.compensation += (this.sum - t) + term;
+        else
+            this.compensation += (term - t) + this.sum;
+        this.sum = t;
+    }
+
+    /**
+     * @return the compensated sum
+     */
+    public double value() {
+        // once the sum overflows the compensation is meaningless (Infinity - Infinity)
+        if (Double.isInfinite(this.sum) || Double.isNaN(this.sum))
+            return this.sum;
+        return this.sum + this.compensation;
+    }
+}
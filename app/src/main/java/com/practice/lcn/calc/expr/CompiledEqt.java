@@ -0,0 +1,124 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.exception.SymbolUndefinedException;
+
+/**
+ * immutable, thread-safe compiled equation. It is compiled once and can then be evaluated any
+ * number of times, from any number of threads at the same time and without locking, each call
+ * with its own {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans} binding. Unlike
+ * {@link com.practice.lcn.calc.EqtSolver EqtSolver}, it keeps no reference to the activity and no
+ * state between evaluations: every call returns its outcome as an {@link EvalResult}.
+ * @author lcn
+ */
+public final class CompiledEqt {
+    /**
+     * bulk evaluations shorter than this value are done on the calling thread
+     */
+    public static final int PARALLEL_THRESHOLD = ColumnEvaluator.PARALLEL_THRESHOLD;
+
+    /**
+     * equation without the cursor
+     */
+    private final String src;
+    /**
+     * compiled program, or null if the equation has a syntax error
+     */
+    private final EqtProgram program;
+    /**
+     * reason why the equation could not be compiled, or null if it compiled
+     */
+    private final RuntimeException failure;
+
+    private CompiledEqt(String src, EqtProgram program, RuntimeException failure) {
+        this.src = src;
+        this.program = program;
+        this.failure = failure;
+    }
+
+    /**
+     * compile an equation. It never throws: an equation with a syntax error compiles to an
+     * expression that always evaluates to {@link EvalResult#SYNTAX_ERROR}, and an equation over
+     * the {@link EqtCost} limits to {@link EvalResult#TOO_COMPLEX}. An equation that
+     * {@link EqtSolver#evaluate(String, String, double[], CompiledEqt)} rejects, such as one with
+     * "=" or {@link Symbol#SYM_X x}, has a syntax error as well.
+     * @param eqt equation in the equation display. The cursor is ignored if present.
+     * @return the compiled equation
+     */
+    public static CompiledEqt compile(String eqt) {
+        String src = EqtSolver.removeCursor(eqt);
+        try {
+            // "=" only makes sense in the solve mode, and x is only bound by the table, graph and solve modes
+            if (src.contains(Symbol.SYM_EQ.getRepr()) || EqtSolver.hasSyntaxError(src))
+                throw new EqtSyntaxException("not an equation of the result display");
+            EqtProgram program = EqtParser.compile(src);
+            if (program.uses(EqtProgram.SLOT_X))
+                throw new EqtSyntaxException("x outside the table, graph and solve modes");
+            return new CompiledEqt(src, program, null);
+        }
+        catch (EqtSyntaxException e) {
+            return new CompiledEqt(src, null, e);
+        }
+        catch (SymbolUndefinedException e) {
+            return new CompiledEqt(src, null, new EqtSyntaxException("undefined symbol"));
+        }
+        catch (EqtTooComplexException e) {
+            return new CompiledEqt(src, null, e);
+        }
+    }
+
+    /**
+     * @return true if the equation has a syntax error
+     */
+    public boolean hasSyntaxError() {
+        return this.failure instanceof EqtSyntaxException;
+    }
+
+    /**
+     * @return true if the equation is over the {@link EqtCost} limits
+     */
+    public boolean isTooComplex() {
+        return this.failure instanceof EqtTooComplexException;
+    }
+
+    /**
+     * @return compiled program, or null if the equation has a syntax error
+     */
+    public EqtProgram getProgram() {
+        return this.program;
+    }
+
+    /**
+     * evaluate the equation like {@link EqtSolver#evaluate(String, String, double[], CompiledEqt)},
+     * so that a result too large for a double keeps every digit, e.g. <code>171!</code>.
+     * @param ans value of {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans}
+     * @return the outcome
+     */
+    public EvalResult evaluate(double ans) {
+        if (this.program == null)
+            return isTooComplex() ? EvalResult.TOO_COMPLEX : EvalResult.SYNTAX_ERROR;
+        return EvalResult.of(EqtSolver.evaluate(this.src, Double.toString(ans), null, this));
+    }
+
+    /**
+     * evaluate the equation once per {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans} value.
+     * Large inputs are evaluated column-wise and split across all cores. Use
+     * {@link EvalResult#of(double)} to turn an element of the output into a displayable result.
+     * @param ansValues values of Ans
+     * @return the values of the equation in the same order. Errors are NaN or infinite. Unlike
+     *         {@link #evaluate(double)}, an integer result is not evaluated exactly.
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     */
+    public double[] evaluateAll(double[] ansValues) {
+        if (this.program == null)
+            throw this.failure;
+        double[] out = new double[ansValues.length];
+        double[] env = new double[EqtProgram.ENV_SIZE];
+        new ColumnEvaluator(this.program, EqtProgram.SLOT_ANS).evaluate(ansValues, out, ansValues.length, env);
+        return out;
+    }
+}
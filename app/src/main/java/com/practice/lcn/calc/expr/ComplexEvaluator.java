@@ -0,0 +1,221 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.bignum.Combinatorics;
+
+/**
+ * This class evaluates an {@link EqtProgram} over the complex numbers, so that e.g.
+ * <code>(-8)^(1/3)</code> gives the principal root <code>1 + 1.732i</code> instead of NaN.
+ * <p>
+ * Every operand is a pair of doubles held in two flat registers, one for the real parts and one
+ * for the imaginary parts. The registers are allocated once per evaluator and no object is
+ * created while evaluating, so an evaluation costs about twice a real one. An evaluator must not
+ * be used by more than one thread at a time.
+ * </p>
+ * @author lcn
+ */
+public class ComplexEvaluator {
+    /**
+     * program to evaluate
+     */
+    private final EqtProgram program;
+    /**
+     * real parts of the operand stack
+     */
+    private final double[] re;
+    /**
+     * imaginary parts of the operand stack
+     */
+    private final double[] im;
+    /**
+     * receives the value of a {@link Functions function}
+     */
+    private final double[] value;
+
+    /**
+     * create a new complex evaluator
+     * @param program program to evaluate
+     */
+    public ComplexEvaluator(EqtProgram program) {
+        this.program = program;
+        this.re = new double[Math.max(1, program.getMaxStack())];
+        this.im = new double[this.re.length];
+        this.value = new double[2];
+    }
+
+    /**
+     * evaluate the program once
+     * @param envRe real parts of the variables indexed by slot. See {@link EqtProgram#SLOT_ANS}.
+     * @param envIm imaginary parts of the variables indexed by slot
+     * @param out receives the real part in <code>out[0]</code> and the imaginary part in
+     *            <code>out[1]</code>
+     */
+    public void evaluate(double[] envRe, double[] envIm, double[] out) {
+        EqtProgram p = this.program;
+        double[] re = this.re;
+        double[] im = this.im;
+        int sp = 0;
+        for (int pc = 0; pc < p.size(); pc++) {
+            int op = p.opAt(pc);
+            if (op == EqtProgram.OP_CONST) {
+                re[sp] = p.constAt(p.argAt(pc));
+                im[sp++] = 0;
+                continue;
+            }
+            if (op == EqtProgram.OP_LOAD) {
+                re[sp] = envRe[p.argAt(pc)];
+                im[sp++] = envIm[p.argAt(pc)];
+                continue;
+            }
+            if (op == EqtProgram.OP_NEG) {
+                re[sp - 1] = -re[sp - 1];
+                im[sp - 1] = -im[sp - 1];
+                continue;
+            }
+            if (op == EqtProgram.OP_FACT) {
+                // only defined on the non-negative integers
+                re[sp - 1] = im[sp - 1] == 0 ? Combinatorics.factorialOf(re[sp - 1]) : Double.NaN;
+                im[sp - 1] = 0;
+                continue;
+            }
+            if (op == EqtProgram.OP_FUNC) {
+                Functions.applyComplex(p.argAt(pc), re[sp - 1], im[sp - 1], this.value);
+                re[sp - 1] = this.value[0];
+                im[sp - 1] = this.value[1];
+                continue;
+            }
+            sp--;
+            double a = re[sp - 1];
+            double b = im[sp - 1];
+            double c = re[sp];
+            double d = im[sp];
+            switch (op) {
+                case EqtProgram.OP_ADD:
+                    re[sp - 1] = a + c;
+                    im[sp - 1] = b + d;
+                    break;
+                case EqtProgram.OP_SUB:
+                    re[sp - 1] = a - c;
+                    im[sp - 1] = b - d;
+                    break;
+                case EqtProgram.OP_MUL:
+                    if (b == 0 && d == 0) {
+                        re[sp - 1] = a * c;
+                        im[sp - 1] = 0;
+                    }
+                    else {
+                        re[sp - 1] = a * c - b * d;
+                        im[sp - 1] = a * d + b * c;
+                    }
+                    break;
+                case EqtProgram.OP_DIV:
+                    if (d == 0) {
+                        re[sp - 1] = a / c;
+                        im[sp - 1] = b == 0 ? 0 : b / c;
+                    }
+                    else if (Math.abs(c) >= Math.abs(d)) {
+                        // Smith's algorithm avoids overflow in c^2 + d^2
+                        double r = d / c;
+                        double den = c + d * r;
+                        re[sp - 1] = (a + b * r) / den;
+                        im[sp - 1] = (b - a * r) / den;
+                    }
+                    else {
+                        double r = c / d;
+                        double den = c * r + d;
+                        re[sp - 1] = (a * r + b) / den;
+                        im[sp - 1] = (b * r - a) / den;
+                    }
+                    break;
+                case EqtProgram.OP_POW:
+                    pow(a, b, c, d, sp - 1);
+                    break;
+                case EqtProgram.OP_NCR:
+                case EqtProgram.OP_NPR:
+                    re[sp - 1] = b == 0 && d == 0 ? ColumnEvaluator.apply(op, a, c) : Double.NaN;
+                    im[sp - 1] = 0;
+                    break;
+            }
+        }
+        out[0] = re[0];
+        out[1] = im[0];
+    }
+
+    /**
+     * store the principal value of <code>(a + bi)^(c + di)</code> in register <code>k</code>
+     */
+    private void pow(double a, double b, double c, double d, int k) {
+        if (b == 0 && d == 0 && (a >= 0 || c == Math.rint(c) || Double.isNaN(a) || Double.isNaN(c))) {
+            // real result; Math.pow keeps the exact special cases of the real mode
+            this.re[k] = Math.pow(a, c);
+            this.im[k] = 0;
+            return;
+        }
+        if (d == 0 && c == Math.rint(c) && Math.abs(c) <= 64) {
+            // small integer powers by repeated squaring are exact where exp(w log z) is not
+            long n = (long) Math.abs(c);
+            double pr = 1;
+            double pi = 0;
+            double sr = a;
+            double si = b;
+            while (n != 0) {
+                if ((n & 1) != 0) {
+                    double t = pr * sr - pi * si;
+                    pi = pr * si + pi * sr;
+                    pr = t;
+                }
+                double t = sr * sr - si * si;
+                si = 2 * sr * si;
+                sr = t;
+                n >>= 1;
+            }
+            if (c < 0) {
+                // 1 / (pr + pi i)
+                double den = pr * pr + pi * pi;
+                pr = pr / den;
+                pi = -pi / den;
+            }
+            this.re[k] = pr;
+            this.im[k] = pi;
+            return;
+        }
+        if (a == 0 && b == 0) {
+            this.re[k] = c > 0 ? 0 : Double.NaN;
+            this.im[k] = c > 0 ? 0 : Double.NaN;
+            return;
+        }
+        // z^w = exp(w log z), with log z = ln|z| + i arg z
+        double lnMod = Math.log(Math.hypot(a, b));
+        double arg = Math.atan2(b, a);
+        double x = c * lnMod - d * arg;
+        double y = c * arg + d * lnMod;
+        double mod = Math.exp(x);
+        if (b == 0 && d == 0 && a < 0) {
+            // negative base with a real exponent: |a|^c (cos(c pi) + i sin(c pi)), which is exact
+            // for the real axis crossings such as c = 1/2
+            mod = Math.pow(-a, c);
+            y = c * Math.PI;
+        }
+        this.re[k] = mod * cosOf(y);
+        this.im[k] = mod * sinOf(y);
+    }
+
+    /**
+     * cosine that is exactly 0 at odd multiples of pi / 2
+     */
+    private static double cosOf(double y) {
+        double q = y / (0.5 * Math.PI);
+        if (q == Math.rint(q) && Math.abs(q) < (1L << 52) && ((long) q & 1) != 0)
+            return 0;
+        return Math.cos(y);
+    }
+
+    /**
+     * sine that is exactly 0 at multiples of pi
+     */
+    private static double sinOf(double y) {
+        double q = y / Math.PI;
+        if (q == Math.rint(q) && Math.abs(q) < (1L << 52))
+            return 0;
+        return Math.sin(y);
+    }
+}
@@ -0,0 +1,187 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.bignum.Combinatorics;
+
+/**
+ * estimated cost of evaluating an equation, computed from its compiled program before evaluating
+ * it so that pathological inputs are rejected instead of hanging or overflowing the stack.
+ * <ul>
+ *     <li>{@link #getDepth() depth}: nesting of parentheses and exponents, which bounds the
+ *     recursion of the parsers</li>
+ *     <li>{@link #getNodes() nodes}: amount of instructions, which bounds the evaluation time</li>
+ *     <li>{@link #getMagnitude() magnitude}: upper bound of <code>log<sub>10</sub></code> of the
+ *     absolute value of any intermediate result of the {@link ExactEvaluator exact evaluation},
+ *     obtained by interval analysis over the compiled program. It bounds the amount of digits the
+ *     exact evaluation would have to carry.</li>
+ * </ul>
+ * The depth and the node count are already enforced by {@link EqtParser} while compiling.
+ * @author lcn
+ */
+public final class EqtCost {
+    /**
+     * maximum nesting depth of parentheses and exponents
+     */
+    public static final int MAX_DEPTH = 100;
+    /**
+     * maximum amount of symbols in an equation
+     */
+    public static final int MAX_NODES = 10000;
+    /**
+     * maximum {@link #getMagnitude() magnitude}: an intermediate result must have fewer digits than
+     * the exact evaluation can carry
+     */
+    public static final double MAX_MAGNITUDE = ExactEvaluator.MAX_DIGITS;
+
+    private final int depth;
+    private final int nodes;
+    private final double magnitude;
+
+    private EqtCost(int depth, int nodes, double magnitude) {
+        this.depth = depth;
+        this.nodes = nodes;
+        this.magnitude = magnitude;
+    }
+
+    /**
+     * @return maximum nesting depth of parentheses and exponents
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * @return amount of instructions
+     */
+    public int getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return upper bound of <code>log<sub>10</sub></code> of the absolute value of any
+     *         intermediate result whose bound is known. A value depending on an unbounded variable
+     *         or on a function other than abs is not an integer the exact evaluation carries, so
+     *         it is left out.
+     */
+    public double getMagnitude() {
+        return this.magnitude;
+    }
+
+    /**
+     * @return true if the equation is too deeply nested, too long or grows too large to evaluate
+     *         safely
+     */
+    public boolean isTooComplex() {
+        return this.depth > MAX_DEPTH || this.nodes > MAX_NODES || this.magnitude > MAX_MAGNITUDE;
+    }
+
+    /**
+     * estimate the cost of a compiled equation
+     * @param program compiled equation
+     * @param magnitudes <code>log<sub>10</sub></code> of the absolute value of every variable
+     *                   indexed by slot. Infinity or NaN marks an unbounded variable.
+     * @return the estimated cost
+     */
+    public static EqtCost of(EqtProgram program, double[] magnitudes) {
+        return new EqtCost(program.getDepth(), program.size(), magnitudeOf(program, magnitudes));
+    }
+
+    /**
+     * interval analysis of <code>log<sub>10</sub>|v|</code> over the program. Every stack entry
+     * carries a lower and an upper bound; sums may cancel, so their lower bound is lost. An upper
+     * bound of infinity marks an unknown value, which is not an integer the exact evaluation
+     * carries, e.g. a value depending on an unbounded variable or on sin(. A known bound that
+     * overflows is {@link Double#MAX_VALUE} instead.
+     * @param magnitudes magnitudes of the variables
+     * @return upper bound over all intermediate results whose bound is known
+     */
+    static double magnitudeOf(EqtProgram program, double[] magnitudes) {
+        int n = Math.max(1, program.getMaxStack());
+        double[] lo = new double[n];
+        double[] hi = new double[n];
+        double max = Double.NEGATIVE_INFINITY;
+        int sp = 0;
+        for (int i = 0; i < program.size(); i++) {
+            int op = program.opAt(i);
+            if (op == EqtProgram.OP_CONST || op == EqtProgram.OP_LOAD) {
+                double m = op == EqtProgram.OP_CONST ? Math.log10(Math.abs(program.constAt(program.argAt(i)))) : magnitudes[program.argAt(i)];
+                lo[sp] = m;
+                hi[sp] = m;
+                if (Double.isNaN(m) || m == Double.POSITIVE_INFINITY) {
+                    lo[sp] = Double.NEGATIVE_INFINITY;
+                    hi[sp] = Double.POSITIVE_INFINITY;
+                }
+                sp++;
+            }
+            else if (op == EqtProgram.OP_NEG)
+                continue;
+            else if (op == EqtProgram.OP_FACT) {
+                lo[sp - 1] = 0;
+                hi[sp - 1] = hi[sp - 1] <= 0 ? 0 : factorialMagnitude(hi[sp - 1]);
+            }
+            else if (op == EqtProgram.OP_FUNC) {
+                // abs keeps the value an integer; every other function ends the exact evaluation
+                if (program.argAt(i) != Functions.ABS) {
+                    lo[sp - 1] = Double.NEGATIVE_INFINITY;
+                    hi[sp - 1] = Double.POSITIVE_INFINITY;
+                }
+            }
+            else {
+                sp--;
+                double aLo = lo[sp - 1], aHi = hi[sp - 1], bLo = lo[sp], bHi = hi[sp];
+                lo[sp - 1] = Double.NEGATIVE_INFINITY;
+                if (aHi == Double.POSITIVE_INFINITY || bHi == Double.POSITIVE_INFINITY)
+                    hi[sp - 1] = Double.POSITIVE_INFINITY;
+                else {
+                    switch (op) {
+                        case EqtProgram.OP_ADD:
+                        case EqtProgram.OP_SUB:
+                            hi[sp - 1] = Math.max(aHi, bHi) + Math.log10(2);
+                            break;
+                        case EqtProgram.OP_MUL:
+                            lo[sp - 1] = aLo + bLo;
+                            hi[sp - 1] = aHi + bHi;
+                            break;
+                        case EqtProgram.OP_DIV:
+                            // the exact evaluation only divides by a non-zero integer, whose magnitude is at least 0
+                            lo[sp - 1] = aLo - bHi;
+                            hi[sp - 1] = aHi - Math.max(0, bLo);
+                            break;
+                        case EqtProgram.OP_NCR:
+                            // C(n, k) <= min(n^k, 2^n)
+                            hi[sp - 1] = aHi <= 0 ? 0 : Math.min(Math.pow(10, bHi) * aHi, Math.pow(10, aHi) * Math.log10(2));
+                            break;
+                        case EqtProgram.OP_NPR:
+                            // P(n, k) <= min(n^k, n!)
+                            hi[sp - 1] = aHi <= 0 ? 0 : Math.min(Math.pow(10, bHi) * aHi, factorialMagnitude(aHi));
+                            break;
+                        case EqtProgram.OP_POW:
+                            // |a^b| = 10^(b log10|a|) with 0 <= b <= 10^bHi, as the exact evaluation
+                            // gives up on a negative exponent
+                            hi[sp - 1] = aHi <= 0 ? 0 : Math.pow(10, bHi) * aHi;
+                            break;
+                    }
+                    // -infinity is an exact 0, only NaN and +infinity are an overflow
+                    if (Double.isNaN(hi[sp - 1]) || hi[sp - 1] == Double.POSITIVE_INFINITY)
+                        hi[sp - 1] = Double.MAX_VALUE;
+                }
+                if (Double.isNaN(lo[sp - 1]))
+                    lo[sp - 1] = Double.NEGATIVE_INFINITY;
+            }
+            if (hi[sp - 1] != Double.POSITIVE_INFINITY)
+                max = Math.max(max, hi[sp - 1]);
+        }
+        return max;
+    }
+
+    /**
+     * @param hi upper bound of <code>log<sub>10</sub> n</code>, at least 0
+     * @return upper bound of <code>log<sub>10</sub>(n!)</code>, or {@link Double#MAX_VALUE} if it
+     *         overflows. Stirling's formula is off by less than 1.
+     */
+    private static double factorialMagnitude(double hi) {
+        if (hi == Double.POSITIVE_INFINITY)
+            return hi;
+        double m = Combinatorics.log10Factorial(Math.pow(10, hi)) + 1;
+        return Double.isNaN(m) || Double.isInfinite(m) ? Double.MAX_VALUE : m;
+    }
+}
@@ -0,0 +1,366 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.MainActivity;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.exception.SymbolUndefinedException;
+
+import java.util.Arrays;
+
+/**
+ * This class compiles an equation written with the {@link Symbol symbols} of the equation display
+ * into an {@link EqtProgram}. It reads the symbols themselves, and the compiled program can be
+ * evaluated many times without parsing again.
+ * <p>
+ * Grammar (operators have the usual precedence, {@link Symbol#SYM_EXP ^(} is right-associative):
+ * <pre>
+ * expr    := term (("+" | "-") term)*
+ * term    := unary (("&times;" | "/") unary)*
+ * unary   := ("-" | "+") unary | power
+ * power   := postfix ("^(" expr ")")* "!"*
+ * postfix := primary "!"*
+ * primary := number | variable | constant | "#" digits | "(" expr ")" | "C(" expr "," expr ")"
+ *          | "P(" expr "," expr ")" | function expr ")"
+ * variable := "Ans" | "x" | "M" | "A" | "B" | "D"
+ * constant := "&pi;" | "e"
+ * function := "sin(" | "cos(" | "tan(" | "ln(" | "log(" | "&radic;(" | "exp(" | "abs("
+ * </pre>
+ * {@link #compileRelation(String)} additionally accepts <code>expr "=" expr</code>, and
+ * <code>"#" digits</code> referring to an earlier line is only accepted by
+ * {@link #compileLine(String, int)}.
+ * </p>
+ * @author lcn
+ */
+public class EqtParser {
+    /**
+     * all symbols sorted by the length of their representation in descending order so that the
+     * longest symbol is matched first.
+     * @see Symbol#sort()
+     */
+    private static final Symbol[] SORTED_SYMBOLS = Symbol.sort().toArray(new Symbol[0]);
+
+    /**
+     * tokenized equation
+     */
+    private final Symbol[] tokens;
+    /**
+     * character offset of each token in the source equation
+     */
+    private final int[] offsets;
+    /**
+     * source equation without the cursor
+     */
+    private final String src;
+    /**
+     * index of the next token to consume
+     */
+    private int pos;
+    /**
+     * amount of worksheet lines that can be referred to by {@link Symbol#SYM_LINE "#"}
+     */
+    private int lines;
+
+    private int[] code = new int[16];
+    private int[] args = new int[16];
+    private double[] consts = new double[8];
+    private int codeLen;
+    private int constLen;
+    private int sp;
+    private int maxStack;
+    private int parenDepth;
+    private int maxDepth;
+
+    private EqtParser(String src, Symbol[] tokens, int[] offsets) {
+        this.src = src;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.pos = 0;
+    }
+
+    /**
+     * compile the equation.
+     * @param eqt equation in the equation display. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @return compiled program
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     */
+    public static EqtProgram compile(String eqt) {
+        return EqtParser.compileLine(eqt, 0);
+    }
+
+    /**
+     * compile a line of a worksheet. A reference <code>#k</code> to the result of line
+     * <code>k</code> loads the slot {@link EqtProgram#SLOT_LINES}<code> + k - 1</code>. Only the
+     * earlier lines can be referred to, so the references of a worksheet never form a cycle.
+     * @param eqt equation of the line
+     * @param lines amount of lines before this one
+     * @return compiled program
+     * @throws EqtSyntaxException if the equation has a syntax error or refers to a line that is
+     *                            not before this one
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     */
+    public static EqtProgram compileLine(String eqt, int lines) {
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = tokenize(src, offsets);
+        checkLength(tokens);
+        EqtParser parser = new EqtParser(src, tokens, offsets);
+        parser.lines = lines;
+        parser.parseExpr();
+        if (parser.pos != tokens.length)
+            throw new EqtSyntaxException("unexpected \"" + tokens[parser.pos].getRepr() + "\"");
+        return parser.build();
+    }
+
+    /**
+     * compile an equation for the solve mode. An equation <code>lhs = rhs</code> is compiled as
+     * <code>lhs - rhs</code>; an equation without {@link Symbol#SYM_EQ "="} is compiled as is, so
+     * that its roots are the solutions.
+     * @param eqt equation in the equation display
+     * @return compiled program whose roots are the solutions of the equation
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     */
+    public static EqtProgram compileRelation(String eqt) {
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = tokenize(src, offsets);
+        checkLength(tokens);
+        EqtParser parser = new EqtParser(src, tokens, offsets);
+        parser.parseExpr();
+        if (parser.peek() == Symbol.SYM_EQ) {
+            parser.pos++;
+            parser.parseExpr();
+            parser.emit(EqtProgram.OP_SUB, 0);
+        }
+        if (parser.pos != tokens.length)
+            throw new EqtSyntaxException("unexpected \"" + tokens[parser.pos].getRepr() + "\"");
+        return parser.build();
+    }
+
+    private static void checkLength(Symbol[] tokens) {
+        if (tokens.length > EqtCost.MAX_NODES)
+            throw new EqtTooComplexException("longer than " + EqtCost.MAX_NODES + " symbols");
+    }
+
+    /**
+     * split the equation into symbols by matching the longest symbol first.
+     * @param src equation without the cursor
+     * @param offsets receives the character offset of each token
+     * @return the symbols in order
+     * @throws SymbolUndefinedException if some part of the equation is not a symbol
+     */
+    public static Symbol[] tokenize(String src, int[] offsets) {
+        Symbol[] tokens = new Symbol[src.length()];
+        int n = 0;
+        int i = 0;
+        while (i < src.length()) {
+            Symbol match = null;
+            for (Symbol sym : SORTED_SYMBOLS) {
+                if (src.startsWith(sym.getRepr(), i)) {
+                    match = sym;
+                    break;
+                }
+            }
+            if (match == null)
+                throw new SymbolUndefinedException();
+            offsets[n] = i;
+            tokens[n++] = match;
+            i += match.getRepr().length();
+        }
+        offsets[n] = i;
+        return Arrays.copyOf(tokens, n);
+    }
+
+    private Symbol peek() {
+        return this.pos < this.tokens.length ? this.tokens[this.pos] : null;
+    }
+
+    private void expect(Symbol sym) {
+        if (peek() != sym)
+            throw new EqtSyntaxException("expected \"" + sym.getRepr() + "\"");
+        this.pos++;
+    }
+
+    private void parseExpr() {
+        parseTerm();
+        while (peek() == Symbol.SYM_PLUS || peek() == Symbol.SYM_MINUS) {
+            Symbol op = this.tokens[this.pos++];
+            parseTerm();
+            emit(op == Symbol.SYM_PLUS ? EqtProgram.OP_ADD : EqtProgram.OP_SUB, 0);
+        }
+    }
+
+    private void parseTerm() {
+        parseUnary();
+        while (peek() == Symbol.SYM_MUL || peek() == Symbol.SYM_DIV) {
+            Symbol op = this.tokens[this.pos++];
+            parseUnary();
+            emit(op == Symbol.SYM_MUL ? EqtProgram.OP_MUL : EqtProgram.OP_DIV, 0);
+        }
+    }
+
+    private void parseUnary() {
+        // signs are counted instead of recursed into, so a long run of them cannot overflow the stack
+        boolean negative = false;
+        while (peek() == Symbol.SYM_MINUS || peek() == Symbol.SYM_PLUS) {
+            if (this.tokens[this.pos++] == Symbol.SYM_MINUS)
+                negative = !negative;
+        }
+        parsePower();
+        if (negative)
+            emit(EqtProgram.OP_NEG, 0);
+    }
+
+    private void parsePower() {
+        parsePostfix();
+        int exponents = 0;
+        while (peek() == Symbol.SYM_EXP) {
+            this.pos++;
+            enterParen();
+            parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.parenDepth--;
+            exponents++;
+        }
+        // right-associative: a^(b)^(c) = a^(b^(c))
+        for (int i = 0; i < exponents; i++)
+            emit(EqtProgram.OP_POW, 0);
+        // a factorial after an exponent applies to the whole power, e.g. 10^(2)! = 100!
+        while (exponents > 0 && peek() == Symbol.SYM_FACT) {
+            this.pos++;
+            emit(EqtProgram.OP_FACT, 0);
+        }
+    }
+
+    private void parsePostfix() {
+        parsePrimary();
+        while (peek() == Symbol.SYM_FACT) {
+            this.pos++;
+            emit(EqtProgram.OP_FACT, 0);
+        }
+    }
+
+    private void parsePrimary() {
+        Symbol sym = peek();
+        if (sym == null)
+            throw new EqtSyntaxException("unexpected end of equation");
+        if (Symbol.isNum(sym) || sym == Symbol.SYM_DOT) {
+            parseNumber();
+        }
+        else if (EqtProgram.slotOf(sym) != EqtProgram.NO_SLOT) {
+            // only the slot is compiled in, the value is read from the environment
+            this.pos++;
+            emit(EqtProgram.OP_LOAD, EqtProgram.slotOf(sym));
+        }
+        else if (Symbol.isConstant(sym)) {
+            this.pos++;
+            emit(EqtProgram.OP_CONST, addConst(sym == Symbol.SYM_PI ? Math.PI : Math.E));
+        }
+        else if (sym == Symbol.SYM_LINE) {
+            this.pos++;
+            emit(EqtProgram.OP_LOAD, EqtProgram.SLOT_LINES + parseLineNumber() - 1);
+        }
+        else if (sym == Symbol.SYM_LEFT_PAREN) {
+            this.pos++;
+            enterParen();
+            parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.parenDepth--;
+        }
+        else if (sym == Symbol.SYM_NCR || sym == Symbol.SYM_NPR) {
+            this.pos++;
+            enterParen();
+            parseExpr();
+            expect(Symbol.SYM_COMMA);
+            parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.parenDepth--;
+            emit(sym == Symbol.SYM_NCR ? EqtProgram.OP_NCR : EqtProgram.OP_NPR, 0);
+        }
+        else if (Functions.of(sym) != Functions.NONE) {
+            this.pos++;
+            enterParen();
+            parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.parenDepth--;
+            emit(EqtProgram.OP_FUNC, Functions.of(sym));
+        }
+        else
+            throw new EqtSyntaxException("unexpected \"" + sym.getRepr() + "\"");
+    }
+
+    private void parseNumber() {
+        int start = this.pos;
+        boolean dot = false;
+        while (peek() != null && (Symbol.isNum(peek()) || peek() == Symbol.SYM_DOT)) {
+            if (peek() == Symbol.SYM_DOT) {
+                if (dot)
+                    throw new EqtSyntaxException("misplaced \".\"");
+                dot = true;
+            }
+            this.pos++;
+        }
+        String literal = this.src.substring(this.offsets[start], this.offsets[this.pos]);
+        if (literal.equals(Symbol.SYM_DOT.getRepr()))
+            throw new EqtSyntaxException("misplaced \".\"");
+        emit(EqtProgram.OP_CONST, addConst(Double.parseDouble(literal)));
+    }
+
+    /**
+     * @return number of the line referred to by the digits after {@link Symbol#SYM_LINE "#"}
+     */
+    private int parseLineNumber() {
+        int start = this.pos;
+        while (peek() != null && Symbol.isNum(peek()))
+            this.pos++;
+        String literal = this.src.substring(this.offsets[start], this.offsets[this.pos]);
+        // longer numbers could overflow, and are never an earlier line anyway
+        int line = literal.length() == 0 || literal.length() > 9 ? 0 : Integer.parseInt(literal);
+        if (line < 1 || line > this.lines)
+            throw new EqtSyntaxException("no line " + Symbol.SYM_LINE.getRepr() + literal + " before this one");
+        return line;
+    }
+
+    private void enterParen() {
+        this.parenDepth++;
+        if (this.parenDepth > EqtCost.MAX_DEPTH)
+            throw new EqtTooComplexException("nested deeper than " + EqtCost.MAX_DEPTH);
+        if (this.parenDepth > this.maxDepth)
+            this.maxDepth = this.parenDepth;
+    }
+
+    private int addConst(double value) {
+        if (this.constLen == this.consts.length)
+            this.consts = Arrays.copyOf(this.consts, this.constLen * 2);
+        this.consts[this.constLen] = value;
+        return this.constLen++;
+    }
+
+    private void emit(int op, int arg) {
+        if (this.codeLen == this.code.length) {
+            this.code = Arrays.copyOf(this.code, this.codeLen * 2);
+            this.args = Arrays.copyOf(this.args, this.codeLen * 2);
+        }
+        this.code[this.codeLen] = op;
+        this.args[this.codeLen] = arg;
+        this.codeLen++;
+        if (op == EqtProgram.OP_CONST || op == EqtProgram.OP_LOAD) {
+            this.sp++;
+            if (this.sp > this.maxStack)
+                this.maxStack = this.sp;
+        }
+        else if (op != EqtProgram.OP_NEG && op != EqtProgram.OP_FACT && op != EqtProgram.OP_FUNC)
+            this.sp--;
+    }
+
+    private EqtProgram build() {
+        return new EqtProgram(Arrays.copyOf(this.code, this.codeLen), Arrays.copyOf(this.args, this.codeLen),
+                Arrays.copyOf(this.consts, this.constLen), this.maxStack, this.maxDepth);
+    }
+}
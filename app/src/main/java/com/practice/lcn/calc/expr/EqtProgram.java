@@ -0,0 +1,379 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.bignum.Combinatorics;
+
+/**
+ * compiled form of an equation. The equation is flattened into a postfix (reverse Polish)
+ * instruction list so that it can be evaluated in a tight primitive loop, either one value at a
+ * time ({@link #evaluate(double[], double[])}) or one column at a time ({@link ColumnEvaluator}).
+ * <p>
+ * Instances are immutable once compiled by {@link EqtParser}, so the same program can be shared
+ * by several threads as long as each thread provides its own operand stack.
+ * </p>
+ * @author lcn
+ */
+public final class EqtProgram {
+    /**
+     * push the constant <code>consts[arg]</code>
+     */
+    public static final int OP_CONST = 0;
+    /**
+     * push the variable stored in slot <code>arg</code> of the environment
+     */
+    public static final int OP_LOAD = 1;
+    /**
+     * negate the top of the stack
+     */
+    public static final int OP_NEG = 2;
+    /**
+     * pop b, pop a, push a + b
+     */
+    public static final int OP_ADD = 3;
+    /**
+     * pop b, pop a, push a - b
+     */
+    public static final int OP_SUB = 4;
+    /**
+     * pop b, pop a, push a &times; b
+     */
+    public static final int OP_MUL = 5;
+    /**
+     * pop b, pop a, push a / b
+     */
+    public static final int OP_DIV = 6;
+    /**
+     * pop b, pop a, push a<sup>b</sup>
+     */
+    public static final int OP_POW = 7;
+    /**
+     * replace the top of the stack a with a!
+     */
+    public static final int OP_FACT = 8;
+    /**
+     * pop k, pop n, push the binomial coefficient C(n, k)
+     */
+    public static final int OP_NCR = 9;
+    /**
+     * pop k, pop n, push the amount of permutations P(n, k)
+     */
+    public static final int OP_NPR = 10;
+    /**
+     * replace the top of the stack a with f(a), where <code>arg</code> is the {@link Functions}
+     * id of f
+     */
+    public static final int OP_FUNC = 11;
+
+    /**
+     * environment slot of the previous result ({@link Symbol#SYM_ANS Ans})
+     */
+    public static final int SLOT_ANS = 0;
+    /**
+     * environment slot of the independent variable ({@link Symbol#SYM_X x})
+     */
+    public static final int SLOT_X = 1;
+    /**
+     * environment slot of the memory register ({@link Symbol#SYM_MEM M})
+     */
+    public static final int SLOT_M = 2;
+    /**
+     * environment slot of the variable {@link Symbol#SYM_VAR_A A}
+     */
+    public static final int SLOT_A = 3;
+    /**
+     * environment slot of the variable {@link Symbol#SYM_VAR_B B}
+     */
+    public static final int SLOT_B = 4;
+    /**
+     * environment slot of the variable {@link Symbol#SYM_VAR_D D}
+     */
+    public static final int SLOT_D = 5;
+    /**
+     * minimum size of an environment passed to {@link #evaluate(double[], double[])}
+     */
+    public static final int ENV_SIZE = 6;
+    /**
+     * environment slot of the result of the first line of a worksheet. Line <code>k</code>
+     * (counted from 1) is stored at <code>SLOT_LINES + k - 1</code>. See
+     * {@link EqtParser#compileLine(String, int)}.
+     */
+    public static final int SLOT_LINES = ENV_SIZE;
+    /**
+     * slot of a symbol that is not a variable
+     */
+    public static final int NO_SLOT = -1;
+
+    /**
+     * environment slot of every symbol indexed by ordinal, or {@link #NO_SLOT}. References are
+     * resolved through it once by {@link EqtParser}, so a variable can change without compiling
+     * the program again.
+     */
+    private static final int[] SLOT_BY_ORDINAL = new int[Symbol.values().length];
+
+    static {
+        for (int i = 0; i < SLOT_BY_ORDINAL.length; i++)
+            SLOT_BY_ORDINAL[i] = NO_SLOT;
+        SLOT_BY_ORDINAL[Symbol.SYM_ANS.ordinal()] = SLOT_ANS;
+        SLOT_BY_ORDINAL[Symbol.SYM_X.ordinal()] = SLOT_X;
+        SLOT_BY_ORDINAL[Symbol.SYM_MEM.ordinal()] = SLOT_M;
+        SLOT_BY_ORDINAL[Symbol.SYM_VAR_A.ordinal()] = SLOT_A;
+        SLOT_BY_ORDINAL[Symbol.SYM_VAR_B.ordinal()] = SLOT_B;
+        SLOT_BY_ORDINAL[Symbol.SYM_VAR_D.ordinal()] = SLOT_D;
+    }
+
+    /**
+     * opcodes in postfix order
+     */
+    private final int[] code;
+    /**
+     * operand of each opcode. It is the constant index for {@link #OP_CONST}, the environment slot
+     * for {@link #OP_LOAD}, the function id for {@link #OP_FUNC} and unused for the others.
+     */
+    private final int[] args;
+    /**
+     * constant pool
+     */
+    private final double[] consts;
+    /**
+     * maximum depth that the operand stack reaches during evaluation
+     */
+    private final int maxStack;
+    /**
+     * maximum nesting depth of parentheses in the source equation
+     */
+    private final int depth;
+
+    EqtProgram(int[] code, int[] args, double[] consts, int maxStack, int depth) {
+        this.code = code;
+        this.args = args;
+        this.consts = consts;
+        this.maxStack = maxStack;
+        this.depth = depth;
+    }
+
+    /**
+     * @param sym symbol
+     * @return environment slot of the symbol, or {@link #NO_SLOT} if it is not a variable
+     */
+    public static int slotOf(Symbol sym) {
+        return SLOT_BY_ORDINAL[sym.ordinal()];
+    }
+
+    /**
+     * @return number of instructions
+     */
+    public int size() {
+        return this.code.length;
+    }
+
+    /**
+     * @param i instruction index
+     * @return opcode of the <code>i</code>-th instruction
+     */
+    public int opAt(int i) {
+        return this.code[i];
+    }
+
+    /**
+     * @param i instruction index
+     * @return operand of the <code>i</code>-th instruction
+     * @see #args
+     */
+    public int argAt(int i) {
+        return this.args[i];
+    }
+
+    /**
+     * @param index constant index
+     * @return constant stored in the constant pool
+     */
+    public double constAt(int index) {
+        return this.consts[index];
+    }
+
+    /**
+     * @return maximum depth that the operand stack reaches during evaluation
+     */
+    public int getMaxStack() {
+        return this.maxStack;
+    }
+
+    /**
+     * @return maximum nesting depth of parentheses in the source equation
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+
+    /**
+     * check if the program reads the given environment slot
+     * @param slot environment slot such as {@link #SLOT_X}
+     * @return true if so; otherwise false.
+     */
+    public boolean uses(int slot) {
+        for (int i = 0; i < this.code.length; i++) {
+            if (this.code[i] == OP_LOAD && this.args[i] == slot)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * evaluate the program once.
+     * @param env variable values indexed by slot. See {@link #SLOT_ANS}, {@link #SLOT_X} and
+     *            {@link #slotOf(Symbol)}.
+     * @param stack operand stack of at least {@link #getMaxStack()} elements. It is overwritten.
+     * @return computation result
+     */
+    public double evaluate(double[] env, double[] stack) {
+        int sp = 0;
+        for (int i = 0; i < this.code.length; i++) {
+            switch (this.code[i]) {
+                case OP_CONST:
+                    stack[sp++] = this.consts[this.args[i]];
+                    break;
+                case OP_LOAD:
+                    stack[sp++] = env[this.args[i]];
+                    break;
+                case OP_NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case OP_ADD:
+                    sp--;
+                    stack[sp - 1] += stack[sp];
+                    break;
+                case OP_SUB:
+                    sp--;
+                    stack[sp - 1] -= stack[sp];
+                    break;
+                case OP_MUL:
+                    sp--;
+                    stack[sp - 1] *= stack[sp];
+                    break;
+                case OP_DIV:
+                    sp--;
+                    stack[sp - 1] /= stack[sp];
+                    break;
+                case OP_POW:
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case OP_FACT:
+                    stack[sp - 1] = Combinatorics.factorialOf(stack[sp - 1]);
+                    break;
+                case OP_FUNC:
+                    stack[sp - 1] = Functions.apply(this.args[i], stack[sp - 1]);
+                    break;
+                case OP_NCR:
+                    sp--;
+                    stack[sp - 1] = Combinatorics.binomialOf(stack[sp - 1], stack[sp]);
+                    break;
+                case OP_NPR:
+                    sp--;
+                    stack[sp - 1] = Combinatorics.permutationsOf(stack[sp - 1], stack[sp]);
+                    break;
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * evaluate the program and its derivative with respect to the
+     * {@link #SLOT_X independent variable} at the same time by forward-mode automatic
+     * differentiation. Each operand on the stack carries its derivative alongside.
+     * @param env variable values indexed by slot
+     * @param stack operand stack of at least {@link #getMaxStack()} elements. The value of the
+     *              program is left in <code>stack[0]</code>.
+     * @param dstack derivative stack of at least {@link #getMaxStack()} elements
+     * @return derivative of the program
+     */
+    public double evaluateWithDerivative(double[] env, double[] stack, double[] dstack) {
+        int sp = 0;
+        for (int i = 0; i < this.code.length; i++) {
+            switch (this.code[i]) {
+                case OP_CONST:
+                    stack[sp] = this.consts[this.args[i]];
+                    dstack[sp++] = 0;
+                    break;
+                case OP_LOAD:
+                    stack[sp] = env[this.args[i]];
+                    dstack[sp++] = this.args[i] == SLOT_X ? 1 : 0;
+                    break;
+                case OP_NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    dstack[sp - 1] = -dstack[sp - 1];
+                    break;
+                case OP_FACT:
+                    // only defined on integers, so it is flat wherever x does not move it
+                    stack[sp - 1] = Combinatorics.factorialOf(stack[sp - 1]);
+                    dstack[sp - 1] = dstack[sp - 1] == 0 ? 0 : Double.NaN;
+                    break;
+                case OP_FUNC:
+                    // chain rule: d f(a) = f'(a) da
+                    if (dstack[sp - 1] != 0)
+                        dstack[sp - 1] *= Functions.derivative(this.args[i], stack[sp - 1]);
+                    stack[sp - 1] = Functions.apply(this.args[i], stack[sp - 1]);
+                    break;
+                default:
+                    sp--;
+                    double a = stack[sp - 1];
+                    double da = dstack[sp - 1];
+                    double b = stack[sp];
+                    double db = dstack[sp];
+                    switch (this.code[i]) {
+                        case OP_ADD:
+                            stack[sp - 1] = a + b;
+                            dstack[sp - 1] = da + db;
+                            break;
+                        case OP_SUB:
+                            stack[sp - 1] = a - b;
+                            dstack[sp - 1] = da - db;
+                            break;
+                        case OP_MUL:
+                            stack[sp - 1] = a * b;
+                            dstack[sp - 1] = da * b + a * db;
+                            break;
+                        case OP_DIV:
+                            stack[sp - 1] = a / b;
+                            dstack[sp - 1] = (da * b - a * db) / (b * b);
+                            break;
+                        case OP_POW:
+                            double v = Math.pow(a, b);
+                            stack[sp - 1] = v;
+                            if (db == 0) {
+                                // d(a^b) = b a^(b-1) da, which is also defined for a <= 0
+                                dstack[sp - 1] = da == 0 ? 0 : b * Math.pow(a, b - 1) * da;
+                            }
+                            else
+                                dstack[sp - 1] = v * (db * Math.log(a) + (da == 0 ? 0 : b * da / a));
+                            break;
+                        case OP_NCR:
+                            stack[sp - 1] = Combinatorics.binomialOf(a, b);
+                            dstack[sp - 1] = da == 0 && db == 0 ? 0 : Double.NaN;
+                            break;
+                        case OP_NPR:
+                            stack[sp - 1] = Combinatorics.permutationsOf(a, b);
+                            dstack[sp - 1] = da == 0 && db == 0 ? 0 : Double.NaN;
+                            break;
+                    }
+                    break;
+            }
+        }
+        return dstack[0];
+    }
+
+    /**
+     * evaluate the program once with the given independent variable and previous result. A new
+     * operand stack is allocated for every call, so prefer {@link #evaluate(double[], double[])}
+     * in loops.
+     * @param x value of the independent variable
+     * @param ans value of the previous result
+     * @return computation result
+     */
+    public double evaluate(double x, double ans) {
+        double[] env = new double[ENV_SIZE];
+        env[SLOT_ANS] = ans;
+        env[SLOT_X] = x;
+        return evaluate(env, new double[this.maxStack]);
+    }
+}
@@ -0,0 +1,104 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.EqtSolver;
+
+/**
+ * immutable outcome of an evaluation: either a finite value, the digits of an exact integer, or
+ * one of the <code>RESULT_*</code> errors of {@link EqtSolver}.
+ * @author lcn
+ */
+public final class EvalResult {
+    /**
+     * result of an equation with a syntax error
+     */
+    public static final EvalResult SYNTAX_ERROR = new EvalResult(Double.NaN, EqtSolver.RESULT_SYN_ERR, null);
+    /**
+     * result of an equation over the evaluation budget
+     */
+    public static final EvalResult TOO_COMPLEX = new EvalResult(Double.NaN, EqtSolver.RESULT_TOO_COMPLEX, null);
+
+    /**
+     * computed value. It is not finite if {@link #err} is not null.
+     */
+    private final double value;
+    /**
+     * error shown in the {@link com.practice.lcn.calc.MainActivity#result result display}, or null
+     */
+    private final String err;
+    /**
+     * every digit of an exact integer result, see {@link EqtSolver#evaluateExact(String, String, double[])},
+     * or null if the result is a double
+     */
+    private final String digits;
+
+    private EvalResult(double value, String err, String digits) {
+        this.value = value;
+        this.err = err;
+        this.digits = digits;
+    }
+
+    /**
+     * wrap a computed value. Non-finite values are turned into the matching error.
+     * @param value computed value
+     * @return the result
+     * @see EqtSolver#toResult(double)
+     */
+    public static EvalResult of(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return new EvalResult(value, EqtSolver.toResult(value), null);
+        return new EvalResult(value, null, null);
+    }
+
+    /**
+     * wrap a result given by {@link EqtSolver#evaluate(String, String, double[], CompiledEqt)}
+     * @param result computation result in string form, or one of the <code>RESULT_*</code> errors
+     * @return the result. The value of an exact integer result is rounded to a double, so it is
+     *         infinite if the integer is too large for one.
+     */
+    public static EvalResult of(String result) {
+        double value;
+        try {
+            value = Double.parseDouble(result);
+        }
+        catch (NumberFormatException e) {
+            value = Double.NaN;
+        }
+        if (EqtSolver.hadErr(result))
+            return new EvalResult(value, result, null);
+        if (EqtSolver.toResult(value).equals(result))
+            return new EvalResult(value, null, null);
+        return new EvalResult(value, null, result);
+    }
+
+    /**
+     * @return true if the evaluation failed
+     */
+    public boolean hasErr() {
+        return this.err != null;
+    }
+
+    /**
+     * @return the error such as {@link EqtSolver#RESULT_NAN}, or null if there is none
+     */
+    public String getErr() {
+        return this.err;
+    }
+
+    /**
+     * @return the computed value. It is only meaningful if {@link #hasErr()} is false, and it is
+     *         rounded for an exact integer result.
+     */
+    public double getValue() {
+        return this.value;
+    }
+
+    /**
+     * @return the string shown in the {@link com.practice.lcn.calc.MainActivity#result result display}
+     */
+    @Override
+    public String toString() {
+        if (this.err != null)
+            return this.err;
+        return this.digits != null ? this.digits : EqtSolver.toResult(this.value);
+    }
+}
@@ -0,0 +1,483 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.MainActivity;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.bignum.Combinatorics;
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * This class evaluates an equation over the integers without rounding, so that e.g.
+ * <code>10000!</code> or <code>C(1000,500)</code> can be shown with all of their digits. It accepts
+ * the grammar of {@link EqtParser}, but gives up (returns null) as soon as a value would not be an
+ * integer, such as a decimal literal, a division with a remainder or a negative exponent; such
+ * equations are left to the floating-point evaluation.
+ * <p>
+ * {@link #evaluateFraction(String, BigDecimal, double[])} evaluates over the rational numbers
+ * instead, so that e.g. <code>1/7</code> can be expanded digit by digit by
+ * {@link com.practice.lcn.calc.digits.QuotientDigits}. It only gives up on the functions and the
+ * constants, whose values are irrational.
+ * </p>
+ * <p>
+ * Every intermediate value is bounded by {@link #MAX_DIGITS}, so an equation such as
+ * <code>(10^(9))!</code> is given up before its product is even started. A
+ * {@link CancellationToken} is checked before every operation.
+ * </p>
+ * @author lcn
+ */
+public class ExactEvaluator {
+    /**
+     * largest amount of decimal digits of any value
+     */
+    public static final int MAX_DIGITS = 100000;
+    private static final long MAX_BITS = (long) Math.ceil(MAX_DIGITS * Math.log(10) / Math.log(2));
+
+    /**
+     * exact value <code>num / den</code> in lowest terms, with <code>den &gt; 0</code>
+     */
+    private static final class Fraction {
+        static final Fraction ZERO = new Fraction(BigInteger.ZERO, BigInteger.ONE);
+        static final Fraction ONE = new Fraction(BigInteger.ONE, BigInteger.ONE);
+
+        final BigInteger num;
+        final BigInteger den;
+
+        private Fraction(BigInteger num, BigInteger den) {
+            this.num = num;
+            this.den = den;
+        }
+
+        static Fraction of(BigInteger value) {
+            return new Fraction(value, BigInteger.ONE);
+        }
+
+        /**
+         * @param den non-zero denominator
+         */
+        static Fraction of(BigInteger num, BigInteger den) {
+            if (den.signum() < 0) {
+                num = num.negate();
+                den = den.negate();
+            }
+            if (den.equals(BigInteger.ONE))
+                return new Fraction(num, den);
+            BigInteger gcd = num.gcd(den);
+            if (!gcd.equals(BigInteger.ONE)) {
+                num = num.divide(gcd);
+                den = den.divide(gcd);
+            }
+            return new Fraction(num, den);
+        }
+
+        static Fraction of(BigDecimal value) {
+            if (value.scale() <= 0)
+                return of(value.toBigIntegerExact());
+            return of(value.unscaledValue(), BigInteger.TEN.pow(value.scale()));
+        }
+
+        boolean isInteger() {
+            return this.den.equals(BigInteger.ONE);
+        }
+
+        int signum() {
+            return this.num.signum();
+        }
+
+        /**
+         * @return amount of bits of the larger of the numerator and the denominator
+         */
+        int bitLength() {
+            return Math.max(this.num.bitLength(), this.den.bitLength());
+        }
+
+        Fraction negate() {
+            return new Fraction(this.num.negate(), this.den);
+        }
+
+        Fraction abs() {
+            return this.num.signum() < 0 ? negate() : this;
+        }
+    }
+
+    private final Symbol[] tokens;
+    private final int[] offsets;
+    private final String src;
+    /**
+     * value of {@link Symbol#SYM_ANS Ans}, or null if it has no exact value
+     */
+    private final Fraction ans;
+    /**
+     * values of the variables indexed by slot, or null if there are none
+     */
+    private final double[] env;
+    /**
+     * true if values may be fractions; otherwise every value must be an integer
+     */
+    private final boolean fractions;
+    private final CancellationToken token;
+    private int pos;
+    private int depth;
+
+    private ExactEvaluator(String src, Symbol[] tokens, int[] offsets, Fraction ans, double[] env, boolean fractions, CancellationToken token) {
+        this.src = src;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.ans = ans;
+        this.env = env;
+        this.fractions = fractions;
+        this.token = token;
+        this.pos = 0;
+        this.depth = 0;
+    }
+
+    /**
+     * evaluate the equation exactly
+     * @param eqt equation in the equation display. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param ans value of {@link Symbol#SYM_ANS Ans}, or null if it is not an integer
+     * @param env values of the {@link Symbol#isVariable(Symbol) variables} indexed by
+     *            {@link EqtProgram#slotOf(Symbol) slot}, or null if there are none. A variable
+     *            holding a non-integer gives up the equation like a decimal literal does.
+     * @return the value, or null if the equation is not an integer equation or a value exceeds
+     *         {@link #MAX_DIGITS}
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws com.practice.lcn.calc.exception.SymbolUndefinedException if the equation contains an
+     *         undefined symbol
+     */
+    public static BigInteger evaluate(String eqt, BigInteger ans, double[] env) {
+        return evaluate(eqt, ans, env, CancellationToken.NONE);
+    }
+
+    /**
+     * evaluate the equation exactly like {@link #evaluate(String, BigInteger, double[])}, checking
+     * for cancellation before every operation
+     * @param eqt equation in the equation display
+     * @param ans value of {@link Symbol#SYM_ANS Ans}, or null if it is not an integer
+     * @param env values of the variables indexed by slot, or null if there are none
+     * @param token cancellation token
+     * @return the value, or null if the equation is not an integer equation or a value exceeds
+     *         {@link #MAX_DIGITS}
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigInteger evaluate(String eqt, BigInteger ans, double[] env, CancellationToken token) {
+        Fraction value = evaluate(eqt, ans == null ? null : Fraction.of(ans), env, false, token);
+        return value == null ? null : value.num;
+    }
+
+    /**
+     * evaluate the equation exactly over the rational numbers
+     * @param eqt equation in the equation display. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param ans value of {@link Symbol#SYM_ANS Ans}, or null if it has no exact value
+     * @param env values of the {@link Symbol#isVariable(Symbol) variables} indexed by
+     *            {@link EqtProgram#slotOf(Symbol) slot}, or null if there are none. A variable is
+     *            read as its shortest decimal form, like {@link PreciseEvaluator} does.
+     * @return <code>{numerator, denominator}</code> in lowest terms with a positive denominator,
+     *         or null if the equation has an irrational or undefined value, or a value exceeds
+     *         {@link #MAX_DIGITS}
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws com.practice.lcn.calc.exception.SymbolUndefinedException if the equation contains an
+     *         undefined symbol
+     */
+    public static BigInteger[] evaluateFraction(String eqt, BigDecimal ans, double[] env) {
+        return evaluateFraction(eqt, ans, env, CancellationToken.NONE);
+    }
+
+    /**
+     * evaluate the equation exactly over the rational numbers like
+     * {@link #evaluateFraction(String, BigDecimal, double[])}, checking for cancellation before
+     * every operation
+     * @param eqt equation in the equation display
+     * @param ans value of {@link Symbol#SYM_ANS Ans}, or null if it has no exact value
+     * @param env values of the variables indexed by slot, or null if there are none
+     * @param token cancellation token
+     * @return <code>{numerator, denominator}</code> in lowest terms, or null if the equation has an
+     *         irrational or undefined value, or a value exceeds {@link #MAX_DIGITS}
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public static BigInteger[] evaluateFraction(String eqt, BigDecimal ans, double[] env, CancellationToken token) {
+        Fraction value = evaluate(eqt, ans == null ? null : Fraction.of(ans), env, true, token);
+        return value == null ? null : new BigInteger[] { value.num, value.den };
+    }
+
+    private static Fraction evaluate(String eqt, Fraction ans, double[] env, boolean fractions, CancellationToken token) {
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = EqtParser.tokenize(src, offsets);
+        if (tokens.length > EqtCost.MAX_NODES)
+            return null;
+        ExactEvaluator evaluator = new ExactEvaluator(src, tokens, offsets, ans, env, fractions, token);
+        Fraction value = evaluator.parseExpr();
+        if (value != null && evaluator.pos != tokens.length)
+            throw new EqtSyntaxException("unexpected \"" + tokens[evaluator.pos].getRepr() + "\"");
+        return value;
+    }
+
+    /**
+     * @param eqt equation in the equation display
+     * @return true if the equation contains a factorial, nCr or nPr, whose results outgrow a
+     *         double the soonest
+     */
+    public static boolean hasCombinatorics(String eqt) {
+        return eqt.contains(Symbol.SYM_FACT.getRepr()) || eqt.contains(Symbol.SYM_NCR.getRepr()) || eqt.contains(Symbol.SYM_NPR.getRepr());
+    }
+
+    private Symbol peek() {
+        return this.pos < this.tokens.length ? this.tokens[this.pos] : null;
+    }
+
+    private void expect(Symbol sym) {
+        if (peek() != sym)
+            throw new EqtSyntaxException("expected \"" + sym.getRepr() + "\"");
+        this.pos++;
+    }
+
+    /**
+     * @return true if a value of this many bits is within {@link #MAX_DIGITS}
+     */
+    private static boolean fits(double bits) {
+        return bits <= MAX_BITS;
+    }
+
+    /**
+     * @return true if a value of about <code>10<sup>log10</sup></code> is within {@link #MAX_DIGITS}
+     */
+    private static boolean fitsDigits(double log10) {
+        return log10 < MAX_DIGITS - 1;
+    }
+
+    private Fraction parseExpr() {
+        Fraction value = parseTerm();
+        while (value != null && (peek() == Symbol.SYM_PLUS || peek() == Symbol.SYM_MINUS)) {
+            Symbol op = this.tokens[this.pos++];
+            Fraction rhs = parseTerm();
+            if (rhs == null)
+                return null;
+            this.token.checkpoint();
+            if (value.isInteger() && rhs.isInteger()) {
+                value = Fraction.of(op == Symbol.SYM_PLUS ? value.num.add(rhs.num) : value.num.subtract(rhs.num));
+                continue;
+            }
+            if (!fits((double) value.bitLength() + rhs.bitLength() + 1))
+                return null;
+            BigInteger lhs = value.num.multiply(rhs.den);
+            BigInteger other = rhs.num.multiply(value.den);
+            value = Fraction.of(op == Symbol.SYM_PLUS ? lhs.add(other) : lhs.subtract(other), value.den.multiply(rhs.den));
+        }
+        return value;
+    }
+
+    private Fraction parseTerm() {
+        Fraction value = parseUnary();
+        while (value != null && (peek() == Symbol.SYM_MUL || peek() == Symbol.SYM_DIV)) {
+            Symbol op = this.tokens[this.pos++];
+            Fraction rhs = parseUnary();
+            if (rhs == null)
+                return null;
+            this.token.checkpoint();
+            if (op == Symbol.SYM_DIV && rhs.signum() == 0)
+                return null;
+            if (op == Symbol.SYM_DIV && !this.fractions) {
+                BigInteger[] qr = value.num.divideAndRemainder(rhs.num);
+                if (qr[1].signum() != 0)
+                    return null;
+                value = Fraction.of(qr[0]);
+                continue;
+            }
+            if (!fits((double) value.bitLength() + rhs.bitLength()))
+                return null;
+            if (op == Symbol.SYM_MUL)
+                value = Fraction.of(value.num.multiply(rhs.num), value.den.multiply(rhs.den));
+            else
+                value = Fraction.of(value.num.multiply(rhs.den), value.den.multiply(rhs.num));
+        }
+        return value;
+    }
+
+    private Fraction parseUnary() {
+        boolean negative = false;
+        while (peek() == Symbol.SYM_MINUS || peek() == Symbol.SYM_PLUS) {
+            if (this.tokens[this.pos++] == Symbol.SYM_MINUS)
+                negative = !negative;
+        }
+        Fraction value = parsePower();
+        return value != null && negative ? value.negate() : value;
+    }
+
+    private Fraction parsePower() {
+        Fraction value = parsePostfix();
+        if (value != null && peek() == Symbol.SYM_EXP)
+            value = power(value, parseExponent());
+        return factorials(value);
+    }
+
+    /**
+     * parse <code>^(expr)</code> and the right-associative exponents following it
+     */
+    private Fraction parseExponent() {
+        expect(Symbol.SYM_EXP);
+        enter();
+        Fraction exponent = parseExpr();
+        if (exponent == null)
+            return null;
+        expect(Symbol.SYM_RIGHT_PAREN);
+        this.depth--;
+        if (peek() == Symbol.SYM_EXP)
+            return power(exponent, parseExponent());
+        return exponent;
+    }
+
+    private Fraction power(Fraction base, Fraction exponent) {
+        // a fractional exponent gives an irrational value in general
+        if (base == null || exponent == null || !exponent.isInteger())
+            return null;
+        BigInteger e = exponent.num;
+        if (e.signum() < 0) {
+            if (!this.fractions || base.signum() == 0)
+                return null;
+            base = Fraction.of(base.den, base.num);
+            e = e.negate();
+        }
+        if (base.isInteger() && base.num.abs().compareTo(BigInteger.ONE) <= 0)
+            return e.signum() == 0 ? Fraction.ONE : (base.signum() >= 0 || !e.testBit(0) ? base.abs() : base);
+        if (e.bitLength() > 31 || !fits((double) base.bitLength() * e.intValue()))
+            return null;
+        this.token.checkpoint();
+        // the powers of coprime integers are coprime
+        return new Fraction(base.num.pow(e.intValue()), base.den.pow(e.intValue()));
+    }
+
+    private Fraction parsePostfix() {
+        return factorials(parsePrimary());
+    }
+
+    /**
+     * apply the factorials following a value
+     */
+    private Fraction factorials(Fraction value) {
+        while (value != null && peek() == Symbol.SYM_FACT) {
+            this.pos++;
+            BigInteger n = value.num;
+            if (!value.isInteger() || n.signum() < 0 || n.bitLength() > 31 || !fitsDigits(Combinatorics.log10Factorial(n.intValue())))
+                return null;
+            this.token.checkpoint();
+            value = Fraction.of(Combinatorics.factorial(n.intValue()));
+        }
+        return value;
+    }
+
+    private void enter() {
+        this.depth++;
+        if (this.depth > EqtCost.MAX_DEPTH)
+            throw new EqtSyntaxException("nested deeper than " + EqtCost.MAX_DEPTH);
+    }
+
+    private Fraction parsePrimary() {
+        Symbol sym = peek();
+        if (sym == null)
+            throw new EqtSyntaxException("unexpected end of equation");
+        if (Symbol.isNum(sym) || sym == Symbol.SYM_DOT)
+            return parseNumber();
+        if (sym == Symbol.SYM_ANS) {
+            this.pos++;
+            return this.ans;
+        }
+        if (sym == Symbol.SYM_LEFT_PAREN) {
+            this.pos++;
+            enter();
+            Fraction value = parseExpr();
+            if (value == null)
+                return null;
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            return value;
+        }
+        if (sym == Symbol.SYM_NCR || sym == Symbol.SYM_NPR) {
+            this.pos++;
+            enter();
+            Fraction n = parseExpr();
+            if (n == null)
+                return null;
+            expect(Symbol.SYM_COMMA);
+            Fraction k = parseExpr();
+            if (k == null)
+                return null;
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            if (!n.isInteger() || !k.isInteger())
+                return null;
+            this.token.checkpoint();
+            BigInteger value = combination(sym, n.num, k.num);
+            return value == null ? null : Fraction.of(value);
+        }
+        if (sym == Symbol.SYM_ABS) {
+            this.pos++;
+            enter();
+            Fraction value = parseExpr();
+            if (value == null)
+                return null;
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            return value.abs();
+        }
+        int slot = EqtProgram.slotOf(sym);
+        if (slot != EqtProgram.NO_SLOT && slot != EqtProgram.SLOT_X) {
+            this.pos++;
+            return this.env == null ? Fraction.ZERO : variable(this.env[slot]);
+        }
+        // x, the other functions, the constants and the matrix symbols have no exact value
+        return null;
+    }
+
+    /**
+     * @param value value of a variable
+     * @return the value, or null if it is not finite, or not an integer while only integers are
+     *         allowed
+     */
+    private Fraction variable(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            return null;
+        if (this.fractions)
+            return Fraction.of(BigDecimal.valueOf(value));
+        if (value != Math.rint(value))
+            return null;
+        return Fraction.of(new BigDecimal(value).toBigIntegerExact());
+    }
+
+    private static BigInteger combination(Symbol sym, BigInteger n, BigInteger k) {
+        if (n.signum() < 0 || k.signum() < 0 || n.bitLength() > 31)
+            return null;
+        if (k.compareTo(n) > 0)
+            return BigInteger.ZERO;
+        int ni = n.intValue();
+        int ki = k.intValue();
+        double log10 = Combinatorics.log10Factorial(ni) - Combinatorics.log10Factorial(ni - ki);
+        if (sym == Symbol.SYM_NCR)
+            log10 -= Combinatorics.log10Factorial(ki);
+        if (!fitsDigits(log10))
+            return null;
+        return sym == Symbol.SYM_NCR ? Combinatorics.binomial(ni, ki) : Combinatorics.permutations(ni, ki);
+    }
+
+    private Fraction parseNumber() {
+        int start = this.pos;
+        while (peek() != null && (Symbol.isNum(peek()) || (this.fractions && peek() == Symbol.SYM_DOT)))
+            this.pos++;
+        if (peek() == Symbol.SYM_DOT || start == this.pos)
+            return null;
+        String literal = this.src.substring(this.offsets[start], this.offsets[this.pos]);
+        if (!this.fractions)
+            return Fraction.of(new BigInteger(literal));
+        try {
+            return Fraction.of(new BigDecimal(literal));
+        }
+        catch (NumberFormatException e) {
+            throw new EqtSyntaxException("misplaced \".\"");
+        }
+    }
+}
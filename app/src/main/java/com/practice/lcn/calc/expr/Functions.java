@@ -0,0 +1,248 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.Symbol;
+
+/**
+ * This namespace evaluates the scientific functions such as {@link Symbol#SYM_SIN sin(}. Every
+ * function symbol is mapped once to a small function id through a table indexed by
+ * {@link Symbol#ordinal() ordinal}, and the ids are dispatched by a dense <code>switch</code>
+ * straight to the <code>Math</code> intrinsics. Unlike mXparser, no function name is matched as a
+ * string and no function object is looked up while evaluating.
+ * <p>
+ * {@link #applyAll(int, double[], int)} runs the whole loop inside the dispatch, so that the
+ * {@link ColumnEvaluator} pays for it once per block rather than once per row.
+ * </p>
+ * @author lcn
+ */
+public final class Functions {
+    /**
+     * id of a symbol that is not a function
+     */
+    public static final int NONE = -1;
+    public static final int SIN = 0;
+    public static final int COS = 1;
+    public static final int TAN = 2;
+    /**
+     * natural logarithm
+     */
+    public static final int LN = 3;
+    /**
+     * common (base 10) logarithm
+     */
+    public static final int LOG = 4;
+    public static final int SQRT = 5;
+    public static final int EXP = 6;
+    public static final int ABS = 7;
+
+    private static final double LN_10 = Math.log(10);
+
+    /**
+     * function id of every symbol indexed by ordinal, or {@link #NONE}
+     */
+    private static final int[] BY_ORDINAL = new int[Symbol.values().length];
+
+    static {
+        for (int i = 0; i < BY_ORDINAL.length; i++)
+            BY_ORDINAL[i] = NONE;
+        BY_ORDINAL[Symbol.SYM_SIN.ordinal()] = SIN;
+        BY_ORDINAL[Symbol.SYM_COS.ordinal()] = COS;
+        BY_ORDINAL[Symbol.SYM_TAN.ordinal()] = TAN;
+        BY_ORDINAL[Symbol.SYM_LN.ordinal()] = LN;
+        BY_ORDINAL[Symbol.SYM_LOG.ordinal()] = LOG;
+        BY_ORDINAL[Symbol.SYM_SQRT.ordinal()] = SQRT;
+        BY_ORDINAL[Symbol.SYM_EXPONENTIAL.ordinal()] = EXP;
+        BY_ORDINAL[Symbol.SYM_ABS.ordinal()] = ABS;
+    }
+
+    private Functions() {
+    }
+
+    /**
+     * @param sym symbol
+     * @return function id of the symbol, or {@link #NONE} if it is not a function
+     */
+    public static int of(Symbol sym) {
+        return BY_ORDINAL[sym.ordinal()];
+    }
+
+    /**
+     * apply a function to a real number
+     * @param fn function id
+     * @param a argument
+     * @return value of the function, NaN outside its domain
+     */
+    public static double apply(int fn, double a) {
+        switch (fn) {
+            case SIN:
+                return Math.sin(a);
+            case COS:
+                return Math.cos(a);
+            case TAN:
+                return Math.tan(a);
+            case LN:
+                return Math.log(a);
+            case LOG:
+                return Math.log10(a);
+            case SQRT:
+                return Math.sqrt(a);
+            case EXP:
+                return Math.exp(a);
+            case ABS:
+                return Math.abs(a);
+        }
+        throw new IllegalArgumentException("not a function: " + fn);
+    }
+
+    /**
+     * apply a function to the first <code>n</code> elements of a column in place
+     * @param fn function id
+     * @param a column of arguments, receiving the values
+     * @param n amount of elements
+     */
+    public static void applyAll(int fn, double[] a, int n) {
+        switch (fn) {
+            case SIN:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.sin(a[i]);
+                return;
+            case COS:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.cos(a[i]);
+                return;
+            case TAN:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.tan(a[i]);
+                return;
+            case LN:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.log(a[i]);
+                return;
+            case LOG:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.log10(a[i]);
+                return;
+            case SQRT:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.sqrt(a[i]);
+                return;
+            case EXP:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.exp(a[i]);
+                return;
+            case ABS:
+                for (int i = 0; i < n; i++)
+                    a[i] = Math.abs(a[i]);
+                return;
+        }
+        throw new IllegalArgumentException("not a function: " + fn);
+    }
+
+    /**
+     * @param fn function id
+     * @param a argument
+     * @return derivative of the function at the argument
+     */
+    public static double derivative(int fn, double a) {
+        switch (fn) {
+            case SIN:
+                return Math.cos(a);
+            case COS:
+                return -Math.sin(a);
+            case TAN: {
+                double c = Math.cos(a);
+                return 1 / (c * c);
+            }
+            case LN:
+                return 1 / a;
+            case LOG:
+                return 1 / (a * LN_10);
+            case SQRT:
+                return 0.5 / Math.sqrt(a);
+            case EXP:
+                return Math.exp(a);
+            case ABS:
+                return a > 0 ? 1 : a < 0 ? -1 : Double.NaN;
+        }
+        throw new IllegalArgumentException("not a function: " + fn);
+    }
+
+    /**
+     * apply a function to a complex number <code>a + bi</code>, taking the principal branch of
+     * the logarithms and the square root
+     * @param fn function id
+     * @param a real part of the argument
+     * @param b imaginary part of the argument
+     * @param out receives the real part in <code>out[0]</code> and the imaginary part in
+     *            <code>out[1]</code>
+     */
+    public static void applyComplex(int fn, double a, double b, double[] out) {
+        // a negated real number has an imaginary part of -0, which must not select the lower
+        // side of the branch cuts: sqrt(-4) is 2i
+        if (b == 0)
+            b = 0;
+        if (b == 0 && (fn == SIN || fn == COS || fn == TAN || fn == EXP || fn == ABS || a >= 0 || Double.isNaN(a))) {
+            // real result; the intrinsics keep the exact special cases of the real mode
+            out[0] = apply(fn, a);
+            out[1] = 0;
+            return;
+        }
+        switch (fn) {
+            case SIN:
+                out[0] = Math.sin(a) * Math.cosh(b);
+                out[1] = Math.cos(a) * Math.sinh(b);
+                return;
+            case COS:
+                out[0] = Math.cos(a) * Math.cosh(b);
+                out[1] = -Math.sin(a) * Math.sinh(b);
+                return;
+            case TAN: {
+                // tan(a + bi) = (sin 2a + i sinh 2b) / (cos 2a + cosh 2b)
+                double den = Math.cos(2 * a) + Math.cosh(2 * b);
+                out[0] = Math.sin(2 * a) / den;
+                out[1] = Math.sinh(2 * b) / den;
+                if (Double.isInfinite(Math.cosh(2 * b))) {
+                    out[0] = 0;
+                    out[1] = Math.signum(b);
+                }
+                return;
+            }
+            case LN:
+            case LOG: {
+                // log z = log|z| + i arg z, with log10|z| taken directly so that log(-100) = 2 + 1.364i
+                double mod = Math.hypot(a, b);
+                double arg = Math.atan2(b, a);
+                out[0] = fn == LOG ? Math.log10(mod) : Math.log(mod);
+                out[1] = fn == LOG ? arg / LN_10 : arg;
+                return;
+            }
+            case SQRT: {
+                // principal root without cancellation: r = sqrt((|z| + |a|) / 2)
+                double r = Math.sqrt((Math.hypot(a, b) + Math.abs(a)) / 2);
+                if (r == 0) {
+                    out[0] = 0;
+                    out[1] = 0;
+                }
+                else if (a >= 0) {
+                    out[0] = r;
+                    out[1] = b / (2 * r);
+                }
+                else {
+                    out[0] = Math.abs(b) / (2 * r);
+                    out[1] = b < 0 ? -r : r;
+                }
+                return;
+            }
+            case EXP: {
+                double mod = Math.exp(a);
+                out[0] = mod * Math.cos(b);
+                out[1] = mod * Math.sin(b);
+                return;
+            }
+            case ABS:
+                out[0] = Math.hypot(a, b);
+                out[1] = 0;
+                return;
+        }
+        throw new IllegalArgumentException("not a function: " + fn);
+    }
+}
@@ -0,0 +1,190 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.concurrent.ParallelRange;
+
+import java.util.Arrays;
+
+/**
+ * This class computes the definite integral of a compiled equation in the
+ * {@link EqtProgram#SLOT_X independent variable}.
+ * <p>
+ * The interval is cut into {@link #PANELS} equal panels that are integrated in parallel, each by
+ * adaptive 7-point Gauss / 15-point Kronrod quadrature: a panel is halved until the Gauss and the
+ * Kronrod estimates agree within its share of the tolerance. The panels do not depend on the
+ * number of cores and their results are added in order with {@link CompensatedSum Neumaier's
+ * compensation}, so the result is the same on every device.
+ * </p>
+ * @author lcn
+ */
+public class Integrator {
+    /**
+     * amount of equal panels the interval is cut into
+     */
+    public static final int PANELS = 64;
+    /**
+     * maximum amount of times a panel is halved
+     */
+    public static final int MAX_DEPTH = 24;
+    /**
+     * relative tolerance of the whole integral
+     */
+    public static final double REL_TOLERANCE = 1e-12;
+
+    /**
+     * Kronrod nodes in [0, 1]; the odd indices are also the Gauss nodes
+     */
+    private static final double[] XK = {
+            0.991455371120812639206854697526329,
+            0.949107912342758524526189684047851,
+            0.864864423359769072789712788640926,
+            0.741531185599394439863864773280788,
+            0.586087235467691130294144845693013,
+            0.405845151377397166906606412076961,
+            0.207784955007898467600689403773245,
+            0.000000000000000000000000000000000
+    };
+    /**
+     * Kronrod weights matching {@link #XK}
+     */
+    private static final double[] WK = {
+            0.022935322010529224963732008058970,
+            0.063092092629978553290700663189204,
+            0.104790010322250183839876322541518,
+            0.140653259715525918745189590510238,
+            0.169004726639267902826583426598550,
+            0.190350578064785409913256402421014,
+            0.204432940075298892414161999234649,
+            0.209482141084727828012999174891714
+    };
+    /**
+     * Gauss weights of the nodes <code>XK[1], XK[3], XK[5], XK[7]</code>
+     */
+    private static final double[] WG = {
+            0.129484966168869693270611432679082,
+            0.279705391489276667901467771423780,
+            0.381830050505118944950369775488975,
+            0.417959183673469387755102040816327
+    };
+
+    private final EqtProgram program;
+    private final double[] env;
+    /**
+     * per-part copies of {@link #env} and operand stacks indexed by the part given by
+     * {@link ParallelRange}
+     */
+    private final double[][] envs;
+    private final double[][] stacks;
+
+    /**
+     * create a new integrator
+     * @param program program to integrate
+     * @param env values of the other variables. It is copied.
+     */
+    public Integrator(EqtProgram program, double[] env) {
+        this.program = program;
+        this.env = Arrays.copyOf(env, Math.max(env.length, EqtProgram.ENV_SIZE));
+        this.envs = new double[ParallelRange.parallelism()][];
+        this.stacks = new double[ParallelRange.parallelism()][];
+    }
+
+    /**
+     * compute the integral over <code>[a, b]</code>. If <code>b &lt; a</code> the result is negated.
+     * @param a lower limit
+     * @param b upper limit
+     * @return the integral, or {@link Double#NaN} if the integrand is not finite somewhere
+     */
+    public double integrate(double a, double b) {
+        return integrate(a, b, CancellationToken.NONE);
+    }
+
+    /**
+     * compute the integral over <code>[a, b]</code>, checking for cancellation between
+     * subdivisions.
+     * @param a lower limit
+     * @param b upper limit
+     * @param token cancellation token
+     * @return the integral, or {@link Double#NaN} if the integrand is not finite somewhere
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public double integrate(final double a, final double b, final CancellationToken token) {
+        if (a == b)
+            return 0;
+        final double h = (b - a) / PANELS;
+        final double[] panels = new double[PANELS];
+        // a first coarse pass sets the absolute tolerance from the magnitude of the integral
+        final double[] coarse = new double[PANELS];
+        ParallelRange.run(0, PANELS, 1, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                double[] err = new double[1];
+                for (int i = from; i < to; i++)
+                    coarse[i] = kronrod(part, a + i * h, i == PANELS - 1 ? b : a + (i + 1) * h, err);
+            }
+        });
+        CompensatedSum sum = new CompensatedSum();
+        for (double v : coarse)
+            sum.add(Math.abs(v));
+        final double tolerance = Math.max(REL_TOLERANCE * sum.value(), Double.MIN_NORMAL) / PANELS;
+        ParallelRange.run(0, PANELS, 1, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                double[] err = new double[1];
+                for (int i = from; i < to; i++)
+                    panels[i] = adapt(part, a + i * h, i == PANELS - 1 ? b : a + (i + 1) * h, tolerance, 0, err, token);
+            }
+        });
+        sum.reset();
+        for (double v : panels)
+            sum.add(v);
+        return sum.value();
+    }
+
+    /**
+     * integrate <code>[a, b]</code> adaptively, halving until the error estimate is below the
+     * tolerance
+     */
+    private double adapt(int part, double a, double b, double tolerance, int depth, double[] err, CancellationToken token) {
+        token.checkpoint();
+        double estimate = kronrod(part, a, b, err);
+        if (err[0] <= tolerance || depth >= MAX_DEPTH || Double.isNaN(estimate))
+            return estimate;
+        double m = 0.5 * (a + b);
+        return adapt(part, a, m, 0.5 * tolerance, depth + 1, err, token)
+                + adapt(part, m, b, 0.5 * tolerance, depth + 1, err, token);
+    }
+
+    /**
+     * apply the 15-point Kronrod rule on <code>[a, b]</code>
+     * @param err receives the difference between the Kronrod and the Gauss estimate
+     * @return Kronrod estimate
+     */
+    private double kronrod(int part, double a, double b, double[] err) {
+        double center = 0.5 * (a + b);
+        double half = 0.5 * (b - a);
+        double fc = f(part, center);
+        double resK = fc * WK[7];
+        double resG = fc * WG[3];
+        for (int j = 0; j < 7; j++) {
+            double dx = half * XK[j];
+            double f1 = f(part, center - dx);
+            double f2 = f(part, center + dx);
+            resK += WK[j] * (f1 + f2);
+            if (j % 2 == 1)
+                resG += WG[j / 2] * (f1 + f2);
+        }
+        err[0] = Math.abs((resK - resG) * half);
+        return resK * half;
+    }
+
+    private double f(int part, double x) {
+        double[] env = this.envs[part];
+        if (env == null) {
+            env = this.env.clone();
+            this.envs[part] = env;
+            this.stacks[part] = new double[Math.max(1, this.program.getMaxStack())];
+        }
+        env[EqtProgram.SLOT_X] = x;
+        return this.program.evaluate(env, this.stacks[part]);
+    }
+}
@@ -0,0 +1,319 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.MainActivity;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.bignum.Combinatorics;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.exception.MatrixException;
+import com.practice.lcn.calc.exception.SymbolUndefinedException;
+import com.practice.lcn.calc.matrix.Matrix;
+
+import java.util.Arrays;
+
+/**
+ * This class evaluates an equation whose values are {@link Matrix matrices}. A number is a
+ * 1&times;1 matrix, so scalar arithmetic works as usual and a scalar scales a matrix.
+ * <p>
+ * The grammar extends the one of {@link EqtParser} with matrix literals and functions:
+ * <pre>
+ * expr    := term (("+" | "-") term)*
+ * term    := unary (("&times;" | "/") unary)*
+ * unary   := ("-" | "+") unary | power
+ * power   := postfix ("^(" expr ")")* "!"*
+ * postfix := primary "!"*
+ * primary := number | "Ans" | "M" | "A" | "B" | "D" | "&pi;" | "e" | "(" expr ")" | "det(" expr ")" | "trn(" expr ")"
+ *          | "C(" expr "," expr ")" | "P(" expr "," expr ")" | function expr ")"
+ *          | "[" row (";" row)* "]"
+ * row     := expr ("," expr)*
+ * </pre>
+ * <code>A / B</code> is <code>A &times; B<sup>-1</sup></code>, and <code>A^(n)</code> takes an
+ * integer <code>n</code>, so that <code>A^(-1)</code> is the inverse. Unlike {@link EqtParser}, the
+ * equation is evaluated while it is parsed, since a matrix equation is evaluated only once.
+ * </p>
+ * @author lcn
+ */
+public class MatrixEvaluator {
+    private final Symbol[] tokens;
+    private final int[] offsets;
+    private final String src;
+    /**
+     * value of {@link Symbol#SYM_ANS Ans}
+     */
+    private final Matrix ans;
+    /**
+     * values of the stored variables indexed by {@link EqtProgram#slotOf(Symbol) slot}. They are
+     * scalars.
+     */
+    private final double[] env;
+    private int pos;
+    private int depth;
+
+    private MatrixEvaluator(String src, Symbol[] tokens, int[] offsets, Matrix ans, double[] env) {
+        this.src = src;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.ans = ans;
+        this.env = env;
+        this.pos = 0;
+        this.depth = 0;
+    }
+
+    /**
+     * evaluate the equation
+     * @param eqt equation in the equation display. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param ans value of {@link Symbol#SYM_ANS Ans}
+     * @param env values of the stored variables indexed by {@link EqtProgram#slotOf(Symbol) slot}
+     * @return the value of the equation
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     * @throws MatrixException if an operation is undefined for its operands
+     */
+    public static Matrix evaluate(String eqt, Matrix ans, double[] env) {
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = EqtParser.tokenize(src, offsets);
+        if (tokens.length > EqtCost.MAX_NODES)
+            throw new EqtTooComplexException("longer than " + EqtCost.MAX_NODES + " symbols");
+        MatrixEvaluator evaluator = new MatrixEvaluator(src, tokens, offsets, ans, env);
+        Matrix value = evaluator.parseExpr();
+        if (evaluator.pos != tokens.length)
+            throw new EqtSyntaxException("unexpected \"" + tokens[evaluator.pos].getRepr() + "\"");
+        return value;
+    }
+
+    /**
+     * @param eqt equation in the equation display
+     * @return true if the equation contains a matrix literal or a matrix function
+     */
+    public static boolean hasMatrixSymbol(String eqt) {
+        return eqt.contains(Symbol.SYM_LEFT_BRACKET.getRepr()) || eqt.contains(Symbol.SYM_DET.getRepr()) || eqt.contains(Symbol.SYM_TRN.getRepr());
+    }
+
+    private Symbol peek() {
+        return this.pos < this.tokens.length ? this.tokens[this.pos] : null;
+    }
+
+    private void expect(Symbol sym) {
+        if (peek() != sym)
+            throw new EqtSyntaxException("expected \"" + sym.getRepr() + "\"");
+        this.pos++;
+    }
+
+    private void enter() {
+        this.depth++;
+        if (this.depth > EqtCost.MAX_DEPTH)
+            throw new EqtTooComplexException("nested deeper than " + EqtCost.MAX_DEPTH);
+    }
+
+    private Matrix parseExpr() {
+        Matrix value = parseTerm();
+        while (peek() == Symbol.SYM_PLUS || peek() == Symbol.SYM_MINUS) {
+            Symbol op = this.tokens[this.pos++];
+            Matrix rhs = parseTerm();
+            value = op == Symbol.SYM_PLUS ? value.plus(rhs) : value.minus(rhs);
+        }
+        return value;
+    }
+
+    private Matrix parseTerm() {
+        Matrix value = parseUnary();
+        while (peek() == Symbol.SYM_MUL || peek() == Symbol.SYM_DIV) {
+            Symbol op = this.tokens[this.pos++];
+            Matrix rhs = parseUnary();
+            value = op == Symbol.SYM_MUL ? multiply(value, rhs) : divide(value, rhs);
+        }
+        return value;
+    }
+
+    private static Matrix multiply(Matrix a, Matrix b) {
+        if (a.isScalar())
+            return b.times(a.get(0, 0));
+        if (b.isScalar())
+            return a.times(b.get(0, 0));
+        return a.times(b);
+    }
+
+    private static Matrix divide(Matrix a, Matrix b) {
+        if (b.isScalar()) {
+            if (a.isScalar())
+                return Matrix.scalar(a.get(0, 0) / b.get(0, 0));
+            return a.times(1 / b.get(0, 0));
+        }
+        return multiply(a, b.inverse());
+    }
+
+    private Matrix parseUnary() {
+        boolean negative = false;
+        while (peek() == Symbol.SYM_MINUS || peek() == Symbol.SYM_PLUS) {
+            if (this.tokens[this.pos++] == Symbol.SYM_MINUS)
+                negative = !negative;
+        }
+        Matrix value = parsePower();
+        return negative ? value.times(-1) : value;
+    }
+
+    private Matrix parsePower() {
+        Matrix value = parsePostfix();
+        if (peek() == Symbol.SYM_EXP)
+            value = factorials(power(value, parseExponent()));
+        return value;
+    }
+
+    /**
+     * parse <code>^(expr)</code> and the exponents following it. They are right-associative,
+     * <code>a^(b)^(c) = a^(b^(c))</code>, so the exponent is raised to the rest of the chain.
+     */
+    private Matrix parseExponent() {
+        expect(Symbol.SYM_EXP);
+        enter();
+        Matrix exponent = parseExpr();
+        expect(Symbol.SYM_RIGHT_PAREN);
+        this.depth--;
+        if (peek() == Symbol.SYM_EXP)
+            return power(exponent, parseExponent());
+        return exponent;
+    }
+
+    private static Matrix power(Matrix base, Matrix exponent) {
+        if (!exponent.isScalar())
+            throw new MatrixException("matrix exponent");
+        double p = exponent.get(0, 0);
+        if (base.isScalar())
+            return Matrix.scalar(Math.pow(base.get(0, 0), p));
+        if (p != Math.rint(p) || Math.abs(p) > Long.MAX_VALUE)
+            throw new MatrixException("non-integer power");
+        return base.pow((long) p);
+    }
+
+    private Matrix parsePostfix() {
+        return factorials(parsePrimary());
+    }
+
+    /**
+     * apply the factorials following a value
+     */
+    private Matrix factorials(Matrix value) {
+        while (peek() == Symbol.SYM_FACT) {
+            this.pos++;
+            value = Matrix.scalar(Combinatorics.factorialOf(scalarOf(value, "factorial")));
+        }
+        return value;
+    }
+
+    private static double scalarOf(Matrix value, String op) {
+        if (!value.isScalar())
+            throw new MatrixException(op + " of a matrix");
+        return value.get(0, 0);
+    }
+
+    private Matrix parsePrimary() {
+        Symbol sym = peek();
+        if (sym == null)
+            throw new EqtSyntaxException("unexpected end of equation");
+        if (Symbol.isNum(sym) || sym == Symbol.SYM_DOT)
+            return Matrix.scalar(parseNumber());
+        if (sym == Symbol.SYM_ANS) {
+            this.pos++;
+            return this.ans;
+        }
+        if (Symbol.isVariable(sym)) {
+            this.pos++;
+            return Matrix.scalar(this.env[EqtProgram.slotOf(sym)]);
+        }
+        if (Symbol.isConstant(sym)) {
+            this.pos++;
+            return Matrix.scalar(sym == Symbol.SYM_PI ? Math.PI : Math.E);
+        }
+        if (sym == Symbol.SYM_LEFT_PAREN || sym == Symbol.SYM_DET || sym == Symbol.SYM_TRN) {
+            this.pos++;
+            enter();
+            Matrix value = parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            if (sym == Symbol.SYM_DET)
+                return Matrix.scalar(value.det());
+            if (sym == Symbol.SYM_TRN)
+                return value.transpose();
+            return value;
+        }
+        if (sym == Symbol.SYM_NCR || sym == Symbol.SYM_NPR) {
+            this.pos++;
+            enter();
+            double n = scalarOf(parseExpr(), sym.getRepr());
+            expect(Symbol.SYM_COMMA);
+            double k = scalarOf(parseExpr(), sym.getRepr());
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            return Matrix.scalar(sym == Symbol.SYM_NCR ? Combinatorics.binomialOf(n, k) : Combinatorics.permutationsOf(n, k));
+        }
+        if (Functions.of(sym) != Functions.NONE) {
+            this.pos++;
+            enter();
+            double value = scalarOf(parseExpr(), sym.getRepr());
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            return Matrix.scalar(Functions.apply(Functions.of(sym), value));
+        }
+        if (sym == Symbol.SYM_LEFT_BRACKET)
+            return parseLiteral();
+        throw new EqtSyntaxException("unexpected \"" + sym.getRepr() + "\"");
+    }
+
+    /**
+     * parse a matrix literal straight into its row-major array. Every element must be a scalar and
+     * every row as long as the first one.
+     */
+    private Matrix parseLiteral() {
+        this.pos++;
+        enter();
+        double[] data = new double[8];
+        int n = 0;
+        int rows = 0;
+        int cols = -1;
+        while (true) {
+            int rowLen = 0;
+            while (true) {
+                Matrix cell = parseExpr();
+                if (!cell.isScalar())
+                    throw new MatrixException("matrix inside a matrix literal");
+                if (n == data.length)
+                    data = Arrays.copyOf(data, n * 2);
+                data[n++] = cell.get(0, 0);
+                rowLen++;
+                if (peek() != Symbol.SYM_COMMA)
+                    break;
+                this.pos++;
+            }
+            if (cols != -1 && rowLen != cols)
+                throw new MatrixException("rows of different lengths");
+            cols = rowLen;
+            rows++;
+            if (peek() != Symbol.SYM_SEMICOLON)
+                break;
+            this.pos++;
+        }
+        expect(Symbol.SYM_RIGHT_BRACKET);
+        this.depth--;
+        return new Matrix(rows, cols, Arrays.copyOf(data, n));
+    }
+
+    private double parseNumber() {
+        int start = this.pos;
+        boolean dot = false;
+        while (peek() != null && (Symbol.isNum(peek()) || peek() == Symbol.SYM_DOT)) {
+            if (peek() == Symbol.SYM_DOT) {
+                if (dot)
+                    throw new EqtSyntaxException("misplaced \".\"");
+                dot = true;
+            }
+            this.pos++;
+        }
+        String literal = this.src.substring(this.offsets[start], this.offsets[this.pos]);
+        if (literal.equals(Symbol.SYM_DOT.getRepr()))
+            throw new EqtSyntaxException("misplaced \".\"");
+        return Double.parseDouble(literal);
+    }
+}
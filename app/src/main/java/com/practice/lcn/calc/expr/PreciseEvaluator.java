@@ -0,0 +1,354 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.MainActivity;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.bignum.BigMath;
+import com.practice.lcn.calc.bignum.Combinatorics;
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.exception.SymbolUndefinedException;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+/**
+ * This class evaluates an equation to any amount of significant digits, such as
+ * <code>&radic;(2)</code> or <code>&pi;</code> to a thousand digits. Every value is a
+ * {@link BigDecimal} rounded to the requested digits plus {@link #GUARD_DIGITS}, and the
+ * transcendental values come from {@link BigMath}.
+ * <p>
+ * The grammar is the one of {@link EqtParser} without {@link Symbol#SYM_X x} and the
+ * trigonometric functions, which have no precise evaluation; callers check
+ * {@link #hasTrigonometry(String)} to fall back to the floating-point evaluation:
+ * <pre>
+ * primary := number | "Ans" | "M" | "A" | "B" | "D" | "&pi;" | "e" | "(" expr ")"
+ *          | "C(" expr "," expr ")" | "P(" expr "," expr ")" | function expr ")"
+ * function := "ln(" | "log(" | "&radic;(" | "exp(" | "abs("
+ * </pre>
+ * An integer exponent is raised exactly by repeated squaring; any other one goes through
+ * <code>exp(b ln a)</code> and needs a positive base. Like {@link MatrixEvaluator}, the equation
+ * is evaluated while it is parsed.
+ * </p>
+ * @author lcn
+ */
+public class PreciseEvaluator {
+    /**
+     * digits carried beyond the requested ones, absorbing the rounding of the intermediate values
+     */
+    public static final int GUARD_DIGITS = 10;
+    /**
+     * largest integer exponent raised by repeated squaring
+     */
+    private static final int MAX_INT_EXPONENT = 999999999;
+
+    private final Symbol[] tokens;
+    private final int[] offsets;
+    private final String src;
+    /**
+     * value of {@link Symbol#SYM_ANS Ans}
+     */
+    private final BigDecimal ans;
+    /**
+     * values of the stored variables indexed by {@link EqtProgram#slotOf(Symbol) slot}
+     */
+    private final double[] env;
+    /**
+     * precision of every intermediate value
+     */
+    private final MathContext mc;
+    private final CancellationToken token;
+    private int pos;
+    private int depth;
+
+    private PreciseEvaluator(String src, Symbol[] tokens, int[] offsets, BigDecimal ans, double[] env, MathContext mc, CancellationToken token) {
+        this.src = src;
+        this.tokens = tokens;
+        this.offsets = offsets;
+        this.ans = ans;
+        this.env = env;
+        this.mc = mc;
+        this.token = token;
+        this.pos = 0;
+        this.depth = 0;
+    }
+
+    /**
+     * evaluate the equation
+     * @param eqt equation in the equation display. The {@link MainActivity#CURSOR cursor} is
+     *            ignored if present.
+     * @param ans value of {@link Symbol#SYM_ANS Ans}
+     * @param env values of the stored variables indexed by {@link EqtProgram#slotOf(Symbol) slot}
+     * @param digits amount of significant digits, at most {@link BigMath#MAX_DIGITS}
+     * @return the value of the equation rounded to the digits
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws SymbolUndefinedException if the equation contains an undefined symbol
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits
+     * @throws ArithmeticException if a value is undefined, such as a division by zero
+     */
+    public static BigDecimal evaluate(String eqt, BigDecimal ans, double[] env, int digits) {
+        return evaluate(eqt, ans, env, digits, CancellationToken.NONE);
+    }
+
+    /**
+     * evaluate the equation like {@link #evaluate(String, BigDecimal, double[], int)}, checking
+     * for cancellation before every operation and within {@link BigMath}
+     * @param eqt equation in the equation display
+     * @param ans value of {@link Symbol#SYM_ANS Ans}
+     * @param env values of the stored variables indexed by slot
+     * @param digits amount of significant digits, at most {@link BigMath#MAX_DIGITS}
+     * @param token cancellation token
+     * @return the value of the equation rounded to the digits
+     * @throws EqtSyntaxException if the equation has a syntax error
+     * @throws EqtTooComplexException if the equation is over the {@link EqtCost} limits or the
+     *         token is cancelled
+     * @throws ArithmeticException if a value is undefined, such as a division by zero
+     */
+    public static BigDecimal evaluate(String eqt, BigDecimal ans, double[] env, int digits, CancellationToken token) {
+        if (digits < 1 || digits > BigMath.MAX_DIGITS)
+            throw new IllegalArgumentException("digits out of 1.." + BigMath.MAX_DIGITS);
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        int[] offsets = new int[src.length() + 1];
+        Symbol[] tokens = EqtParser.tokenize(src, offsets);
+        if (tokens.length > EqtCost.MAX_NODES)
+            throw new EqtTooComplexException("longer than " + EqtCost.MAX_NODES + " symbols");
+        PreciseEvaluator evaluator = new PreciseEvaluator(src, tokens, offsets, ans, env, new MathContext(digits + GUARD_DIGITS), token);
+        BigDecimal value = evaluator.parseExpr();
+        if (evaluator.pos != tokens.length)
+            throw new EqtSyntaxException("unexpected \"" + tokens[evaluator.pos].getRepr() + "\"");
+        return value.round(new MathContext(digits));
+    }
+
+    /**
+     * @param eqt equation in the equation display
+     * @return true if the equation contains a trigonometric function, which has no precise
+     *         evaluation. An equation with an undefined symbol has none.
+     */
+    public static boolean hasTrigonometry(String eqt) {
+        String src = eqt.replace(MainActivity.CURSOR, "");
+        Symbol[] tokens;
+        try {
+            tokens = EqtParser.tokenize(src, new int[src.length() + 1]);
+        }
+        catch (RuntimeException e) {
+            return false;
+        }
+        for (Symbol sym : tokens) {
+            if (sym == Symbol.SYM_SIN || sym == Symbol.SYM_COS || sym == Symbol.SYM_TAN)
+                return true;
+        }
+        return false;
+    }
+
+    private Symbol peek() {
+        return this.pos < this.tokens.length ? this.tokens[this.pos] : null;
+    }
+
+    private void expect(Symbol sym) {
+        if (peek() != sym)
+            throw new EqtSyntaxException("expected \"" + sym.getRepr() + "\"");
+        this.pos++;
+    }
+
+    private void enter() {
+        this.depth++;
+        if (this.depth > EqtCost.MAX_DEPTH)
+            throw new EqtTooComplexException("nested deeper than " + EqtCost.MAX_DEPTH);
+    }
+
+    private BigDecimal parseExpr() {
+        BigDecimal value = parseTerm();
+        while (peek() == Symbol.SYM_PLUS || peek() == Symbol.SYM_MINUS) {
+            Symbol op = this.tokens[this.pos++];
+            BigDecimal rhs = parseTerm();
+            value = op == Symbol.SYM_PLUS ? value.add(rhs, this.mc) : value.subtract(rhs, this.mc);
+        }
+        return value;
+    }
+
+    private BigDecimal parseTerm() {
+        BigDecimal value = parseUnary();
+        while (peek() == Symbol.SYM_MUL || peek() == Symbol.SYM_DIV) {
+            Symbol op = this.tokens[this.pos++];
+            BigDecimal rhs = parseUnary();
+            this.token.checkpoint();
+            value = op == Symbol.SYM_MUL ? value.multiply(rhs, this.mc) : value.divide(rhs, this.mc);
+        }
+        return value;
+    }
+
+    private BigDecimal parseUnary() {
+        boolean negative = false;
+        while (peek() == Symbol.SYM_MINUS || peek() == Symbol.SYM_PLUS) {
+            if (this.tokens[this.pos++] == Symbol.SYM_MINUS)
+                negative = !negative;
+        }
+        BigDecimal value = parsePower();
+        return negative ? value.negate() : value;
+    }
+
+    private BigDecimal parsePower() {
+        BigDecimal value = parsePostfix();
+        if (peek() == Symbol.SYM_EXP)
+            value = factorials(power(value, parseExponent()));
+        return value;
+    }
+
+    /**
+     * parse <code>^(expr)</code> and the right-associative exponents following it
+     */
+    private BigDecimal parseExponent() {
+        expect(Symbol.SYM_EXP);
+        enter();
+        BigDecimal exponent = parseExpr();
+        expect(Symbol.SYM_RIGHT_PAREN);
+        this.depth--;
+        if (peek() == Symbol.SYM_EXP)
+            return power(exponent, parseExponent());
+        return exponent;
+    }
+
+    private BigDecimal power(BigDecimal base, BigDecimal exponent) {
+        this.token.checkpoint();
+        if (isInteger(exponent) && exponent.abs().compareTo(BigDecimal.valueOf(MAX_INT_EXPONENT)) <= 0)
+            return base.pow(exponent.intValueExact(), this.mc);
+        if (base.signum() == 0 && exponent.signum() > 0)
+            return BigDecimal.ZERO;
+        if (base.signum() <= 0)
+            throw new ArithmeticException("non-integer power of a non-positive number");
+        return BigMath.exp(exponent.multiply(BigMath.ln(base, this.mc, this.token), this.mc), this.mc, this.token);
+    }
+
+    private static boolean isInteger(BigDecimal value) {
+        return value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0;
+    }
+
+    private BigDecimal parsePostfix() {
+        return factorials(parsePrimary());
+    }
+
+    /**
+     * apply the factorials following a value
+     */
+    private BigDecimal factorials(BigDecimal value) {
+        while (peek() == Symbol.SYM_FACT) {
+            this.pos++;
+            int n = intOf(value);
+            if (n < 0)
+                throw new ArithmeticException("factorial of a negative number");
+            checkDigits(Combinatorics.log10Factorial(n));
+            this.token.checkpoint();
+            value = new BigDecimal(Combinatorics.factorial(n), this.mc);
+        }
+        return value;
+    }
+
+    /**
+     * @param value argument of a factorial, nCr or nPr
+     * @return the value as an int
+     * @throws ArithmeticException if the value is not an int
+     */
+    private static int intOf(BigDecimal value) {
+        if (!isInteger(value) || value.abs().compareTo(BigDecimal.valueOf(Integer.MAX_VALUE)) > 0)
+            throw new ArithmeticException("not an integer");
+        return value.intValueExact();
+    }
+
+    /**
+     * @param log10 <code>log<sub>10</sub></code> of an exact result to be computed
+     * @throws ArithmeticException if the result would have more than {@link ExactEvaluator#MAX_DIGITS}
+     */
+    private static void checkDigits(double log10) {
+        if (log10 >= ExactEvaluator.MAX_DIGITS - 1)
+            throw new ArithmeticException("overflow");
+    }
+
+    private BigDecimal parsePrimary() {
+        Symbol sym = peek();
+        if (sym == null)
+            throw new EqtSyntaxException("unexpected end of equation");
+        if (Symbol.isNum(sym) || sym == Symbol.SYM_DOT)
+            return parseNumber();
+        if (sym == Symbol.SYM_ANS) {
+            this.pos++;
+            return this.ans;
+        }
+        if (Symbol.isVariable(sym)) {
+            this.pos++;
+            double value = this.env[EqtProgram.slotOf(sym)];
+            if (Double.isNaN(value) || Double.isInfinite(value))
+                throw new ArithmeticException("variable is not finite");
+            return BigDecimal.valueOf(value);
+        }
+        if (sym == Symbol.SYM_PI) {
+            this.pos++;
+            return BigMath.pi(this.mc, this.token);
+        }
+        if (sym == Symbol.SYM_E) {
+            this.pos++;
+            return BigMath.e(this.mc, this.token);
+        }
+        if (sym == Symbol.SYM_LEFT_PAREN) {
+            this.pos++;
+            enter();
+            BigDecimal value = parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            return value;
+        }
+        if (sym == Symbol.SYM_NCR || sym == Symbol.SYM_NPR) {
+            this.pos++;
+            enter();
+            int n = intOf(parseExpr());
+            expect(Symbol.SYM_COMMA);
+            int k = intOf(parseExpr());
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            if (n < 0)
+                throw new ArithmeticException("negative amount of items");
+            if (k >= 0 && k <= n) {
+                double log10 = Combinatorics.log10Factorial(n) - Combinatorics.log10Factorial(n - k);
+                checkDigits(sym == Symbol.SYM_NCR ? log10 - Combinatorics.log10Factorial(k) : log10);
+            }
+            this.token.checkpoint();
+            BigInteger value = sym == Symbol.SYM_NCR ? Combinatorics.binomial(n, k) : Combinatorics.permutations(n, k);
+            return new BigDecimal(value, this.mc);
+        }
+        if (sym == Symbol.SYM_LN || sym == Symbol.SYM_LOG || sym == Symbol.SYM_SQRT || sym == Symbol.SYM_EXPONENTIAL || sym == Symbol.SYM_ABS) {
+            this.pos++;
+            enter();
+            BigDecimal value = parseExpr();
+            expect(Symbol.SYM_RIGHT_PAREN);
+            this.depth--;
+            if (sym == Symbol.SYM_LN)
+                return BigMath.ln(value, this.mc, this.token);
+            if (sym == Symbol.SYM_LOG)
+                return BigMath.ln(value, this.mc, this.token).divide(BigMath.ln(BigDecimal.TEN, this.mc, this.token), this.mc);
+            if (sym == Symbol.SYM_SQRT)
+                return BigMath.sqrt(value, this.mc, this.token);
+            if (sym == Symbol.SYM_EXPONENTIAL)
+                return BigMath.exp(value, this.mc, this.token);
+            return value.abs();
+        }
+        throw new EqtSyntaxException("unexpected \"" + sym.getRepr() + "\"");
+    }
+
+    private BigDecimal parseNumber() {
+        int start = this.pos;
+        boolean dot = false;
+        while (peek() != null && (Symbol.isNum(peek()) || peek() == Symbol.SYM_DOT)) {
+            if (peek() == Symbol.SYM_DOT) {
+                if (dot)
+                    throw new EqtSyntaxException("misplaced \".\"");
+                dot = true;
+            }
+            this.pos++;
+        }
+        String literal = this.src.substring(this.offsets[start], this.offsets[this.pos]);
+        if (literal.equals(Symbol.SYM_DOT.getRepr()))
+            throw new EqtSyntaxException("misplaced \".\"");
+        // a literal is exact, however many digits it has
+        return new BigDecimal(literal);
+    }
+}
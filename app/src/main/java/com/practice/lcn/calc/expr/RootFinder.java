@@ -0,0 +1,271 @@
+package com.practice.lcn.calc.expr;
+
+import java.util.Arrays;
+
+/**
+ * This class finds a root of a compiled equation in the
+ * {@link EqtProgram#SLOT_X independent variable}.
+ * <p>
+ * The search runs in three phases within a hard {@link #MAX_EVALUATIONS evaluation} and
+ * {@link #TIME_BUDGET_NS time} budget:
+ * <ol>
+ *     <li>Newton iterations from the initial guess, with the derivative obtained by
+ *     {@link EqtProgram#evaluateWithDerivative automatic differentiation}, until they converge or
+ *     stall. A sign change met on the way becomes the bracket. A converged point without a sign
+ *     change, such as a double root, is accepted if the equation is negligible there.</li>
+ *     <li>if there is still no bracket, an outward scan around the guess with a doubling step.</li>
+ *     <li>Brent's method inside the bracket, preferring a Newton step whenever it stays inside
+ *     the bracket and converges at least as fast as bisection.</li>
+ * </ol>
+ * A finder owns its scratch buffers and must not be used by more than one thread at a time.
+ * </p>
+ * @author lcn
+ */
+public class RootFinder {
+    /**
+     * maximum amount of evaluations of the equation per search
+     */
+    public static final int MAX_EVALUATIONS = 1000;
+    /**
+     * maximum time per search (in ns)
+     */
+    public static final long TIME_BUDGET_NS = 50000000L;
+    /**
+     * amount of Newton iterations in a row without a shorter step after which Newton has stalled
+     * and the search falls back to bracketing. Newton's steps keep shrinking near any root, even
+     * a multiple one, but not while it runs down an asymptote such as that of exp(x).
+     */
+    static final int NEWTON_STALLS = 8;
+    /**
+     * evaluations the Newton iterations may spend, so that the scan keeps its share of the budget
+     */
+    static final int NEWTON_EVALUATIONS = MAX_EVALUATIONS / 2;
+    /**
+     * maximum amount of doublings of the scanning step
+     */
+    static final int SCAN_STEPS = 64;
+    private static final double EPS = Math.ulp(1.0);
+
+    /**
+     * program to solve
+     */
+    private final EqtProgram program;
+    private final double[] env;
+    private final double[] stack;
+    private final double[] dstack;
+    /**
+     * derivative at the last evaluated point
+     */
+    private double derivative;
+    /**
+     * amount of evaluations spent in the current search
+     */
+    private int evaluations;
+    /**
+     * time when the current search must stop
+     */
+    private long deadline;
+
+    /**
+     * create a new root finder
+     * @param program program to solve, usually compiled by {@link EqtParser#compileRelation(String)}
+     * @param env values of the variables. It is copied.
+     */
+    public RootFinder(EqtProgram program, double[] env) {
+        this.program = program;
+        this.env = Arrays.copyOf(env, Math.max(env.length, EqtProgram.ENV_SIZE));
+        this.stack = new double[Math.max(1, program.getMaxStack())];
+        this.dstack = new double[this.stack.length];
+    }
+
+    /**
+     * @return amount of evaluations spent in the last search
+     */
+    public int getEvaluations() {
+        return this.evaluations;
+    }
+
+    /**
+     * evaluate the program and remember its derivative in {@link #derivative}
+     */
+    private double f(double x) {
+        this.evaluations++;
+        this.env[EqtProgram.SLOT_X] = x;
+        this.derivative = this.program.evaluateWithDerivative(this.env, this.stack, this.dstack);
+        return this.stack[0];
+    }
+
+    private boolean overBudget() {
+        return this.evaluations >= MAX_EVALUATIONS || System.nanoTime() > this.deadline;
+    }
+
+    private static boolean isFinite(double v) {
+        return !Double.isNaN(v) && !Double.isInfinite(v);
+    }
+
+    /**
+     * search a root near the initial guess.
+     * @param guess initial guess. It is replaced by 0 if it is not finite.
+     * @return the root, or {@link Double#NaN} if none was found within the budget
+     */
+    public double solve(double guess) {
+        this.evaluations = 0;
+        this.deadline = System.nanoTime() + TIME_BUDGET_NS;
+        double x = isFinite(guess) ? guess : 0;
+
+        // phase 1: Newton iterations
+        double fx = f(x);
+        if (fx == 0)
+            return x;
+        // largest residual met, the scale against which a residual is negligible
+        double scale = Math.abs(fx);
+        double shortest = Double.POSITIVE_INFINITY;
+        int stalls = 0;
+        while (stalls < NEWTON_STALLS && this.evaluations < NEWTON_EVALUATIONS && !overBudget() && isFinite(fx) && this.derivative != 0 && isFinite(this.derivative)) {
+            double next = x - fx / this.derivative;
+            if (!isFinite(next))
+                break;
+            double fnext = f(next);
+            if (fnext == 0)
+                return next;
+            if (isFinite(fnext) && (fx < 0) != (fnext < 0))
+                return brent(x, fx, next, fnext);
+            if (Math.abs(next - x) <= 4 * EPS * Math.max(1, Math.abs(x))) {
+                // converged without a sign change: a genuine crossing is refined by bracketing
+                double h = 16 * EPS * Math.max(1, Math.abs(next));
+                double fl = f(next - h);
+                double fr = f(next + h);
+                if (isFinite(fl) && isFinite(fr) && (fl < 0) != (fr < 0))
+                    return brent(next - h, fl, next + h, fr);
+                // an even-order root touches 0 without crossing it
+                if (Math.abs(fnext) <= 4 * EPS * scale)
+                    return next;
+                break;
+            }
+            if (isFinite(fnext))
+                scale = Math.max(scale, Math.abs(fnext));
+            double step = Math.abs(next - x);
+            stalls = step < shortest ? 0 : stalls + 1;
+            shortest = Math.min(shortest, step);
+            x = next;
+            fx = fnext;
+        }
+
+        // phase 2: scan outwards from the guess
+        double origin = isFinite(guess) ? guess : 0;
+        double step = Math.max(1, Math.abs(origin)) * 1e-3;
+        double xl = origin;
+        double xr = origin;
+        double fl = f(origin);
+        double fr = fl;
+        for (int i = 0; i < SCAN_STEPS && !overBudget(); i++, step *= 2) {
+            double nl = origin - step;
+            double nr = origin + step;
+            double fnl = f(nl);
+            if (fnl == 0)
+                return nl;
+            if (isFinite(fl) && isFinite(fnl) && (fl < 0) != (fnl < 0))
+                return brent(nl, fnl, xl, fl);
+            double fnr = f(nr);
+            if (fnr == 0)
+                return nr;
+            if (isFinite(fr) && isFinite(fnr) && (fr < 0) != (fnr < 0))
+                return brent(xr, fr, nr, fnr);
+            xl = nl;
+            fl = fnl;
+            xr = nr;
+            fr = fnr;
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Brent's method (zeroin) with Newton steps on the bracket <code>[a, b]</code>.
+     * @return the root, or {@link Double#NaN} if the budget ran out
+     */
+    private double brent(double a, double fa, double b, double fb) {
+        double root = zeroin(a, fa, b, fb);
+        // a sign change across a pole such as 1/x at 0 is not a root
+        if (isFinite(root) && !(Math.abs(f(root)) <= Math.max(Math.abs(fa), Math.abs(fb))))
+            return Double.NaN;
+        return root;
+    }
+
+    private double zeroin(double a, double fa, double b, double fb) {
+        // absolute part of the tolerance, so that a root at 0 is not chased down to the underflow
+        double tiny = EPS * Math.max(Math.abs(a), Math.abs(b));
+        double c = a;
+        double fc = fa;
+        double d = b - a;
+        double e = d;
+        double fbDerivative = Double.NaN;
+        while (!overBudget()) {
+            if ((fb > 0) == (fc > 0)) {
+                c = a;
+                fc = fa;
+                d = b - a;
+                e = d;
+            }
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+                fbDerivative = Double.NaN;
+            }
+            double tol = 2 * EPS * Math.abs(b) + tiny;
+            double xm = 0.5 * (c - b);
+            if (Math.abs(xm) <= tol || fb == 0)
+                return b;
+
+            double newton = isFinite(fbDerivative) && fbDerivative != 0 ? -fb / fbDerivative : Double.NaN;
+            if (isFinite(newton) && (newton > 0) == (xm > 0) && Math.abs(newton) < Math.abs(xm)
+                    && Math.abs(newton) < 0.5 * Math.abs(e)) {
+                // Newton step stays inside the bracket and shrinks faster than bisection
+                e = d;
+                d = newton;
+            }
+            else if (Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb)) {
+                double s = fb / fa;
+                double p;
+                double q;
+                if (a == c) {
+                    // secant
+                    p = 2 * xm * s;
+                    q = 1 - s;
+                }
+                else {
+                    // inverse quadratic interpolation
+                    double qa = fa / fc;
+                    double r = fb / fc;
+                    p = s * (2 * xm * qa * (qa - r) - (b - a) * (r - 1));
+                    q = (qa - 1) * (r - 1) * (s - 1);
+                }
+                if (p > 0)
+                    q = -q;
+                else
+                    p = -p;
+                if (2 * p < Math.min(3 * xm * q - Math.abs(tol * q), Math.abs(e * q))) {
+                    e = d;
+                    d = p / q;
+                }
+                else {
+                    d = xm;
+                    e = d;
+                }
+            }
+            else {
+                d = xm;
+                e = d;
+            }
+            a = b;
+            fa = fb;
+            b += Math.abs(d) > tol ? d : (xm > 0 ? tol : -tol);
+            fb = f(b);
+            fbDerivative = this.derivative;
+        }
+        return Double.NaN;
+    }
+}
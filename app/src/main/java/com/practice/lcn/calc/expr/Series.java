@@ -0,0 +1,136 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.concurrent.ParallelRange;
+
+import java.util.Arrays;
+
+/**
+ * This class computes the sum (&Sigma;) or product (&Pi;) of a compiled equation over an integer
+ * range of the {@link EqtProgram#SLOT_X independent variable}.
+ * <p>
+ * The range is cut into blocks of {@link #BLOCK} terms. Every block is evaluated by a
+ * {@link ColumnEvaluator} and reduced on its own, then the block results are reduced in order.
+ * The blocks do not depend on how many cores share the work, so the result is the same on every
+ * device. Sums use {@link CompensatedSum Neumaier's compensation} at both levels.
+ * </p>
+ * @author lcn
+ */
+public class Series {
+    /**
+     * amount of terms per block
+     */
+    public static final int BLOCK = 4 * ColumnEvaluator.BLOCK;
+    /**
+     * maximum amount of terms
+     */
+    public static final long MAX_TERMS = 1L << 31;
+
+    private final ColumnEvaluator evaluator;
+    private final double[] env;
+
+    /**
+     * create a new series
+     * @param program program computing the term for index {@link EqtProgram#SLOT_X x}
+     * @param env values of the other variables. It is copied.
+     */
+    public Series(EqtProgram program, double[] env) {
+        this.evaluator = new ColumnEvaluator(program);
+        this.env = Arrays.copyOf(env, Math.max(env.length, EqtProgram.ENV_SIZE));
+    }
+
+    /**
+     * compute the sum of the terms for <code>x = first, first + 1, ..., last</code>
+     * @param first first index
+     * @param last last index (inclusive)
+     * @return the sum. It is 0 if the range is empty.
+     * @throws IllegalArgumentException if the range has more than {@link #MAX_TERMS} terms
+     */
+    public double sum(long first, long last) {
+        return reduce(first, last, false, CancellationToken.NONE);
+    }
+
+    /**
+     * compute the sum of the terms, checking for cancellation between blocks
+     * @param first first index
+     * @param last last index (inclusive)
+     * @param token cancellation token
+     * @return the sum. It is 0 if the range is empty.
+     * @throws IllegalArgumentException if the range has more than {@link #MAX_TERMS} terms
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public double sum(long first, long last, CancellationToken token) {
+        return reduce(first, last, false, token);
+    }
+
+    /**
+     * compute the product of the terms for <code>x = first, first + 1, ..., last</code>
+     * @param first first index
+     * @param last last index (inclusive)
+     * @return the product. It is 1 if the range is empty.
+     * @throws IllegalArgumentException if the range has more than {@link #MAX_TERMS} terms
+     */
+    public double product(long first, long last) {
+        return reduce(first, last, true, CancellationToken.NONE);
+    }
+
+    /**
+     * compute the product of the terms, checking for cancellation between blocks
+     * @param first first index
+     * @param last last index (inclusive)
+     * @param token cancellation token
+     * @return the product. It is 1 if the range is empty.
+     * @throws IllegalArgumentException if the range has more than {@link #MAX_TERMS} terms
+     * @throws com.practice.lcn.calc.exception.EqtTooComplexException if the token is cancelled
+     */
+    public double product(long first, long last, CancellationToken token) {
+        return reduce(first, last, true, token);
+    }
+
+    private double reduce(final long first, long last, final boolean product, final CancellationToken token) {
+        if (last < first)
+            return product ? 1 : 0;
+        // a count that wraps around is at least 2^64 - 1 terms, far over the limit
+        final long n = last - first + 1;
+        if (n <= 0 || n > MAX_TERMS)
+            throw new IllegalArgumentException("too many terms: " + n);
+        final int blocks = (int) ((n + BLOCK - 1) / BLOCK);
+        final double[] partial = new double[blocks];
+        ParallelRange.run(0, blocks, 1, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                double[] column = new double[BLOCK];
+                CompensatedSum sum = new CompensatedSum();
+                for (int b = from; b < to; b++) {
+                    long lo = first + (long) b * BLOCK;
+                    int len = (int) Math.min(BLOCK, n - (long) b * BLOCK);
+                    for (int i = 0; i < len; i++)
+                        column[i] = lo + i;
+                    Series.this.evaluator.evaluate(part, column, column, 0, len, Series.this.env, token);
+                    if (product) {
+                        double p = 1;
+                        for (int i = 0; i < len; i++)
+                            p *= column[i];
+                        partial[b] = p;
+                    }
+                    else {
+                        sum.reset();
+                        for (int i = 0; i < len; i++)
+                            sum.add(column[i]);
+                        partial[b] = sum.value();
+                    }
+                }
+            }
+        });
+        if (product) {
+            double p = 1;
+            for (double v : partial)
+                p *= v;
+            return p;
+        }
+        CompensatedSum sum = new CompensatedSum();
+        for (double v : partial)
+            sum.add(v);
+        return sum.value();
+    }
+}
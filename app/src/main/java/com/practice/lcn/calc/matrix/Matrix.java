@@ -0,0 +1,422 @@
+package com.practice.lcn.calc.matrix;
+
+import com.practice.lcn.calc.concurrent.ParallelRange;
+import com.practice.lcn.calc.exception.MatrixException;
+
+import java.util.Arrays;
+
+/**
+ * immutable matrix of doubles stored as one flat row-major array, so that element
+ * <code>(i, j)</code> is <code>data[i * cols + j]</code>. A 1&times;1 matrix doubles as a scalar.
+ * <p>
+ * {@link #times(Matrix)} is the only operation worth optimizing, since powers, inverses and
+ * determinants all cost about as much as a product. It walks the right operand in panels that stay
+ * in the cache and, for large products, hands bands of rows to {@link ParallelRange}, which stands
+ * in for fork-join on this API level. The inner loop runs along a row of the right operand and rows
+ * of the result, so both are read sequentially.
+ * </p>
+ * @author lcn
+ */
+public final class Matrix {
+    /**
+     * tile edge of the blocked transpose, and rows per band handed to a thread by the product
+     */
+    static final int BLOCK = 64;
+    /**
+     * panel of the right operand walked by the product: 128 rows &times; 256 columns of doubles
+     * take 256 KiB, which stays in the L2 cache of a phone core while the rows of the left
+     * operand stream past it.
+     */
+    static final int PANEL_K = 128;
+    static final int PANEL_J = 256;
+    /**
+     * products below this amount of multiply-adds run on the calling thread, where they finish
+     * before a worker could be woken up.
+     */
+    private static final long PARALLEL_THRESHOLD = 1L << 18;
+
+    private final int rows;
+    private final int cols;
+    private final double[] data;
+
+    /**
+     * create a matrix backed by an array. The array is not copied and must not be modified
+     * afterwards.
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param data elements in row-major order
+     * @throws MatrixException if the array does not hold <code>rows &times; cols</code> elements
+     */
+    public Matrix(int rows, int cols, double[] data) {
+        if (rows <= 0 || cols <= 0 || (long) rows * cols != data.length)
+            throw new MatrixException(rows + "\u00D7" + cols + " with " + data.length + " elements");
+        this.rows = rows;
+        this.cols = cols;
+        this.data = data;
+    }
+
+    /**
+     * @param value value
+     * @return 1&times;1 matrix holding the value
+     */
+    public static Matrix scalar(double value) {
+        return new Matrix(1, 1, new double[] { value });
+    }
+
+    /**
+     * @param n size
+     * @return n&times;n identity matrix
+     */
+    public static Matrix identity(int n) {
+        double[] data = new double[n * n];
+        for (int i = 0; i < n; i++)
+            data[i * n + i] = 1;
+        return new Matrix(n, n, data);
+    }
+
+    public int getRows() {
+        return this.rows;
+    }
+
+    public int getCols() {
+        return this.cols;
+    }
+
+    /**
+     * @param i row index
+     * @param j column index
+     * @return element at row <code>i</code> and column <code>j</code>
+     */
+    public double get(int i, int j) {
+        return this.data[i * this.cols + j];
+    }
+
+    /**
+     * @return true if this is a 1&times;1 matrix
+     */
+    public boolean isScalar() {
+        return this.rows == 1 && this.cols == 1;
+    }
+
+    /**
+     * @return true if the matrix is square
+     */
+    public boolean isSquare() {
+        return this.rows == this.cols;
+    }
+
+    private void checkSameSize(Matrix other, String op) {
+        if (this.rows != other.rows || this.cols != other.cols)
+            throw new MatrixException(this.rows + "\u00D7" + this.cols + " " + op + " " + other.rows + "\u00D7" + other.cols);
+    }
+
+    private void checkSquare(String op) {
+        if (!isSquare())
+            throw new MatrixException(op + " of a " + this.rows + "\u00D7" + this.cols + " matrix");
+    }
+
+    /**
+     * @param other matrix of the same size
+     * @return element-wise sum
+     * @throws MatrixException if the sizes differ
+     */
+    public Matrix plus(Matrix other) {
+        checkSameSize(other, "+");
+        double[] c = new double[this.data.length];
+        for (int i = 0; i < c.length; i++)
+            c[i] = this.data[i] + other.data[i];
+        return new Matrix(this.rows, this.cols, c);
+    }
+
+    /**
+     * @param other matrix of the same size
+     * @return element-wise difference
+     * @throws MatrixException if the sizes differ
+     */
+    public Matrix minus(Matrix other) {
+        checkSameSize(other, "-");
+        double[] c = new double[this.data.length];
+        for (int i = 0; i < c.length; i++)
+            c[i] = this.data[i] - other.data[i];
+        return new Matrix(this.rows, this.cols, c);
+    }
+
+    /**
+     * @param k factor
+     * @return every element multiplied by <code>k</code>
+     */
+    public Matrix times(double k) {
+        double[] c = new double[this.data.length];
+        for (int i = 0; i < c.length; i++)
+            c[i] = this.data[i] * k;
+        return new Matrix(this.rows, this.cols, c);
+    }
+
+    /**
+     * matrix product
+     * @param other matrix with as many rows as this matrix has columns
+     * @return <code>this &times; other</code>
+     * @throws MatrixException if the sizes do not match
+     */
+    public Matrix times(Matrix other) {
+        if (this.cols != other.rows)
+            throw new MatrixException(this.rows + "\u00D7" + this.cols + " \u00D7 " + other.rows + "\u00D7" + other.cols);
+        final int m = this.rows;
+        final int n = other.cols;
+        final double[] c = new double[m * n];
+        final Matrix a = this;
+        final Matrix b = other;
+        // the rows are split into bands of whole tiles, so that no two threads write the same cache line
+        int bands = (m + BLOCK - 1) / BLOCK;
+        boolean parallel = (long) m * this.cols * n >= PARALLEL_THRESHOLD;
+        ParallelRange.run(0, bands, parallel ? 1 : bands, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                multiplyRows(a, b, c, from * BLOCK, Math.min(m, to * BLOCK));
+            }
+        });
+        return new Matrix(m, n, c);
+    }
+
+    /**
+     * accumulate rows <code>[rowFrom, rowTo)</code> of <code>a &times; b</code> into <code>c</code>
+     * panel by panel. Four rows of <code>c</code> are updated together, so every element of
+     * <code>b</code> loaded from the cache is used four times.
+     */
+    private static void multiplyRows(Matrix a, Matrix b, double[] c, int rowFrom, int rowTo) {
+        int inner = a.cols;
+        int n = b.cols;
+        double[] ad = a.data;
+        double[] bd = b.data;
+        for (int k0 = 0; k0 < inner; k0 += PANEL_K) {
+            int k1 = Math.min(inner, k0 + PANEL_K);
+            for (int j0 = 0; j0 < n; j0 += PANEL_J) {
+                int j1 = Math.min(n, j0 + PANEL_J);
+                int i = rowFrom;
+                for (; i + 4 <= rowTo; i += 4) {
+                    int c0 = i * n;
+                    int c1 = c0 + n;
+                    int c2 = c1 + n;
+                    int c3 = c2 + n;
+                    for (int k = k0; k < k1; k++) {
+                        double a0 = ad[i * inner + k];
+                        double a1 = ad[(i + 1) * inner + k];
+                        double a2 = ad[(i + 2) * inner + k];
+                        double a3 = ad[(i + 3) * inner + k];
+                        int bRow = k * n;
+                        for (int j = j0; j < j1; j++) {
+                            double bkj = bd[bRow + j];
+                            c[c0 + j] += a0 * bkj;
+                            c[c1 + j] += a1 * bkj;
+                            c[c2 + j] += a2 * bkj;
+                            c[c3 + j] += a3 * bkj;
+                        }
+                    }
+                }
+                for (; i < rowTo; i++) {
+                    int cRow = i * n;
+                    for (int k = k0; k < k1; k++) {
+                        double aik = ad[i * inner + k];
+                        int bRow = k * n;
+                        for (int j = j0; j < j1; j++)
+                            c[cRow + j] += aik * bd[bRow + j];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * raise a square matrix to an integer power by repeated squaring, which takes about
+     * <code>2 log2 |p|</code> products
+     * @param p exponent. A negative exponent raises the {@link #inverse() inverse}.
+     * @return <code>this<sup>p</sup></code>
+     * @throws MatrixException if the matrix is not square
+     */
+    public Matrix pow(long p) {
+        checkSquare("power");
+        Matrix base = p < 0 ? inverse() : this;
+        // -Long.MIN_VALUE overflows, so the magnitude is walked as an unsigned number
+        long e = p < 0 ? -p : p;
+        Matrix result = null;
+        while (e != 0) {
+            if ((e & 1) != 0)
+                result = result == null ? base : result.times(base);
+            e >>>= 1;
+            if (e != 0)
+                base = base.times(base);
+        }
+        return result == null ? identity(this.rows) : result;
+    }
+
+    /**
+     * @return the transpose
+     */
+    public Matrix transpose() {
+        int m = this.rows;
+        int n = this.cols;
+        double[] t = new double[m * n];
+        // tiled as well, otherwise every write of a tall matrix misses the cache
+        for (int i0 = 0; i0 < m; i0 += BLOCK) {
+            int i1 = Math.min(m, i0 + BLOCK);
+            for (int j0 = 0; j0 < n; j0 += BLOCK) {
+                int j1 = Math.min(n, j0 + BLOCK);
+                for (int i = i0; i < i1; i++) {
+                    for (int j = j0; j < j1; j++)
+                        t[j * m + i] = this.data[i * n + j];
+                }
+            }
+        }
+        return new Matrix(n, m, t);
+    }
+
+    /**
+     * determinant by LU decomposition with partial pivoting
+     * @return the determinant
+     * @throws MatrixException if the matrix is not square
+     */
+    public double det() {
+        checkSquare("determinant");
+        int n = this.rows;
+        double[] lu = this.data.clone();
+        double det = 1;
+        for (int col = 0; col < n; col++) {
+            int pivot = pivotRow(lu, n, n, col);
+            if (lu[pivot * n + col] == 0)
+                return 0;
+            if (pivot != col) {
+                swapRows(lu, n, pivot, col);
+                det = -det;
+            }
+            double p = lu[col * n + col];
+            det *= p;
+            for (int r = col + 1; r < n; r++) {
+                double f = lu[r * n + col] / p;
+                if (f == 0)
+                    continue;
+                for (int j = col + 1; j < n; j++)
+                    lu[r * n + j] -= f * lu[col * n + j];
+            }
+        }
+        return det;
+    }
+
+    /**
+     * inverse by Gauss-Jordan elimination with partial pivoting
+     * @return the inverse. Every element is NaN if the matrix is singular.
+     * @throws MatrixException if the matrix is not square
+     */
+    public Matrix inverse() {
+        checkSquare("inverse");
+        int n = this.rows;
+        int w = 2 * n;
+        // augmented [A | I]
+        double[] aug = new double[n * w];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(this.data, i * n, aug, i * w, n);
+            aug[i * w + n + i] = 1;
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = pivotRow(aug, n, w, col);
+            if (aug[pivot * w + col] == 0) {
+                double[] nan = new double[n * n];
+                Arrays.fill(nan, Double.NaN);
+                return new Matrix(n, n, nan);
+            }
+            if (pivot != col)
+                swapRows(aug, w, pivot, col);
+            double p = aug[col * w + col];
+            for (int j = col; j < w; j++)
+                aug[col * w + j] /= p;
+            for (int r = 0; r < n; r++) {
+                double f = aug[r * w + col];
+                if (r == col || f == 0)
+                    continue;
+                for (int j = col; j < w; j++)
+                    aug[r * w + j] -= f * aug[col * w + j];
+            }
+        }
+        double[] inv = new double[n * n];
+        for (int i = 0; i < n; i++)
+            System.arraycopy(aug, i * w + n, inv, i * n, n);
+        return new Matrix(n, n, inv);
+    }
+
+    /**
+     * @return index of the row at or below <code>col</code> with the largest magnitude in column
+     *         <code>col</code>
+     */
+    private static int pivotRow(double[] a, int rows, int width, int col) {
+        int best = col;
+        for (int r = col + 1; r < rows; r++) {
+            if (Math.abs(a[r * width + col]) > Math.abs(a[best * width + col]))
+                best = r;
+        }
+        return best;
+    }
+
+    private static void swapRows(double[] a, int width, int r1, int r2) {
+        for (int j = 0; j < width; j++) {
+            double t = a[r1 * width + j];
+            a[r1 * width + j] = a[r2 * width + j];
+            a[r2 * width + j] = t;
+        }
+    }
+
+    /**
+     * @return true if every element is finite
+     */
+    public boolean isFinite() {
+        for (double v : this.data) {
+            if (Double.isNaN(v) || Double.isInfinite(v))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the matrix in the form of a matrix literal, e.g. <code>[1.0,2.0;3.0,4.0]</code>, which
+     *         {@link #parse(String)} reads back
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(this.data.length * 8 + 2);
+        sb.append('[');
+        for (int i = 0; i < this.rows; i++) {
+            if (i > 0)
+                sb.append(';');
+            for (int j = 0; j < this.cols; j++) {
+                if (j > 0)
+                    sb.append(',');
+                sb.append(this.data[i * this.cols + j]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    /**
+     * parse a matrix given by {@link #toString()}
+     * @param s matrix literal
+     * @return the matrix, or null if it is not a matrix literal
+     */
+    public static Matrix parse(String s) {
+        if (s.length() < 2 || s.charAt(0) != '[' || s.charAt(s.length() - 1) != ']')
+            return null;
+        String[] rowStrs = s.substring(1, s.length() - 1).split(";", -1);
+        int cols = rowStrs[0].split(",", -1).length;
+        double[] data = new double[rowStrs.length * cols];
+        try {
+            for (int i = 0; i < rowStrs.length; i++) {
+                String[] cells = rowStrs[i].split(",", -1);
+                if (cells.length != cols)
+                    return null;
+                for (int j = 0; j < cols; j++)
+                    data[i * cols + j] = Double.parseDouble(cells[j]);
+            }
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        return new Matrix(rowStrs.length, cols, data);
+    }
+}
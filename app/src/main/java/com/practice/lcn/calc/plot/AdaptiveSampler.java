@@ -0,0 +1,135 @@
+package com.practice.lcn.calc.plot;
+
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import java.util.Arrays;
+
+/**
+ * This class samples a compiled equation in the {@link EqtProgram#SLOT_X independent variable}
+ * and turns it into line segments. An interval is only subdivided where the curve bends more
+ * than the tolerance or jumps, so flat parts of the curve cost a handful of evaluations while
+ * discontinuities such as <code>1/x</code> at 0 are located precisely and left unconnected.
+ * <p>
+ * A sampler owns its scratch buffers and must not be used by more than one thread at a time.
+ * </p>
+ * @author lcn
+ */
+public class AdaptiveSampler {
+    /**
+     * amount of uniform intervals the range is split into before refinement
+     */
+    public static final int INITIAL_INTERVALS = 16;
+    /**
+     * maximum amount of times an initial interval is halved
+     */
+    public static final int MAX_DEPTH = 10;
+
+    /**
+     * program to sample
+     */
+    private final EqtProgram program;
+    /**
+     * environment passed to the program. Only the {@link EqtProgram#SLOT_X} slot changes.
+     */
+    private final double[] env;
+    /**
+     * operand stack of the program
+     */
+    private final double[] stack;
+    /**
+     * output segments as (x0, y0, x1, y1) quadruples
+     */
+    private float[] segments;
+    /**
+     * amount of floats used in {@link #segments}
+     */
+    private int length;
+    /**
+     * largest allowed distance between the curve and a segment, in world units
+     */
+    private double tolerance;
+    /**
+     * vertical distance beyond which two neighbouring samples are treated as a discontinuity when
+     * the interval cannot be halved any more, in world units
+     */
+    private double jump;
+
+    /**
+     * create a new sampler
+     * @param program program to sample
+     * @param env values of the variables. It is copied.
+     */
+    public AdaptiveSampler(EqtProgram program, double[] env) {
+        this.program = program;
+        this.env = Arrays.copyOf(env, Math.max(env.length, EqtProgram.ENV_SIZE));
+        this.stack = new double[Math.max(1, program.getMaxStack())];
+        this.segments = new float[64];
+    }
+
+    private double f(double x) {
+        this.env[EqtProgram.SLOT_X] = x;
+        return this.program.evaluate(this.env, this.stack);
+    }
+
+    /**
+     * sample the curve over <code>[x0, x1]</code>.
+     * @param x0 start of the range
+     * @param x1 end of the range
+     * @param tolerance largest allowed distance between the curve and a segment, in world units.
+     *                  It is usually half a pixel at the current zoom level.
+     * @param jump vertical distance treated as a discontinuity, in world units. It is usually the
+     *             height of the view.
+     * @return the segments as (x0, y0, x1, y1) quadruples. The array is copied from the scratch
+     *         buffer so it can be kept.
+     */
+    public float[] sample(double x0, double x1, double tolerance, double jump) {
+        this.length = 0;
+        this.tolerance = tolerance;
+        this.jump = jump;
+        double dx = (x1 - x0) / INITIAL_INTERVALS;
+        double xa = x0;
+        double ya = f(xa);
+        for (int i = 1; i <= INITIAL_INTERVALS; i++) {
+            double xb = i == INITIAL_INTERVALS ? x1 : x0 + i * dx;
+            double yb = f(xb);
+            refine(xa, ya, xb, yb, 0);
+            xa = xb;
+            ya = yb;
+        }
+        return Arrays.copyOf(this.segments, this.length);
+    }
+
+    private void refine(double xa, double ya, double xb, double yb, int depth) {
+        boolean finiteA = !Double.isNaN(ya) && !Double.isInfinite(ya);
+        boolean finiteB = !Double.isNaN(yb) && !Double.isInfinite(yb);
+        if (!finiteA && !finiteB)
+            return;
+        double xm = 0.5 * (xa + xb);
+        double ym = f(xm);
+        if (depth < MAX_DEPTH) {
+            boolean finiteM = !Double.isNaN(ym) && !Double.isInfinite(ym);
+            // a finite/non-finite boundary or a bend larger than the tolerance needs refinement
+            if (!finiteA || !finiteB || !finiteM
+                    || Math.abs(ym - 0.5 * (ya + yb)) > this.tolerance
+                    || Math.abs(yb - ya) > this.jump) {
+                refine(xa, ya, xm, ym, depth + 1);
+                refine(xm, ym, xb, yb, depth + 1);
+                return;
+            }
+        }
+        else if (!finiteA || !finiteB || Math.abs(yb - ya) > this.jump) {
+            // still broken at the finest level: leave the gap open
+            return;
+        }
+        emit(xa, ya, xb, yb);
+    }
+
+    private void emit(double xa, double ya, double xb, double yb) {
+        if (this.length + 4 > this.segments.length)
+            this.segments = Arrays.copyOf(this.segments, this.segments.length * 2);
+        this.segments[this.length++] = (float) xa;
+        this.segments[this.length++] = (float) ya;
+        this.segments[this.length++] = (float) xb;
+        this.segments[this.length++] = (float) yb;
+    }
+}
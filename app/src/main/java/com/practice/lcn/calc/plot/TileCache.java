@@ -0,0 +1,198 @@
+package com.practice.lcn.calc.plot;
+
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class keeps the sampled curve in tiles of fixed on-screen width and renders missing tiles
+ * on a background thread. A tile is identified by its zoom level and its index along the x-axis,
+ * so panning only samples the tiles that scroll into view and zooming within the same level
+ * samples nothing at all.
+ * <p>
+ * At zoom level <code>L</code> the scale is between 2<sup>L</sup> and 2<sup>L+1</sup> pixels per
+ * unit, and tile <code>i</code> covers <code>[i, i + 1) &times; {@link #TILE_PX} / 2<sup>L</sup></code>.
+ * </p>
+ * @author lcn
+ */
+public class TileCache {
+    /**
+     * width of a tile in pixels at the lowest scale of its zoom level
+     */
+    public static final int TILE_PX = 256;
+    /**
+     * maximum amount of tiles kept in memory
+     */
+    public static final int MAX_TILES = 96;
+
+    /**
+     * notified on the background thread whenever a tile has been rendered
+     */
+    public static interface Listener {
+        /**
+         * executed after a tile has been added to the cache
+         */
+        public abstract void onTileReady();
+    }
+
+    /**
+     * rendered tiles, least recently used first
+     */
+    private final Map<Long, float[]> tiles;
+    /**
+     * tiles queued for rendering
+     */
+    private final Set<Long> pending;
+    /**
+     * background thread rendering the tiles
+     */
+    private final ExecutorService worker;
+    /**
+     * sampler owned by the {@link #worker background thread}
+     */
+    private final AdaptiveSampler sampler;
+    /**
+     * listener to notify. It can be null.
+     */
+    private volatile Listener listener;
+    /**
+     * vertical extent of the view in pixels, used as the discontinuity threshold
+     */
+    private volatile int viewHeight;
+    /**
+     * zoom level currently shown
+     */
+    private volatile int level;
+
+    /**
+     * create a new tile cache
+     * @param program program to plot
+     * @param env values of the variables
+     */
+    public TileCache(EqtProgram program, double[] env) {
+        this.sampler = new AdaptiveSampler(program, env);
+        this.tiles = new LinkedHashMap<Long, float[]>(MAX_TILES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, float[]> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+        this.pending = new HashSet<>();
+        this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "TileCache-worker");
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+            }
+        });
+        this.viewHeight = TILE_PX;
+    }
+
+    /**
+     * @param listener listener to notify when a tile is ready. It can be null.
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param viewHeight vertical extent of the view in pixels
+     */
+    public void setViewHeight(int viewHeight) {
+        this.viewHeight = viewHeight;
+    }
+
+    /**
+     * @param scale pixels per unit
+     * @return zoom level of the scale
+     */
+    public static int levelOf(double scale) {
+        return (int) Math.floor(Math.log(scale) / Math.log(2));
+    }
+
+    /**
+     * @param level zoom level
+     * @return width of a tile in world units
+     */
+    public static double tileWidth(int level) {
+        return TILE_PX / Math.pow(2, level);
+    }
+
+    private static long key(int level, long index) {
+        return ((long) level << 48) ^ (index & 0xFFFFFFFFFFFFL);
+    }
+
+    /**
+     * get a rendered tile. If it has not been rendered yet, it is queued for rendering and
+     * {@link Listener#onTileReady()} will be called once it is done.
+     * @param level zoom level
+     * @param index tile index along the x-axis
+     * @return segments of the tile as (x0, y0, x1, y1) quadruples in world units, or null if the
+     *         tile is not ready yet
+     */
+    public float[] get(final int level, final long index) {
+        final Long k = key(level, index);
+        synchronized (this) {
+            float[] tile = this.tiles.get(k);
+            if (tile != null || !this.pending.add(k))
+                return tile;
+        }
+        this.worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (level != TileCache.this.level) {
+                    synchronized (TileCache.this) {
+                        TileCache.this.pending.remove(k);
+                    }
+                    return;
+                }
+                double w = tileWidth(level);
+                double unit = Math.pow(2, level);
+                float[] tile = TileCache.this.sampler.sample(index * w, (index + 1) * w, 0.5 / unit, TileCache.this.viewHeight / unit);
+                synchronized (TileCache.this) {
+                    TileCache.this.pending.remove(k);
+                    TileCache.this.tiles.put(k, tile);
+                }
+                Listener listener = TileCache.this.listener;
+                if (listener != null)
+                    listener.onTileReady();
+            }
+        });
+        return null;
+    }
+
+    /**
+     * get a rendered tile without queueing it for rendering
+     * @param level zoom level
+     * @param index tile index along the x-axis
+     * @return segments of the tile, or null if it is not cached
+     */
+    public synchronized float[] peek(int level, long index) {
+        return this.tiles.get(key(level, index));
+    }
+
+    /**
+     * set the zoom level currently shown. Queued tiles of other levels are skipped once the
+     * background thread reaches them, so a fast zoom does not render levels nobody looks at.
+     * @param level zoom level currently shown
+     */
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    /**
+     * stop the background thread. The cache cannot be used afterwards.
+     */
+    public void shutdown() {
+        this.listener = null;
+        this.worker.shutdownNow();
+    }
+}
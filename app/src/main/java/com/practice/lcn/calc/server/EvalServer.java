@@ -0,0 +1,322 @@
+package com.practice.lcn.calc.server;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.expr.CompiledEqt;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * loopback evaluation server for other local tools. It solves equations written with the
+ * {@link com.practice.lcn.calc.Symbol symbols} of the equation display by
+ * {@link EqtSolver#evaluate(String, String, double[], CompiledEqt)}, so it answers with the same
+ * result strings as the result display.
+ * <p>
+ * Protocol: every message in either direction is a frame made of a big-endian 32-bit payload
+ * length followed by the payload. A request payload is a UTF-8 equation; the response payload
+ * is a status byte ({@link #STATUS_OK} or {@link #STATUS_ERR}), the value as a big-endian
+ * 64-bit double and the UTF-8 result string. The double is infinite for an integer result too
+ * large for it, whose digits are all in the result string, and NaN for an error or a matrix. An empty request asks for the latency percentiles,
+ * answered as a {@link #STATUS_STATS} frame with a UTF-8 report.
+ * </p>
+ * <p>
+ * Clients may pipeline any amount of requests without waiting for the responses. Responses come
+ * back in request order. Every connection keeps its own {@link com.practice.lcn.calc.Symbol#SYM_ANS Ans}:
+ * like in the app, it becomes the result of the last request, or 0 if that request failed.
+ * </p>
+ * <p>
+ * A single thread runs a non-blocking selector loop and evaluates the requests inline: all
+ * complete frames of a read are solved in one go and their responses leave in a single write.
+ * Compiled equations are cached, so repeated equations are not parsed again.
+ * </p>
+ * @author lcn
+ */
+public class EvalServer implements Runnable {
+    /**
+     * default TCP port
+     */
+    public static final int DEFAULT_PORT = 7300;
+    /**
+     * largest accepted request payload in bytes. Larger frames close the connection.
+     */
+    public static final int MAX_FRAME = 1 << 16;
+    /**
+     * status of a successful evaluation
+     */
+    public static final byte STATUS_OK = 0;
+    /**
+     * status of a failed evaluation. The result string is one of the <code>RESULT_*</code> errors.
+     */
+    public static final byte STATUS_ERR = 1;
+    /**
+     * status of a latency report
+     */
+    public static final byte STATUS_STATS = 2;
+    /**
+     * maximum amount of compiled equations kept in the cache
+     */
+    public static final int CACHE_SIZE = 4096;
+    /**
+     * amount of pending response bytes beyond which a connection stops being read until its
+     * client catches up
+     */
+    static final int OUTPUT_HIGH_WATER = 1 << 20;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * state of a client connection
+     */
+    private static class Connection {
+        ByteBuffer in = ByteBuffer.allocate(8192);
+        ByteBuffer out = ByteBuffer.allocate(8192);
+        String ans = "0";
+    }
+
+    private final ServerSocketChannel server;
+    private final Selector selector;
+    /**
+     * latencies of the requests from parsing the frame to queuing the response (in ns)
+     */
+    private final LatencyHistogram latencies;
+    /**
+     * compiled equations, least recently used first
+     */
+    private final Map<String, CompiledEqt> cache;
+    private volatile boolean running;
+
+    /**
+     * bind a new server on the loopback interface
+     * @param port TCP port, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public EvalServer(int port) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port));
+        this.server.configureBlocking(false);
+        this.selector = Selector.open();
+        this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.latencies = new LatencyHistogram();
+        this.cache = new LinkedHashMap<String, CompiledEqt>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledEqt> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * @return TCP port the server listens on
+     */
+    public int getPort() {
+        return this.server.socket().getLocalPort();
+    }
+
+    /**
+     * stop the selector loop. It returns once the current iteration is over.
+     */
+    public void stop() {
+        this.running = false;
+        this.selector.wakeup();
+    }
+
+    /**
+     * run the selector loop until {@link #stop()} is called
+     */
+    @Override
+    public void run() {
+        this.running = true;
+        try {
+            while (this.running) {
+                this.selector.select();
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid())
+                            continue;
+                        if (key.isAcceptable())
+                            accept();
+                        else {
+                            if (key.isReadable())
+                                read(key);
+                            if (key.isValid() && key.isWritable())
+                                flush(key);
+                        }
+                    }
+                    catch (IOException e) {
+                        close(key);
+                    }
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        finally {
+            for (SelectionKey key : this.selector.keys())
+                close(key);
+            try {
+                this.selector.close();
+                this.server.close();
+            }
+            catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel client = this.server.accept();
+        if (client == null)
+            return;
+        client.configureBlocking(false);
+        client.socket().setTcpNoDelay(true);
+        client.register(this.selector, SelectionKey.OP_READ, new Connection());
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException ignored) {
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(conn.in) == -1) {
+            close(key);
+            return;
+        }
+        conn.in.flip();
+        while (conn.in.remaining() >= 4) {
+            int len = conn.in.getInt(conn.in.position());
+            if (len < 0 || len > MAX_FRAME) {
+                close(key);
+                return;
+            }
+            if (conn.in.remaining() < 4 + len) {
+                if (conn.in.capacity() < 4 + len) {
+                    ByteBuffer bigger = ByteBuffer.allocate(4 + len);
+                    bigger.put(conn.in);
+                    conn.in = bigger;
+                    conn.in.flip();
+                }
+                break;
+            }
+            long begin = System.nanoTime();
+            conn.in.getInt();
+            String eqt = new String(conn.in.array(), conn.in.arrayOffset() + conn.in.position(), len, UTF_8);
+            conn.in.position(conn.in.position() + len);
+            if (len == 0)
+                respondStats(conn);
+            else {
+                respond(conn, eqt);
+                this.latencies.record(System.nanoTime() - begin);
+            }
+        }
+        conn.in.compact();
+        flush(key);
+    }
+
+    /**
+     * evaluate a request and queue its response
+     */
+    private void respond(Connection conn, String eqt) {
+        CompiledEqt compiled = this.cache.get(eqt);
+        if (compiled == null) {
+            compiled = CompiledEqt.compile(eqt);
+            this.cache.put(eqt, compiled);
+        }
+        String result = EqtSolver.evaluate(eqt, conn.ans, null, compiled);
+        boolean err = EqtSolver.hadErr(result);
+        conn.ans = EqtSolver.toAns(result, false);
+        byte[] text = result.getBytes(UTF_8);
+        ByteBuffer out = reserve(conn, 4 + 1 + 8 + text.length);
+        out.putInt(1 + 8 + text.length);
+        out.put(err ? STATUS_ERR : STATUS_OK);
+        out.putDouble(err ? Double.NaN : valueOf(result));
+        out.put(text);
+    }
+
+    /**
+     * @return the value of a result that is not an error, or NaN if it is a matrix
+     */
+    private static double valueOf(String result) {
+        try {
+            return Double.parseDouble(result);
+        }
+        catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private void respondStats(Connection conn) {
+        byte[] text = getLatencyReport().getBytes(UTF_8);
+        ByteBuffer out = reserve(conn, 4 + 1 + 8 + text.length);
+        out.putInt(1 + 8 + text.length);
+        out.put(STATUS_STATS);
+        out.putDouble(this.latencies.count());
+        out.put(text);
+    }
+
+    private static ByteBuffer reserve(Connection conn, int bytes) {
+        if (conn.out.remaining() < bytes) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(conn.out.capacity() * 2, conn.out.position() + bytes));
+            conn.out.flip();
+            bigger.put(conn.out);
+            conn.out = bigger;
+        }
+        return conn.out;
+    }
+
+    /**
+     * write the queued responses and adjust the interest set: keep writing while data is left and
+     * pause reading while too much data is left.
+     */
+    private void flush(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        conn.out.flip();
+        if (conn.out.hasRemaining())
+            ((SocketChannel) key.channel()).write(conn.out);
+        int pending = conn.out.remaining();
+        conn.out.compact();
+        int ops = pending > 0 ? SelectionKey.OP_WRITE : 0;
+        if (pending < OUTPUT_HIGH_WATER)
+            ops |= SelectionKey.OP_READ;
+        key.interestOps(ops);
+    }
+
+    /**
+     * @return latency percentiles of the requests served so far
+     */
+    public String getLatencyReport() {
+        LatencyHistogram h = this.latencies;
+        return String.format("count=%d p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns", h.count(),
+                h.percentile(50), h.percentile(90), h.percentile(99), h.percentile(99.9), h.percentile(100));
+    }
+
+    /**
+     * command-line entry point
+     * @param args <code>[port]</code>
+     * @throws IOException if the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        EvalServer server = new EvalServer(args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT);
+        System.err.println("listening on 127.0.0.1:" + server.getPort());
+        server.run();
+    }
+}
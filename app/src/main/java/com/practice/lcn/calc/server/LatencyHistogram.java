@@ -0,0 +1,87 @@
+package com.practice.lcn.calc.server;
+
+import java.util.Arrays;
+
+/**
+ * histogram of latencies with logarithmic buckets. Every power of two is split into
+ * {@link #SUB_BUCKETS} linear buckets, so any percentile is reported within 1 / {@link #SUB_BUCKETS}
+ * of its true value while recording stays a couple of shifts and an array increment.
+ * <p>
+ * It is not thread-safe; every thread should keep its own histogram.
+ * </p>
+ * @author lcn
+ */
+public class LatencyHistogram {
+    /**
+     * amount of linear buckets per power of two
+     */
+    public static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int MAGNITUDES = 64;
+
+    /**
+     * counts indexed by bucket
+     */
+    private final long[] counts = new long[MAGNITUDES * SUB_BUCKETS];
+    /**
+     * total amount of recorded values
+     */
+    private long total;
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) Math.max(0, value);
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (magnitude - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int magnitude = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (magnitude - SUB_BITS)) - 1;
+    }
+
+    /**
+     * record a value
+     * @param value latency, e.g. in ns
+     */
+    public void record(long value) {
+        this.counts[bucketOf(value)]++;
+        this.total++;
+    }
+
+    /**
+     * @return amount of recorded values
+     */
+    public long count() {
+        return this.total;
+    }
+
+    /**
+     * @param percentile percentile between 0 and 100
+     * @return upper bound of the bucket containing the percentile, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        if (this.total == 0)
+            return 0;
+        long rank = (long) Math.ceil(percentile / 100 * this.total);
+        long seen = 0;
+        for (int i = 0; i < this.counts.length; i++) {
+            seen += this.counts[i];
+            if (seen >= Math.max(1, rank))
+                return upperBoundOf(i);
+        }
+        return upperBoundOf(this.counts.length - 1);
+    }
+
+    /**
+     * forget all recorded values
+     */
+    public void reset() {
+        Arrays.fill(this.counts, 0);
+        this.total = 0;
+    }
+}
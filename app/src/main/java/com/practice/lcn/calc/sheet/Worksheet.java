@@ -0,0 +1,315 @@
+package com.practice.lcn.calc.sheet;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.concurrent.ParallelRange;
+import com.practice.lcn.calc.exception.EqtSyntaxException;
+import com.practice.lcn.calc.exception.EqtTooComplexException;
+import com.practice.lcn.calc.expr.EqtParser;
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps the lines of a worksheet and their results. Every line is an equation in the
+ * grammar of {@link EqtParser} that can also refer to the result of an earlier line with
+ * {@link Symbol#SYM_LINE "#"}, e.g. <code>#1&times;#2</code>.
+ * <p>
+ * A line only refers to earlier lines, so the references form a DAG whose topological order is
+ * the line order. Lines are only appended or edited, never inserted in between, so a reference
+ * keeps its meaning. Editing a line re-evaluates the line and the cone of lines depending on it,
+ * and nothing else: the cone is found by following the dependents of every line, and then
+ * evaluated level by level, where the level of a line is one more than the highest level of the
+ * lines of the cone it refers to. Lines of the same level never depend on each other, so every
+ * level is split across all cores by {@link ParallelRange}.
+ * </p>
+ * <p>
+ * The result of line <code>k</code> is kept in the environment slot
+ * {@link EqtProgram#SLOT_LINES}<code> + k - 1</code> next to the variables, and every line is
+ * compiled once when it is set. The worksheet evaluates over the real numbers. It is not
+ * thread-safe; it is meant to be edited by one thread.
+ * </p>
+ * @author lcn
+ */
+public class Worksheet {
+    /**
+     * minimum amount of lines of a level handed to each core. Lines of smaller levels are
+     * evaluated on the calling thread, since a line takes less time to evaluate than to hand over.
+     */
+    public static final int PARALLEL_THRESHOLD = 64;
+    /**
+     * maximum amount of lines
+     */
+    public static final int MAX_LINES = 100000;
+
+    private String[] eqts;
+    /**
+     * compiled program of every line, or null if it has an error
+     */
+    private EqtProgram[] programs;
+    /**
+     * error of every line such as {@link EqtSolver#RESULT_SYN_ERR}, or null if it compiled
+     */
+    private String[] errors;
+    /**
+     * lines referred to by every line, without duplicates
+     */
+    private int[][] dependencies;
+    /**
+     * lines referring to every line. Only the first {@link #dependentCounts} elements are valid.
+     */
+    private int[][] dependents;
+    private int[] dependentCounts;
+    /**
+     * variables followed by the results of the lines
+     */
+    private double[] env;
+    private int size;
+    /**
+     * level of every line of the cone being evaluated, or 0 outside the cone
+     */
+    private int[] levels;
+    /**
+     * operand stack of every part of {@link ParallelRange}
+     */
+    private final double[][] stacks;
+
+    /**
+     * create an empty worksheet
+     * @param env values of the variables such as {@link Symbol#SYM_ANS Ans} indexed by slot. It is
+     *            copied.
+     */
+    public Worksheet(double[] env) {
+        int capacity = 16;
+        this.eqts = new String[capacity];
+        this.programs = new EqtProgram[capacity];
+        this.errors = new String[capacity];
+        this.dependencies = new int[capacity][];
+        this.dependents = new int[capacity][];
+        this.dependentCounts = new int[capacity];
+        this.levels = new int[capacity];
+        this.env = Arrays.copyOf(env, EqtProgram.SLOT_LINES + capacity);
+        Arrays.fill(this.env, EqtProgram.ENV_SIZE, this.env.length, 0);
+        this.size = 0;
+        this.stacks = new double[ParallelRange.parallelism()][1];
+    }
+
+    /**
+     * @return amount of lines
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @param line line index, from 0 for <code>#1</code>
+     * @return equation of the line
+     */
+    public String getLine(int line) {
+        return this.eqts[line];
+    }
+
+    /**
+     * @param line line index, from 0 for <code>#1</code>
+     * @return value of the line. It is NaN if the line has an error.
+     */
+    public double getValue(int line) {
+        return this.env[EqtProgram.SLOT_LINES + line];
+    }
+
+    /**
+     * @param line line index, from 0 for <code>#1</code>
+     * @return result of the line in the form of {@link EqtSolver#toResult(double)}, or one of the
+     *         <code>RESULT_*</code> errors.
+     */
+    public String getResult(int line) {
+        if (this.errors[line] != null)
+            return this.errors[line];
+        return EqtSolver.toResult(getValue(line));
+    }
+
+    /**
+     * append a line and evaluate it
+     * @param eqt equation of the line
+     * @return index of the new line
+     * @throws IllegalStateException if the worksheet already has {@link #MAX_LINES} lines
+     */
+    public int append(String eqt) {
+        if (this.size == MAX_LINES)
+            throw new IllegalStateException("more than " + MAX_LINES + " lines");
+        if (this.size == this.eqts.length)
+            grow();
+        this.dependencies[this.size] = new int[0];
+        this.dependents[this.size] = new int[4];
+        this.dependentCounts[this.size] = 0;
+        this.size++;
+        set(this.size - 1, eqt);
+        return this.size - 1;
+    }
+
+    /**
+     * replace the equation of a line, and evaluate it and every line depending on it
+     * @param line line index, from 0 for <code>#1</code>
+     * @param eqt new equation of the line
+     * @return amount of lines evaluated, i.e. the size of the cone of the line
+     */
+    public int set(int line, String eqt) {
+        if (line < 0 || line >= this.size)
+            throw new IndexOutOfBoundsException("no line " + line);
+        this.eqts[line] = eqt;
+        this.errors[line] = null;
+        try {
+            EqtProgram program = EqtParser.compileLine(eqt, line);
+            // x is only bound by the table, graph and solve modes
+            if (program.uses(EqtProgram.SLOT_X))
+                throw new EqtSyntaxException("x in a worksheet line");
+            this.programs[line] = program;
+        }
+        catch (EqtTooComplexException e) {
+            this.programs[line] = null;
+            this.errors[line] = EqtSolver.RESULT_TOO_COMPLEX;
+        }
+        catch (RuntimeException e) {
+            this.programs[line] = null;
+            this.errors[line] = EqtSolver.RESULT_SYN_ERR;
+        }
+        link(line);
+        return evaluateCone(line);
+    }
+
+    /**
+     * replace the dependencies of a line by the lines its program refers to
+     * @param line line index
+     */
+    private void link(int line) {
+        for (int dep : this.dependencies[line])
+            removeDependent(dep, line);
+        EqtProgram program = this.programs[line];
+        int[] deps = new int[program == null ? 0 : program.size()];
+        int n = 0;
+        for (int i = 0; i < deps.length; i++) {
+            if (program.opAt(i) != EqtProgram.OP_LOAD || program.argAt(i) < EqtProgram.SLOT_LINES)
+                continue;
+            int dep = program.argAt(i) - EqtProgram.SLOT_LINES;
+            boolean seen = false;
+            for (int j = 0; j < n && !seen; j++)
+                seen = deps[j] == dep;
+            if (!seen)
+                deps[n++] = dep;
+        }
+        this.dependencies[line] = Arrays.copyOf(deps, n);
+        for (int dep : this.dependencies[line])
+            addDependent(dep, line);
+    }
+
+    private void addDependent(int line, int dependent) {
+        if (this.dependentCounts[line] == this.dependents[line].length)
+            this.dependents[line] = Arrays.copyOf(this.dependents[line], this.dependentCounts[line] * 2);
+        this.dependents[line][this.dependentCounts[line]++] = dependent;
+    }
+
+    private void removeDependent(int line, int dependent) {
+        int[] list = this.dependents[line];
+        int n = this.dependentCounts[line];
+        for (int i = 0; i < n; i++) {
+            if (list[i] == dependent) {
+                list[i] = list[n - 1];
+                this.dependentCounts[line]--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * evaluate a line and every line depending on it, directly or not
+     * @param root edited line
+     * @return amount of lines evaluated
+     */
+    private int evaluateCone(int root) {
+        // collect the cone; a line is in it once its level is set
+        int[] cone = new int[16];
+        int n = 0;
+        cone[n++] = root;
+        this.levels[root] = 1;
+        for (int i = 0; i < n; i++) {
+            int line = cone[i];
+            for (int j = 0; j < this.dependentCounts[line]; j++) {
+                int dependent = this.dependents[line][j];
+                if (this.levels[dependent] != 0)
+                    continue;
+                if (n == cone.length)
+                    cone = Arrays.copyOf(cone, n * 2);
+                cone[n++] = dependent;
+                this.levels[dependent] = 1;
+            }
+        }
+        // the line order is topological, so the levels of the dependencies are known in time
+        Arrays.sort(cone, 0, n);
+        int maxLevel = 1;
+        for (int i = 1; i < n; i++) {
+            int line = cone[i];
+            int level = 1;
+            for (int dep : this.dependencies[line]) {
+                if (this.levels[dep] >= level)
+                    level = this.levels[dep] + 1;
+            }
+            this.levels[line] = level;
+            maxLevel = Math.max(maxLevel, level);
+        }
+        // bucket the cone by level, keeping the line order within a level
+        int[] starts = new int[maxLevel + 2];
+        for (int i = 0; i < n; i++)
+            starts[this.levels[cone[i]] + 1]++;
+        for (int level = 1; level <= maxLevel; level++)
+            starts[level + 1] += starts[level];
+        final int[] byLevel = new int[n];
+        int[] next = Arrays.copyOf(starts, starts.length);
+        for (int i = 0; i < n; i++)
+            byLevel[next[this.levels[cone[i]]]++] = cone[i];
+        for (int i = 0; i < n; i++)
+            this.levels[cone[i]] = 0;
+
+        ParallelRange.Body body = new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                for (int i = from; i < to; i++)
+                    evaluate(byLevel[i], part);
+            }
+        };
+        for (int level = 1; level <= maxLevel; level++)
+            ParallelRange.run(starts[level], starts[level + 1], Worksheet.PARALLEL_THRESHOLD, body);
+        return n;
+    }
+
+    /**
+     * evaluate a line whose dependencies are up to date
+     * @param line line index
+     * @param part part index given by {@link ParallelRange}. It selects the stack to use.
+     */
+    private void evaluate(int line, int part) {
+        EqtProgram program = this.programs[line];
+        if (program == null) {
+            this.env[EqtProgram.SLOT_LINES + line] = Double.NaN;
+            return;
+        }
+        if (this.stacks[part].length < program.getMaxStack())
+            this.stacks[part] = new double[program.getMaxStack()];
+        // lines of one level only write their own slots and read the ones of lower levels
+        this.env[EqtProgram.SLOT_LINES + line] = program.evaluate(this.env, this.stacks[part]);
+    }
+
+    /**
+     * double the capacity
+     */
+    private void grow() {
+        int capacity = this.eqts.length * 2;
+        this.eqts = Arrays.copyOf(this.eqts, capacity);
+        this.programs = Arrays.copyOf(this.programs, capacity);
+        this.errors = Arrays.copyOf(this.errors, capacity);
+        this.dependencies = Arrays.copyOf(this.dependencies, capacity);
+        this.dependents = Arrays.copyOf(this.dependents, capacity);
+        this.dependentCounts = Arrays.copyOf(this.dependentCounts, capacity);
+        this.levels = Arrays.copyOf(this.levels, capacity);
+        this.env = Arrays.copyOf(this.env, EqtProgram.SLOT_LINES + capacity);
+    }
+}
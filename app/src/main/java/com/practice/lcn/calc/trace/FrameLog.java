@@ -0,0 +1,162 @@
+package com.practice.lcn.calc.trace;
+
+import com.practice.lcn.calc.server.LatencyHistogram;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/**
+ * ring buffer of the display updates timed by a frame monitor. Every record tells which display
+ * was updated, how long it took from scheduling the update to drawing it, and how many frames
+ * were missed in between. Once the buffer is full, the oldest records are overwritten, so it
+ * always holds the latest updates at a fixed cost.
+ * <p>
+ * Recording writes a few array elements, so it adds no allocation to a frame. It is not
+ * thread-safe; it is meant to be used on the UI thread only.
+ * </p>
+ * @author lcn
+ */
+public class FrameLog {
+    /**
+     * equation display
+     */
+    public static final int DISPLAY_EQT = 0;
+    /**
+     * result display
+     */
+    public static final int DISPLAY_RESULT = 1;
+    private static final String[] DISPLAY_NAMES = { "eqt", "result" };
+    /**
+     * default amount of records kept
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final int[] displays;
+    /**
+     * time of scheduling every update, in {@link System#nanoTime()}
+     */
+    private final long[] scheduled;
+    private final long[] delays;
+    private final int[] missed;
+    /**
+     * amount of records ever written. The latest record is at <code>(written - 1) % capacity</code>.
+     */
+    private long written;
+
+    /**
+     * create a log keeping the latest {@link #DEFAULT_CAPACITY} records
+     */
+    public FrameLog() {
+        this(FrameLog.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity amount of records kept
+     */
+    public FrameLog(int capacity) {
+        this.displays = new int[capacity];
+        this.scheduled = new long[capacity];
+        this.delays = new long[capacity];
+        this.missed = new int[capacity];
+        this.written = 0;
+    }
+
+    /**
+     * record a drawn update
+     * @param display {@link #DISPLAY_EQT} or {@link #DISPLAY_RESULT}
+     * @param scheduledNanos time of scheduling the update, in {@link System#nanoTime()}
+     * @param delayNanos time from scheduling the update to drawing it (in ns)
+     * @param missedFrames frames that passed without drawing the update
+     */
+    public void record(int display, long scheduledNanos, long delayNanos, int missedFrames) {
+        int i = (int) (this.written % this.displays.length);
+        this.displays[i] = display;
+        this.scheduled[i] = scheduledNanos;
+        this.delays[i] = delayNanos;
+        this.missed[i] = missedFrames;
+        this.written++;
+    }
+
+    /**
+     * @return amount of records kept, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(this.written, this.displays.length);
+    }
+
+    /**
+     * @return amount of records ever written, including the overwritten ones
+     */
+    public long written() {
+        return this.written;
+    }
+
+    /**
+     * @param i index of a kept record, from 0 for the oldest
+     * @return index of the record in the arrays
+     */
+    private int slot(int i) {
+        return (int) ((this.written - size() + i) % this.displays.length);
+    }
+
+    /**
+     * @param i index of a kept record, from 0 for the oldest
+     * @return display of the record
+     */
+    public int getDisplay(int i) {
+        return this.displays[slot(i)];
+    }
+
+    /**
+     * @param i index of a kept record, from 0 for the oldest
+     * @return time from scheduling the update to drawing it (in ns)
+     */
+    public long getDelay(int i) {
+        return this.delays[slot(i)];
+    }
+
+    /**
+     * @param i index of a kept record, from 0 for the oldest
+     * @return frames that passed without drawing the update
+     */
+    public int getMissedFrames(int i) {
+        return this.missed[slot(i)];
+    }
+
+    /**
+     * forget every record
+     */
+    public void clear() {
+        this.written = 0;
+    }
+
+    /**
+     * write a summary per display followed by the kept records, oldest first
+     * @param out output. It is flushed but not closed.
+     */
+    public void dump(Writer out) {
+        PrintWriter writer = new PrintWriter(out);
+        int n = size();
+        writer.printf("%-8s %8s %8s %10s %10s %10s%n", "display", "updates", "janky", "p50 ms", "p90 ms", "p99 ms");
+        for (int d = 0; d < FrameLog.DISPLAY_NAMES.length; d++) {
+            LatencyHistogram h = new LatencyHistogram();
+            int janky = 0;
+            for (int i = 0; i < n; i++) {
+                if (getDisplay(i) != d)
+                    continue;
+                h.record(getDelay(i));
+                if (getMissedFrames(i) > 0)
+                    janky++;
+            }
+            writer.printf("%-8s %8d %8d %10.2f %10.2f %10.2f%n", FrameLog.DISPLAY_NAMES[d], h.count(), janky,
+                    h.percentile(50) / 1e6, h.percentile(90) / 1e6, h.percentile(99) / 1e6);
+        }
+        writer.printf("%d of %d updates kept%n", n, this.written);
+        long origin = n > 0 ? this.scheduled[slot(0)] : 0;
+        for (int i = 0; i < n; i++) {
+            int s = slot(i);
+            writer.printf("%10.2f %-8s %8.2f %4d%n", (this.scheduled[s] - origin) / 1e6, FrameLog.DISPLAY_NAMES[this.displays[s]], this.delays[s] / 1e6, this.missed[s]);
+        }
+        writer.flush();
+    }
+}
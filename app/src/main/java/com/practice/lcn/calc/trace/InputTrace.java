@@ -0,0 +1,168 @@
+package com.practice.lcn.calc.trace;
+
+import com.practice.lcn.calc.Symbol;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * key presses of an input session recorded by {@link TraceRecorder}, decoded for
+ * {@link ReplayHarness replaying}.
+ * <p>
+ * A trace starts with the table of the symbols of the app that recorded it, so that a trace
+ * keeps its meaning when symbols are added in later releases. Every key press is then stored as
+ * the time since the previous press in milliseconds (an unsigned LEB128 varint, mostly one byte)
+ * followed by one byte naming the key: the index of a symbol in the table, or one of the
+ * <code>KEY_*</code> codes.
+ * </p>
+ * <pre>
+ * int     magic
+ * byte    version
+ * byte    amount of symbols n
+ * UTF[n]  symbol representations
+ * int     amount of event bytes m
+ * byte[m] events: varint delay, byte key
+ * </pre>
+ * @author lcn
+ */
+public class InputTrace {
+    /**
+     * first 4 bytes of every trace ("CTRC")
+     */
+    public static final int MAGIC = 0x43545243;
+    /**
+     * format version. Traces of another version are rejected.
+     */
+    public static final int VERSION = 1;
+    /**
+     * move the cursor to the left, once per repeat while the key is held
+     */
+    public static final int KEY_LEFT = 0xF0;
+    /**
+     * move the cursor to the right, once per repeat while the key is held
+     */
+    public static final int KEY_RIGHT = 0xF1;
+    /**
+     * delete the symbol before the cursor
+     */
+    public static final int KEY_DEL = 0xF2;
+    /**
+     * clear the display
+     */
+    public static final int KEY_AC = 0xF3;
+    /**
+     * solve the equation
+     */
+    public static final int KEY_EQUAL = 0xF4;
+    /**
+     * switch between the real and the complex mode
+     */
+    public static final int KEY_COMPLEX = 0xF5;
+
+    /**
+     * key of every event: a symbol index below {@link #KEY_LEFT}, or a <code>KEY_*</code> code
+     */
+    private final int[] keys;
+    /**
+     * time of every event in milliseconds since the first one
+     */
+    private final long[] times;
+    /**
+     * symbols by their index in the trace
+     */
+    private final Symbol[] symbols;
+
+    private InputTrace(int[] keys, long[] times, Symbol[] symbols) {
+        this.keys = keys;
+        this.times = times;
+        this.symbols = symbols;
+    }
+
+    /**
+     * read a trace
+     * @param in stream positioned at the start of a trace
+     * @return the decoded trace
+     * @throws IOException if reading fails, the data is not a trace of this version or it uses a
+     *         symbol this app does not define
+     */
+    public static InputTrace read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != InputTrace.MAGIC)
+            throw new IOException("not an input trace");
+        if (data.readByte() != InputTrace.VERSION)
+            throw new IOException("unsupported input trace version");
+        Symbol[] symbols = new Symbol[data.readUnsignedByte()];
+        for (int i = 0; i < symbols.length; i++) {
+            String repr = data.readUTF();
+            for (Symbol sym : Symbol.values()) {
+                if (sym.getRepr().equals(repr))
+                    symbols[i] = sym;
+            }
+            if (symbols[i] == null)
+                throw new IOException("undefined symbol \"" + repr + "\"");
+        }
+        byte[] events = new byte[data.readInt()];
+        data.readFully(events);
+
+        int[] keys = new int[events.length / 2];
+        long[] times = new long[keys.length];
+        int n = 0;
+        long time = 0;
+        int i = 0;
+        while (i < events.length) {
+            long delay = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (i == events.length)
+                    throw new EOFException("truncated input trace");
+                b = events[i++];
+                delay |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            if (i == events.length)
+                throw new EOFException("truncated input trace");
+            int key = events[i++] & 0xFF;
+            if (key < InputTrace.KEY_LEFT && key >= symbols.length)
+                throw new IOException("undefined symbol index " + key);
+            time += delay;
+            keys[n] = key;
+            times[n++] = time;
+        }
+        return new InputTrace(Arrays.copyOf(keys, n), Arrays.copyOf(times, n), symbols);
+    }
+
+    /**
+     * @return amount of key presses
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * @param i index of a key press
+     * @return a <code>KEY_*</code> code, or any smaller value for a {@link #getSymbol(int) symbol}
+     */
+    public int getKey(int i) {
+        return this.keys[i];
+    }
+
+    /**
+     * @param i index of a key press
+     * @return the symbol inserted by the key press, or null if it is not a symbol key
+     */
+    public Symbol getSymbol(int i) {
+        return this.keys[i] < InputTrace.KEY_LEFT ? this.symbols[this.keys[i]] : null;
+    }
+
+    /**
+     * @param i index of a key press
+     * @return time of the key press in milliseconds since the first one
+     */
+    public long getTime(int i) {
+        return this.times[i];
+    }
+}
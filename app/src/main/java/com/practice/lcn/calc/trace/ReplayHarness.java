@@ -0,0 +1,268 @@
+package com.practice.lcn.calc.trace;
+
+import com.practice.lcn.calc.EqtBuffer;
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.EqtWindow;
+import com.practice.lcn.calc.FixedWidthMeasurer;
+import com.practice.lcn.calc.MainActivity;
+import com.practice.lcn.calc.Symbol;
+import com.practice.lcn.calc.expr.EqtProgram;
+import com.practice.lcn.calc.server.LatencyHistogram;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * headless command-line entry point that replays an {@link InputTrace input trace} against the
+ * editing and solving core of the app, the {@link EqtBuffer} and
+ * {@link EqtSolver#evaluateInMode(String, String, boolean, double[])}, with the same shortcuts as
+ * {@link MainActivity} (e.g. a digit after a result starts a new equation). After every key press,
+ * an {@link EqtWindow} measured by a {@link FixedWidthMeasurer} follows the cursor like the
+ * equation display does.
+ * <p>
+ * Usage: <code>ReplayHarness [-w warm-up runs] trace file</code>
+ * </p>
+ * <p>
+ * The key presses are replayed back to back, ignoring the recorded delays. The trace is first
+ * replayed <code>-w</code> times (1 by default) to warm up the JIT, then once more while the
+ * latency of every key press is recorded per kind of key. The latency percentiles and the bytes
+ * allocated by the measured run (on JVMs that can tell) are written to the standard output, so
+ * that releases can be compared on the same trace.
+ * </p>
+ * @author lcn
+ */
+public class ReplayHarness {
+    private static final int KIND_INSERT = 0;
+    private static final int KIND_DELETE = 1;
+    private static final int KIND_MOVE = 2;
+    private static final int KIND_CLEAR = 3;
+    private static final int KIND_EQUAL = 4;
+    private static final int KIND_MODE = 5;
+    private static final String[] KIND_NAMES = { "insert", "delete", "move", "clear", "equal", "mode" };
+    /**
+     * amount of characters shown by the {@link #window}, about as many as a phone shows
+     */
+    private static final int VISIBLE_CHARS = 24;
+
+    /**
+     * statistics of a measured run
+     */
+    public static class Summary {
+        public final LatencyHistogram[] latencies;
+        public long presses;
+        public long elapsedNanos;
+        /**
+         * bytes allocated by the run, or -1 if the JVM cannot tell
+         */
+        public long allocatedBytes;
+        /**
+         * time between the first and the last key press when the trace was recorded
+         */
+        public long recordedMillis;
+
+        Summary() {
+            this.latencies = new LatencyHistogram[KIND_NAMES.length];
+            for (int i = 0; i < this.latencies.length; i++)
+                this.latencies[i] = new LatencyHistogram();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%-8s %8s %10s %10s %10s %10s%n", "key", "count", "p50 us", "p90 us", "p99 us", "max us"));
+            for (int i = 0; i < this.latencies.length; i++) {
+                LatencyHistogram h = this.latencies[i];
+                if (h.count() == 0)
+                    continue;
+                sb.append(String.format("%-8s %8d %10.1f %10.1f %10.1f %10.1f%n", KIND_NAMES[i], h.count(),
+                        h.percentile(50) / 1e3, h.percentile(90) / 1e3, h.percentile(99) / 1e3, h.percentile(100) / 1e3));
+            }
+            sb.append(String.format("%d key presses (recorded over %.1f s) replayed in %.3f ms", this.presses, this.recordedMillis / 1e3, this.elapsedNanos / 1e6));
+            if (this.allocatedBytes >= 0)
+                sb.append(String.format(", %d bytes allocated (%.1f per key press)", this.allocatedBytes, (double) this.allocatedBytes / Math.max(1, this.presses)));
+            return sb.toString();
+        }
+    }
+
+    private final EqtBuffer eqt;
+    private final EqtWindow window;
+    /**
+     * result shown in the result display
+     */
+    private String result;
+    /**
+     * see {@link MainActivity}
+     */
+    private boolean hasCalculated;
+    private boolean complexMode;
+    /**
+     * values of the stored variables, see {@link MainActivity}
+     */
+    private final double[] variables = new double[EqtProgram.ENV_SIZE];
+
+    /**
+     * create a harness showing an empty equation and a result of 0
+     */
+    public ReplayHarness() {
+        this.eqt = new EqtBuffer();
+        this.window = new EqtWindow(new FixedWidthMeasurer(1), ReplayHarness.VISIBLE_CHARS);
+        reset();
+    }
+
+    private void reset() {
+        this.eqt.clear();
+        this.window.reset();
+        this.result = "0";
+        this.hasCalculated = false;
+        this.complexMode = false;
+        Arrays.fill(this.variables, 0);
+    }
+
+    /**
+     * @return the equation shown in the equation display
+     */
+    public String getEqt() {
+        return this.eqt.toString();
+    }
+
+    /**
+     * @return the result shown in the result display
+     */
+    public String getResult() {
+        return this.result;
+    }
+
+    /**
+     * press a key like {@link MainActivity} does
+     * @param trace trace containing the key press
+     * @param i index of the key press
+     * @return kind of the key
+     */
+    private int press(InputTrace trace, int i) {
+        Symbol sym = trace.getSymbol(i);
+        if (sym != null) {
+            if (!this.hasCalculated)
+                this.eqt.insert(sym);
+            else if (Symbol.isNum(sym) || Symbol.startsOperand(sym))
+                this.eqt.set(sym.getRepr() + MainActivity.CURSOR);
+            else
+                this.eqt.set(Symbol.SYM_ANS.getRepr() + sym.getRepr() + MainActivity.CURSOR);
+            this.hasCalculated = false;
+            return KIND_INSERT;
+        }
+        switch (trace.getKey(i)) {
+            case InputTrace.KEY_LEFT:
+                this.eqt.moveLeft();
+                this.hasCalculated = false;
+                return KIND_MOVE;
+            case InputTrace.KEY_RIGHT:
+                this.eqt.moveRight();
+                this.hasCalculated = false;
+                return KIND_MOVE;
+            case InputTrace.KEY_DEL:
+                this.eqt.delete();
+                this.hasCalculated = false;
+                return KIND_DELETE;
+            case InputTrace.KEY_AC:
+                this.eqt.clear();
+                this.result = "0";
+                this.hasCalculated = false;
+                return KIND_CLEAR;
+            case InputTrace.KEY_EQUAL:
+                if (!this.eqt.isWellFormed())
+                    this.result = EqtSolver.RESULT_SYN_ERR;
+                else
+                    this.result = EqtSolver.evaluateInMode(this.eqt.toString(), EqtSolver.toAns(this.result, this.complexMode), this.complexMode, this.variables);
+                if (!EqtSolver.hadErr(this.result))
+                    this.hasCalculated = true;
+                return KIND_EQUAL;
+            default:
+                this.complexMode = !this.complexMode;
+                return KIND_MODE;
+        }
+    }
+
+    /**
+     * replay a trace from an empty display
+     * @param trace trace to replay
+     * @param summary receives the latencies, or null if they are not wanted
+     */
+    public void replay(InputTrace trace, Summary summary) {
+        reset();
+        for (int i = 0; i < trace.size(); i++) {
+            long begin = System.nanoTime();
+            int kind = press(trace, i);
+            this.window.follow(this.eqt.getChars(), this.eqt.length(), this.eqt.getCursorPos());
+            long end = System.nanoTime();
+            if (summary != null)
+                summary.latencies[kind].record(end - begin);
+        }
+    }
+
+    /**
+     * replay a trace while measuring it
+     * @param trace trace to replay
+     * @param warmUpRuns amount of unmeasured runs before the measured one
+     * @return statistics of the measured run
+     */
+    public Summary measure(InputTrace trace, int warmUpRuns) {
+        for (int i = 0; i < warmUpRuns; i++)
+            replay(trace, null);
+        Summary summary = new Summary();
+        summary.presses = trace.size();
+        summary.recordedMillis = trace.size() > 0 ? trace.getTime(trace.size() - 1) : 0;
+        long allocated = allocatedBytes();
+        long begin = System.nanoTime();
+        replay(trace, summary);
+        summary.elapsedNanos = System.nanoTime() - begin;
+        summary.allocatedBytes = allocated < 0 ? -1 : allocatedBytes() - allocated;
+        return summary;
+    }
+
+    /**
+     * @return bytes allocated by the current thread so far, or -1 if the JVM cannot tell. It is
+     *         looked up reflectively since the management API is not part of Android.
+     */
+    private static long allocatedBytes() {
+        try {
+            Object threads = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) method.invoke(threads, Thread.currentThread().getId());
+        }
+        catch (Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * command-line entry point
+     * @param args <code>[-w warm-up runs] trace file</code>
+     * @throws IOException if the trace cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        int warmUpRuns = 1;
+        String input = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-w") && i + 1 < args.length)
+                warmUpRuns = Integer.parseInt(args[++i]);
+            else
+                input = args[i];
+        }
+        if (input == null) {
+            System.err.println("usage: ReplayHarness [-w warm-up runs] trace");
+            System.exit(2);
+        }
+        InputTrace trace;
+        InputStream in = new FileInputStream(input);
+        try {
+            trace = InputTrace.read(in);
+        }
+        finally {
+            in.close();
+        }
+        System.out.println(new ReplayHarness().measure(trace, warmUpRuns));
+    }
+}
@@ -0,0 +1,101 @@
+package com.practice.lcn.calc.trace;
+
+import com.practice.lcn.calc.Symbol;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * records the key presses of an input session into the compact format of {@link InputTrace}.
+ * Recording appends a few bytes to an array, so it adds no allocation to a warm key press. Once
+ * {@link #MAX_BYTES} are recorded, further key presses are dropped.
+ * <p>
+ * It is not thread-safe; it is meant to be used on the UI thread only.
+ * </p>
+ * @author lcn
+ */
+public class TraceRecorder {
+    /**
+     * largest amount of event bytes kept
+     */
+    public static final int MAX_BYTES = 1 << 20;
+    /**
+     * largest size of one event: a 64-bit varint and the key
+     */
+    private static final int MAX_EVENT_BYTES = 11;
+
+    private byte[] events;
+    private int length;
+    /**
+     * time of the previous key press, or -1 if there is none
+     */
+    private long lastTime;
+
+    /**
+     * create an empty recorder
+     */
+    public TraceRecorder() {
+        this.events = new byte[256];
+        this.length = 0;
+        this.lastTime = -1;
+    }
+
+    /**
+     * record a key press inserting a symbol
+     * @param timeMillis time of the key press in milliseconds, e.g. from
+     *                   <code>SystemClock.uptimeMillis()</code>
+     * @param sym inserted symbol
+     */
+    public void recordSymbol(long timeMillis, Symbol sym) {
+        record(timeMillis, sym.ordinal());
+    }
+
+    /**
+     * record a key press
+     * @param timeMillis time of the key press in milliseconds, e.g. from
+     *                   <code>SystemClock.uptimeMillis()</code>
+     * @param key one of the <code>KEY_*</code> codes of {@link InputTrace}
+     */
+    public void record(long timeMillis, int key) {
+        if (this.length + TraceRecorder.MAX_EVENT_BYTES > TraceRecorder.MAX_BYTES)
+            return;
+        if (this.length + TraceRecorder.MAX_EVENT_BYTES > this.events.length)
+            this.events = Arrays.copyOf(this.events, Math.min(this.events.length * 2, TraceRecorder.MAX_BYTES));
+        long delay = this.lastTime < 0 ? 0 : Math.max(0, timeMillis - this.lastTime);
+        this.lastTime = timeMillis;
+        while (delay >= 0x80) {
+            this.events[this.length++] = (byte) (delay | 0x80);
+            delay >>>= 7;
+        }
+        this.events[this.length++] = (byte) delay;
+        this.events[this.length++] = (byte) key;
+    }
+
+    /**
+     * @return amount of event bytes recorded
+     */
+    public int size() {
+        return this.length;
+    }
+
+    /**
+     * write the trace recorded so far
+     * @param out output stream. It is not closed.
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(InputTrace.MAGIC);
+        data.writeByte(InputTrace.VERSION);
+        Symbol[] symbols = Symbol.values();
+        data.writeByte(symbols.length);
+        // the symbols are indexed by ordinal
+        for (Symbol sym : symbols)
+            data.writeUTF(sym.getRepr());
+        data.writeInt(this.length);
+        data.write(this.events, 0, this.length);
+        data.flush();
+    }
+}
@@ -0,0 +1,103 @@
+package com.practice.lcn.calc;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of the allocations of the editing path. Once the {@link EqtBuffer} is warm,
+ * inserting and deleting symbols and moving the cursor must not allocate, so that fast typing
+ * never triggers garbage collection.
+ */
+public class EqtBufferAllocationTest {
+    /**
+     * edits measured after the warm-up
+     */
+    private static final int OPS = 100000;
+    /**
+     * bytes allowed for all measured edits together. It only leaves room for the measurement
+     * itself, which is far less than a single byte per edit.
+     */
+    private static final long BUDGET_BYTES = 1024;
+
+    private com.sun.management.ThreadMXBean threads;
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        this.threads = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(this.threads.isThreadAllocatedMemorySupported());
+        this.threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * perform one round of edits that leaves the equation as it was
+     * @return amount of edits performed
+     */
+    private static int editRound(EqtBuffer buffer) {
+        buffer.insert(Symbol.SYM_7);
+        buffer.insert(Symbol.SYM_EXP);
+        buffer.insert(Symbol.SYM_ANS);
+        buffer.moveLeft();
+        buffer.moveLeft();
+        buffer.moveRight();
+        buffer.moveRight();
+        buffer.delete();
+        buffer.delete();
+        buffer.delete();
+        buffer.isWellFormed();
+        return 11;
+    }
+
+    private long allocatedBytes() {
+        return this.threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    public void steadyStateEdits_allocateNothing() {
+        EqtBuffer buffer = new EqtBuffer();
+        buffer.set("(1+2)\u00D7" + MainActivity.CURSOR + "3.5-Ans");
+        for (int i = 0; i < 100; i++)
+            buffer.insert(i % 2 == 0 ? Symbol.SYM_LEFT_PAREN : Symbol.SYM_9);
+        String before = buffer.toString();
+        // warm up the arrays, the interpreter and the JIT
+        for (int i = 0; i < OPS; )
+            i += editRound(buffer);
+
+        long start = allocatedBytes();
+        int ops = 0;
+        while (ops < OPS)
+            ops += editRound(buffer);
+        long allocated = allocatedBytes() - start;
+
+        assertEquals(before, buffer.toString());
+        assertTrue(String.format("%d bytes allocated by %d edits", allocated, ops), allocated <= BUDGET_BYTES);
+    }
+
+    @Test
+    public void edits_keepCharsAndCursorInSync() {
+        EqtBuffer buffer = new EqtBuffer();
+        buffer.insert(Symbol.SYM_1);
+        buffer.insert(Symbol.SYM_PLUS);
+        buffer.insert(Symbol.SYM_ANS);
+        buffer.moveLeft();
+        buffer.moveLeft();
+        buffer.insert(Symbol.SYM_EXP);
+        buffer.moveRight();
+        buffer.moveRight();
+        buffer.delete();
+        assertEquals("1^(+" + MainActivity.CURSOR, buffer.toString());
+        assertEquals(4, buffer.getCursorPos());
+        assertFalse(buffer.isWellFormed());
+        buffer.delete();
+        buffer.insert(Symbol.SYM_2);
+        buffer.insert(Symbol.SYM_RIGHT_PAREN);
+        assertEquals("1^(2)" + MainActivity.CURSOR, buffer.toString());
+        assertTrue(buffer.isWellFormed());
+    }
+}
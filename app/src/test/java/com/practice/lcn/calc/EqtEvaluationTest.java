@@ -0,0 +1,54 @@
+package com.practice.lcn.calc;
+
+import com.practice.lcn.calc.concurrent.CancellationToken;
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link EqtEvaluation}, which the "=" key runs off the UI thread.
+ */
+public class EqtEvaluationTest {
+    @Test
+    public void storedValue_isRecalledByNextEquation() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        EqtEvaluation store = new EqtEvaluation("Ans×2→A", true, "3", false, variables, CancellationToken.NONE);
+        assertEquals("6.0", store.call());
+        // the evaluation only stores into its own copy until the result is shown
+        assertEquals(0, variables[EqtProgram.SLOT_A], 0);
+        store.store(variables);
+        assertEquals(6, variables[EqtProgram.SLOT_A], 0);
+
+        EqtEvaluation recall = new EqtEvaluation("A+1", true, "6.0", false, variables, CancellationToken.NONE);
+        assertEquals("7.0", recall.call());
+    }
+
+    @Test
+    public void failedStore_keepsVariable() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        variables[EqtProgram.SLOT_B] = 5;
+        EqtEvaluation store = new EqtEvaluation("(1→B", true, "0", false, variables, CancellationToken.NONE);
+        assertEquals(EqtSolver.RESULT_SYN_ERR, store.call());
+        store.store(variables);
+        assertEquals(5, variables[EqtProgram.SLOT_B], 0);
+
+        EqtEvaluation malformed = new EqtEvaluation("1→B", false, "0", false, variables, CancellationToken.NONE);
+        assertEquals(EqtSolver.RESULT_SYN_ERR, malformed.call());
+        malformed.store(variables);
+        assertEquals(5, variables[EqtProgram.SLOT_B], 0);
+    }
+
+    @Test
+    public void cancelledEvaluation_isTooComplex() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        CancellationToken token = CancellationToken.cancellable();
+        token.cancel();
+        EqtEvaluation factorial = new EqtEvaluation("10000!\u2192A", true, "0", false, variables, token);
+        assertEquals(EqtSolver.RESULT_TOO_COMPLEX, factorial.call());
+        factorial.store(variables);
+        assertEquals(0, variables[EqtProgram.SLOT_A], 0);
+        assertEquals(EqtSolver.RESULT_TOO_COMPLEX, EqtSolver.evaluatePrecise("\u221A(2)", "0", variables, 100000, token));
+    }
+}
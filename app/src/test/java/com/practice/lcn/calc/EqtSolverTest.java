@@ -0,0 +1,173 @@
+package com.practice.lcn.calc;
+
+import com.practice.lcn.calc.bignum.Combinatorics;
+import com.practice.lcn.calc.digits.DigitSource;
+import com.practice.lcn.calc.digits.QuotientDigits;
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link EqtSolver}. Every equation is solved as typed, with a function that
+ * does not change its value and with a stored variable, which must all read it the same way.
+ */
+public class EqtSolverTest {
+    private static String solve(String eqt) {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        return EqtSolver.evaluateInMode(eqt, "0", false, variables);
+    }
+
+    private static void assertSameOnEveryPath(String expected, String eqt) {
+        assertEquals(eqt, expected, solve(eqt));
+        assertEquals(eqt + "+abs(0)", expected, solve(eqt + "+abs(0)"));
+        assertEquals(eqt + "+A", expected, solve(eqt + "+A"));
+        assertEquals(eqt + "+M", expected, solve(eqt + "+M"));
+    }
+
+    @Test
+    public void sign_appliesToWholePower() {
+        assertSameOnEveryPath("-4.0", "-2^(2)");
+        assertSameOnEveryPath("4.0", "(-2)^(2)");
+    }
+
+    @Test
+    public void factorial_ofNonInteger_isNaN() {
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "1.5!");
+    }
+
+    @Test
+    public void sign_appliesToWholeFactorial() {
+        assertSameOnEveryPath("-6.0", "-3!");
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "(-3)!");
+    }
+
+    @Test
+    public void largeFactorial_keepsEveryDigit() {
+        assertSameOnEveryPath(Combinatorics.factorial(171).toString(), "171!");
+    }
+
+    @Test
+    public void largeFactorial_readsIntegerVariable() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        variables[EqtProgram.SLOT_A] = 1;
+        assertEquals(Combinatorics.factorial(171).add(BigInteger.ONE).toString(), EqtSolver.evaluateInMode("171!+A", "0", false, variables));
+        variables[EqtProgram.SLOT_A] = 0.5;
+        assertEquals(EqtSolver.RESULT_POS_INFTY, EqtSolver.evaluateInMode("171!+A", "0", false, variables));
+    }
+
+    @Test
+    public void combinatorics_ofNonNaturalNumbers_isNaN() {
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "C(5.5,2)");
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "C(-5,2)");
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "P(-5,2)");
+        assertSameOnEveryPath("10.0", "C(5,2)");
+        assertSameOnEveryPath("20.0", "P(5,2)");
+    }
+
+    @Test
+    public void syntaxError_isReportedOnEveryPath() {
+        assertSameOnEveryPath(EqtSolver.RESULT_SYN_ERR, "2Ans");
+        assertSameOnEveryPath(EqtSolver.RESULT_SYN_ERR, "(1");
+    }
+
+    @Test
+    public void independentVariable_isSyntaxError() {
+        assertSameOnEveryPath(EqtSolver.RESULT_SYN_ERR, "x");
+        assertSameOnEveryPath(EqtSolver.RESULT_SYN_ERR, "sin(x)");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, EqtSolver.evaluate("sin(x)", "0"));
+    }
+
+    @Test
+    public void resultTooLargeToCarry_isTooComplex() {
+        assertSameOnEveryPath(EqtSolver.RESULT_TOO_COMPLEX, "100000!");
+        assertSameOnEveryPath(EqtSolver.RESULT_TOO_COMPLEX, "2^(1000000)");
+        assertSameOnEveryPath(EqtSolver.RESULT_TOO_COMPLEX, "P(50000,25000)");
+        assertEquals(Combinatorics.binomial(50000, 25000).toString(), solve("C(50000,25000)"));
+    }
+
+    @Test
+    public void smallOrUnboundedResult_isNotTooComplex() {
+        assertSameOnEveryPath("0.0", "0.5^(1000000)");
+        assertSameOnEveryPath(EqtSolver.RESULT_POS_INFTY, "1/(1-1)");
+        assertSameOnEveryPath(EqtSolver.RESULT_POS_INFTY, "exp(1000000)");
+        assertSameOnEveryPath("0.0", "0\u00D75");
+        assertSameOnEveryPath("0.0", "5\u00D70");
+        assertSameOnEveryPath("0.0", "0/5");
+        assertSameOnEveryPath(EqtSolver.RESULT_NAN, "0/0");
+        assertSameOnEveryPath("0.0", "Ans\u00D72");
+    }
+
+    @Test
+    public void largeAns_isBoundedByItsDigits() {
+        String ans = Combinatorics.factorial(171).toString();
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        assertEquals(Combinatorics.factorial(171).add(BigInteger.ONE).toString(), EqtSolver.evaluateInMode("Ans+1", ans, false, variables));
+        assertEquals(EqtSolver.RESULT_TOO_COMPLEX, EqtSolver.evaluateInMode("Ans^(1000)", ans, false, variables));
+    }
+
+    @Test
+    public void roundedAns_isNotReadExactly() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        String ans = EqtSolver.evaluateInMode("2^(100)", "0", false, variables);
+        assertEquals(String.valueOf(Math.pow(2, 100) * 3), EqtSolver.evaluateInMode("Ans\u00D73", ans, false, variables));
+        assertEquals("1.0E17", EqtSolver.evaluateInMode("Ans", "1.0E17", false, variables));
+        assertEquals(EqtSolver.evaluateInMode("10^(17)", "0", false, variables), EqtSolver.evaluateInMode("Ans", "1.0E17", false, variables));
+    }
+
+    private static String text(DigitSource digits, int from, int count) {
+        char[] chars = new char[count];
+        digits.getChars(from, chars, count);
+        return new String(chars);
+    }
+
+    @Test
+    public void preciseRationalResult_isExpandedExactly() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        DigitSource sevenths = EqtSolver.evaluatePreciseDigits("1/7", "0", variables, 5000);
+        assertTrue(sevenths instanceof QuotientDigits);
+        assertEquals(2 + 5000, sevenths.length());
+        assertEquals("0.142857", text(sevenths, 0, 8));
+        // the last two digits are 4998 mod 6 = 0 and 1 into the period 142857
+        assertEquals("14", text(sevenths, 2 + 4998, 2));
+        // a terminating expansion ends with its last digit
+        assertEquals(3, EqtSolver.evaluatePreciseDigits("0.1+0.2", "0", variables, 50).length());
+        DigitSource eighths = EqtSolver.evaluatePreciseDigits("-3/8", "0", variables, 50);
+        assertEquals(6, eighths.length());
+        assertEquals("-0.375", text(eighths, 0, 6));
+    }
+
+    @Test
+    public void preciseIrrationalOrIntegerResult_isShownAsText() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        assertFalse(EqtSolver.evaluatePreciseDigits("2^(10)", "0", variables, 50) instanceof QuotientDigits);
+        assertEquals("1024", EqtSolver.evaluatePreciseDigits("2^(10)", "0", variables, 50).toString());
+        assertFalse(EqtSolver.evaluatePreciseDigits("\u03C0", "0", variables, 50) instanceof QuotientDigits);
+        assertEquals(EqtSolver.RESULT_POS_INFTY, EqtSolver.evaluatePreciseDigits("1/0", "0", variables, 50).toString());
+    }
+
+    @Test
+    public void preciseUndefinedValue_isReportedLikeDouble() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        String[] eqts = { "1/0", "-1/0", "1/(1-1)", "ln(0)", "-ln(0)", "log(0)", "0/0", "(-3)!", "\u221A(-1)" };
+        for (String eqt : eqts)
+            assertEquals(eqt, EqtSolver.evaluate(eqt, "0", variables), EqtSolver.evaluatePrecise(eqt, "0", variables, 50));
+        assertEquals(EqtSolver.RESULT_POS_INFTY, EqtSolver.evaluatePrecise("1/0", "0", variables, 50));
+        assertEquals(EqtSolver.RESULT_NEG_INFTY, EqtSolver.evaluatePrecise("ln(0)", "0", variables, 50));
+        assertEquals(EqtSolver.RESULT_NAN, EqtSolver.evaluatePrecise("0/0", "0", variables, 50));
+    }
+
+    @Test
+    public void preciseTrigonometry_fallsBackToDoubleWithMarker() {
+        double[] variables = new double[EqtProgram.ENV_SIZE];
+        assertEquals(EqtSolver.APPROX_MARKER + Math.sin(1), EqtSolver.evaluatePrecise("sin(1)", "0", variables, 100));
+        assertEquals(EqtSolver.APPROX_MARKER + (Math.cos(0.5) + 1), EqtSolver.evaluatePrecise("cos(0.5)+1", "", variables, 100));
+        assertEquals(EqtSolver.RESULT_SYN_ERR, EqtSolver.evaluatePrecise("tan(1", "0", variables, 100));
+        assertEquals(EqtSolver.APPROX_MARKER + Math.sin(1), EqtSolver.evaluatePreciseDigits("sin(1)", "0", variables, 100).toString());
+        // the other functions stay precise
+        assertTrue(EqtSolver.evaluatePrecise("ln(2)", "0", variables, 100).startsWith("0.693147180559945309417232121458"));
+    }
+}
@@ -0,0 +1,226 @@
+package com.practice.lcn.calc;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link EqtWindow} with a {@link FixedWidthMeasurer}, so the window following
+ * can be stress-tested on the JVM with equations far longer than anyone types, and with a measurer
+ * of variable widths like the one drawing the equation.
+ */
+public class EqtWindowTest {
+    private static final float CHAR_WIDTH = 10f;
+    private static final int MAX_WIDTH = 405;
+    /**
+     * characters that fit in the window
+     */
+    private static final int VISIBLE = (int) (MAX_WIDTH / CHAR_WIDTH);
+    private static final int LONG_SYMBOLS = 100000;
+
+    private static void assertShowsCursor(EqtWindow window, EqtBuffer buffer) {
+        int start = window.getStart();
+        int end = window.getEnd();
+        int cursorPos = buffer.getCursorPos();
+        String state = String.format("window [%d, %d], cursor %d, length %d", start, end, cursorPos, buffer.length());
+        assertTrue(state, 0 <= start && start <= cursorPos && cursorPos <= end && end < buffer.length());
+        assertTrue(state, (end - start + 1) * CHAR_WIDTH <= MAX_WIDTH);
+    }
+
+    @Test
+    public void shortEquation_isShownWhole() {
+        EqtWindow window = new EqtWindow(new FixedWidthMeasurer(CHAR_WIDTH), MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        buffer.set("1+2" + MainActivity.CURSOR);
+        window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        assertEquals(0, window.getStart());
+        assertEquals(3, window.getEnd());
+    }
+
+    @Test
+    public void movingThroughLongEquation_scrollsJustEnough() {
+        EqtWindow window = new EqtWindow(new FixedWidthMeasurer(CHAR_WIDTH), MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        for (int i = 0; i < 3 * VISIBLE; i++) {
+            buffer.insert(Symbol.SYM_1);
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        }
+        // the cursor is the last character of the window
+        assertEquals(buffer.getCursorPos(), window.getEnd());
+        assertEquals(VISIBLE, window.getEnd() - window.getStart() + 1);
+
+        int end = window.getEnd();
+        for (int i = 1; i < VISIBLE; i++) {
+            buffer.moveLeft();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+            assertEquals(end, window.getEnd());
+        }
+        buffer.moveLeft();
+        window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        // the cursor is the first character of the window
+        assertEquals(buffer.getCursorPos(), window.getStart());
+        assertEquals(VISIBLE, window.getEnd() - window.getStart() + 1);
+    }
+
+    @Test
+    public void restore_keepsValidWindowAndFillsInvalidOne() {
+        EqtWindow window = new EqtWindow(new FixedWidthMeasurer(CHAR_WIDTH), MAX_WIDTH);
+        StringBuilder eqt = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            eqt.append('7');
+        eqt.insert(50, MainActivity.CURSOR);
+        EqtBuffer buffer = new EqtBuffer();
+        buffer.set(eqt.toString());
+
+        window.restore(buffer.getChars(), buffer.length(), buffer.getCursorPos(), new int[] { 30, 60 });
+        assertEquals(30, window.getStart());
+        assertEquals(60, window.getEnd());
+
+        window.restore(buffer.getChars(), buffer.length(), buffer.getCursorPos(), new int[] { 60, 90 });
+        assertEquals(50, window.getStart());
+        assertEquals(50 + VISIBLE - 1, window.getEnd());
+    }
+
+    @Test
+    public void randomEditsOfHugeEquation_keepCursorVisible() {
+        EqtWindow window = new EqtWindow(new FixedWidthMeasurer(CHAR_WIDTH), MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        Symbol[] symbols = { Symbol.SYM_1, Symbol.SYM_PLUS, Symbol.SYM_LEFT_PAREN, Symbol.SYM_RIGHT_PAREN, Symbol.SYM_ANS, Symbol.SYM_EXP };
+        Random random = new Random(44);
+        for (int i = 0; i < LONG_SYMBOLS; i++)
+            buffer.insert(symbols[random.nextInt(symbols.length)]);
+        window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        assertShowsCursor(window, buffer);
+
+        for (int i = 0; i < 200000; i++) {
+            int op = random.nextInt(10);
+            if (op < 3)
+                buffer.insert(symbols[random.nextInt(symbols.length)]);
+            else if (op < 5)
+                buffer.delete();
+            else if (op < 8)
+                buffer.moveLeft();
+            else
+                buffer.moveRight();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+            assertShowsCursor(window, buffer);
+        }
+    }
+
+    @Test
+    public void followingHugeEquation_costsVisibleCharsOnly() {
+        EqtWindow window = new EqtWindow(new FixedWidthMeasurer(CHAR_WIDTH), MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        for (int i = 0; i < LONG_SYMBOLS; i++)
+            buffer.insert(Symbol.SYM_9);
+        int rounds = 100000;
+        // warm up the JIT
+        for (int i = 0; i < rounds; i++) {
+            if (i % 2 == 0)
+                buffer.moveLeft();
+            else
+                buffer.moveRight();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        }
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            buffer.moveLeft();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        }
+        long perFollow = (System.nanoTime() - begin) / rounds;
+        assertShowsCursor(window, buffer);
+        // a scan of the whole equation would take far longer than this
+        assertTrue(perFollow + " ns per follow", perFollow < 50000);
+    }
+
+    /**
+     * measurer drawing "&times;" much wider than the other characters, like a proportional font
+     */
+    private static final TextMeasurer VARIABLE_WIDTH = new TextMeasurer() {
+        @Override
+        public float widthOf(char c) {
+            return c == Symbol.SYM_MUL.getRepr().charAt(0) ? 3.5f * CHAR_WIDTH : c == '1' ? 0.5f * CHAR_WIDTH : CHAR_WIDTH;
+        }
+
+        @Override
+        public float measure(char[] text, int from, int to) {
+            float w = 0;
+            for (int i = from; i < to; i++)
+                w += widthOf(text[i]);
+            return w;
+        }
+    };
+
+    /**
+     * assert that the window shows the cursor, fits the width, and leaves no room for another
+     * character at either side
+     */
+    private static void assertFillsWidth(EqtWindow window, EqtBuffer buffer) {
+        char[] eqt = buffer.getChars();
+        int start = window.getStart();
+        int end = window.getEnd();
+        int cursorPos = buffer.getCursorPos();
+        String state = String.format("window [%d, %d], cursor %d, length %d", start, end, cursorPos, buffer.length());
+        assertTrue(state, 0 <= start && start <= cursorPos && cursorPos <= end && end < buffer.length());
+        float w = VARIABLE_WIDTH.measure(eqt, start, end + 1);
+        assertTrue(state + ", width " + w, (int) Math.floor(w) <= MAX_WIDTH);
+        if (end + 1 < buffer.length())
+            assertTrue(state + ", gap after", (int) Math.floor(w + VARIABLE_WIDTH.widthOf(eqt[end + 1])) > MAX_WIDTH);
+        else if (start > 0)
+            assertTrue(state + ", gap before", (int) Math.floor(w + VARIABLE_WIDTH.widthOf(eqt[start - 1])) > MAX_WIDTH);
+    }
+
+    @Test
+    public void editsInsideWindow_withVariableWidths_refitWindow() {
+        EqtWindow window = new EqtWindow(VARIABLE_WIDTH, MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        for (int i = 0; i < 3 * VISIBLE; i++) {
+            buffer.insert(i % 2 == 0 ? Symbol.SYM_1 : Symbol.SYM_2);
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        }
+        for (int i = 0; i < VISIBLE / 2; i++) {
+            buffer.moveLeft();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+        }
+        assertFillsWidth(window, buffer);
+        // wide characters inserted inside the window push its end back
+        for (int i = 0; i < 4; i++) {
+            buffer.insert(Symbol.SYM_MUL);
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+            assertFillsWidth(window, buffer);
+        }
+        // deleting them lets the window show more again
+        for (int i = 0; i < 4; i++) {
+            buffer.delete();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+            assertFillsWidth(window, buffer);
+        }
+    }
+
+    @Test
+    public void randomEdits_withVariableWidths_fillWindow() {
+        EqtWindow window = new EqtWindow(VARIABLE_WIDTH, MAX_WIDTH);
+        EqtBuffer buffer = new EqtBuffer();
+        Symbol[] symbols = { Symbol.SYM_1, Symbol.SYM_2, Symbol.SYM_MUL, Symbol.SYM_PLUS };
+        Random random = new Random(37);
+        for (int i = 0; i < 20000; i++) {
+            int op = random.nextInt(10);
+            if (op < 4)
+                buffer.insert(symbols[random.nextInt(symbols.length)]);
+            else if (op < 6)
+                buffer.delete();
+            else if (op < 8)
+                buffer.moveLeft();
+            else
+                buffer.moveRight();
+            window.follow(buffer.getChars(), buffer.length(), buffer.getCursorPos());
+            int start = window.getStart();
+            int end = window.getEnd();
+            assertTrue(start <= buffer.getCursorPos() && buffer.getCursorPos() <= end && end < buffer.length());
+            assertTrue((int) Math.floor(VARIABLE_WIDTH.measure(buffer.getChars(), start, end + 1)) <= MAX_WIDTH);
+        }
+    }
+}
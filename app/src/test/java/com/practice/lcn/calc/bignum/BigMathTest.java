@@ -0,0 +1,94 @@
+package com.practice.lcn.calc.bignum;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link BigMath} against published digits of &pi;, e and ln 2, and of exp and
+ * ln against each other at precisions from a double to a few thousand digits.
+ */
+public class BigMathTest {
+    private static final BigDecimal PI = new BigDecimal("3.14159265358979323846264338327950288419716939937510582097494459230781640628620899862803482534211706798214808651");
+    private static final BigDecimal E = new BigDecimal("2.7182818284590452353602874713526624977572470936999595749669676277240766303535475945713821785251664274274663919");
+    private static final BigDecimal LN_2 = new BigDecimal("0.69314718055994530941723212145817656807550013436025525412068000949339362196969471560586332699641868754200148102");
+    private static final int[] PRECISIONS = { 1, 2, 16, 17, 50, 100 };
+    private static final int[] ROUND_TRIP_PRECISIONS = { 5, 17, 60, 400, 3000 };
+
+    /**
+     * assert that the values differ by at most one unit in the last place of the precision
+     */
+    private static void assertClose(String message, BigDecimal expected, BigDecimal actual, MathContext mc) {
+        BigDecimal ulp = expected.round(mc).ulp();
+        assertTrue(message + ": " + actual + " is not " + expected, actual.subtract(expected).abs().compareTo(ulp) <= 0);
+    }
+
+    @Test
+    public void constants_matchPublishedDigits() {
+        for (int p : PRECISIONS) {
+            MathContext mc = new MathContext(p);
+            assertEquals("pi to " + p, PI.round(mc), BigMath.pi(mc));
+            assertEquals("e to " + p, E.round(mc), BigMath.e(mc));
+            assertEquals("ln 2 to " + p, LN_2.round(mc), BigMath.ln(new BigDecimal(2), mc));
+        }
+    }
+
+    @Test
+    public void lowerPrecision_isCutFromCachedDigits() {
+        BigMath.pi(new MathContext(2000));
+        BigMath.e(new MathContext(2000));
+        for (int p : PRECISIONS) {
+            MathContext mc = new MathContext(p);
+            assertEquals("pi to " + p, PI.round(mc), BigMath.pi(mc));
+            assertEquals("e to " + p, E.round(mc), BigMath.e(mc));
+        }
+    }
+
+    @Test
+    public void exp_ofLn_isIdentity() {
+        String[] xs = { "0.001", "0.5", "2", "7", "123.456", "1E+30" };
+        for (int p : ROUND_TRIP_PRECISIONS) {
+            MathContext mc = new MathContext(p);
+            MathContext wide = new MathContext(p + 10);
+            for (String s : xs) {
+                BigDecimal x = new BigDecimal(s);
+                assertClose("exp(ln(" + s + ")) to " + p, x, BigMath.exp(BigMath.ln(x, wide), mc), mc);
+            }
+        }
+    }
+
+    @Test
+    public void ln_ofExp_isIdentity() {
+        String[] ys = { "-20", "-0.75", "0.5", "1", "3.25", "100" };
+        for (int p : ROUND_TRIP_PRECISIONS) {
+            MathContext mc = new MathContext(p);
+            MathContext wide = new MathContext(p + 10);
+            for (String s : ys) {
+                BigDecimal y = new BigDecimal(s);
+                assertClose("ln(exp(" + s + ")) to " + p, y, BigMath.ln(BigMath.exp(y, wide), mc), mc);
+            }
+        }
+    }
+
+    @Test
+    public void undefinedArguments_areRejected() {
+        MathContext mc = new MathContext(20);
+        try {
+            BigMath.ln(BigDecimal.ZERO, mc);
+            fail("ln(0) was not rejected");
+        }
+        catch (ArithmeticException e) {
+            // expected
+        }
+        try {
+            BigMath.sqrt(new BigDecimal(-1), mc);
+            fail("sqrt(-1) was not rejected");
+        }
+        catch (ArithmeticException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.practice.lcn.calc.bignum;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link Combinatorics} against naive products, which cover both the table
+ * lookups and the prime swing, the prime factorization and the falling products.
+ */
+public class CombinatoricsTest {
+    private static final int MAX_FACTORIAL = 3000;
+    private static final int MAX_N = 400;
+
+    @Test
+    public void factorial_matchesNaiveProduct() {
+        BigInteger naive = BigInteger.ONE;
+        for (int n = 0; n <= MAX_FACTORIAL; n++) {
+            if (n > 0)
+                naive = naive.multiply(BigInteger.valueOf(n));
+            assertEquals(n + "!", naive, Combinatorics.factorial(n));
+        }
+    }
+
+    @Test
+    public void binomial_matchesPascalsTriangle() {
+        BigInteger[] row = { BigInteger.ONE };
+        for (int n = 0; n <= MAX_N; n++) {
+            for (int k = 0; k <= n; k++)
+                assertEquals("C(" + n + "," + k + ")", row[k], Combinatorics.binomial(n, k));
+            assertEquals(BigInteger.ONE, Combinatorics.binomial(n, 0));
+            assertEquals(BigInteger.ONE, Combinatorics.binomial(n, n));
+            assertEquals(BigInteger.ZERO, Combinatorics.binomial(n, n + 1));
+            assertEquals(BigInteger.ZERO, Combinatorics.binomial(n, -1));
+            BigInteger[] next = new BigInteger[n + 2];
+            next[0] = BigInteger.ONE;
+            next[n + 1] = BigInteger.ONE;
+            for (int k = 1; k <= n; k++)
+                next[k] = row[k - 1].add(row[k]);
+            row = next;
+        }
+    }
+
+    @Test
+    public void permutations_matchFallingProduct() {
+        for (int n = 0; n <= MAX_N; n++) {
+            BigInteger naive = BigInteger.ONE;
+            for (int k = 0; k <= n; k++) {
+                if (k > 0)
+                    naive = naive.multiply(BigInteger.valueOf(n - k + 1));
+                assertEquals("P(" + n + "," + k + ")", naive, Combinatorics.permutations(n, k));
+            }
+            assertEquals(BigInteger.ZERO, Combinatorics.permutations(n, n + 1));
+        }
+    }
+
+    @Test
+    public void approximations_matchExactValues() {
+        for (int n = 0; n <= 170; n++) {
+            assertEquals(n + "!", Combinatorics.factorial(n).doubleValue(), Combinatorics.factorialOf(n), 0);
+            for (int k = 0; k <= n; k += 7) {
+                double c = Combinatorics.binomial(n, k).doubleValue();
+                assertEquals("C(" + n + "," + k + ")", c, Combinatorics.binomialOf(n, k), c * 1e-12);
+                double p = Combinatorics.permutations(n, k).doubleValue();
+                assertEquals("P(" + n + "," + k + ")", p, Combinatorics.permutationsOf(n, k), p * 1e-12);
+            }
+        }
+        assertEquals(0, Combinatorics.binomialOf(3, 4), 0);
+        assertEquals(0, Combinatorics.permutationsOf(3, 4), 0);
+    }
+}
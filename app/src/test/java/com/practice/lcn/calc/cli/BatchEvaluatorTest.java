@@ -0,0 +1,94 @@
+package com.practice.lcn.calc.cli;
+
+import com.practice.lcn.calc.EqtSolver;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link BatchEvaluator}.
+ */
+public class BatchEvaluatorTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * output that fails like a closed pipe after the first write
+     */
+    private static class BrokenPipe implements WritableByteChannel {
+        private boolean written;
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (this.written)
+                throw new IOException("Broken pipe");
+            this.written = true;
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static ReadableByteChannel input(String text) {
+        return Channels.newChannel(new ByteArrayInputStream(text.getBytes(UTF_8)));
+    }
+
+    @Test
+    public void results_areWrittenInInputOrder() throws IOException {
+        StringBuilder in = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        int lines = BatchEvaluator.BATCH_LINES * 3 + 7;
+        for (int i = 0; i < lines; i++) {
+            String eqt = i % 5 == 0 ? "(1" : i + "×2";
+            in.append(eqt).append('\n');
+            expected.append(EqtSolver.evaluate(eqt, "0")).append('\n');
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchEvaluator.Summary summary = new BatchEvaluator(3, "0").run(input(in.toString()), Channels.newChannel(out));
+        assertEquals(expected.toString(), new String(out.toByteArray(), UTF_8));
+        assertEquals(lines, summary.lines);
+        assertEquals((lines + 4) / 5, summary.errors);
+    }
+
+    @Test
+    public void matrixLines_areSolvedLikeResultDisplay() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchEvaluator.Summary summary = new BatchEvaluator(1, "0").run(input("[1,2;3,4]×2\ndet([1,2;3,4])\n"), Channels.newChannel(out));
+        assertEquals("[2.0,4.0;6.0,8.0]\n-2.0\n", new String(out.toByteArray(), UTF_8));
+        assertEquals(0, summary.errors);
+    }
+
+    @Test(timeout = 30000)
+    public void failingOutput_stopsRunInsteadOfBlocking() {
+        StringBuilder in = new StringBuilder();
+        // far more batches than can be in flight at once
+        int lines = BatchEvaluator.BATCH_LINES * BatchEvaluator.PENDING_PER_THREAD * 8;
+        for (int i = 0; i < lines; i++)
+            in.append("1+1\n");
+        try {
+            new BatchEvaluator(1, "0").run(input(in.toString()), new BrokenPipe());
+            fail("the broken pipe was not reported");
+        }
+        catch (IOException e) {
+            assertEquals("Broken pipe", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.practice.lcn.calc.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link ParallelRange}.
+ */
+public class ParallelRangeTest {
+    private static final int N = ParallelRange.parallelism() * 1000;
+
+    @Test
+    public void everyIndex_isProcessedOnce() {
+        final AtomicInteger[] hits = new AtomicInteger[N];
+        for (int i = 0; i < N; i++)
+            hits[i] = new AtomicInteger();
+        ParallelRange.run(0, N, 1, new ParallelRange.Body() {
+            @Override
+            public void run(int part, int from, int to) {
+                for (int i = from; i < to; i++)
+                    hits[i].incrementAndGet();
+            }
+        });
+        for (int i = 0; i < N; i++)
+            assertEquals("index " + i, 1, hits[i].get());
+    }
+
+    @Test
+    public void failingCallerPart_waitsForOtherParts() {
+        final int last = ParallelRange.parallelism() - 1;
+        final AtomicInteger done = new AtomicInteger();
+        try {
+            ParallelRange.run(0, N, 1, new ParallelRange.Body() {
+                @Override
+                public void run(int part, int from, int to) {
+                    // the calling thread processes the last part
+                    if (part == last)
+                        throw new IllegalStateException("caller");
+                    try {
+                        Thread.sleep(50);
+                    }
+                    catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    done.incrementAndGet();
+                }
+            });
+            fail("the failure was not rethrown");
+        }
+        catch (IllegalStateException e) {
+            assertEquals("caller", e.getMessage());
+        }
+        assertEquals(last, done.get());
+    }
+
+    @Test
+    public void errorInWorker_isRethrown() {
+        try {
+            ParallelRange.run(0, N, 1, new ParallelRange.Body() {
+                @Override
+                public void run(int part, int from, int to) {
+                    if (part == 0)
+                        throw new AssertionError("part 0");
+                }
+            });
+            fail("the error was not rethrown");
+        }
+        catch (AssertionError e) {
+            assertEquals("part 0", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.bignum.Combinatorics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link CompiledEqt}. A compiled equation must give the result of
+ * {@link EqtSolver#evaluate(String, String)}, one Ans at a time or all at once.
+ */
+public class CompiledEqtTest {
+    @Test
+    public void evaluate_agreesWithSolver() {
+        String[] eqts = { "1+2", "Ans×2", "-2^(2)", "1.5!", "1/0", "Ans/0", "171!", "C(100,50)", "sin(Ans)", "0.5^(1000000)" };
+        double[] ansValues = { 0, 3, -2.5, 1e300 };
+        for (String eqt : eqts) {
+            CompiledEqt compiled = CompiledEqt.compile(eqt);
+            for (double ans : ansValues)
+                assertEquals(eqt + " with Ans=" + ans, EqtSolver.evaluate(eqt, Double.toString(ans)), compiled.evaluate(ans).toString());
+        }
+        EvalResult factorial = CompiledEqt.compile("171!").evaluate(0);
+        assertFalse(factorial.hasErr());
+        assertEquals(Combinatorics.factorial(171).toString(), factorial.toString());
+        assertEquals(Double.POSITIVE_INFINITY, factorial.getValue(), 0);
+    }
+
+    @Test
+    public void equationsRejectedBySolver_areSyntaxErrors() {
+        String[] eqts = { "x", "x+1", "1=1", "2Ans", "(1", "" };
+        for (String eqt : eqts) {
+            assertEquals(eqt, EqtSolver.RESULT_SYN_ERR, EqtSolver.evaluate(eqt, "0"));
+            CompiledEqt compiled = CompiledEqt.compile(eqt);
+            assertTrue(eqt, compiled.hasSyntaxError());
+            assertEquals(eqt, EvalResult.SYNTAX_ERROR, compiled.evaluate(0));
+            try {
+                compiled.evaluateAll(new double[] { 0 });
+                fail(eqt + " was evaluated");
+            }
+            catch (RuntimeException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void evaluateAll_matchesSequentialEvaluation() {
+        CompiledEqt compiled = CompiledEqt.compile("Ans^(2)-3×Ans+sin(Ans)/Ans");
+        double[] ansValues = new double[CompiledEqt.PARALLEL_THRESHOLD * 16 + 7];
+        for (int i = 0; i < ansValues.length; i++)
+            ansValues[i] = (i - ansValues.length / 2) * 0.37;
+        double[] all = compiled.evaluateAll(ansValues);
+        for (int i = 0; i < ansValues.length; i++)
+            assertEquals("Ans=" + ansValues[i], compiled.evaluate(ansValues[i]).getValue(), all[i], 0);
+    }
+}
@@ -0,0 +1,35 @@
+package com.practice.lcn.calc.expr;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.matrix.Matrix;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link MatrixEvaluator}.
+ */
+public class MatrixEvaluatorTest {
+    private static final Matrix A = new Matrix(2, 2, new double[] { 1, 2, 3, 4 });
+
+    private static Matrix evaluate(String eqt) {
+        return MatrixEvaluator.evaluate(eqt, Matrix.scalar(0), new double[EqtProgram.ENV_SIZE]);
+    }
+
+    @Test
+    public void operations_matchMatrix() {
+        assertEquals(A.times(2).toString(), evaluate("[1,2;3,4]×2").toString());
+        assertEquals(A.times(A).times(A).toString(), evaluate("[1,2;3,4]^(3)").toString());
+        assertEquals(A.inverse().toString(), evaluate("[1,2;3,4]^(-1)").toString());
+        assertEquals(A.det(), evaluate("det([1,2;3,4])").get(0, 0), 0);
+        assertEquals(A.transpose().toString(), evaluate("trn([1,2;3,4])").toString());
+    }
+
+    @Test
+    public void matrixEquation_isSolvedOutsideTheApp() {
+        assertEquals("[2.0,4.0;6.0,8.0]", EqtSolver.evaluate("[1,2;3,4]×2", "0"));
+        assertEquals("-2.0", EqtSolver.evaluate("det(Ans)", "[1.0,2.0;3.0,4.0]"));
+        assertEquals(EqtSolver.RESULT_MATRIX_ERR, EqtSolver.evaluate("[1,2]×[1,2]", "0"));
+    }
+}
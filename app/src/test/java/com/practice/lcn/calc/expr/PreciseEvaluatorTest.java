@@ -0,0 +1,70 @@
+package com.practice.lcn.calc.expr;
+
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link PreciseEvaluator} against published digits and of its functions
+ * against each other at several precisions.
+ */
+public class PreciseEvaluatorTest {
+    private static final String PI = "3.14159265358979323846264338327950288419716939937510582097494459230781640628620899862803482534211706798214808651";
+    private static final String SQRT_2 = "1.41421356237309504880168872420969807856967187537694807317667973799073247846210703885038753432764157273501384623";
+    private static final String LN_2 = "0.69314718055994530941723212145817656807550013436025525412068000949339362196969471560586332699641868754200148102";
+    private static final int[] PRECISIONS = { 1, 12, 40, 100 };
+    private static final int[] ROUND_TRIP_PRECISIONS = { 10, 50, 500, 2000 };
+
+    private static BigDecimal evaluate(String eqt, int digits) {
+        return PreciseEvaluator.evaluate(eqt, BigDecimal.ZERO, new double[EqtProgram.ENV_SIZE], digits);
+    }
+
+    private static void assertUndefined(String eqt) {
+        try {
+            evaluate(eqt, 20);
+            fail(eqt + " was not rejected");
+        }
+        catch (ArithmeticException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void transcendentalValues_matchPublishedDigits() {
+        for (int p : PRECISIONS) {
+            MathContext mc = new MathContext(p);
+            assertEquals("pi to " + p, new BigDecimal(PI).round(mc), evaluate("\u03C0", p));
+            assertEquals("sqrt(2) to " + p, new BigDecimal(SQRT_2).round(mc), evaluate("\u221A(2)", p));
+            assertEquals("ln(2) to " + p, new BigDecimal(LN_2).round(mc), evaluate("ln(2)", p));
+        }
+    }
+
+    @Test
+    public void rationalValues_areExact() {
+        assertEquals(0, new BigDecimal("0.3").compareTo(evaluate("0.1+0.2", 30)));
+        assertEquals(new BigDecimal("0.33333333333333333333333333333333333333333333333333"), evaluate("1/3", 50));
+        assertEquals(0, new BigDecimal("1267650600228229401496703205376").compareTo(evaluate("2^(100)", 40)));
+        assertEquals(0, new BigDecimal("3").compareTo(PreciseEvaluator.evaluate("Ans\u00D72", new BigDecimal("1.5"), new double[EqtProgram.ENV_SIZE], 10)));
+    }
+
+    @Test
+    public void expAndLn_roundTrip() {
+        for (int p : ROUND_TRIP_PRECISIONS) {
+            BigDecimal ulp = BigDecimal.ONE.scaleByPowerOfTen(1 - p);
+            assertTrue("exp(ln(7)) to " + p, evaluate("exp(ln(7))", p).subtract(new BigDecimal(7)).abs().compareTo(ulp) <= 0);
+            assertTrue("ln(exp(3)) to " + p, evaluate("ln(exp(3))", p).subtract(new BigDecimal(3)).abs().compareTo(ulp) <= 0);
+            assertTrue("\u221A(2)^(2) to " + p, evaluate("\u221A(2)^(2)", p).subtract(new BigDecimal(2)).abs().compareTo(ulp) <= 0);
+        }
+    }
+
+    @Test
+    public void undefinedValues_areArithmeticErrors() {
+        assertUndefined("1/0");
+        assertUndefined("ln(0)");
+        assertUndefined("\u221A(-1)");
+        assertUndefined("(-3)!");
+    }
+}
@@ -0,0 +1,60 @@
+package com.practice.lcn.calc.expr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link RootFinder} on roots that never change sign, roots at 0 and equations
+ * without any root.
+ */
+public class RootFinderTest {
+    private static final double GUESS = 5;
+
+    private static RootFinder finderOf(String eqt) {
+        return new RootFinder(EqtParser.compileRelation(eqt), new double[EqtProgram.ENV_SIZE]);
+    }
+
+    private static double solve(String eqt) {
+        return finderOf(eqt).solve(GUESS);
+    }
+
+    @Test
+    public void doubleRoot_isFound() {
+        assertEquals(0, solve("x^(2)=0"), 1e-7);
+        assertEquals(3, solve("(x-3)^(2)=0"), 1e-7);
+        assertEquals(-2, solve("x^(2)+4\u00D7x+4"), 1e-7);
+    }
+
+    @Test
+    public void tripleRoot_atZero_doesNotExhaustBudget() {
+        RootFinder finder = finderOf("x^(3)=0");
+        double root = finder.solve(GUESS);
+        assertEquals(0, root, 1e-5);
+        assertTrue("evaluations " + finder.getEvaluations(), finder.getEvaluations() < RootFinder.MAX_EVALUATIONS);
+    }
+
+    @Test
+    public void simpleRoot_atZero_isFound() {
+        assertEquals(0, solve("x=0"), 1e-15);
+        assertEquals(0, finderOf("sin(x)=0").solve(0.5), 1e-15);
+        assertEquals(0, finderOf("x^(3)+x").solve(0.5), 1e-15);
+    }
+
+    @Test
+    public void guessOnRoot_isReturned() {
+        assertEquals(0, finderOf("x^(2)=0").solve(0), 0);
+    }
+
+    @Test
+    public void noRoot_isNaN() {
+        assertTrue(Double.isNaN(solve("x^(2)+1=0")));
+        assertTrue(Double.isNaN(solve("x^(2)+0.0000000001=0")));
+        assertTrue(Double.isNaN(solve("abs(x)+1=0")));
+    }
+
+    @Test
+    public void pole_isNotRoot() {
+        assertTrue(Double.isNaN(solve("1/x=0")));
+    }
+}
@@ -0,0 +1,41 @@
+package com.practice.lcn.calc.expr;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link Series} on small ranges with a closed form and on ranges too wide to
+ * count in a long.
+ */
+public class SeriesTest {
+    private static Series seriesOf(String eqt) {
+        return new Series(EqtParser.compileRelation(eqt), new double[EqtProgram.ENV_SIZE]);
+    }
+
+    @Test
+    public void smallRanges_matchClosedForm() {
+        long n = 3 * Series.BLOCK + 5;
+        assertEquals(n * (n + 1) / 2, seriesOf("x").sum(1, n), 0);
+        assertEquals(120, seriesOf("x").product(1, 5), 0);
+        assertEquals(0, seriesOf("x").sum(5, 4), 0);
+        assertEquals(1, seriesOf("x").product(5, 4), 0);
+    }
+
+    private static void assertTooManyTerms(long first, long last) {
+        try {
+            seriesOf("x").sum(first, last);
+            fail(first + ".." + last + " was not rejected");
+        }
+        catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void wideRanges_areRejected() {
+        assertTooManyTerms(0, Series.MAX_TERMS);
+        assertTooManyTerms(-5000000000000000000L, 5000000000000000000L);
+        assertTooManyTerms(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+}
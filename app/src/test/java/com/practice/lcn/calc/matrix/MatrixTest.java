@@ -0,0 +1,98 @@
+package com.practice.lcn.calc.matrix;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link Matrix}. The elements are small integers, so every product is exact
+ * whatever order the blocked kernel adds it up in.
+ */
+public class MatrixTest {
+    private static Matrix random(Random random, int rows, int cols) {
+        double[] data = new double[rows * cols];
+        for (int i = 0; i < data.length; i++)
+            data[i] = random.nextInt(17) - 8;
+        return new Matrix(rows, cols, data);
+    }
+
+    private static Matrix naiveTimes(Matrix a, Matrix b) {
+        double[] c = new double[a.getRows() * b.getCols()];
+        for (int i = 0; i < a.getRows(); i++) {
+            for (int j = 0; j < b.getCols(); j++) {
+                double sum = 0;
+                for (int k = 0; k < a.getCols(); k++)
+                    sum += a.get(i, k) * b.get(k, j);
+                c[i * b.getCols() + j] = sum;
+            }
+        }
+        return new Matrix(a.getRows(), b.getCols(), c);
+    }
+
+    private static void assertMatrixEquals(String message, Matrix expected, Matrix actual, double delta) {
+        assertEquals(message, expected.getRows(), actual.getRows());
+        assertEquals(message, expected.getCols(), actual.getCols());
+        for (int i = 0; i < expected.getRows(); i++) {
+            for (int j = 0; j < expected.getCols(); j++)
+                assertEquals(message + " at " + i + "," + j, expected.get(i, j), actual.get(i, j), delta);
+        }
+    }
+
+    @Test
+    public void product_matchesNaiveKernel() {
+        Random random = new Random(42);
+        // edges of the 4-row kernel, the bands and the panels, and a product large enough to run in parallel
+        int[][] sizes = {
+                { 1, 1, 1 }, { 3, 5, 2 }, { 4, 4, 4 }, { 5, 7, 9 },
+                { Matrix.BLOCK - 1, 3, Matrix.BLOCK + 1 }, { Matrix.BLOCK + 3, Matrix.PANEL_K + 5, 7 },
+                { 2 * Matrix.BLOCK + 1, Matrix.PANEL_K - 1, Matrix.PANEL_J + 13 },
+                { 3 * Matrix.BLOCK + 2, 2 * Matrix.PANEL_K + 3, Matrix.PANEL_J + 1 },
+        };
+        for (int[] size : sizes) {
+            Matrix a = random(random, size[0], size[1]);
+            Matrix b = random(random, size[1], size[2]);
+            assertMatrixEquals(size[0] + "x" + size[1] + "x" + size[2], naiveTimes(a, b), a.times(b), 0);
+        }
+    }
+
+    @Test
+    public void inverse_timesMatrix_isIdentity() {
+        Random random = new Random(7);
+        for (int n : new int[] { 1, 2, 5, Matrix.BLOCK + 3 }) {
+            // diagonally dominant, hence invertible and well conditioned
+            Matrix a = random(random, n, n).plus(Matrix.identity(n).times(20 * n));
+            assertMatrixEquals("n=" + n, Matrix.identity(n), a.times(a.inverse()), 1e-12);
+        }
+        Matrix inverse = new Matrix(2, 2, new double[] { 1, 2, 3, 4 }).inverse();
+        assertMatrixEquals("2x2", new Matrix(2, 2, new double[] { -2, 1, 1.5, -0.5 }), inverse, 1e-15);
+        assertFalse(new Matrix(2, 2, new double[] { 1, 2, 2, 4 }).inverse().isFinite());
+    }
+
+    @Test
+    public void power_matchesRepeatedProduct() {
+        Matrix a = new Matrix(3, 3, new double[] { 1, 1, 0, 0, 1, 2, 1, 0, 1 });
+        Matrix expected = Matrix.identity(3);
+        for (int p = 0; p <= 13; p++) {
+            assertMatrixEquals("p=" + p, expected, a.pow(p), 0);
+            expected = expected.times(a);
+        }
+        assertMatrixEquals("p=-1", a.inverse(), a.pow(-1), 0);
+        assertMatrixEquals("p=-3", a.inverse().times(a.inverse()).times(a.inverse()), a.pow(-3), 1e-12);
+    }
+
+    @Test
+    public void det_matchesKnownValues() {
+        assertEquals(-2, new Matrix(2, 2, new double[] { 1, 2, 3, 4 }).det(), 1e-12);
+        assertEquals(0, new Matrix(2, 2, new double[] { 1, 2, 2, 4 }).det(), 0);
+        // triangular: product of the diagonal
+        assertEquals(2 * 3 * 5, new Matrix(3, 3, new double[] { 2, 7, 1, 0, 3, 4, 0, 0, 5 }).det(), 1e-12);
+        // odd permutation of the identity
+        assertEquals(-1, new Matrix(3, 3, new double[] { 0, 1, 0, 1, 0, 0, 0, 0, 1 }).det(), 0);
+        Random random = new Random(3);
+        Matrix a = random(random, 6, 6);
+        Matrix b = random(random, 6, 6);
+        assertEquals(a.det() * b.det(), a.times(b).det(), 1e-6 * Math.abs(a.det() * b.det()) + 1e-6);
+    }
+}
@@ -0,0 +1,176 @@
+package com.practice.lcn.calc.server;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.bignum.Combinatorics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link EvalServer} over the loopback interface. The responses are checked
+ * against {@link EqtSolver#evaluate(String, String)}, which the result display also goes through.
+ */
+public class EvalServerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private EvalServer server;
+    private Thread thread;
+
+    /**
+     * response frame
+     */
+    private static class Response {
+        byte status;
+        double value;
+        String text;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.server = new EvalServer(0);
+        this.thread = new Thread(this.server);
+        this.thread.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        this.server.stop();
+        this.thread.join(5000);
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket("127.0.0.1", this.server.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    private static byte[] frame(String eqt) {
+        byte[] payload = eqt.getBytes(UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(payload.length);
+            out.write(payload);
+        }
+        catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Response read(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        Response response = new Response();
+        response.status = in.readByte();
+        response.value = in.readDouble();
+        byte[] text = new byte[len - 1 - 8];
+        in.readFully(text);
+        response.text = new String(text, UTF_8);
+        return response;
+    }
+
+    private static void assertResponse(String expected, Response response) {
+        assertEquals(expected, response.text);
+        assertEquals(expected, EqtSolver.hadErr(expected) ? EvalServer.STATUS_ERR : EvalServer.STATUS_OK, response.status);
+        if (EqtSolver.hadErr(expected) || expected.startsWith("["))
+            assertTrue(expected, Double.isNaN(response.value));
+        else
+            assertEquals(expected, Double.parseDouble(expected), response.value, 0);
+    }
+
+    @Test
+    public void pipelinedRequests_areAnsweredInOrderLikeResultDisplay() throws IOException {
+        String[] eqts = { "1+2", "Ans×2", "-2^(2)", "1.5!", "C(5.5,2)", "171!", "(1", "sin(x)", "[1,2;3,4]×2", "det(Ans)", "Ans" };
+        Socket socket = connect();
+        try {
+            ByteArrayOutputStream all = new ByteArrayOutputStream();
+            for (String eqt : eqts)
+                all.write(frame(eqt));
+            socket.getOutputStream().write(all.toByteArray());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            String ans = "0";
+            for (String eqt : eqts) {
+                String expected = EqtSolver.evaluate(eqt, ans);
+                assertResponse(expected, read(in));
+                ans = EqtSolver.toAns(expected, false);
+            }
+        }
+        finally {
+            socket.close();
+        }
+        assertEquals(Combinatorics.factorial(171).toString(), EqtSolver.evaluate("171!", "0"));
+        assertEquals("[2.0,4.0;6.0,8.0]", EqtSolver.evaluate("[1,2;3,4]×2", "0"));
+    }
+
+    @Test
+    public void frameSplitAcrossWrites_isReassembled() throws IOException, InterruptedException {
+        Socket socket = connect();
+        try {
+            byte[] bytes = frame("12×12");
+            for (byte b : bytes) {
+                socket.getOutputStream().write(b);
+                socket.getOutputStream().flush();
+                Thread.sleep(2);
+            }
+            assertResponse("144.0", read(new DataInputStream(socket.getInputStream())));
+        }
+        finally {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void everyConnection_keepsItsOwnAns() throws IOException {
+        Socket first = connect();
+        Socket second = connect();
+        try {
+            DataInputStream firstIn = new DataInputStream(first.getInputStream());
+            DataInputStream secondIn = new DataInputStream(second.getInputStream());
+            first.getOutputStream().write(frame("5"));
+            assertResponse("5.0", read(firstIn));
+            second.getOutputStream().write(frame("7"));
+            assertResponse("7.0", read(secondIn));
+            first.getOutputStream().write(frame("Ans+1"));
+            assertResponse("6.0", read(firstIn));
+            second.getOutputStream().write(frame("Ans+1"));
+            assertResponse("8.0", read(secondIn));
+            // a failed request resets Ans to 0
+            first.getOutputStream().write(frame("1/0"));
+            assertResponse(EqtSolver.RESULT_POS_INFTY, read(firstIn));
+            first.getOutputStream().write(frame("Ans+1"));
+            assertResponse("1.0", read(firstIn));
+        }
+        finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void emptyRequest_getsLatencyReport() throws IOException {
+        Socket socket = connect();
+        try {
+            socket.getOutputStream().write(frame("1"));
+            socket.getOutputStream().write(frame(""));
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            assertResponse("1.0", read(in));
+            Response stats = read(in);
+            assertEquals(EvalServer.STATUS_STATS, stats.status);
+            assertEquals(1.0, stats.value, 0);
+            assertTrue(stats.text, stats.text.startsWith("count=1 "));
+        }
+        finally {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.practice.lcn.calc.sheet;
+
+import com.practice.lcn.calc.EqtSolver;
+import com.practice.lcn.calc.expr.EqtParser;
+import com.practice.lcn.calc.expr.EqtProgram;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test of {@link Worksheet}.
+ */
+public class WorksheetTest {
+    private static Worksheet sheet(String... lines) {
+        Worksheet sheet = new Worksheet(new double[EqtProgram.ENV_SIZE]);
+        for (String line : lines)
+            sheet.append(line);
+        return sheet;
+    }
+
+    /**
+     * evaluate every line in the line order on the calling thread
+     * @return values of the lines
+     */
+    private static double[] sequential(Worksheet sheet) {
+        double[] env = new double[EqtProgram.SLOT_LINES + sheet.size()];
+        for (int line = 0; line < sheet.size(); line++) {
+            EqtProgram program;
+            try {
+                program = EqtParser.compileLine(sheet.getLine(line), line);
+            }
+            catch (RuntimeException e) {
+                env[EqtProgram.SLOT_LINES + line] = Double.NaN;
+                continue;
+            }
+            env[EqtProgram.SLOT_LINES + line] = program.evaluate(env, new double[Math.max(1, program.getMaxStack())]);
+        }
+        double[] values = new double[sheet.size()];
+        System.arraycopy(env, EqtProgram.SLOT_LINES, values, 0, values.length);
+        return values;
+    }
+
+    private static void assertMatchesSequential(Worksheet sheet) {
+        double[] expected = sequential(sheet);
+        for (int line = 0; line < sheet.size(); line++)
+            assertEquals("#" + (line + 1), expected[line], sheet.getValue(line), 0);
+    }
+
+    @Test
+    public void editingLine_reevaluatesOnlyItsCone() {
+        Worksheet sheet = sheet("1", "2", "#1+1", "#3×2", "#2+1", "#4+#5", "3");
+        assertEquals(7.0, sheet.getValue(5), 0);
+        // #3 is read by #4, which is read by #6; #5 and #7 stay untouched
+        assertEquals(3, sheet.set(2, "#1+5"));
+        assertEquals(6.0, sheet.getValue(2), 0);
+        assertEquals(12.0, sheet.getValue(3), 0);
+        assertEquals(15.0, sheet.getValue(5), 0);
+        // a line nothing refers to is its own cone
+        assertEquals(1, sheet.set(6, "4"));
+        // dropping a reference removes the line from the cone
+        sheet.set(3, "7");
+        assertEquals(1, sheet.set(2, "#1"));
+        assertEquals(10.0, sheet.getValue(5), 0);
+        assertMatchesSequential(sheet);
+    }
+
+    @Test
+    public void forwardAndSelfReferences_areSyntaxErrors() {
+        Worksheet sheet = sheet("#1", "1", "#2+#3", "#4");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(0));
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(2));
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(3));
+        assertTrue(Double.isNaN(sheet.getValue(3)));
+        sheet.set(1, "#4");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(1));
+        sheet.set(1, "#0");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(1));
+    }
+
+    @Test
+    public void independentVariable_isSyntaxError() {
+        Worksheet sheet = sheet("x+1", "#1\u00D72");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(0));
+        assertEquals(EqtSolver.RESULT_NAN, sheet.getResult(1));
+        sheet.set(0, "2");
+        assertEquals("4.0", sheet.getResult(1));
+    }
+
+    @Test
+    public void error_propagatesAsNaN() {
+        Worksheet sheet = sheet("(1", "#1+1", "#2×2", "5");
+        assertEquals(EqtSolver.RESULT_SYN_ERR, sheet.getResult(0));
+        assertEquals(EqtSolver.RESULT_NAN, sheet.getResult(1));
+        assertEquals(EqtSolver.RESULT_NAN, sheet.getResult(2));
+        assertEquals("5.0", sheet.getResult(3));
+        // fixing the line recovers its dependents
+        assertEquals(3, sheet.set(0, "1"));
+        assertEquals("4.0", sheet.getResult(2));
+    }
+
+    @Test
+    public void wideLevels_matchSequentialEvaluation() {
+        int width = Worksheet.PARALLEL_THRESHOLD * 16;
+        Worksheet sheet = sheet("3");
+        for (int i = 0; i < width; i++)
+            sheet.append("#1×" + (i + 1));
+        for (int i = 0; i < width; i++)
+            sheet.append("#" + (i + 2) + "+#" + (width + 1 - i) + "-#1");
+        assertMatchesSequential(sheet);
+        assertEquals(1 + 2 * width, sheet.set(0, "7"));
+        assertMatchesSequential(sheet);
+        assertEquals(7.0 * 5, sheet.getValue(5), 0);
+    }
+}